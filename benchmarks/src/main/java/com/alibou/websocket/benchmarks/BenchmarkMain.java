@@ -0,0 +1,48 @@
+package com.alibou.websocket.benchmarks;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Properties;
+
+/**
+ * Обычный JMH-запуск, но по умолчанию результаты пишутся в JSON
+ * target/jmh-<версия приложения>.json – файлы разных релизов можно
+ * сравнивать между собой (например, в jmh.morethan.io).
+ * Любые ключи JMH работают как есть, -rf/-rff переопределяют умолчание.
+ */
+public class BenchmarkMain {
+
+    public static void main(String[] args) throws Exception {
+        CommandLineOptions cli = new CommandLineOptions(args);
+        if (cli.shouldHelp() || cli.shouldList() || cli.shouldListProfilers()
+                || cli.shouldListResultFormats() || cli.shouldListWithParams()) {
+            org.openjdk.jmh.Main.main(args);
+            return;
+        }
+
+        OptionsBuilder options = new OptionsBuilder();
+        options.parent(cli);
+        if (!cli.getResultFormat().hasValue()) options.resultFormat(ResultFormatType.JSON);
+        if (!cli.getResult().hasValue()) {
+            Path out = Path.of("target", "jmh-" + chatVersion() + ".json");
+            Files.createDirectories(out.getParent());
+            options.result(out.toString());
+        }
+        new Runner(options.build()).run();
+    }
+
+    private static String chatVersion() throws IOException {
+        Properties p = new Properties();
+        try (InputStream in = BenchmarkMain.class.getResourceAsStream("/benchmarks.properties")) {
+            if (in != null) p.load(in);
+        }
+        return p.getProperty("chat.version", "dev");
+    }
+}
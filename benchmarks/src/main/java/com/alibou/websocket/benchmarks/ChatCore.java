@@ -0,0 +1,149 @@
+package com.alibou.websocket.benchmarks;
+
+import com.alibou.websocket.chat.ChatMessage;
+import com.alibou.websocket.chat.ChatMessageService;
+import com.alibou.websocket.chat.InMemoryMessageStore;
+import com.alibou.websocket.chat.StripedMessageStore;
+import com.alibou.websocket.chatroom.ChatInactivityService;
+import com.alibou.websocket.chatroom.ChatRoomService;
+import com.alibou.websocket.chatroom.InMemoryRoomStore;
+import com.alibou.websocket.chatroom.StripedRoomStore;
+import com.alibou.websocket.user.AvailableUsers;
+import com.alibou.websocket.user.InMemoryOnlineUserStore;
+import com.alibou.websocket.user.OnlineUserStore;
+import com.alibou.websocket.user.PresenceService;
+import com.alibou.websocket.user.Status;
+import com.alibou.websocket.user.StripedOnlineUserStore;
+import com.alibou.websocket.user.User;
+import com.alibou.websocket.user.UserRole;
+import com.alibou.websocket.user.UserService;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.core.env.MapPropertySource;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+
+import java.util.Map;
+
+/**
+ * Ядро чата без веба: настоящие сервисы в маленьком Spring-контексте
+ * (с теми же @Lazy-связями, что и в приложении), брокер – заглушка.
+ *
+ * Состояние на старте каждого прогона:
+ *  • users онлайн-пользователей: rooms инженеров и users − rooms REGULAR-ов;
+ *  • rooms активных пар eng-i ↔ reg-i, в каждой по history сообщений
+ *    (history – заодно и chat.history.capacity);
+ *  • остальные REGULAR-ы свободны – их берут бенчмарки activateChat.
+ */
+@State(Scope.Benchmark)
+public class ChatCore {
+
+    @Param({"1000", "10000"})
+    public int users;
+
+    @Param({"100", "1000"})
+    public int rooms;
+
+    @Param({"100", "1000"})
+    public int history;
+
+    /** memory | striped (jdbc без базы не поднять) */
+    @Param({"memory"})
+    public String store;
+
+    /** messages – таймеры простоя на каждом сообщении, heartbeat – без них (-p liveness=heartbeat) */
+    @Param({"messages"})
+    public String liveness;
+
+    AnnotationConfigApplicationContext ctx;
+    OnlineUserStore       onlineUsers;
+    ChatRoomService       chatRooms;
+    ChatMessageService    messages;
+    ChatInactivityService inactivity;
+    UserService           userService;
+
+    int pairs;          // min(rooms, users / 2)
+    int idle;           // свободных REGULAR-ов
+
+    /** Пустой контекст ядра: сервисы и хранилища store, без пользователей */
+    static AnnotationConfigApplicationContext context(String store, int history, String liveness) {
+        AnnotationConfigApplicationContext ctx = new AnnotationConfigApplicationContext();
+        ctx.getEnvironment().getPropertySources().addFirst(new MapPropertySource("benchmark", Map.of(
+                "chat.store.type", store,
+                "chat.history.capacity", String.valueOf(history))));
+        ctx.registerBean(SimpMessagingTemplate.class, () -> new SimpMessagingTemplate((message, timeout) -> true));
+        ctx.register(
+                InMemoryOnlineUserStore.class, StripedOnlineUserStore.class,
+                InMemoryRoomStore.class,       StripedRoomStore.class,
+                InMemoryMessageStore.class,    StripedMessageStore.class,
+                AvailableUsers.class, PresenceService.class,
+                ChatRoomService.class, ChatInactivityService.class, ChatMessageService.class, UserService.class);
+        ctx.refresh();
+        if ("heartbeat".equals(liveness)) ctx.getBean(ChatInactivityService.class).livenessByHeartbeat();
+        return ctx;
+    }
+
+    @Setup(Level.Trial)
+    public void start() {
+        ctx = context(store, history, liveness);
+
+        onlineUsers = ctx.getBean(OnlineUserStore.class);
+        chatRooms   = ctx.getBean(ChatRoomService.class);
+        messages    = ctx.getBean(ChatMessageService.class);
+        inactivity  = ctx.getBean(ChatInactivityService.class);
+        userService = ctx.getBean(UserService.class);
+
+        pairs = Math.max(1, Math.min(rooms, users / 2));
+        idle  = Math.max(1, users - 2 * pairs);
+        for (int i = 0; i < pairs; i++) {
+            userService.saveUser(new User(engineer(i), Status.ONLINE, UserRole.ENGINEER), "s-" + engineer(i));
+            userService.saveUser(new User(regular(i), Status.ONLINE, UserRole.REGULAR), "s-" + regular(i));
+            chatRooms.activateChat(engineer(i), regular(i));
+            for (int m = 0; m < history; m++) messages.save(message(i, (m & 1) == 0));
+        }
+        for (int i = 0; i < idle; i++) {
+            userService.saveUser(new User(idle(i), Status.ONLINE, UserRole.REGULAR), "s-" + idle(i));
+        }
+    }
+
+    /** Таймеры простоя настоящие (20 с): перед каждой итерацией их отодвигаем */
+    @Setup(Level.Iteration)
+    public void keepAlive() {
+        for (int i = 0; i < pairs; i++) inactivity.touch(engineer(i), regular(i));
+        for (int i = 0; i < idle; i++)  inactivity.touchRegular(idle(i));
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() {
+        ctx.close();
+    }
+
+    static String engineer(int i) { return "eng-" + i; }
+    static String regular(int i)  { return "reg-" + i; }
+    static String idle(int i)     { return "idle-" + i; }
+
+    /** Сообщение пары i: от инженера или от пользователя */
+    ChatMessage message(int pair, boolean fromEngineer) {
+        ChatMessage m = new ChatMessage();
+        m.setSenderId(fromEngineer ? engineer(pair) : regular(pair));
+        m.setRecipientId(fromEngineer ? regular(pair) : engineer(pair));
+        m.setContent("hello");
+        return m;
+    }
+
+    /** Курсор своего потока по парам и свободным пользователям */
+    @State(Scope.Thread)
+    public static class Cursor {
+        private int next;
+
+        int next(int bound) {
+            int i = next++ % bound;
+            if (next == Integer.MAX_VALUE) next = 0;
+            return i;
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package com.alibou.websocket.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+
+public class ChatInactivityServiceBenchmark extends ChatBenchmark {
+
+    /**
+     * Перезапуск таймера активной пары (на каждом сообщении); колесо держит
+     * users таймеров – на 100k: -p users=100000
+     */
+    @Benchmark
+    public void touch(ChatCore core, ChatCore.Cursor cursor) {
+        int i = cursor.next(core.pairs);
+        core.inactivity.touch(ChatCore.engineer(i), ChatCore.regular(i));
+    }
+}
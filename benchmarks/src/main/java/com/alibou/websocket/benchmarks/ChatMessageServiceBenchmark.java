@@ -0,0 +1,19 @@
+package com.alibou.websocket.benchmarks;
+
+import com.alibou.websocket.chat.ChatMessage;
+import org.openjdk.jmh.annotations.Benchmark;
+
+/**
+ * Горячий путь сообщения: роли, комната, таймеры пары, запись в историю.
+ * Байты на сообщение – с -prof gc (gc.alloc.rate.norm), цена таймеров –
+ * сравнением -p liveness=messages,heartbeat, потоки – -t 8.
+ */
+public class ChatMessageServiceBenchmark extends ChatBenchmark {
+
+    /** Пары по кругу, направление чередуется */
+    @Benchmark
+    public ChatMessage save(ChatCore core, ChatCore.Cursor cursor) {
+        int i = cursor.next(2 * core.pairs);
+        return core.messages.save(core.message(i >> 1, (i & 1) == 0));
+    }
+}
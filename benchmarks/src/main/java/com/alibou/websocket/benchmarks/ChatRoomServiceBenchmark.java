@@ -0,0 +1,29 @@
+package com.alibou.websocket.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+
+public class ChatRoomServiceBenchmark extends ChatBenchmark {
+
+    /** Занят ли пользователь: попеременно участник пары и свободный REGULAR */
+    @Benchmark
+    public boolean isUserInActiveChatWithEngineer(ChatCore core, ChatCore.Cursor cursor) {
+        int i = cursor.next(2 * core.pairs);
+        String nick = (i & 1) == 0 ? ChatCore.regular(i >> 1) : ChatCore.idle((i >> 1) % core.idle);
+        return core.chatRooms.isUserInActiveChatWithEngineer(nick);
+    }
+
+    /**
+     * Инженер берёт свободного пользователя и сразу отпускает: по отдельности
+     * activateChat копил бы комнаты от итерации к итерации, а замер должен
+     * идти на одном и том же состоянии.
+     */
+    @Benchmark
+    public String activateChatThenDeactivatePair(ChatCore core, ChatCore.Cursor cursor) {
+        int    i        = cursor.next(core.idle);
+        String engineer = ChatCore.engineer(i % core.pairs);
+        String user     = ChatCore.idle(i);
+        String chatId   = core.chatRooms.activateChat(engineer, user);
+        core.chatRooms.deactivatePair(engineer, user);
+        return chatId;
+    }
+}
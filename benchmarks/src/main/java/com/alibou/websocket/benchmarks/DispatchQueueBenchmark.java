@@ -0,0 +1,58 @@
+package com.alibou.websocket.benchmarks;
+
+import com.alibou.websocket.chatroom.DispatchQueue;
+import com.alibou.websocket.chatroom.DispatchQueue.Assignment;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayDeque;
+
+/**
+ * Раздача в установившемся потоке: все столы заняты, одна пара отпускается,
+ * приходит новый REGULAR и тут же назначается на освободившееся место.
+ * Ровность раздачи проверяет DispatchQueueTest, здесь – цена одного круга.
+ */
+public class DispatchQueueBenchmark extends ChatBenchmark {
+
+    @State(Scope.Thread)
+    public static class Desks {
+
+        @Param({"500"})
+        public int engineers;
+
+        @Param({"3"})
+        public int capacity;
+
+        DispatchQueue                queue;
+        final ArrayDeque<Assignment> busy = new ArrayDeque<>();
+        long                         arrivals;
+
+        @Setup(Level.Trial)
+        public void start() {
+            queue = new DispatchQueue(capacity);
+            for (int e = 0; e < engineers; e++) queue.engineerOnline(ChatCore.engineer(e));
+            for (int r = 0; r < engineers * capacity; r++) queue.enqueue(ChatCore.regular(r));
+            busy.addAll(queue.assign());
+            arrivals = engineers * capacity;
+        }
+    }
+
+    /** Самая старая пара завершается, новый REGULAR встаёт в очередь и получает инженера */
+    @Benchmark
+    public int releaseArriveAssign(Desks d) {
+        Assignment done = d.busy.pollFirst();
+        d.queue.release(done.engineerId(), done.userId());
+        d.queue.left(done.userId());
+        d.queue.enqueue(ChatCore.regular((int) d.arrivals++));
+        int n = 0;
+        for (Assignment a : d.queue.assign()) {
+            d.busy.addLast(a);
+            n++;
+        }
+        return n;
+    }
+}
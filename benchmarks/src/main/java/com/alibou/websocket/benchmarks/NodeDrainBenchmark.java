@@ -0,0 +1,121 @@
+package com.alibou.websocket.benchmarks;
+
+import com.alibou.websocket.chatroom.ChatRoomService;
+import com.alibou.websocket.config.NodeDrain;
+import com.alibou.websocket.config.SessionGate;
+import com.alibou.websocket.user.OnlineUserStore;
+import com.alibou.websocket.user.Status;
+import com.alibou.websocket.user.User;
+import com.alibou.websocket.user.UserRole;
+import com.alibou.websocket.user.UserService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.AbstractWebSocketHandler;
+
+import java.lang.reflect.Proxy;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Drain узла целиком: ворота, уход всех пользователей одним проходом и
+ * параллельное закрытие сессий. Закрытие сессии стоит closeMs (кадр close
+ * по сети), поэтому поочерёдно 5k сессий закрывались бы не меньше 5 с.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+public class NodeDrainBenchmark extends ChatBenchmark {
+
+    /** Узел с engineers инженерами и regulars REGULAR-ами, по pairsPerEngineer активных пар у инженера */
+    @State(Scope.Thread)
+    public static class Node {
+
+        @Param({"500"})
+        public int engineers;
+
+        @Param({"4500"})
+        public int regulars;
+
+        @Param({"4"})
+        public int pairsPerEngineer;
+
+        @Param({"1"})
+        public long closeMs;
+
+        @Param({"32"})
+        public int parallelism;
+
+        AnnotationConfigApplicationContext ctx;
+        NodeDrain                          drain;
+
+        @Setup(Level.Invocation)
+        public void start() {
+            ctx = ChatCore.context("memory", 100, "messages");
+            UserService      users   = ctx.getBean(UserService.class);
+            ChatRoomService  rooms   = ctx.getBean(ChatRoomService.class);
+            SessionGate      gate    = new SessionGate();
+            WebSocketHandler handler = gate.decorate(new AbstractWebSocketHandler() {});
+
+            for (int e = 0; e < engineers; e++) login(handler, users, ChatCore.engineer(e), UserRole.ENGINEER);
+            for (int r = 0; r < regulars; r++) {
+                login(handler, users, ChatCore.regular(r), UserRole.REGULAR);
+                if (r < engineers * pairsPerEngineer) {
+                    rooms.activateChat(ChatCore.engineer(r % engineers), ChatCore.regular(r));
+                }
+            }
+            drain = new NodeDrain(gate, users, ctx.getBean(OnlineUserStore.class), Optional.empty(),
+                    10_000, parallelism, false);
+        }
+
+        /** Сессия, которая закрывается за closeMs и сообщает об этом обработчику, как у Tomcat */
+        private void login(WebSocketHandler handler, UserService users, String nick, UserRole role) {
+            String id = "s-" + nick;
+            WebSocketSession[] self = new WebSocketSession[1];
+            self[0] = (WebSocketSession) Proxy.newProxyInstance(getClass().getClassLoader(),
+                    new Class<?>[] {WebSocketSession.class}, (proxy, method, args) -> switch (method.getName()) {
+                        case "getId"    -> id;
+                        case "isOpen"   -> true;
+                        case "hashCode" -> id.hashCode();
+                        case "equals"   -> proxy == args[0];
+                        case "toString" -> id;
+                        case "close"    -> {
+                            Thread.sleep(closeMs);
+                            handler.afterConnectionClosed(self[0], args == null ? CloseStatus.NORMAL : (CloseStatus) args[0]);
+                            yield null;
+                        }
+                        default         -> null;
+                    });
+            try {
+                handler.afterConnectionEstablished(self[0]);
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+            users.saveUser(new User(nick, Status.ONLINE, role), id);
+        }
+
+        @TearDown(Level.Invocation)
+        public void stop() {
+            ctx.close();
+        }
+    }
+
+    @Benchmark
+    public NodeDrain.Report drain(Node node) {
+        return node.drain.drain();
+    }
+}
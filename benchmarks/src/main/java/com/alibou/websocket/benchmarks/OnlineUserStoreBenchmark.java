@@ -0,0 +1,14 @@
+package com.alibou.websocket.benchmarks;
+
+import com.alibou.websocket.user.User;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.infra.Blackhole;
+
+public class OnlineUserStoreBenchmark extends ChatBenchmark {
+
+    /** Полный обход, как у /users и снимка состояния */
+    @Benchmark
+    public void all(ChatCore core, Blackhole bh) {
+        for (User u : core.onlineUsers.all()) bh.consume(u);
+    }
+}
@@ -0,0 +1,88 @@
+package com.alibou.websocket.benchmarks;
+
+import com.alibou.websocket.chat.ChatNotification;
+import com.alibou.websocket.config.PayloadFormat;
+import com.alibou.websocket.config.PayloadFormats;
+import com.alibou.websocket.user.PresenceChange;
+import com.alibou.websocket.user.PresenceDelta;
+import com.alibou.websocket.user.Status;
+import com.alibou.websocket.user.UserRole;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.module.blackbird.BlackbirdModule;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Тело кадра STOMP: JSON / CBOR / Smile для сообщения чата и кадра присутствия.
+ *
+ * mapper=plain – прежний new ObjectMapper(), tuned – общий mapper приложения
+ * (настройки Spring Boot + Blackbird). Здесь – CPU на кадр; что бинарные
+ * кадры меньше JSON, проверяет PayloadFormatsTest.
+ */
+public class PayloadBenchmark extends ChatBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Frame {
+
+        @Param({"JSON", "CBOR", "SMILE"})
+        public PayloadFormat format;
+
+        /** chat – ChatNotification, presence – PresenceDelta на presenceSize изменений */
+        @Param({"chat", "presence"})
+        public String frame;
+
+        @Param({"plain", "boot", "tuned"})
+        public String mapper;
+
+        @Param({"50"})
+        public int presenceSize;
+
+        ObjectMapper om;
+        Object       payload;
+        Class<?>     type;
+        byte[]       bytes;
+
+        @Setup(Level.Trial)
+        public void start() throws Exception {
+            ObjectMapper base = switch (mapper) {
+                case "boot"  -> Jackson2ObjectMapperBuilder.json().build();
+                case "tuned" -> Jackson2ObjectMapperBuilder.json().modulesToInstall(new BlackbirdModule()).build();
+                default      -> new ObjectMapper();
+            };
+            om = new PayloadFormats(base).mapper(format);
+
+            if ("chat".equals(frame)) {
+                payload = new ChatNotification("42", "engineer-17", "regular-4711",
+                        "Добрый день! Проверьте, пожалуйста, настройки роутера и перезагрузите его.");
+                type = ChatNotification.class;
+            } else {
+                List<PresenceChange> changes = new ArrayList<>(presenceSize);
+                for (int i = 0; i < presenceSize; i++) {
+                    changes.add(new PresenceChange(1_000 + i, "regular-" + i,
+                            (i & 1) == 0 ? Status.ONLINE : Status.OFFLINE, UserRole.REGULAR));
+                }
+                payload = new PresenceDelta(1_000, 1_000 + presenceSize, changes);
+                type = PresenceDelta.class;
+            }
+            bytes = om.writeValueAsBytes(payload);
+        }
+    }
+
+    @Benchmark
+    public byte[] serialize(Frame f) throws Exception {
+        return f.om.writeValueAsBytes(f.payload);
+    }
+
+    @Benchmark
+    public Object deserialize(Frame f) throws Exception {
+        return f.om.readValue(f.bytes, f.type);
+    }
+}
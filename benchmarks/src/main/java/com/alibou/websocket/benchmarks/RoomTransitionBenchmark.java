@@ -0,0 +1,182 @@
+package com.alibou.websocket.benchmarks;
+
+import com.alibou.websocket.chatroom.ChatRoom;
+import com.alibou.websocket.chatroom.ChatRoomService;
+import com.alibou.websocket.chatroom.InMemoryRoomStore;
+import com.alibou.websocket.chatroom.RoomStore;
+import com.alibou.websocket.chatroom.StripedRoomStore;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Переходы busy ↔ free под конкуренцией на нескольких «горячих» парах:
+ * get + compareAndSet, как в ChatRoomService.activatePair / releasePair.
+ *
+ * store=cas – InMemoryRoomStore (AtomicReference на комнату), striped –
+ * StripedRoomStore (монитор полосы), synchronized – базовая линия: одна
+ * блокировка на всё хранилище. flip – только переходы, mixed – переходы
+ * вперемешку с чтениями индекса (activeIds + get), как в горячем пути save.
+ */
+public class RoomTransitionBenchmark extends ChatBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Rooms {
+
+        @Param({"cas", "striped", "synchronized"})
+        public String store;
+
+        /** Пар, за которые идёт борьба */
+        @Param({"4", "64"})
+        public int hot;
+
+        RoomStore rooms;
+        String[]  ids;
+        String[]  regulars;
+
+        @Setup(Level.Trial)
+        public void start() {
+            rooms = switch (store) {
+                case "cas"     -> new InMemoryRoomStore();
+                case "striped" -> new StripedRoomStore(64);
+                default        -> new SynchronizedRoomStore();
+            };
+            ids      = new String[hot];
+            regulars = new String[hot];
+            for (int i = 0; i < hot; i++) {
+                regulars[i] = ChatCore.regular(i);
+                ids[i]      = ChatRoomService.pairId(ChatCore.engineer(i % 4), regulars[i]);
+                rooms.addIfAbsent(new ChatRoom(ids[i], ChatCore.engineer(i % 4), regulars[i], false));
+            }
+        }
+    }
+
+    /** Перевернуть случайную пару; false – проиграли гонку */
+    private static boolean flipOne(Rooms s) {
+        ChatRoom r = s.rooms.get(s.ids[ThreadLocalRandom.current().nextInt(s.hot)]);
+        return s.rooms.compareAndSet(r, r.withActive(!r.isActive()));
+    }
+
+    @Benchmark
+    @Threads(4)
+    public boolean flip(Rooms s) {
+        return flipOne(s);
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(2)
+    public boolean mixedFlip(Rooms s) {
+        return flipOne(s);
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(2)
+    public int mixedRead(Rooms s) {
+        int n = 0;
+        for (String id : s.rooms.activeIds(s.regulars[ThreadLocalRandom.current().nextInt(s.hot)])) {
+            if (s.rooms.get(id) != null) n++;
+        }
+        return n;
+    }
+
+    /* ---------- базовая линия: всё под одной блокировкой ---------- */
+
+    static final class SynchronizedRoomStore implements RoomStore {
+
+        private final Map<String, ChatRoom>    rooms        = new HashMap<>();
+        private final Map<String, Set<String>> activeByUser = new HashMap<>();
+
+        private void index(ChatRoom r, boolean active) {
+            for (String nick : List.of(r.getSenderId(), r.getRecipientId())) {
+                if (active) {
+                    activeByUser.computeIfAbsent(nick, k -> new HashSet<>()).add(r.getChatId());
+                } else {
+                    Set<String> ids = activeByUser.get(nick);
+                    if (ids != null && ids.remove(r.getChatId()) && ids.isEmpty()) activeByUser.remove(nick);
+                }
+            }
+        }
+
+        @Override
+        public synchronized ChatRoom get(String chatId) {
+            return rooms.get(chatId);
+        }
+
+        @Override
+        public synchronized boolean contains(String chatId) {
+            return rooms.containsKey(chatId);
+        }
+
+        @Override
+        public synchronized boolean addIfAbsent(ChatRoom room) {
+            if (rooms.putIfAbsent(room.getChatId(), room) != null) return false;
+            if (room.isActive()) index(room, true);
+            return true;
+        }
+
+        @Override
+        public synchronized boolean setActive(String chatId, boolean active) {
+            ChatRoom r = rooms.get(chatId);
+            return r != null && r.isActive() != active && compareAndSet(r, r.withActive(active));
+        }
+
+        @Override
+        public synchronized boolean compareAndSet(ChatRoom expected, ChatRoom next) {
+            if (!expected.equals(rooms.get(expected.getChatId()))) return false;
+            rooms.put(next.getChatId(), next);
+            if (expected.isActive() != next.isActive()) index(next, next.isActive());
+            return true;
+        }
+
+        @Override
+        public synchronized void remove(String chatId) {
+            ChatRoom r = rooms.remove(chatId);
+            if (r != null && r.isActive()) index(r, false);
+        }
+
+        @Override
+        public synchronized boolean remove(ChatRoom expected) {
+            if (!rooms.remove(expected.getChatId(), expected)) return false;
+            if (expected.isActive()) index(expected, false);
+            return true;
+        }
+
+        @Override
+        public synchronized Set<String> activeIds(String nick) {
+            Set<String> ids = activeByUser.get(nick);
+            return ids == null ? Collections.emptySet() : Set.copyOf(ids);
+        }
+
+        @Override
+        public synchronized List<ChatRoom> all() {
+            return new ArrayList<>(rooms.values());
+        }
+
+        @Override
+        public synchronized Set<String> indexedUsers() {
+            return Set.copyOf(activeByUser.keySet());
+        }
+
+        @Override
+        public synchronized long activeCount() {
+            return rooms.values().stream().filter(ChatRoom::isActive).count();
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package com.alibou.websocket.benchmarks;
+
+import com.alibou.websocket.chatroom.ChatInactivityService;
+import com.alibou.websocket.chatroom.ChatRoomService;
+import com.alibou.websocket.snapshot.StateSnapshotService;
+import com.alibou.websocket.user.OnlineUserStore;
+import com.alibou.websocket.user.UserService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Снимок состояния при остановке и его подъём на новом узле: состояние –
+ * ChatCore (users онлайн, rooms активных пар, их таймеры), каждый замер –
+ * одна запись или одно восстановление целиком.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+public class StateSnapshotBenchmark extends ChatBenchmark {
+
+    /** Переподключения после рестарта в замере не ждём */
+    private static final long GRACE_MS   = TimeUnit.HOURS.toMillis(1);
+    private static final long MAX_AGE_MS = TimeUnit.DAYS.toMillis(1);
+
+    /** Снимок ChatCore, записанный один раз на прогон */
+    @State(Scope.Benchmark)
+    public static class Saved {
+
+        Path                 dir;
+        Path                 file;
+        StateSnapshotService snapshots;
+
+        @Setup(Level.Trial)
+        public void start(ChatCore core) throws IOException {
+            dir       = Files.createTempDirectory("snapshot-benchmark");
+            file      = dir.resolve("saved.snapshot");
+            snapshots = service(core.ctx, file);
+            snapshots.save();
+        }
+
+        @TearDown(Level.Trial)
+        public void stop() throws IOException {
+            Files.deleteIfExists(file);
+            Files.deleteIfExists(dir.resolve("state.snapshot"));
+            Files.deleteIfExists(dir);
+        }
+    }
+
+    /** Пустой узел, которому предстоит подняться из снимка */
+    @State(Scope.Thread)
+    public static class FreshNode {
+
+        AnnotationConfigApplicationContext ctx;
+        StateSnapshotService               snapshots;
+
+        @Setup(Level.Invocation)
+        public void start(ChatCore core, Saved saved) throws IOException {
+            ctx = ChatCore.context(core.store, core.history, core.liveness);
+            Path file = saved.dir.resolve("state.snapshot");
+            Files.copy(saved.file, file, StandardCopyOption.REPLACE_EXISTING);   // load() его удаляет
+            snapshots = service(ctx, file);
+        }
+
+        @TearDown(Level.Invocation)
+        public void stop() {
+            ctx.close();
+        }
+    }
+
+    static StateSnapshotService service(AnnotationConfigApplicationContext ctx, Path file) {
+        return new StateSnapshotService(ctx.getBean(OnlineUserStore.class), ctx.getBean(ChatRoomService.class),
+                ctx.getBean(ChatInactivityService.class), ctx.getBean(UserService.class),
+                file.toString(), GRACE_MS, MAX_AGE_MS);
+    }
+
+    @Benchmark
+    public void save(Saved saved) {
+        saved.snapshots.save();
+    }
+
+    @Benchmark
+    public void restore(FreshNode node) {
+        node.snapshots.load();
+    }
+}
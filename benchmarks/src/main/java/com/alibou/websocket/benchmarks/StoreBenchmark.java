@@ -0,0 +1,118 @@
+package com.alibou.websocket.benchmarks;
+
+import com.alibou.websocket.chat.ChatMessage;
+import com.alibou.websocket.chat.InMemoryMessageStore;
+import com.alibou.websocket.chat.MessageStore;
+import com.alibou.websocket.chat.StripedMessageStore;
+import com.alibou.websocket.chatroom.ChatRoom;
+import com.alibou.websocket.chatroom.ChatRoomService;
+import com.alibou.websocket.chatroom.InMemoryRoomStore;
+import com.alibou.websocket.chatroom.RoomStore;
+import com.alibou.websocket.chatroom.StripedRoomStore;
+import com.alibou.websocket.user.InMemoryOnlineUserStore;
+import com.alibou.websocket.user.OnlineUserStore;
+import com.alibou.websocket.user.Status;
+import com.alibou.websocket.user.StripedOnlineUserStore;
+import com.alibou.websocket.user.User;
+import com.alibou.websocket.user.UserRole;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Хранилища сами по себе, без сервисов, под нагрузкой из нескольких потоков:
+ * у каждого потока свои ники и чаты, как у разных пар на узле.
+ *
+ * store=memory – InMemory*Store, striped – Striped*Store (jdbc без базы не поднять).
+ */
+@Threads(4)
+public class StoreBenchmark extends ChatBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Stores {
+
+        @Param({"memory", "striped"})
+        public String store;
+
+        @Param({"1000"})
+        public int history;
+
+        OnlineUserStore users;
+        RoomStore       rooms;
+        MessageStore    messages;
+
+        final AtomicInteger threads = new AtomicInteger();
+
+        @Setup(Level.Trial)
+        public void start() {
+            boolean striped = "striped".equals(store);
+            users    = striped ? new StripedOnlineUserStore(64)       : new InMemoryOnlineUserStore();
+            rooms    = striped ? new StripedRoomStore(64)             : new InMemoryRoomStore();
+            messages = striped ? new StripedMessageStore(history, 64) : new InMemoryMessageStore(history);
+        }
+    }
+
+    /** Номер потока и его курсор */
+    @State(Scope.Thread)
+    public static class Worker {
+        int thread;
+        int next;
+
+        @Setup(Level.Trial)
+        public void start(Stores s) {
+            thread = s.threads.getAndIncrement();
+        }
+
+        /** 64 своих ника / пары по кругу */
+        int next() {
+            return next++ & 63;
+        }
+    }
+
+    /** Сообщение в один из 16 своих чатов, на каждом 16-м – дельта после него, как у клиента */
+    @Benchmark
+    public void messageAppendAndPage(Stores s, Worker w, Blackhole bh) {
+        int    i      = w.next();
+        String chatId = "eng" + w.thread + "_reg" + (i & 15);
+        ChatMessage m = new ChatMessage();
+        m.setChatId(chatId);
+        m.setSenderId("eng" + w.thread);
+        m.setRecipientId("reg" + (i & 15));
+        m.setContent("hello");
+        m = s.messages.append(m);
+        if ((i & 15) == 0) bh.consume(s.messages.page(chatId, m.getId() - 10, null, 20));
+        bh.consume(m);
+    }
+
+    /** Пара целиком: создать, включить, шесть чтений индекса (горячий путь save), выключить, удалить */
+    @Benchmark
+    public void roomPairLifecycle(Stores s, Worker w, Blackhole bh) {
+        String eng = "eng" + w.thread;
+        String reg = "reg" + w.next();
+        String cid = ChatRoomService.pairId(eng, reg);
+        s.rooms.addIfAbsent(new ChatRoom(cid, eng, reg, false));
+        s.rooms.setActive(cid, true);
+        for (int r = 0; r < 6; r++) {
+            for (String id : s.rooms.activeIds(reg)) bh.consume(s.rooms.get(id));
+        }
+        s.rooms.setActive(cid, false);
+        s.rooms.remove(cid);
+    }
+
+    /** Вход, восемь чтений роли (как в save), выход */
+    @Benchmark
+    public void userLoginLookupLogout(Stores s, Worker w, Blackhole bh) {
+        String nick = "u" + w.thread + "-" + w.next();
+        String sid  = "s-" + nick;
+        s.users.addIfAbsent(nick, sid, new User(nick, Status.ONLINE, UserRole.REGULAR));
+        for (int r = 0; r < 8; r++) bh.consume(s.users.roleOf(nick));
+        s.users.remove(nick, sid);
+    }
+}
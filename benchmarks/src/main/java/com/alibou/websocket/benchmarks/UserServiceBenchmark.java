@@ -0,0 +1,15 @@
+package com.alibou.websocket.benchmarks;
+
+import com.alibou.websocket.user.User;
+import org.openjdk.jmh.annotations.Benchmark;
+
+import java.util.List;
+
+public class UserServiceBenchmark extends ChatBenchmark {
+
+    /** Свободные REGULAR-ы для инженера (/users?role=ENGINEER) */
+    @Benchmark
+    public List<User> findConnectedUsersForEngineer(ChatCore core) {
+        return core.userService.findConnectedUsersForEngineer();
+    }
+}
@@ -0,0 +1,60 @@
+package com.alibou.websocket.audit;
+
+import com.alibou.websocket.chat.ChatMessageService;
+import com.alibou.websocket.chatroom.ChatRoomService;
+import com.alibou.websocket.user.UserService;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Включает {@link AuditLog} (chat.audit.enabled=true) и подставляет его
+ * сервисам; счётчики аудита – в /actuator/prometheus.
+ */
+@Configuration
+@ConditionalOnProperty(name = "chat.audit.enabled", havingValue = "true")
+public class AuditConfig {
+
+    @Bean(destroyMethod = "close")
+    public AuditLog auditLog(@Value("${chat.audit.file:/app/uploads/chat-audit/chat-audit.log}") String file,
+                             @Value("${chat.audit.ring-size:65536}") int ringSize,
+                             @Value("${chat.audit.max-file-bytes:104857600}") long maxFileBytes,
+                             @Value("${chat.audit.max-files:10}") int maxFiles,
+                             @Value("${chat.audit.flush-ms:200}") long flushMs,
+                             @Value("${chat.audit.message-sample-rate:0.01}") double messageSampleRate,
+                             UserService userService,
+                             ChatRoomService chatRoomService,
+                             ChatMessageService chatMessageService) throws IOException {
+        AuditLog audit = new AuditLog(Path.of(file), ringSize, maxFileBytes, maxFiles, flushMs, messageSampleRate);
+        audit.start();
+        userService.auditTo(audit);
+        chatRoomService.auditTo(audit);
+        chatMessageService.auditTo(audit);
+        return audit;
+    }
+
+    @Bean
+    public MeterBinder auditMetrics(AuditLog audit) {
+        return registry -> {
+            FunctionCounter.builder("chat.audit.written", audit, AuditLog::written)
+                    .description("Записи аудита, дошедшие до файла")
+                    .register(registry);
+            FunctionCounter.builder("chat.audit.dropped", audit, AuditLog::dropped)
+                    .description("Записи, выброшенные из-за заполненного кольца или ошибки записи")
+                    .register(registry);
+            FunctionCounter.builder("chat.audit.sampled.out", audit, AuditLog::sampledOut)
+                    .description("MESSAGE, пропущенные сэмплированием")
+                    .register(registry);
+            Gauge.builder("chat.audit.pending", audit, AuditLog::pending)
+                    .description("Записи в кольце, ещё не забранные потоком записи")
+                    .register(registry);
+        };
+    }
+}
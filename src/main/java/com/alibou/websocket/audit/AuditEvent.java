@@ -0,0 +1,13 @@
+package com.alibou.websocket.audit;
+
+/** Типы записей аудита (поле event в audit-файле) */
+public enum AuditEvent {
+    ONLINE,     // пользователь зашёл
+    OFFLINE,    // вышел сам или закрыл сессию
+    KICK,       // выброшен принудительно (админ, повторный вход)
+    TIMEOUT,    // REGULAR вышел по тайм-ауту пары
+    ROOM,       // создана комната пары
+    BUSY,       // инженер взял REGULAR-а
+    FREE,       // пара отпущена
+    MESSAGE     // сообщение пары (с сэмплированием, без текста)
+}
@@ -0,0 +1,335 @@
+package com.alibou.websocket.audit;
+
+import com.alibou.websocket.chat.ChatMessage;
+import com.alibou.websocket.user.UserRole;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Аудит чата: структурированные записи (JSON по строке) в свой файл,
+ * мимо логгера и мимо потоков, которые обрабатывают сообщения.
+ *
+ *  • кольцо заранее выделенных слотов: запись – это CAS номера слота
+ *    и заполнение его полей, без аллокаций и блокировок;
+ *  • кольцо заполнено (диск не успевает) – запись выбрасывается и
+ *    считается в {@link #dropped()}, вызывающий поток никогда не ждёт;
+ *  • единственный поток записи раз в flush-ms (или когда кольцо заполнено
+ *    наполовину) забирает все опубликованные слоты и пишет их одной пачкой;
+ *  • файл катится по размеру: audit.log → audit.log.1 → … → audit.log.N;
+ *  • MESSAGE пишется с вероятностью message-sample-rate, остальные события всегда.
+ *
+ * Сервисы начинают с {@link #NOOP} и получают настоящий экземпляр при
+ * старте ({@link AuditConfig}), как ChatMetrics.
+ */
+@Slf4j
+public class AuditLog {
+
+    public static final AuditLog NOOP = new AuditLog();
+
+    private final Path   file;
+    private final long   maxFileBytes;
+    private final int    maxFiles;
+    private final long   flushNanos;
+    private final double messageSampleRate;
+
+    /* ---------- кольцо ---------- */
+    private final Slot[] ring;
+    private final int    mask;
+    private final AtomicLong claimed = new AtomicLong();   // следующий номер для писателей
+    private volatile long    consumed;                      // всё, что меньше, уже забрал поток записи
+
+    /* ---------- счётчики ---------- */
+    private final LongAdder  dropped = new LongAdder();
+    private final LongAdder  sampled = new LongAdder();
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+
+    /* ---------- только поток записи ---------- */
+    private final StringBuilder out = new StringBuilder(4096);
+    private FileChannel channel;
+    private long        fileBytes;
+
+    private volatile Thread  writer;
+    private volatile boolean running;
+
+    /**
+     * @param capacity слотов в кольце (округляется вверх до степени двойки)
+     */
+    public AuditLog(Path file, int capacity, long maxFileBytes, int maxFiles,
+                    long flushMs, double messageSampleRate) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        this.file              = file;
+        this.maxFileBytes      = Math.max(1, maxFileBytes);
+        this.maxFiles          = Math.max(1, maxFiles);
+        this.flushNanos        = TimeUnit.MILLISECONDS.toNanos(Math.max(1, flushMs));
+        this.messageSampleRate = Math.max(0, Math.min(1, messageSampleRate));
+        this.ring              = new Slot[size];
+        this.mask              = size - 1;
+        for (int i = 0; i < size; i++) ring[i] = new Slot();
+    }
+
+    /** Выключенный аудит: все методы записи сразу возвращаются */
+    private AuditLog() {
+        this.file = null;
+        this.maxFileBytes = 0;
+        this.maxFiles = 0;
+        this.flushNanos = 0;
+        this.messageSampleRate = 0;
+        this.ring = null;
+        this.mask = 0;
+    }
+
+    /* =======================================================================
+                                  ЖИЗНЕННЫЙ ЦИКЛ
+       ======================================================================= */
+
+    public void start() throws IOException {
+        Path dir = file.toAbsolutePath().getParent();
+        if (dir != null) Files.createDirectories(dir);
+        openFile();
+
+        running = true;
+        Thread t = new Thread(this::run, "chat-audit-writer");
+        t.setDaemon(true);
+        writer = t;
+        t.start();
+        log.info("📝 Аудит: {} (кольцо {} записей, MESSAGE × {})", file, ring.length, messageSampleRate);
+    }
+
+    /** Дописать всё, что уже в кольце, и закрыть файл */
+    public void close() {
+        running = false;
+        Thread t = writer;
+        if (t == null) return;
+        LockSupport.unpark(t);
+        try {
+            t.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        writer = null;
+        try {
+            if (channel != null) channel.close();
+        } catch (IOException e) {
+            log.warn("Аудит закрыт с ошибкой: {}", e.toString());
+        }
+    }
+
+    /* =======================================================================
+                                  СОБЫТИЯ
+       ======================================================================= */
+
+    public void online(String nick, String sessionId, UserRole role) {
+        record(AuditEvent.ONLINE, nick, null, null, sessionId, role, 0);
+    }
+
+    public void offline(String nick, String sessionId, UserRole role) {
+        record(AuditEvent.OFFLINE, nick, null, null, sessionId, role, 0);
+    }
+
+    public void kicked(String nick, UserRole role) {
+        record(AuditEvent.KICK, nick, null, null, null, role, 0);
+    }
+
+    public void timedOut(String userId, String engineerId) {
+        record(AuditEvent.TIMEOUT, userId, engineerId, null, null, UserRole.REGULAR, 0);
+    }
+
+    public void roomCreated(String chatId, String senderId, String recipientId) {
+        record(AuditEvent.ROOM, senderId, recipientId, chatId, null, null, 0);
+    }
+
+    public void pairBusy(String engineerId, String userId) {
+        record(AuditEvent.BUSY, userId, engineerId, null, null, null, 0);
+    }
+
+    public void pairFree(String engineerId, String userId) {
+        record(AuditEvent.FREE, userId, engineerId, null, null, null, 0);
+    }
+
+    /** Сохранённое сообщение: кто, кому, чат и id – текст в аудит не попадает */
+    public void message(ChatMessage m) {
+        if (ring == null) return;
+        if (messageSampleRate < 1 && ThreadLocalRandom.current().nextDouble() >= messageSampleRate) {
+            sampled.increment();
+            return;
+        }
+        record(AuditEvent.MESSAGE, m.getSenderId(), m.getRecipientId(), m.getChatId(), null, null, m.getId());
+    }
+
+    private void record(AuditEvent event, String user, String peer, String chat,
+                        String session, UserRole role, long id) {
+        if (ring == null) return;
+
+        /* 1) занимаем номер, если кольцо не заполнено */
+        long n;
+        do {
+            n = claimed.get();
+            if (n - consumed >= ring.length) {
+                dropped.increment();
+                return;
+            }
+        } while (!claimed.compareAndSet(n, n + 1));
+
+        /* 2) заполняем слот и публикуем его номером */
+        Slot s = ring[(int) n & mask];
+        s.time    = System.currentTimeMillis();
+        s.event   = event;
+        s.user    = user;
+        s.peer    = peer;
+        s.chat    = chat;
+        s.session = session;
+        s.role    = role;
+        s.id      = id;
+        s.published = n;
+
+        /* 3) кольцо заполнено наполовину – не ждём окна */
+        if (n - consumed == ring.length >> 1) {
+            Thread t = writer;
+            if (t != null) LockSupport.unpark(t);
+        }
+    }
+
+    /* =======================================================================
+                                  ПОТОК ЗАПИСИ
+       ======================================================================= */
+
+    private void run() {
+        while (running) {
+            LockSupport.parkNanos(this, flushNanos);
+            try {
+                drain();
+            } catch (RuntimeException ex) {
+                log.warn("Аудит: ошибка потока записи: {}", ex.toString());
+            }
+        }
+        drain();
+    }
+
+    /** Забрать опубликованные слоты подряд и записать их одной пачкой */
+    private void drain() {
+        long next = consumed;
+        long from = next;
+        for (Slot s; (s = ring[(int) next & mask]).published == next; next++) {
+            format(s);
+            s.user = s.peer = s.chat = s.session = null;    // не держим строки до следующего круга
+        }
+        if (next == from) return;
+        consumed = next;
+
+        try {
+            write();
+            written.addAndGet(next - from);
+            batches.incrementAndGet();
+        } catch (IOException e) {
+            dropped.add(next - from);
+            log.warn("Аудит: пачка из {} записей не записана: {}", next - from, e.toString());
+            reopenQuietly();
+        } finally {
+            out.setLength(0);
+        }
+    }
+
+    private void format(Slot s) {
+        out.append("{\"ts\":\"").append(Instant.ofEpochMilli(s.time))
+           .append("\",\"event\":\"").append(s.event.name()).append('"');
+        field("user",    s.user);
+        field("peer",    s.peer);
+        field("chat",    s.chat);
+        field("session", s.session);
+        if (s.role != null) field("role", s.role.name());
+        if (s.id != 0)      out.append(",\"id\":").append(s.id);
+        out.append("}\n");
+    }
+
+    private void field(String name, String value) {
+        if (value == null) return;
+        out.append(",\"").append(name).append("\":\"");
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') out.append('\\').append(c);
+            else if (c < 0x20)         out.append(String.format("\\u%04x", (int) c));
+            else                       out.append(c);
+        }
+        out.append('"');
+    }
+
+    private void write() throws IOException {
+        if (channel == null) openFile();
+        ByteBuffer bytes = StandardCharsets.UTF_8.encode(CharBuffer.wrap(out));
+        if (fileBytes > 0 && fileBytes + bytes.remaining() > maxFileBytes) roll();
+        while (bytes.hasRemaining()) fileBytes += channel.write(bytes);
+    }
+
+    /* =======================================================================
+                                    ФАЙЛЫ
+       ======================================================================= */
+
+    private void openFile() throws IOException {
+        channel   = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        fileBytes = channel.size();
+    }
+
+    /** audit.log → audit.log.1, старые сдвигаются, самый старый удаляется */
+    private void roll() throws IOException {
+        channel.close();
+        channel = null;
+        Files.deleteIfExists(rolled(maxFiles));
+        for (int i = maxFiles - 1; i >= 1; i--) {
+            Path p = rolled(i);
+            if (Files.exists(p)) Files.move(p, rolled(i + 1), StandardCopyOption.REPLACE_EXISTING);
+        }
+        Files.move(file, rolled(1), StandardCopyOption.REPLACE_EXISTING);
+        openFile();
+    }
+
+    private Path rolled(int i) {
+        return file.resolveSibling(file.getFileName() + "." + i);
+    }
+
+    private void reopenQuietly() {
+        try {
+            if (channel != null) channel.close();
+        } catch (IOException ignored) {
+            // всё равно открываем заново
+        }
+        channel = null;
+    }
+
+    /* ---------- метрики ---------- */
+
+    public long written()    { return written.get(); }
+    public long batches()    { return batches.get(); }
+    public long dropped()    { return dropped.sum(); }
+    public long sampledOut() { return sampled.sum(); }
+    public int  pending()    { return ring == null ? 0 : (int) (claimed.get() - consumed); }
+
+    /** Слот кольца; поля пишет занявший номер поток, читает поток записи после published */
+    private static final class Slot {
+        volatile long published = -1;
+        long       time;
+        AuditEvent event;
+        String     user;
+        String     peer;
+        String     chat;
+        String     session;
+        UserRole   role;
+        long       id;
+    }
+}
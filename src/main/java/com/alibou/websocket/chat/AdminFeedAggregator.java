@@ -0,0 +1,129 @@
+package com.alibou.websocket.chat;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Пачки для /topic/admin-feed вместо кадра на каждое сообщение.
+ *
+ *  • {@link #offer} – без блокировок: сообщение кладётся в lock-free очередь,
+ *    при наборе max-batch поток отправки будится раньше окна;
+ *  • поток отправки раз в window-ms (или по сигналу) отправляет накопленное
+ *    кадрами {@link AdminFeedBatch} по max-batch сообщений;
+ *  • если отправка не успевает и в очереди больше max-pending, самые старые
+ *    сообщения выбрасываются – админке важнее свежие, число выброшенных
+ *    приходит в поле dropped следующего кадра.
+ */
+@Slf4j
+@Component
+public class AdminFeedAggregator {
+
+    static final String DESTINATION = "/topic/admin-feed";
+
+    private final SimpMessagingTemplate messaging;
+    private final long windowNanos;
+    private final int  maxBatch;
+    private final int  maxPending;
+
+    private final Queue<ChatMessage> queue   = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger      size    = new AtomicInteger();
+    private final AtomicInteger      dropped = new AtomicInteger();
+    private final AtomicLong         seq     = new AtomicLong();
+    private final AtomicLong         droppedTotal = new AtomicLong();
+    private final AtomicLong         framesTotal  = new AtomicLong();
+
+    private volatile Thread  sender;
+    private volatile boolean running;
+
+    public AdminFeedAggregator(SimpMessagingTemplate messaging,
+                               @Value("${chat.admin-feed.window-ms:100}") long windowMs,
+                               @Value("${chat.admin-feed.max-batch:200}") int maxBatch,
+                               @Value("${chat.admin-feed.max-pending:5000}") int maxPending) {
+        this.messaging   = messaging;
+        this.windowNanos = TimeUnit.MILLISECONDS.toNanos(windowMs);
+        this.maxBatch    = Math.max(1, maxBatch);
+        this.maxPending  = Math.max(this.maxBatch, maxPending);
+    }
+
+    @PostConstruct
+    public void start() {
+        running = true;
+        Thread t = new Thread(this::run, "admin-feed-sender");
+        t.setDaemon(true);
+        sender = t;
+        t.start();
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+        Thread t = sender;
+        if (t != null) LockSupport.unpark(t);
+    }
+
+    /** Поставить сохранённое сообщение в ленту админов */
+    public void offer(ChatMessage m) {
+        queue.add(m);
+        int n = size.incrementAndGet();
+        if (n > maxPending && queue.poll() != null) {     // вытесняем самое старое
+            size.decrementAndGet();
+            dropped.incrementAndGet();
+            droppedTotal.incrementAndGet();
+        }
+        if (n == maxBatch) {                              // пачка набрана – не ждём окна
+            Thread t = sender;
+            if (t != null) LockSupport.unpark(t);
+        }
+    }
+
+    /* =======================================================================
+                                  поток отправки
+       ======================================================================= */
+
+    private void run() {
+        while (running) {
+            LockSupport.parkNanos(this, windowNanos);
+            try {
+                flush();
+            } catch (Exception ex) {
+                log.warn("Admin feed flush failed: {}", ex.toString());
+            }
+        }
+        flush();
+    }
+
+    /** Отправить всё накопленное кадрами по maxBatch */
+    void flush() {
+        while (size.get() > 0) {
+            List<ChatMessage> batch = new ArrayList<>(Math.min(size.get(), maxBatch));
+            for (ChatMessage m; batch.size() < maxBatch && (m = queue.poll()) != null; ) {
+                batch.add(m);
+            }
+            if (batch.isEmpty()) return;
+            size.addAndGet(-batch.size());
+
+            messaging.convertAndSend(DESTINATION,
+                    new AdminFeedBatch(seq.incrementAndGet(), dropped.getAndSet(0), batch));
+            framesTotal.incrementAndGet();
+        }
+    }
+
+    /* ---------- метрики ---------- */
+
+    public int  pending()      { return size.get(); }
+    public long droppedTotal() { return droppedTotal.get(); }
+    public long framesTotal()  { return framesTotal.get(); }
+}
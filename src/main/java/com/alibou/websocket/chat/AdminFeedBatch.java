@@ -0,0 +1,12 @@
+package com.alibou.websocket.chat;
+
+import java.util.List;
+
+/**
+ * Один кадр /topic/admin-feed.
+ *
+ * @param seq      порядковый номер кадра
+ * @param dropped  сколько сообщений выброшено перед этим кадром (перегрузка)
+ * @param messages сообщения в порядке сохранения
+ */
+public record AdminFeedBatch(long seq, int dropped, List<ChatMessage> messages) {}
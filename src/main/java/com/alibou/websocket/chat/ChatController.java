@@ -1,5 +1,8 @@
 package com.alibou.websocket.chat;
 
+import com.alibou.websocket.chatroom.ChatRoomService;
+import com.alibou.websocket.config.ChatMetrics;
+import com.alibou.websocket.user.OnlineUserStore;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.messaging.handler.annotation.MessageMapping;
@@ -8,6 +11,7 @@ import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.http.ResponseEntity;
 
 import java.util.List;
@@ -19,29 +23,47 @@ public class ChatController {
 
     private final SimpMessagingTemplate messagingTemplate;
     private final ChatMessageService chatMessageService;
+    private final AdminFeedAggregator adminFeed;
+    private final OnlineUserStore store;
+    private final ChatMetrics metrics;
+    private final ChatRoomService chatRoomService;
 
     @MessageMapping("/chat")
     public void processMessage(@Payload ChatMessage chatMessage) {
-        if (chatMessage == null ||
-                chatMessage.getSenderId() == null ||
-                chatMessage.getRecipientId() == null ||
-                chatMessage.getContent() == null) {
-            log.error("❌ Получено некорректное сообщение: {}", chatMessage);
-            return;
-        }
+        long started = ChatMetrics.start();
+        try {
+            if (chatMessage == null ||
+                    chatMessage.getSenderId() == null ||
+                    chatMessage.getRecipientId() == null ||
+                    chatMessage.getContent() == null) {
+                log.error("❌ Получено некорректное сообщение: {}", chatMessage);
+                metrics.invalidMessage();
+                return;
+            }
+
+            ChatMessage savedMsg = chatMessageService.save(chatMessage);
 
-        ChatMessage savedMsg = chatMessageService.save(chatMessage);
+            /* получателя на другом узле уведомит тот узел – со своим id сообщения */
+            if (!store.isRemote(savedMsg.getRecipientId())) {
+                messagingTemplate.convertAndSend(
+                        "/queue/" + chatMessage.getRecipientId(),
+                        new ChatNotification(
+                                String.valueOf(savedMsg.getId()),
+                                savedMsg.getSenderId(),
+                                savedMsg.getRecipientId(),
+                                savedMsg.getContent()
+                        )
+                );
+            }
+            adminFeed.offer(savedMsg);                 // в /topic/admin-feed уходит пачками
 
-        messagingTemplate.convertAndSend(
-                "/queue/" + chatMessage.getRecipientId(),
-                new ChatNotification(
-                        savedMsg.getId().toString(),
-                        savedMsg.getSenderId(),
-                        savedMsg.getRecipientId(),
-                        savedMsg.getContent()
-                )
-        );
-        messagingTemplate.convertAndSend("/topic/admin-feed", savedMsg);
+            /* REGULAR пишет сам себе – ждёт инженера */
+            if (savedMsg.getSenderId().equals(savedMsg.getRecipientId())) {
+                chatRoomService.regularWaiting(savedMsg.getSenderId());
+            }
+        } finally {
+            ChatMetrics.stop(metrics.process(), started);
+        }
 
 //        log.info("Сообщение {} отправлено по /queue/{} ({} → {})",
 //                savedMsg.getId(),
@@ -51,9 +73,17 @@ public class ChatController {
     }
 
 
+    /**
+     * История чата. Без параметров – вся сохранённая история;
+     * afterId – только новые сообщения, beforeId – более старые, limit – размер страницы.
+     */
     @GetMapping("/messages/{senderId}/{recipientId}")
     public ResponseEntity<List<ChatMessage>> findChatMessages(@PathVariable String senderId,
-                                                              @PathVariable String recipientId) {
-        return ResponseEntity.ok(chatMessageService.findChatMessages(senderId, recipientId));
+                                                              @PathVariable String recipientId,
+                                                              @RequestParam(required = false) Long afterId,
+                                                              @RequestParam(required = false) Long beforeId,
+                                                              @RequestParam(required = false) Integer limit) {
+        return ResponseEntity.ok(chatMessageService.findChatMessages(
+                senderId, recipientId, afterId, beforeId, limit));
     }
 }
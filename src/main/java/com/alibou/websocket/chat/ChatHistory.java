@@ -0,0 +1,148 @@
+package com.alibou.websocket.chat;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.RandomAccess;
+import java.util.function.Consumer;
+
+/**
+ * История одного чата вместе с собственным счётчиком id.
+ * Отправители разных чатов не делят общий счётчик и не мешают друг другу.
+ *
+ * Сообщения лежат в кусках по {@value #CHUNK} элементов. Добавление пишет
+ * в свободную ячейку последнего куска и публикует новый неизменяемый
+ * {@link Window}. Ячейки, попавшие в опубликованное окно, больше никогда
+ * не перезаписываются: при превышении ёмкости окно просто сдвигается,
+ * а полностью вытесненный кусок выбрасывается. Поэтому читатель без
+ * блокировок получает стабильный срез и не копирует историю.
+ */
+final class ChatHistory {
+
+    private static final int             CHUNK     = 64;
+    private static final ChatMessage[][] NO_CHUNKS = new ChatMessage[0][];
+
+    /** Опубликованный срез: куски, сдвиг первого сообщения в chunks[0], длина */
+    private record Window(ChatMessage[][] chunks, int offset, int size) {}
+
+    private final int        capacity;
+    private volatile Window  window = new Window(NO_CHUNKS, 0, 0);
+    private long             lastId;                       // guarded by this
+
+    /** @param capacity сколько последних сообщений хранить */
+    ChatHistory(int capacity) {
+        this.capacity = Math.max(1, capacity);
+    }
+
+    /** Присвоить сообщению id и время, затем добавить в историю */
+    ChatMessage append(ChatMessage m) {
+        return append(m, saved -> {});
+    }
+
+    /** То же; inOrder вызывается под той же блокировкой – по порядку id */
+    synchronized ChatMessage append(ChatMessage m, Consumer<ChatMessage> inOrder) {
+        m.setId(++lastId);
+        m.setTimestamp(System.currentTimeMillis());
+        push(m);
+        inOrder.accept(m);
+        return m;
+    }
+
+    /**
+     * Восстановить историю из журнала: id и время сохраняются как были,
+     * счётчик продолжает с максимального id.
+     */
+    synchronized void restore(List<ChatMessage> messages) {
+        List<ChatMessage> sorted = new ArrayList<>(messages);
+        sorted.sort(Comparator.comparingLong(ChatMessage::getId));  // конкурентные save могли лечь в журнал не по порядку
+        for (ChatMessage m : sorted) {
+            push(m);
+            lastId = Math.max(lastId, m.getId());
+        }
+    }
+
+    private void push(ChatMessage m) {
+        Window          w      = window;
+        ChatMessage[][] chunks = w.chunks();
+        int             offset = w.offset();
+        int             size   = w.size();
+
+        int slot  = offset + size;
+        int chunk = slot / CHUNK;
+        if (chunk == chunks.length) {                      // нужен новый кусок
+            chunks = Arrays.copyOf(chunks, chunk + 1);
+            chunks[chunk] = new ChatMessage[CHUNK];
+        }
+        chunks[chunk][slot % CHUNK] = m;
+        size++;
+
+        if (size > capacity) {                             // вытесняем самое старое
+            offset++;
+            size--;
+            if (offset == CHUNK) {                         // первый кусок целиком устарел
+                chunks = Arrays.copyOfRange(chunks, 1, chunks.length);
+                offset = 0;
+            }
+        }
+        window = new Window(chunks, offset, size);         // volatile-публикация
+    }
+
+    /** Стабильный срез истории без копирования (дальнейшие append его не меняют) */
+    List<ChatMessage> snapshot() {
+        return new View(window);
+    }
+
+    int size() {
+        return window.size();
+    }
+
+    /**
+     * Страница истории по курсорам (id внутри окна идут подряд, поэтому
+     * позиция сообщения вычисляется за O(1), а результат – срез без копии).
+     *
+     * @param afterId  если задан – сообщения с id > afterId, самые старые первыми
+     * @param beforeId если задан – только сообщения с id < beforeId
+     * @param limit    максимум сообщений; без afterId берутся самые новые
+     */
+    List<ChatMessage> page(Long afterId, Long beforeId, Integer limit) {
+        List<ChatMessage> view = snapshot();
+        if (view.isEmpty()) return view;
+
+        long firstId = view.get(0).getId();
+        int  from    = 0;
+        int  to      = view.size();
+        if (afterId != null)  from = (int) Math.min(to, Math.max(0, afterId - firstId + 1));
+        if (beforeId != null) to   = (int) Math.max(from, Math.min(to, beforeId - firstId));
+
+        if (limit != null && limit >= 0 && to - from > limit) {
+            if (afterId != null) to   = from + limit;     // дельта: ближайшие после курсора
+            else                 from = to - limit;       // последние / более старые
+        }
+        return view.subList(from, to);
+    }
+
+    /** Read-only представление одного окна */
+    private static final class View extends AbstractList<ChatMessage> implements RandomAccess {
+
+        private final Window w;
+
+        View(Window w) {
+            this.w = w;
+        }
+
+        @Override
+        public ChatMessage get(int index) {
+            Objects.checkIndex(index, w.size());
+            int slot = w.offset() + index;
+            return w.chunks()[slot / CHUNK][slot % CHUNK];
+        }
+
+        @Override
+        public int size() {
+            return w.size();
+        }
+    }
+}
@@ -0,0 +1,428 @@
+package com.alibou.websocket.chat;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.LongConsumer;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only журнал сообщений в memory-mapped сегментах.
+ *
+ * Формат записи: [int длина тела][int crc32 тела][тело], где тело –
+ * тип (APPEND / CLEAR) и поля сообщения. Длина 0 означает «дальше пусто»:
+ * сегмент создаётся целиком заполненным нулями, поэтому обрыв посреди
+ * записи при падении процесса виден как нулевая длина или неверный crc.
+ *
+ *  • save не ждёт диска: запись – это копирование байтов в mapped-буфер;
+ *  • fsync (force) делает фоновый поток пачкой раз в fsync-interval-ms;
+ *  • когда запись не влезает в сегмент, открывается следующий файл;
+ *  • для каждого chatId в памяти хранятся позиции последних capacity его
+ *    записей, так что при старте читаются только они;
+ *  • при rollover (и при старте) удаляются сегменты без живых записей.
+ *    Сегмент с CLEAR удаляется, только когда удалены все более старые:
+ *    иначе стертые им сообщения воскресли бы при следующем старте.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "chat.journal.enabled", havingValue = "true")
+public class ChatJournal {
+
+    private static final byte APPEND = 1;
+    private static final byte CLEAR  = 2;
+    private static final int  HEADER = 8;                      // длина + crc
+
+    private static final String PREFIX = "segment-";
+    private static final String SUFFIX = ".log";
+
+    private final Path dir;
+    private final int  segmentBytes;
+    private final long fsyncIntervalMs;
+    private final int  keepPerChat;
+
+    /** chatId → позиции последних записей APPEND (сегмент << 32 | смещение) */
+    private final Map<String, OffsetList> index = new ConcurrentHashMap<>();
+
+    /** номер сегмента → его живые записи (guarded by this) */
+    private final NavigableMap<Integer, Segment> segments = new TreeMap<>();
+
+    /** сегменты, прочитанные при старте; освобождаются после replay */
+    private final NavigableMap<Integer, MappedByteBuffer> readable = new TreeMap<>();
+
+    /* ---------- текущий сегмент (guarded by this) ---------- */
+    private int              segmentNo;
+    private FileChannel      channel;
+    private MappedByteBuffer current;
+    private boolean          dirty;
+
+    private ScheduledExecutorService flusher;
+
+    public ChatJournal(@Value("${chat.journal.dir:/app/uploads/chat-journal}") String dir,
+                       @Value("${chat.journal.segment-bytes:67108864}") int segmentBytes,
+                       @Value("${chat.journal.fsync-interval-ms:200}") long fsyncIntervalMs,
+                       @Value("${chat.history.capacity:1000}") int keepPerChat) {
+        this.dir             = Path.of(dir);
+        this.segmentBytes    = segmentBytes;
+        this.fsyncIntervalMs = fsyncIntervalMs;
+        this.keepPerChat     = Math.max(1, keepPerChat);
+    }
+
+    /* =======================================================================
+                                  ЖИЗНЕННЫЙ ЦИКЛ
+       ======================================================================= */
+
+    /** Просканировать существующие сегменты, построить индекс и открыть запись */
+    @PostConstruct
+    public synchronized void open() {
+        long started = System.nanoTime();
+        int  records = 0;
+        try {
+            Files.createDirectories(dir);
+            List<Integer> numbers = existingSegments();
+
+            int tailPosition = 0;
+            for (int no : numbers) {
+                MappedByteBuffer buf = map(no);
+                readable.put(no, buf);
+                segments.put(no, new Segment());
+                int pos = 0;
+                for (int len; (len = validRecordAt(buf, pos)) > 0; pos += HEADER + len) {
+                    indexRecord(no, pos, buf);
+                    records++;
+                }
+                tailPosition = pos;
+            }
+
+            if (numbers.isEmpty()) {
+                openSegment(1, 0);
+            } else {
+                int last = numbers.get(numbers.size() - 1);
+                openSegment(last, tailPosition);
+            }
+            reclaim();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Не удалось открыть журнал " + dir, e);
+        }
+
+        flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "chat-journal-fsync");
+            t.setDaemon(true);
+            return t;
+        });
+        flusher.scheduleWithFixedDelay(this::flush, fsyncIntervalMs, fsyncIntervalMs, TimeUnit.MILLISECONDS);
+
+        log.info("📒 Журнал {}: {} записей, {} чатов, сегмент #{} ({} ms)",
+                dir, records, index.size(), segmentNo,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+    }
+
+    /**
+     * Отдать в sink последние perChat сообщений каждого чата
+     * и освободить буферы, нужные только для чтения при старте.
+     */
+    public synchronized void replay(int perChat, BiConsumer<String, List<ChatMessage>> sink) {
+        index.forEach((chatId, offsets) -> {
+            List<ChatMessage> out = new ArrayList<>();
+            for (int i = Math.max(0, offsets.size() - perChat); i < offsets.size(); i++) {
+                long ref = offsets.get(i);
+                ByteBuffer buf = buffer((int) (ref >>> 32));
+                out.add(readMessage(buf, (int) ref));
+            }
+            sink.accept(chatId, out);
+        });
+        readable.clear();
+    }
+
+    @PreDestroy
+    public synchronized void close() {
+        if (flusher != null) flusher.shutdownNow();
+        flush();
+        try {
+            if (channel != null) channel.close();
+        } catch (IOException e) {
+            log.warn("Журнал закрыт с ошибкой: {}", e.toString());
+        }
+    }
+
+    /* =======================================================================
+                                     ЗАПИСЬ
+       ======================================================================= */
+
+    /**
+     * Дописать сохранённое сообщение (id и время уже присвоены).
+     * Сообщения одного чата должны приходить в порядке id – см.
+     * {@link MessageStore#append(ChatMessage, java.util.function.Consumer)}.
+     */
+    public void append(ChatMessage m) {
+        byte[] body = encode(APPEND, m.getChatId(), m);
+        synchronized (this) {
+            int pos = write(body);
+            indexAppend(m.getChatId(), segmentNo, pos);
+        }
+    }
+
+    /** Отметить, что история чата стерта */
+    public void clear(String chatId) {
+        byte[] body = encode(CLEAR, chatId, null);
+        synchronized (this) {
+            write(body);
+            indexClear(chatId, segmentNo);
+        }
+    }
+
+    /** fsync текущего сегмента, если в него писали с прошлого раза */
+    public synchronized void flush() {
+        if (dirty && current != null) {
+            current.force();
+            dirty = false;
+        }
+    }
+
+    private int write(byte[] body) {
+        int need = HEADER + body.length;
+        if (need > segmentBytes) {
+            throw new IllegalArgumentException("Запись больше сегмента: " + need + " байт");
+        }
+        if (current.remaining() < need) rollover();
+
+        CRC32 crc = new CRC32();
+        crc.update(body);
+
+        int pos = current.position();
+        current.putInt(pos + 4, (int) crc.getValue());
+        current.put(pos + HEADER, body);
+        current.putInt(pos, body.length);              // длина последней: запись «видна» целиком
+        current.position(pos + need);
+        dirty = true;
+        return pos;
+    }
+
+    private void rollover() {
+        flush();
+        int dropped;
+        try {
+            channel.close();
+            openSegment(segmentNo + 1, 0);
+            dropped = reclaim();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Не удалось открыть новый сегмент журнала", e);
+        }
+        log.info("📒 Журнал: новый сегмент #{}, удалено старых: {}", segmentNo, dropped);
+    }
+
+    private void openSegment(int no, int position) throws IOException {
+        channel = FileChannel.open(segmentPath(no),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        current = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes);
+        current.position(position);
+        segmentNo = no;
+        segments.computeIfAbsent(no, k -> new Segment());
+    }
+
+    /* =======================================================================
+                                    ЧТЕНИЕ
+       ======================================================================= */
+
+    /** Длина тела валидной записи по смещению или 0 – дальше данных нет */
+    private static int validRecordAt(ByteBuffer buf, int pos) {
+        if (pos + HEADER > buf.limit()) return 0;
+        int len = buf.getInt(pos);
+        if (len <= 0 || pos + HEADER + len > buf.limit()) return 0;
+
+        byte[] body = new byte[len];
+        buf.get(pos + HEADER, body);
+        CRC32 crc = new CRC32();
+        crc.update(body);
+        return (int) crc.getValue() == buf.getInt(pos + 4) ? len : 0;   // оборванная запись
+    }
+
+    private void indexRecord(int segment, int pos, ByteBuffer buf) {
+        ByteBuffer body = buf.slice(pos + HEADER, buf.getInt(pos));
+        byte type = body.get();
+        if (type == APPEND) {
+            body.getLong();                                 // id
+            body.getLong();                                 // timestamp
+            indexAppend(readString(body), segment, pos);
+        } else if (type == CLEAR) {
+            indexClear(readString(body), segment);
+        }
+    }
+
+    /* ---------- индекс и живые записи сегментов (guarded by this) ---------- */
+
+    private void indexAppend(String chatId, int segment, int pos) {
+        segments.get(segment).live++;
+        index.computeIfAbsent(chatId, k -> new OffsetList())
+             .add(((long) segment << 32) | pos, keepPerChat, this::release);
+    }
+
+    private void indexClear(String chatId, int segment) {
+        segments.get(segment).clears = true;
+        OffsetList removed = index.remove(chatId);
+        if (removed != null) removed.forEach(this::release);
+    }
+
+    private void release(long ref) {
+        Segment s = segments.get((int) (ref >>> 32));
+        if (s != null) s.live--;
+    }
+
+    private static ChatMessage readMessage(ByteBuffer buf, int pos) {
+        ByteBuffer body = buf.slice(pos + HEADER, buf.getInt(pos));
+        body.get();                                         // APPEND
+        ChatMessage m = new ChatMessage();
+        m.setId(body.getLong());
+        m.setTimestamp(body.getLong());
+        m.setChatId(readString(body));
+        m.setSenderId(readString(body));
+        m.setRecipientId(readString(body));
+        m.setContent(readString(body));
+        return m;
+    }
+
+    private ByteBuffer buffer(int segment) {
+        if (segment == segmentNo) return current.duplicate();
+        return readable.get(segment);
+    }
+
+    /* =======================================================================
+                                  КОДИРОВАНИЕ
+       ======================================================================= */
+
+    private static byte[] encode(byte type, String chatId, ChatMessage m) {
+        byte[] chat = utf8(chatId);
+        if (type == CLEAR) {
+            return ByteBuffer.allocate(1 + 4 + chat.length)
+                    .put(type).putInt(chat.length).put(chat).array();
+        }
+        byte[] sender    = utf8(m.getSenderId());
+        byte[] recipient = utf8(m.getRecipientId());
+        byte[] content   = utf8(m.getContent());
+        return ByteBuffer.allocate(1 + 8 + 8 + 16
+                        + chat.length + sender.length + recipient.length + content.length)
+                .put(type)
+                .putLong(m.getId())
+                .putLong(m.getTimestamp())
+                .putInt(chat.length).put(chat)
+                .putInt(sender.length).put(sender)
+                .putInt(recipient.length).put(recipient)
+                .putInt(content.length).put(content)
+                .array();
+    }
+
+    private static byte[] utf8(String s) {
+        return s == null ? new byte[0] : s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String readString(ByteBuffer body) {
+        byte[] bytes = new byte[body.getInt()];
+        body.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /* =======================================================================
+                                    СЕГМЕНТЫ
+       ======================================================================= */
+
+    private List<Integer> existingSegments() throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.map(p -> p.getFileName().toString())
+                    .filter(n -> n.startsWith(PREFIX) && n.endsWith(SUFFIX))
+                    .map(n -> Integer.parseInt(n.substring(PREFIX.length(), n.length() - SUFFIX.length())))
+                    .sorted()
+                    .toList();
+        }
+    }
+
+    /**
+     * Удалить закрытые сегменты без живых записей. Сегмент с CLEAR – только
+     * если все более старые уже удалены, иначе стертое им вернётся при старте.
+     */
+    private int reclaim() throws IOException {
+        int     dropped = 0;
+        boolean oldest  = true;                             // все сегменты до этого удалены
+        for (Iterator<Map.Entry<Integer, Segment>> it = segments.headMap(segmentNo).entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<Integer, Segment> e = it.next();
+            Segment s = e.getValue();
+            if (s.live > 0 || (s.clears && !oldest)) {
+                oldest = false;
+                continue;
+            }
+            readable.remove(e.getKey());
+            Files.deleteIfExists(segmentPath(e.getKey()));
+            it.remove();
+            dropped++;
+        }
+        return dropped;
+    }
+
+    /* ---------- метрики ---------- */
+
+    public synchronized int segmentCount() {
+        return segments.size();
+    }
+
+    private MappedByteBuffer map(int no) throws IOException {
+        try (FileChannel ch = FileChannel.open(segmentPath(no), StandardOpenOption.READ)) {
+            return ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+        }
+    }
+
+    private Path segmentPath(int no) {
+        return dir.resolve(String.format("%s%08d%s", PREFIX, no, SUFFIX));
+    }
+
+    /** Живые записи сегмента; clears – в нём есть CLEAR */
+    private static final class Segment {
+        int     live;
+        boolean clears;
+    }
+
+    /**
+     * Растущий массив long без боксинга. Держит не меньше keep последних
+     * позиций: как только их становится 2×keep, старые keep отдаются в
+     * dropped и вырезаются одним копированием – амортизированно O(1).
+     */
+    private static final class OffsetList {
+        private long[] data = new long[8];
+        private int    size;
+
+        void add(long v, int keep, LongConsumer dropped) {
+            if (size >= 2 * keep) {
+                int cut = size - keep;
+                for (int i = 0; i < cut; i++) dropped.accept(data[i]);
+                System.arraycopy(data, cut, data, 0, keep);
+                size = keep;
+            }
+            if (size == data.length) data = Arrays.copyOf(data, size * 2);
+            data[size++] = v;
+        }
+
+        long get(int i) { return data[i]; }
+        int  size()     { return size; }
+
+        void forEach(LongConsumer action) {
+            for (int i = 0; i < size; i++) action.accept(data[i]);
+        }
+    }
+}
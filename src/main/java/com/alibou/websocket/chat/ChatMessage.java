@@ -1,14 +1,7 @@
 package com.alibou.websocket.chat;
 
-import jakarta.persistence.*;
-import lombok.AllArgsConstructor;
-import lombok.Builder;
-import lombok.Data;
-import lombok.NoArgsConstructor;
-import java.util.Date;
-
+import com.fasterxml.jackson.annotation.JsonProperty;
 import lombok.*;
-import java.util.Date;
 
 @Data
 @AllArgsConstructor
@@ -16,10 +9,12 @@ import java.util.Date;
 @Builder
 public class ChatMessage {
 
-    private Long   id;          // будет генерироваться в памяти
+    private long   id;          // порядковый номер внутри чата, присваивается в памяти
     private String chatId;
     private String senderId;
     private String recipientId;
     private String content;
-    private Date   timestamp;
-}
\ No newline at end of file
+    /** epoch-millis, ставит сервер; значение от клиента игнорируется */
+    @JsonProperty(access = JsonProperty.Access.READ_ONLY)
+    private long   timestamp;
+}
@@ -1,24 +1,31 @@
 package com.alibou.websocket.chat;
 
+import com.alibou.websocket.audit.AuditLog;
 import com.alibou.websocket.chatroom.ChatInactivityService;
 import com.alibou.websocket.chatroom.ChatRoomService;
+import com.alibou.websocket.cluster.ClusterReplicator;
+import com.alibou.websocket.config.ChatMetrics;
 import com.alibou.websocket.user.OnlineUserStore;
-import com.alibou.websocket.user.User;
 import com.alibou.websocket.user.UserRole;
+import jakarta.annotation.PostConstruct;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
-import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.CopyOnWriteArrayList;
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.List;
+import java.util.Optional;
 
 /**
- * In-memory сервис сообщений.
+ * Сервис сообщений; сама история лежит в {@link MessageStore}.
  *
  *  • self-chat (A → A) сбрасывает «личный» таймер автора
  *  • REGULAR → ENGINEER и ENGINEER → REGULAR симметрично перезаряжают таймер пары
+ *    (при живости по heartbeat-ам таймеров нет, и сообщение их не трогает)
+ *  • при chat.journal.enabled=true история дублируется в {@link ChatJournal}
+ *    и поднимается из него при старте
+ *  • в кластере сообщение пары уходит на остальные узлы, и каждый узел
+ *    ведёт свою копию истории (id у каждого узла свои)
  */
 @Slf4j
 @Service
@@ -28,15 +35,55 @@ public class ChatMessageService {
     private final ChatRoomService        chatRoomService;
     private final ChatInactivityService  inactivity;
     private final OnlineUserStore        store;
+    private final MessageStore           messages;
+    private final Optional<ChatJournal>  journal;
 
-    /** chatId → список сообщений */
-    private final Map<String, List<ChatMessage>> chats = new ConcurrentHashMap<>();
-    private final AtomicLong seq = new AtomicLong(1);
+    /** сколько последних сообщений хранить в каждом чате */
+    @Value("${chat.history.capacity:1000}")
+    private int historyCapacity = 1000;
+
+    private volatile ClusterReplicator replicator = ClusterReplicator.NOOP;
+    private volatile ChatMetrics       metrics    = ChatMetrics.NOOP;
+    private volatile AuditLog          audit      = AuditLog.NOOP;
+
+    public void replicateTo(ClusterReplicator replicator) {
+        this.replicator = replicator;
+    }
+
+    public void measureWith(ChatMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    public void auditTo(AuditLog audit) {
+        this.audit = audit;
+    }
+
+    /** Поднять последние historyCapacity сообщений каждого чата из журнала */
+    @PostConstruct
+    void restoreFromJournal() {
+        journal.ifPresent(j -> j.replay(historyCapacity, (chatId, messages) -> {
+            this.messages.restore(chatId, messages);
+            log.debug("📒 Чат {}: восстановлено {} сообщений", chatId, messages.size());
+        }));
+    }
 
     /**
-     * Сохраняем новое сообщение (только в памяти) и обновляем таймеры.
+     * Сохраняем новое сообщение и обновляем таймеры.
+     *
+     * Горячий путь: роли читаются без Optional, ключи таймеров закэшированы
+     * в ChatInactivityService, id выдаёт счётчик конкретного чата,
+     * в аудит уходит выборка сообщений без текста (поток не ждёт записи).
      */
     public ChatMessage save(ChatMessage chatMessage) {
+        long started = ChatMetrics.start();
+        try {
+            return saveAndTouch(chatMessage);
+        } finally {
+            ChatMetrics.stop(metrics.save(), started);
+        }
+    }
+
+    private ChatMessage saveAndTouch(ChatMessage chatMessage) {
 
         /* -------- валидация -------- */
         String senderId    = chatMessage.getSenderId();
@@ -45,26 +92,19 @@ public class ChatMessageService {
             log.error("❌ ChatMessage содержит null senderId или recipientId: {}", chatMessage);
             throw new IllegalArgumentException("senderId и recipientId не могут быть null");
         }
-        log.info("➡️ Пришло сообщение: sender={}, recipient={}, content={}",
-                senderId, recipientId, chatMessage.getContent());
 
         /* -------- «переадресация» REGULAR-а, уже занятого инженером -------- */
-        Optional<User> senderOpt = store.get(senderId);
-        if (senderOpt.isPresent()
-                && senderOpt.get().getRole() == UserRole.REGULAR
-                && chatRoomService.isUserInActiveChatWithEngineer(senderId)) {
-
-            recipientId = chatRoomService.findActivePartner(senderId).orElse(recipientId);
-            chatMessage.setRecipientId(recipientId);
+        UserRole senderRole = store.roleOf(senderId);
+        if (senderRole == UserRole.REGULAR) {
+            String engineerId = chatRoomService.activeEngineerPartner(senderId);
+            if (engineerId != null) {
+                recipientId = engineerId;
+                chatMessage.setRecipientId(recipientId);
+            }
         }
 
         /* -------- роли сторон -------- */
-        Optional<User> recipientOpt = store.get(recipientId);
-        User senderUser    = senderOpt.orElse(null);
-        User recipientUser = recipientOpt.orElse(null);
-//        log.info("🎭 Роли: senderRole={}, recipientRole={}",
-//                senderUser != null ? senderUser.getRole() : "null",
-//                recipientUser != null ? recipientUser.getRole() : "null");
+        UserRole recipientRole = store.roleOf(recipientId);
 
         /* ===================================================================
            1. SELF-CHAT  (idA == idB)
@@ -72,70 +112,104 @@ public class ChatMessageService {
         if (senderId.equals(recipientId)) {
             chatMessage.setChatId(senderId + "_" + recipientId);
 
-            if (senderUser != null && senderUser.getRole() == UserRole.REGULAR) {
-                inactivity.cancelRegular(senderId);   // был таймер простоя
-                inactivity.touchRegular(senderId);    // перезапускаем
-            }
-            if (senderUser != null && senderUser.getRole() == UserRole.ENGINEER) {
-                inactivity.cancelEngineer(senderId);  // инженеру личный таймер не нужен
+            if (inactivity.timersOn()) {                  // при живости по heartbeat-ам таймеров нет
+                if (senderRole == UserRole.REGULAR) {
+                    inactivity.touchRegular(senderId);    // перезапускаем таймер простоя
+                }
+                if (senderRole == UserRole.ENGINEER) {
+                    inactivity.cancelEngineer(senderId);  // инженеру личный таймер не нужен
+                }
             }
         }
         /* ===================================================================
            2. REGULAR ↔ ENGINEER
            =================================================================== */
         else {
-            String cid = chatRoomService
-                    .getChatRoomId(senderId, recipientId, /*createIfMissing*/ true)
-                    .orElseThrow(() ->
-                            new IllegalStateException("Чат не найден и не может быть создан"));
+            String cid = chatRoomService.chatRoomId(senderId, recipientId, /*createIfMissing*/ true);
+            if (cid == null) {
+                throw new IllegalStateException("Чат не найден и не может быть создан");
+            }
             chatMessage.setChatId(cid);
+            if (inactivity.timersOn()) touchPairTimers(senderId, senderRole, recipientId, recipientRole);
+        }
 
-            if (senderUser != null && recipientUser != null) {
-
-                /* REGULAR → ENGINEER  (как было) */
-                if (senderUser.getRole() == UserRole.REGULAR &&
-                        recipientUser.getRole() == UserRole.ENGINEER) {
+        /* -------- сохраняем (в журнал – в порядке id чата) -------- */
+        journal(chatMessage);
+        if (!senderId.equals(recipientId)) replicator.messageSaved(chatMessage);
+        audit.message(chatMessage);
 
-                    inactivity.touch(recipientId, senderId);   // таймер пары
-                    inactivity.touchRegular(senderId);         // личный REGULAR
-                }
-
-                /* ENGINEER → REGULAR  (патч) */
-                if (senderUser.getRole() == UserRole.ENGINEER &&
-                        recipientUser.getRole() == UserRole.REGULAR) {
+        if (log.isDebugEnabled()) {
+            log.debug("💾 Сообщение {}#{} сохранено ({} → {})",
+                    chatMessage.getChatId(), chatMessage.getId(), senderId, recipientId);
+        }
+        return chatMessage;
+    }
 
-                    inactivity.touch(senderId, recipientId);   // таймер пары
-                    inactivity.cancelRegular(recipientId);     // «личный» таймер REGULARа больше не нужен
-                }
-            }
+    /**
+     * Сообщение пары, сохранённое на другом узле: своя копия в истории
+     * (со своим id) и таймеры тех сторон, что подключены к этому узлу.
+     */
+    public ChatMessage applyReplica(ChatMessage original) {
+        ChatMessage m = new ChatMessage();
+        m.setChatId(original.getChatId());
+        m.setSenderId(original.getSenderId());
+        m.setRecipientId(original.getRecipientId());
+        m.setContent(original.getContent());
+
+        if (inactivity.timersOn()) {
+            touchPairTimers(m.getSenderId(), store.roleOf(m.getSenderId()),
+                            m.getRecipientId(), store.roleOf(m.getRecipientId()));
         }
 
-        /* -------- сохраняем -------- */
-        chatMessage.setId(seq.getAndIncrement());
-        chatMessage.setTimestamp(new Date());
+        journal(m);
+        return m;
+    }
+
+    private void journal(ChatMessage m) {
+        if (journal.isPresent()) messages.append(m, journal.get()::append);
+        else                     messages.append(m);
+    }
 
-        chats.computeIfAbsent(chatMessage.getChatId(),
-                k -> new CopyOnWriteArrayList<>()).add(chatMessage);
+    /**
+     * Таймеры пары. Каждый таймер ведёт только узел, к которому подключён
+     * его владелец (в одноузловом режиме isRemote всегда false).
+     */
+    private void touchPairTimers(String senderId, UserRole senderRole,
+                                 String recipientId, UserRole recipientRole) {
 
-        log.info("💾 Сообщение {} сохранено ({} → {})",
-                chatMessage.getId(), senderId, recipientId);
+        /* REGULAR → ENGINEER */
+        if (senderRole == UserRole.REGULAR && recipientRole == UserRole.ENGINEER) {
+            if (!store.isRemote(recipientId)) inactivity.touch(recipientId, senderId);   // таймер пары
+            if (!store.isRemote(senderId))    inactivity.touchRegular(senderId);         // личный REGULAR
+        }
 
-        return chatMessage;
+        /* ENGINEER → REGULAR */
+        if (senderRole == UserRole.ENGINEER && recipientRole == UserRole.REGULAR) {
+            if (!store.isRemote(senderId))    inactivity.touch(senderId, recipientId);   // таймер пары
+            if (!store.isRemote(recipientId)) inactivity.cancelRegular(recipientId);     // «личный» таймер REGULARа больше не нужен
+        }
     }
 
-    /** История переписки (может быть пустой) */
+    /** История переписки (может быть пустой): read-only срез без копирования */
     public List<ChatMessage> findChatMessages(String senderId, String recipientId) {
-        return chatRoomService
-                .getChatRoomId(senderId, recipientId, false)
-                .map(id -> new ArrayList<>(
-                        chats.getOrDefault(id, Collections.emptyList())))
-                .orElseGet(ArrayList::new);
+        return findChatMessages(senderId, recipientId, null, null, null);
+    }
+
+    /**
+     * Страница истории по курсорам: afterId – только новые (дельта),
+     * beforeId – более старые, limit – размер страницы.
+     */
+    public List<ChatMessage> findChatMessages(String senderId, String recipientId,
+                                              Long afterId, Long beforeId, Integer limit) {
+        String id = chatRoomService.chatRoomId(senderId, recipientId, false);
+        return id == null ? List.of() : messages.page(id, afterId, beforeId, limit);
     }
 
     /** Полностью стереть историю (engineerId, userId) */
     public void clearHistory(String engineerId, String userId) {
-        String chatId = engineerId + "_" + userId;
-        chats.remove(chatId);
+        String chatId = ChatRoomService.pairId(engineerId, userId);   // тот же id, что у комнаты
+        messages.clear(chatId);
+        journal.ifPresent(j -> j.clear(chatId));
         log.info("🗑️ История чата {} удалена", chatId);
     }
 }
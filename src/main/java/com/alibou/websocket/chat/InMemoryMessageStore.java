@@ -0,0 +1,56 @@
+package com.alibou.websocket.chat;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/** Хранилище по умолчанию: chatId → {@link ChatHistory} в ConcurrentHashMap */
+@Component
+@ConditionalOnProperty(name = "chat.store.type", havingValue = "memory", matchIfMissing = true)
+public class InMemoryMessageStore implements MessageStore {
+
+    private final int                      capacity;
+    private final Map<String, ChatHistory> chats = new ConcurrentHashMap<>();
+
+    public InMemoryMessageStore(@Value("${chat.history.capacity:1000}") int capacity) {
+        this.capacity = capacity;
+    }
+
+    private ChatHistory history(String chatId) {
+        ChatHistory h = chats.get(chatId);
+        return h != null ? h : chats.computeIfAbsent(chatId, k -> new ChatHistory(capacity));
+    }
+
+    @Override
+    public ChatMessage append(ChatMessage m, Consumer<ChatMessage> inOrder) {
+        return history(m.getChatId()).append(m, inOrder);
+    }
+
+    @Override
+    public void restore(String chatId, List<ChatMessage> messages) {
+        history(chatId).restore(messages);
+    }
+
+    @Override
+    public List<ChatMessage> page(String chatId, Long afterId, Long beforeId, Integer limit) {
+        ChatHistory h = chats.get(chatId);
+        return h == null ? List.of() : h.page(afterId, beforeId, limit);
+    }
+
+    @Override
+    public void clear(String chatId) {
+        chats.remove(chatId);
+    }
+
+    @Override
+    public long size() {
+        long n = 0;
+        for (ChatHistory h : chats.values()) n += h.size();
+        return n;
+    }
+}
@@ -0,0 +1,157 @@
+package com.alibou.websocket.chat;
+
+import com.alibou.websocket.store.JdbcSchema;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * История в таблице chat_messages, счётчик id каждого чата – в chat_counters.
+ *
+ * Добавление – одна транзакция: UPDATE счётчика (берёт блокировку строки,
+ * поэтому id чата выдаются строго по порядку и на нескольких узлах),
+ * чтение нового значения, INSERT сообщения и удаление вытесненных из окна.
+ */
+@Component
+@ConditionalOnProperty(name = "chat.store.type", havingValue = "jdbc")
+public class JdbcMessageStore implements MessageStore {
+
+    private static final String COLUMNS = "id, chat_id, sender_id, recipient_id, content, ts";
+
+    private static final RowMapper<ChatMessage> MESSAGE = (rs, i) -> new ChatMessage(
+            rs.getLong("id"),
+            rs.getString("chat_id"),
+            rs.getString("sender_id"),
+            rs.getString("recipient_id"),
+            rs.getString("content"),
+            rs.getLong("ts"));
+
+    private final JdbcTemplate        jdbc;
+    private final TransactionTemplate tx;
+    private final int                 capacity;
+
+    public JdbcMessageStore(DataSource dataSource,
+                            @Value("${chat.history.capacity:1000}") int capacity) {
+        this.jdbc     = new JdbcTemplate(dataSource);
+        this.tx       = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+        this.capacity = Math.max(1, capacity);
+        JdbcSchema.create(jdbc,
+                "CREATE TABLE IF NOT EXISTS chat_counters ("
+                        + " chat_id VARCHAR(512) NOT NULL PRIMARY KEY,"
+                        + " last_id BIGINT       NOT NULL)");
+        JdbcSchema.create(jdbc,
+                "CREATE TABLE IF NOT EXISTS chat_messages ("
+                        + " chat_id      VARCHAR(512) NOT NULL,"
+                        + " id           BIGINT       NOT NULL,"
+                        + " sender_id    VARCHAR(255) NOT NULL,"
+                        + " recipient_id VARCHAR(255) NOT NULL,"
+                        + " content      TEXT,"
+                        + " ts           BIGINT       NOT NULL,"
+                        + " PRIMARY KEY (chat_id, id))");
+    }
+
+    /** false – строку уже создал другой поток или узел */
+    private boolean createCounter(String chatId, long lastId) {
+        try {
+            jdbc.update("INSERT INTO chat_counters (chat_id, last_id) VALUES (?, ?)", chatId, lastId);
+            return true;
+        } catch (DuplicateKeyException ex) {
+            return false;
+        }
+    }
+
+    /**
+     * Первое сообщение чата создаёт счётчик. INSERT, проигравший гонку, откатывается
+     * к точке сохранения: PostgreSQL после ошибки не выполнит в транзакции ничего,
+     * кроме отката, а MERGE / ON CONFLICT нет в общем подмножестве MySQL и H2.
+     */
+    private void increment(String chatId, TransactionStatus status) {
+        if (jdbc.update("UPDATE chat_counters SET last_id = last_id + 1 WHERE chat_id = ?", chatId) == 1) return;
+        Object savepoint = status.createSavepoint();
+        if (createCounter(chatId, 1)) {
+            status.releaseSavepoint(savepoint);
+        } else {
+            status.rollbackToSavepoint(savepoint);
+            increment(chatId, status);                              // строку создал другой – теперь UPDATE
+        }
+    }
+
+    @Override
+    public ChatMessage append(ChatMessage m, Consumer<ChatMessage> inOrder) {
+        String chatId = m.getChatId();
+        return tx.execute(status -> {
+            increment(chatId, status);
+            long id = jdbc.queryForObject("SELECT last_id FROM chat_counters WHERE chat_id = ?", Long.class, chatId);
+            m.setId(id);
+            m.setTimestamp(System.currentTimeMillis());
+            insert(m);
+            if (id > capacity) {
+                jdbc.update("DELETE FROM chat_messages WHERE chat_id = ? AND id <= ?", chatId, id - capacity);
+            }
+            inOrder.accept(m);                                      // строка счётчика ещё заблокирована
+            return m;
+        });
+    }
+
+    private void insert(ChatMessage m) {
+        jdbc.update("INSERT INTO chat_messages (" + COLUMNS + ") VALUES (?, ?, ?, ?, ?, ?)",
+                m.getId(), m.getChatId(), m.getSenderId(), m.getRecipientId(), m.getContent(), m.getTimestamp());
+    }
+
+    @Override
+    public void restore(String chatId, List<ChatMessage> messages) {
+        long maxId = 0;
+        for (ChatMessage m : messages) {
+            try {
+                insert(m);
+            } catch (DuplicateKeyException ignored) {
+                // уже в таблице (БД пережила рестарт вместе с журналом)
+            }
+            maxId = Math.max(maxId, m.getId());
+        }
+        if (!createCounter(chatId, maxId)) {
+            jdbc.update("UPDATE chat_counters SET last_id = ? WHERE chat_id = ? AND last_id < ?", maxId, chatId, maxId);
+        }
+    }
+
+    @Override
+    public List<ChatMessage> page(String chatId, Long afterId, Long beforeId, Integer limit) {
+        StringBuilder sql  = new StringBuilder("SELECT " + COLUMNS + " FROM chat_messages WHERE chat_id = ?");
+        List<Object>  args = new ArrayList<>(4);
+        args.add(chatId);
+        if (afterId != null)  { sql.append(" AND id > ?"); args.add(afterId); }
+        if (beforeId != null) { sql.append(" AND id < ?"); args.add(beforeId); }
+        sql.append(afterId != null ? " ORDER BY id ASC" : " ORDER BY id DESC");   // без afterId – самые новые
+        if (limit != null && limit >= 0) { sql.append(" LIMIT ?"); args.add(limit); }
+
+        List<ChatMessage> page = jdbc.query(sql.toString(), MESSAGE, args.toArray());
+        if (afterId == null) Collections.reverse(page);
+        return Collections.unmodifiableList(page);
+    }
+
+    @Override
+    public void clear(String chatId) {
+        tx.executeWithoutResult(status -> {
+            jdbc.update("DELETE FROM chat_messages WHERE chat_id = ?", chatId);
+            jdbc.update("DELETE FROM chat_counters WHERE chat_id = ?", chatId);
+        });
+    }
+
+    @Override
+    public long size() {
+        Long n = jdbc.queryForObject("SELECT COUNT(*) FROM chat_messages", Long.class);
+        return n == null ? 0 : n;
+    }
+}
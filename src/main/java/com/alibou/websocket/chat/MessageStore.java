@@ -0,0 +1,44 @@
+package com.alibou.websocket.chat;
+
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * История сообщений по чатам: у каждого чата свой счётчик id и окно
+ * из последних chat.history.capacity сообщений.
+ *
+ * Реализация выбирается свойством chat.store.type:
+ * memory (по умолчанию) – {@link InMemoryMessageStore},
+ * striped – {@link StripedMessageStore}, jdbc – {@link JdbcMessageStore}.
+ */
+public interface MessageStore {
+
+    /** Присвоить сообщению следующий id его чата и время, затем сохранить */
+    default ChatMessage append(ChatMessage m) {
+        return append(m, saved -> {});
+    }
+
+    /**
+     * То же, и inOrder получает сохранённое сообщение, пока следующий id
+     * этого чата ещё не выдан: журнал видит сообщения чата по порядку id.
+     */
+    ChatMessage append(ChatMessage m, Consumer<ChatMessage> inOrder);
+
+    /** Восстановить историю чата из журнала: id и время сохраняются как были */
+    void restore(String chatId, List<ChatMessage> messages);
+
+    /**
+     * Страница истории по курсорам (read-only).
+     *
+     * @param afterId  если задан – сообщения с id > afterId, самые старые первыми
+     * @param beforeId если задан – только сообщения с id < beforeId
+     * @param limit    максимум сообщений; без afterId берутся самые новые
+     */
+    List<ChatMessage> page(String chatId, Long afterId, Long beforeId, Integer limit);
+
+    /** Стереть историю чата; следующий append начнёт нумерацию заново */
+    void clear(String chatId);
+
+    /** Сообщений во всех окнах истории – для метрик */
+    long size();
+}
@@ -0,0 +1,63 @@
+package com.alibou.websocket.chat;
+
+import com.alibou.websocket.store.Striped;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * chatId → {@link ChatHistory} на полосах HashMap ({@link Striped}).
+ * Монитор полосы охраняет только поиск/создание истории, само добавление
+ * идёт под монитором конкретной истории.
+ */
+@Component
+@ConditionalOnProperty(name = "chat.store.type", havingValue = "striped")
+public class StripedMessageStore implements MessageStore {
+
+    private final int                  capacity;
+    private final Striped<ChatHistory> chats;
+
+    public StripedMessageStore(@Value("${chat.history.capacity:1000}") int capacity,
+                               @Value("${chat.store.stripes:64}") int stripes) {
+        this.capacity = capacity;
+        this.chats    = new Striped<>(stripes);
+    }
+
+    private ChatHistory history(String chatId) {
+        Striped.Stripe<ChatHistory> s = chats.stripe(chatId);
+        synchronized (s) {
+            return s.map.computeIfAbsent(chatId, k -> new ChatHistory(capacity));
+        }
+    }
+
+    @Override
+    public ChatMessage append(ChatMessage m, Consumer<ChatMessage> inOrder) {
+        return history(m.getChatId()).append(m, inOrder);
+    }
+
+    @Override
+    public void restore(String chatId, List<ChatMessage> messages) {
+        history(chatId).restore(messages);
+    }
+
+    @Override
+    public List<ChatMessage> page(String chatId, Long afterId, Long beforeId, Integer limit) {
+        ChatHistory h = chats.get(chatId);
+        return h == null ? List.of() : h.page(afterId, beforeId, limit);
+    }
+
+    @Override
+    public void clear(String chatId) {
+        chats.remove(chatId);
+    }
+
+    @Override
+    public long size() {
+        long n = 0;
+        for (int size : chats.collect((cid, h) -> h.size())) n += size;
+        return n;
+    }
+}
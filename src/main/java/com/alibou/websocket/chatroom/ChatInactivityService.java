@@ -1,26 +1,35 @@
 package com.alibou.websocket.chatroom;
 
 import com.alibou.websocket.user.OnlineUserStore;
-import com.alibou.websocket.user.Status;
-import com.alibou.websocket.user.User;
+import com.alibou.websocket.user.PresenceService;
+import com.alibou.websocket.user.UserMailboxes;
 import com.alibou.websocket.user.UserRole;
 import jakarta.annotation.PreDestroy;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.context.annotation.Lazy;
-import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.stereotype.Service;
 
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
-import java.util.Set;
-import java.util.concurrent.*;
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
- * Один watchdog-поток сканирует дедлайны (никаких гонок cancel→run).
+ * Тайм-ауты бездействия на колесе {@link TimeoutWheel}: один тик-поток
+ * находит истёкшие дедлайны (никаких гонок cancel→run), а обработчики
+ * исполняются в ограниченном пуле воркеров. Воркер лишь ставит тайм-аут в
+ * ящик REGULAR-а ({@link UserMailboxes}): там он выполняется по очереди со
+ * входом и выходом этого ника и пропускается, если таймер успели перезапустить.
+ *
+ * При chat.liveness.mode=heartbeat таймеры не заводятся вовсе: живость
+ * сессии проверяют heartbeat-ы STOMP, а молчащий, но подключённый
+ * пользователь остаётся в онлайне – и его пара не освобождается по
+ * простою. Поэтому по умолчанию остаётся chat.liveness.mode=messages.
  */
 @Service
 @Slf4j
@@ -29,56 +38,142 @@ public class ChatInactivityService {
 
     /* ===== инфраструктура и настройки ===== */
 
-    private static final Duration TIMEOUT = Duration.ofSeconds(20);
+    private static final Duration TIMEOUT    = Duration.ofSeconds(20);
+    private static final long     TIMEOUT_MS = TIMEOUT.toMillis();
+
+    /* колесо: 100 мс × 512 ячеек ≈ 51 с на оборот, TIMEOUT укладывается в один */
+    private static final long TICK_MS      = 100;
+    private static final int  WHEEL_SLOTS  = 512;
+    private static final int  WORKERS      = 4;
+    private static final int  WORKER_QUEUE = 10_000;
 
     private final ChatRoomService       chatRoomService;
     private final OnlineUserStore       store;
-    private final SimpMessagingTemplate messaging;
+    private final PresenceService       presence;
 
     /** «Часовой» для всех тайм-аутов */
-    private final DebouncedTimeouts watchdog = new DebouncedTimeouts();
+    private final TimeoutWheel watchdog = new TimeoutWheel(
+            "chat-timeout-watchdog", TICK_MS, WHEEL_SLOTS, WORKERS, WORKER_QUEUE);
+
+    /**
+     * Заранее собранный ключ таймера и переиспользуемый обработчик:
+     * touch на каждом сообщении не склеивает строки и не создаёт лямбды.
+     */
+    private record Timer(String key, Runnable onTimeout) {}
+
+    private volatile UserMailboxes mailboxes = UserMailboxes.direct();
+    private volatile boolean       timers    = true;
+
+    public void serializeWith(UserMailboxes mailboxes) {
+        this.mailboxes = mailboxes;
+    }
+
+    /** Живость по heartbeat-ам транспорта: touch* больше ничего не заводят */
+    public void livenessByHeartbeat() {
+        this.timers = false;
+    }
+
+    /** Ведутся ли таймеры простоя (иначе сообщениям незачем их трогать) */
+    public boolean timersOn() {
+        return timers;
+    }
+
+    /** engineerId → (userId → таймер пары) */
+    private final Map<String, Map<String, Timer>> pairTimers    = new ConcurrentHashMap<>();
+    /** userId → «личный» таймер REGULAR-а */
+    private final Map<String, Timer>              regularTimers = new ConcurrentHashMap<>();
 
     /* ==================== 1. Таймер пары engineer ↔ regular ==================== */
 
     public void touch(String engineerId, String userId) {
-        String key = "pair:" + engineerId + '_' + userId;
-        watchdog.touch(key, TIMEOUT, () -> onTimeoutPair(engineerId, userId, key));
+        if (!timers) return;
+        Timer t = pairTimer(engineerId, userId);
+        watchdog.touch(t.key(), TIMEOUT_MS, t.onTimeout());
     }
 
     public void cancel(String engineerId, String userId) {
-        watchdog.cancel("pair:" + engineerId + '_' + userId);
+        Timer t = null;
+        Map<String, Timer> byUser = pairTimers.get(engineerId);
+        if (byUser != null) {
+            t = byUser.remove(userId);
+            if (byUser.isEmpty()) pairTimers.remove(engineerId, byUser);
+        }
+        watchdog.cancel(t != null ? t.key() : pairKey(engineerId, userId));
+    }
+
+    private Timer pairTimer(String engineerId, String userId) {
+        Map<String, Timer> byUser = pairTimers.get(engineerId);
+        if (byUser == null) {
+            byUser = pairTimers.computeIfAbsent(engineerId, k -> new ConcurrentHashMap<>());
+        }
+        Timer t = byUser.get(userId);
+        if (t == null) {
+            t = byUser.computeIfAbsent(userId, u -> {
+                String key = pairKey(engineerId, u);
+                return new Timer(key, () -> onTimeoutPair(engineerId, u, key));
+            });
+        }
+        return t;
+    }
+
+    private static String pairKey(String engineerId, String userId) {
+        return "pair:" + engineerId + '_' + userId;
     }
 
     private void onTimeoutPair(String engineerId, String userId, String key) {
-        log.info("Авто-тайм-аут пары {} ↔ {}  (left={} ms)",
-                engineerId, userId,
-                remaining(key).orElse(0L));
+        mailboxes.execute(userId, () -> pairTimedOut(engineerId, userId, key));
+    }
+
+    private void pairTimedOut(String engineerId, String userId, String key) {
+        if (watchdog.remaining(key) >= 0) return;     // пока ждал в ящике, пару снова «тронули»
+        log.info("Авто-тайм-аут пары {} ↔ {}", engineerId, userId);
         chatRoomService.handleInactivity(engineerId, userId);
-        watchdog.cancel(key);   // на всякий случай
+        cancel(engineerId, userId);   // на всякий случай + освобождаем ключ
     }
 
     /* ==================== 2. «Личный» таймер REGULAR ==================== */
 
     public void touchRegular(String userId) {
-        watchdog.touch("reg:" + userId, TIMEOUT, () -> onRegularTimeout(userId));
+        if (!timers) return;
+        Timer t = regularTimer(userId);
+        watchdog.touch(t.key(), TIMEOUT_MS, t.onTimeout());
     }
 
+    /** Остановить таймер; ключ остаётся в кэше – REGULAR ещё онлайн. */
     public void cancelRegular(String userId) {
-        watchdog.cancel("reg:" + userId);
+        Timer t = regularTimers.get(userId);                 // не заводим ключ тому, у кого таймера не было
+        watchdog.cancel(t != null ? t.key() : "reg:" + userId);
+    }
+
+    /** REGULAR ушёл: остановить таймер и забыть ключ. */
+    public void releaseRegular(String userId) {
+        Timer t = regularTimers.remove(userId);
+        watchdog.cancel(t != null ? t.key() : "reg:" + userId);
+    }
+
+    private Timer regularTimer(String userId) {
+        Timer t = regularTimers.get(userId);
+        if (t == null) {
+            t = regularTimers.computeIfAbsent(userId,
+                    u -> new Timer("reg:" + u, () -> onRegularTimeout(u)));
+        }
+        return t;
     }
 
     private void onRegularTimeout(String userId) {
-        log.info("Авто-тайм-аут REGULAR {} (left={} ms)",
-                userId, remaining("reg:" + userId).orElse(0L));
+        mailboxes.execute(userId, () -> regularTimedOut(userId));
+    }
+
+    private void regularTimedOut(String userId) {
+        if (watchdog.remaining("reg:" + userId) >= 0) return;   // успел написать, пока ждал в ящике
+        log.info("Авто-тайм-аут REGULAR {}", userId);
+        regularTimers.remove(userId);
 
         // 1) удаляем из онлайна
         store.forceRemove(userId);
 
         // 2) оповещаем всех
-        messaging.convertAndSend(
-                "/topic/public",
-                new User(userId, Status.OFFLINE, UserRole.REGULAR)
-        );
+        presence.offline(userId, UserRole.REGULAR);
 
         // 3) деактивируем связанные чаты
         chatRoomService.deactivateChatsForUser(userId);
@@ -90,7 +185,39 @@ public class ChatInactivityService {
         watchdog.cancel("eng:" + engineerId);
     }
 
-    /* ==================== 4. shutdown ==================== */
+    /* ==================== 4. снимок состояния ==================== */
+
+    /**
+     * Незавершённый таймер для снимка.
+     * @param engineerId null – «личный» таймер REGULAR-а, иначе таймер пары
+     */
+    public record PendingTimer(String engineerId, String userId, long remainingMs) {}
+
+    /** Все живые таймеры с остатком времени */
+    public List<PendingTimer> exportTimers() {
+        List<PendingTimer> out = new ArrayList<>();
+        pairTimers.forEach((engineerId, byUser) -> byUser.forEach((userId, t) -> {
+            long ms = watchdog.remaining(t.key());
+            if (ms >= 0) out.add(new PendingTimer(engineerId, userId, ms));
+        }));
+        regularTimers.forEach((userId, t) -> {
+            long ms = watchdog.remaining(t.key());
+            if (ms >= 0) out.add(new PendingTimer(null, userId, ms));
+        });
+        return out;
+    }
+
+    /** Завести таймеры из снимка с прежним остатком времени */
+    public void restoreTimers(Collection<PendingTimer> timers) {
+        for (PendingTimer p : timers) {
+            Timer t = p.engineerId() == null
+                    ? regularTimer(p.userId())
+                    : pairTimer(p.engineerId(), p.userId());
+            watchdog.touch(t.key(), Math.max(0, p.remainingMs()), t.onTimeout());
+        }
+    }
+
+    /* ==================== 5. shutdown ==================== */
 
     @PreDestroy
     public void shutdown() {
@@ -103,9 +230,8 @@ public class ChatInactivityService {
 
     /** Сколько миллисекунд осталось «жить» таймеру по его ключу. */
     public Optional<Long> remaining(String key) {
-        DebouncedTimeouts.Entry e = watchdog.peek(key);
-        if (e == null) return Optional.empty();
-        return Optional.of(Math.max(0, e.expiresAt.get() - System.currentTimeMillis()));
+        long ms = watchdog.remaining(key);
+        return ms < 0 ? Optional.empty() : Optional.of(ms);
     }
 
     /** Активные таймеры конкретного пользователя. */
@@ -119,70 +245,50 @@ public class ChatInactivityService {
         return out;
     }
 
-    /* ========================================================================== */
-    /*                          Внутренний watchdog-класс                         */
-    /* ========================================================================== */
-
-    private static final class DebouncedTimeouts {
-
-        @RequiredArgsConstructor
-        static final class Entry {
-            final Runnable   onTimeout;
-            final AtomicLong expiresAt = new AtomicLong();
-        }
-
-        private static final long PERIOD_MS = 500;
+    /** Число живых таймеров. */
+    public int liveTimers() {
+        return watchdog.size();
+    }
 
-        private final Map<String, Entry> timers = new ConcurrentHashMap<>();
+    /** Закэшированных ключей таймеров (пары + «личные» REGULAR-ов). */
+    public int cachedTimers() {
+        int n = regularTimers.size();
+        for (Map<String, Timer> byUser : pairTimers.values()) n += byUser.size();
+        return n;
+    }
 
-        private final ScheduledExecutorService guard =
-                Executors.newSingleThreadScheduledExecutor(r -> {
-                    Thread t = new Thread(r, "chat-timeout-watchdog");
-                    t.setDaemon(true);
-                    return t;
-                });
+    /** Опоздание последнего тика watchdog-а относительно расписания, мс. */
+    public long watchdogLagMs() {
+        return watchdog.lagMs();
+    }
 
-        DebouncedTimeouts() {
-            guard.scheduleAtFixedRate(this::scan,
-                    PERIOD_MS, PERIOD_MS, TimeUnit.MILLISECONDS);
-        }
+    /** Максимальное опоздание тика с момента старта, мс. */
+    public long watchdogMaxLagMs() {
+        return watchdog.maxLagMs();
+    }
 
-        /** «Прикоснуться» к таймеру (создаёт либо обновляет). */
-        void touch(String key, Duration ttl, Runnable onTimeout) {
-            long deadline = System.currentTimeMillis() + ttl.toMillis();
-            timers.compute(key, (k, e) -> {
-                if (e == null) e = new Entry(onTimeout);
-                e.expiresAt.set(deadline);
-                return e;
-            });
-        }
+    /** На сколько позже дедлайна сработал последний тайм-аут, мс. */
+    public long lastExpiryDelayMs() {
+        return watchdog.lastExpiryDelayMs();
+    }
 
-        /** Отменить таймер. */
-        void cancel(String key) {
-            timers.remove(key);
-        }
+    /** Сколько таймеров истекло с момента старта. */
+    public long expiredTimers() {
+        return watchdog.expiredTotal();
+    }
 
-        /** Обход всех дедлайнов. */
-        private void scan() {
-            long now = System.currentTimeMillis();
-            timers.forEach((key, entry) -> {
-                if (now >= entry.expiresAt.get()) {
-                    timers.remove(key);
-                    try {
-                        entry.onTimeout.run();
-                    } catch (Exception ex) {
-                        log.error("Timeout handler failed", ex);
-                    }
-                }
-            });
-        }
+    /** Обходов колеса (тиков) с момента старта. */
+    public long watchdogScans() {
+        return watchdog.scans();
+    }
 
-        /* =====► мини-геттеры для отладки ◄===== */
-        Entry       peek(String key) { return timers.get(key); }
-        Set<String> keys()           { return timers.keySet(); }
+    /** Суммарное время обходов колеса, нс. */
+    public long watchdogScanNanosTotal() {
+        return watchdog.scanNanosTotal();
+    }
 
-        void shutdown() {
-            guard.shutdownNow();
-        }
+    /** Длительность последнего обхода колеса, нс. */
+    public long watchdogLastScanNanos() {
+        return watchdog.lastScanNanos();
     }
 }
@@ -32,15 +32,53 @@
 package com.alibou.websocket.chatroom;
 
 import lombok.AllArgsConstructor;
-import lombok.Data;
-import lombok.NoArgsConstructor;
+import lombok.Value;
 
-@Data
-@NoArgsConstructor
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Неизменяемое состояние комнаты. Переход – новый объект с version + 1,
+ * который хранилище ставит на место прежнего сравнением с ним (CAS):
+ * из двух одновременных переходов из одного состояния проходит один.
+ *
+ * Новая комната начинает не с 0, а с очередного поколения: поколения идут
+ * с шагом 2^20 (место под переходы предыдущей комнаты) и не отстают от
+ * времени в мс, сдвинутого на те же 20 бит. Комната, удалённая и созданная
+ * заново с тем же id, не повторяет ни одного номера прежней, и CAS по
+ * устаревшему состоянию не проходит (ABA) – и в хранилищах, сравнивающих
+ * по значению, и в JDBC: там после рестарта счёт продолжается с
+ * наибольшей версии таблицы ({@link #generationAbove}).
+ */
+@Value
 @AllArgsConstructor
 public class ChatRoom {
-    private String chatId;       // общий id пары (engineer↔regular)
-    private String senderId;     // кто «создал» запись (для поиска)
-    private String recipientId;  // вторая сторона
-    private boolean active;      // true – «занят», false – «свободен»
+    String  chatId;       // общий id пары (engineer↔regular)
+    String  senderId;     // кто «создал» запись (для поиска)
+    String  recipientId;  // вторая сторона
+    boolean active;       // true – «занят», false – «свободен»
+    long    version;      // номер состояния комнаты
+
+    private static final AtomicLong GENERATION = new AtomicLong();
+
+    public ChatRoom(String chatId, String senderId, String recipientId, boolean active) {
+        this(chatId, senderId, recipientId, active, nextGeneration());
+    }
+
+    private static final int GENERATION_BITS = 20;
+
+    /** Первый номер новой комнаты */
+    static long nextGeneration() {
+        long floor = System.currentTimeMillis() << GENERATION_BITS;
+        return GENERATION.updateAndGet(v -> Math.max(v + (1L << GENERATION_BITS), floor));
+    }
+
+    /** Следующие комнаты – с номерами больше version (уже записанные в хранилище) */
+    static void generationAbove(long version) {
+        GENERATION.accumulateAndGet(version, Math::max);
+    }
+
+    /** Следующее состояние с другим флагом active */
+    public ChatRoom withActive(boolean active) {
+        return new ChatRoom(chatId, senderId, recipientId, active, version + 1);
+    }
 }
\ No newline at end of file
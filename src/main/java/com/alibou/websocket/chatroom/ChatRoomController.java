@@ -1,7 +1,10 @@
 package com.alibou.websocket.chatroom;
 
+import com.alibou.websocket.exception.RegularAlreadyTakenException;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
@@ -14,7 +17,7 @@ public class ChatRoomController {
 
     private final ChatRoomService chatRoomService;
 
-    /** Инженер «берёт» пользователя */
+    /** Инженер «берёт» пользователя; 409 – его уже взял другой инженер */
     @PostMapping("/activate/{engineerId}/{userId}")
     public ResponseEntity<String> activate(@PathVariable String engineerId,
                                            @PathVariable String userId) {
@@ -28,4 +31,9 @@ public class ChatRoomController {
         chatRoomService.deactivatePair(engineerId, userId);
         return ResponseEntity.ok().build();
     }
+
+    @ExceptionHandler(RegularAlreadyTakenException.class)
+    public ResponseEntity<String> taken(RegularAlreadyTakenException ex) {
+        return ResponseEntity.status(HttpStatus.CONFLICT).body(ex.getMessage());
+    }
 }
@@ -1,7 +1,11 @@
 package com.alibou.websocket.chatroom;
 
+import com.alibou.websocket.audit.AuditLog;
 import com.alibou.websocket.chat.ChatMessageService;
 import com.alibou.websocket.chat.ChatNotification;
+import com.alibou.websocket.cluster.ClusterReplicator;
+import com.alibou.websocket.config.ChatMetrics;
+import com.alibou.websocket.exception.RegularAlreadyTakenException;
 import com.alibou.websocket.user.*;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.context.annotation.Lazy;
@@ -9,33 +13,67 @@ import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.stereotype.Service;
 
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
 
 /**
- * Полностью in-memory сервис комнат.
- * Все данные живут в оперативной памяти и стираются при рестарте приложения.
+ * Сервис комнат. Сами комнаты и индекс активных комнат лежат в {@link RoomStore}
+ * (по умолчанию в памяти – стираются при рестарте приложения).
  */
 @Service
 @Slf4j
 public class ChatRoomService {
 
-    /** thread-safe карта «pairId → ChatRoom» */
-    private final Map<String, ChatRoom> rooms = new ConcurrentHashMap<>();
-
     /* ===== сторонние сервисы ===== */
     private final OnlineUserStore       store;
+    private final RoomStore             rooms;
     private final SimpMessagingTemplate messaging;
     private final ChatInactivityService inactivity;
     private final ChatMessageService    messageService;
+    private final AvailableUsers        available;
+    private final PresenceService       presence;
+
+    /** куда сообщать об изменениях комнат (в кластере – остальным узлам) */
+    private volatile ClusterReplicator replicator = ClusterReplicator.NOOP;
+    private volatile ChatMetrics       metrics    = ChatMetrics.NOOP;
+    private volatile AuditLog          audit      = AuditLog.NOOP;
+    /** кто кого ведёт; с chat.dispatch.enabled – ещё и очередь раздачи */
+    private volatile DispatchQueue     dispatch   = DispatchQueue.claimsOnly();
+    /** работа над REGULAR-ом, начатая событием другого ника, – в ящик REGULAR-а */
+    private volatile UserMailboxes     mailboxes  = UserMailboxes.direct();
 
     public ChatRoomService(OnlineUserStore store,
+                           RoomStore rooms,
                            SimpMessagingTemplate messaging,
                            @Lazy ChatInactivityService inactivity,
-                           @Lazy ChatMessageService messageService) {
+                           @Lazy ChatMessageService messageService,
+                           AvailableUsers available,
+                           PresenceService presence) {
         this.store          = store;
+        this.rooms          = rooms;
         this.messaging      = messaging;
         this.inactivity     = inactivity;
         this.messageService = messageService;
+        this.available      = available;
+        this.presence       = presence;
+    }
+
+    public void replicateTo(ClusterReplicator replicator) {
+        this.replicator = replicator;
+    }
+
+    public void measureWith(ChatMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    public void auditTo(AuditLog audit) {
+        this.audit = audit;
+    }
+
+    public void dispatchWith(DispatchQueue dispatch) {
+        this.dispatch = dispatch;
+    }
+
+    public void serializeWith(UserMailboxes mailboxes) {
+        this.mailboxes = mailboxes;
     }
 
     /* =======================================================================
@@ -47,6 +85,21 @@ public class ChatRoomService {
         return a.compareTo(b) < 0 ? a + '_' + b : b + '_' + a;
     }
 
+    /** вторая сторона комнаты относительно nick */
+    private static String otherSide(ChatRoom r, String nick) {
+        return r.getSenderId().equals(nick) ? r.getRecipientId() : r.getSenderId();
+    }
+
+    /** id активных комнат пользователя (пустое множество, если их нет) */
+    private Set<String> activeIds(String nick) {
+        return rooms.activeIds(nick);
+    }
+
+    /** Пересчитать ник в представлении «свободных» пользователей */
+    private void refreshAvailability(String nick) {
+        available.refresh(nick, this::isUserInActiveChatWithEngineer);
+    }
+
     /* =======================================================================
                               PUBLIC API
        ======================================================================= */
@@ -58,141 +111,402 @@ public class ChatRoomService {
     public Optional<String> getChatRoomId(String senderId,
                                           String recipientId,
                                           boolean createIfMissing) {
+        return Optional.ofNullable(chatRoomId(senderId, recipientId, createIfMissing));
+    }
+
+    /** То же, что {@link #getChatRoomId}, но без Optional: null – комнаты нет */
+    public String chatRoomId(String senderId, String recipientId, boolean createIfMissing) {
 
         /* self-chat */
         if (senderId.equals(recipientId)) {
-            return Optional.of(senderId + '_' + recipientId);
+            return senderId + '_' + recipientId;
         }
 
         /* engineer ↔ regular */
         String cid = pairId(senderId, recipientId);
 
-        if (rooms.containsKey(cid)) return Optional.of(cid);
-        if (!createIfMissing)       return Optional.empty();
+        if (rooms.contains(cid))    return cid;
+        if (!createIfMissing)       return null;
 
-        /* создаём комнату, если ни одна нить ещё не успела */
-        rooms.computeIfAbsent(cid,
-                k -> new ChatRoom(cid, senderId, recipientId, true));
-        log.info("Создана новая комната {} ({} ↔ {})", cid, senderId, recipientId);
+        if (createRoom(cid, senderId, recipientId)) {
+            replicator.roomCreated(senderId, recipientId);
+            audit.roomCreated(cid, senderId, recipientId);
+        }
+        return cid;
+    }
 
-        return Optional.of(cid);
+    /**
+     * Создаём комнату, если ни одна нить ещё не успела; true – создали мы.
+     * Комната неактивна: активной пару делает только {@link #activateChat}
+     * или раздача – через закрепление REGULAR-а в {@link DispatchQueue}.
+     */
+    private boolean createRoom(String cid, String senderId, String recipientId) {
+        boolean created = rooms.addIfAbsent(new ChatRoom(cid, senderId, recipientId, false));
+        refreshAvailability(senderId);
+        refreshAvailability(recipientId);
+        return created;
     }
 
     /** Пользователь участвует хоть в одном активном чате? */
     public boolean isUserInActiveChat(String nick) {
-        return rooms.values().stream()
-                .anyMatch(r -> r.isActive() &&
-                        (r.getSenderId().equals(nick) || r.getRecipientId().equals(nick)));
+        return !activeIds(nick).isEmpty();
     }
 
     /** Найти собеседника в единственном активном чате (если он ровно один) */
     public Optional<String> findActivePartner(String nick) {
-        return rooms.values().stream()
-                .filter(r -> r.isActive() &&
-                        (r.getSenderId().equals(nick) || r.getRecipientId().equals(nick)))
-                .findFirst()
-                .map(r -> r.getSenderId().equals(nick)
-                        ? r.getRecipientId() : r.getSenderId());
+        for (String cid : activeIds(nick)) {
+            ChatRoom r = rooms.get(cid);
+            if (r != null && r.isActive()) return Optional.of(otherSide(r, nick));
+        }
+        return Optional.empty();
     }
 
     /** ⇢ **НОВЫЙ**: список ID всех активных комнат пользователя */
     public List<String> activeRoomsFor(String nick) {
-        return rooms.values().stream()
-                .filter(ChatRoom::isActive)
-                .filter(r -> r.getSenderId().equals(nick) || r.getRecipientId().equals(nick))
-                .map(ChatRoom::getChatId)
-                .toList();
+        return List.copyOf(activeIds(nick));
     }
 
-    /** Инженер «берёт» пользователя в работу */
+    /** Ники собеседников пользователя во всех его активных комнатах */
+    public List<String> activePartners(String nick) {
+        List<String> out = new ArrayList<>();
+        for (String cid : activeIds(nick)) {
+            ChatRoom r = rooms.get(cid);
+            if (r != null) out.add(otherSide(r, nick));
+        }
+        return out;
+    }
+
+    /**
+     * Инженер «берёт» пользователя в работу.
+     * @throws RegularAlreadyTakenException REGULAR уже у другого инженера
+     */
     public String activateChat(String engineerId, String userId) {
+        if (!dispatch.claim(engineerId, userId)) {
+            throw new RegularAlreadyTakenException(
+                    "Пользователя «" + userId + "» уже ведёт " + dispatch.owner(userId));
+        }
+        return activateClaimed(engineerId, userId);
+    }
 
-        /* ---------- PATCH: удаляем возможный self-chat REGULAR-а ---------- */
-        rooms.remove(userId + '_' + userId);
+    /** Активация пары, REGULAR уже закреплён за инженером */
+    private String activateClaimed(String engineerId, String userId) {
+        long started = ChatMetrics.start();
+        try {
+            String  cid          = pairId(engineerId, userId);
+            boolean stateChanged = activatePair(cid, engineerId, userId);
+            replicator.pairActivated(engineerId, userId);
+
+            if (stateChanged) {
+                audit.pairBusy(engineerId, userId);
+                metrics.pairStateChanged(true);
+                messaging.convertAndSend("/topic/user-status",
+                        new UserBusyStatus(userId, true));
+            }
 
-        String cid = pairId(engineerId, userId);
-        ChatRoom r = rooms.computeIfAbsent(cid,
-                k -> new ChatRoom(cid, engineerId, userId, true));
+            if (!store.isRemote(engineerId)) inactivity.touch(engineerId, userId);   // таймер пары – на узле инженера
+            inactivity.cancelEngineer(engineerId);
+
+            /* мгновенно уведомляем REGULAR-а, что чат активирован */
+            messaging.convertAndSend(
+                    "/queue/" + userId,
+                    new ChatNotification(
+                            "0",          // id не важен
+                            engineerId,   // от инженера
+                            userId,       // REGULAR-у
+                            ""            // системное пустое сообщение
+                    )
+            );
+
+            return cid;
+        } finally {
+            ChatMetrics.stop(metrics.activate(), started);
+        }
+    }
+
+    /** Инженер «отпускает» пользователя либо пользователь вышел сам */
+    public void deactivatePair(String engineerId, String userId) {
+        long started = ChatMetrics.start();
+        try {
+            boolean stateChanged = releasePair(engineerId, userId);
+            replicator.pairReleased(engineerId, userId);
+
+            if (stateChanged) {
+                audit.pairFree(engineerId, userId);
+                metrics.pairStateChanged(false);
+                messaging.convertAndSend("/topic/user-status",
+                        new UserBusyStatus(userId, false));
+            }
+        } finally {
+            ChatMetrics.stop(metrics.deactivate(), started);
+        }
+        dispatchWaiting();                      // у инженера освободилось место
+    }
 
-        boolean stateChanged = !r.isActive();
-        r.setActive(true);
+    /** При отключении пользователя – делаем все его комнаты неактивными */
+    public void deactivateChatsForUser(String userId) {
+        deactivateAll(userId);
+        replicator.userRoomsDeactivated(userId);
+        log.debug("Все комнаты пользователя {} переведены в неактивные", userId);
+        dispatchWaiting();
+    }
 
-        if (stateChanged) {
-            log.info("Пользователь {} ЗАНЯТ инженером {}", userId, engineerId);
-            messaging.convertAndSend("/topic/user-status",
-                    new UserBusyStatus(userId, true));
+    /**
+     * Узел уходит: комнаты всех уходящих – одним проходом, вместе с их
+     * таймерами пар. Доступность каждого затронутого ника пересчитывается
+     * один раз, ожидающие раздаются один раз в конце.
+     * @return сколько активных комнат переведено в неактивные
+     */
+    public int deactivateChatsForUsers(Collection<String> userIds) {
+        Set<String> touched = new HashSet<>(userIds);
+        int n = 0;
+        for (String userId : userIds) {
+            dispatch.left(userId);
+            for (String cid : List.copyOf(activeIds(userId))) {
+                ChatRoom r = rooms.get(cid);
+                if (r == null) continue;
+                touched.add(otherSide(r, userId));
+                if (rooms.setActive(cid, false)) n++;
+                /* таймер пары ведётся как (инженер, REGULAR), а комнату мог создать любой из них */
+                inactivity.cancel(r.getSenderId(), r.getRecipientId());
+                inactivity.cancel(r.getRecipientId(), r.getSenderId());
+            }
+            replicator.userRoomsDeactivated(userId);
         }
+        touched.forEach(this::refreshAvailability);
+        dispatchWaiting();
+        return n;
+    }
 
-        inactivity.touch(engineerId, userId);
-        inactivity.cancelEngineer(engineerId);
+    /* =======================================================================
+                        РАЗДАЧА REGULAR-ов ИНЖЕНЕРАМ (push)
+       ======================================================================= */
 
-        /* мгновенно уведомляем REGULAR-а, что чат активирован */
-        messaging.convertAndSend(
-                "/queue/" + userId,
-                new ChatNotification(
-                        "0",          // id не важен
-                        engineerId,   // от инженера
-                        userId,       // REGULAR-у
-                        ""            // системное пустое сообщение
-                )
-        );
+    /**
+     * REGULAR ждёт инженера: при входе и когда пишет сам себе, не будучи
+     * ни у кого в работе. Без chat.dispatch.enabled – ничего.
+     */
+    public void regularWaiting(String userId) {
+        DispatchQueue d = dispatch;
+        if (!d.pushing() || store.roleOf(userId) != UserRole.REGULAR) return;
+        if (activeEngineerPartner(userId) != null) return;
+        d.enqueue(userId);
+        dispatchWaiting();
+    }
 
-        return cid;
+    /** Инженер вошёл: его активные пары – в нагрузку, свободные места – ожидающим */
+    public void engineerOnline(String engineerId) {
+        DispatchQueue d = dispatch;
+        if (!d.pushing()) return;
+        for (String userId : activePartners(engineerId)) d.force(engineerId, userId);
+        d.engineerOnline(engineerId);
+        dispatchWaiting();
     }
 
-    /** Инженер «отпускает» пользователя либо пользователь вышел сам */
-    public void deactivatePair(String engineerId, String userId) {
+    /**
+     * Раздать ожидающих: REGULAR получает обычное системное уведомление,
+     * инженер – такое же от REGULAR-а в /queue/{инженер} (id "0", пустой текст)
+     * и сразу открывает диалог.
+     *
+     * Раздачу запускает событие другого ника (вход инженера, выход соседа),
+     * поэтому сама активация уходит в ящик REGULAR-а и идёт по очереди с
+     * его входом, выходом и тайм-аутами.
+     */
+    private void dispatchWaiting() {
+        for (DispatchQueue.Assignment a : dispatch.assign()) {
+            mailboxes.execute(a.userId(), () -> assigned(a));
+        }
+    }
 
-        String cid = pairId(engineerId, userId);
-        ChatRoom r = rooms.get(cid);
+    private void assigned(DispatchQueue.Assignment a) {
+        DispatchQueue d = dispatch;
+        if (!a.engineerId().equals(d.owner(a.userId()))) return;         // REGULAR или инженер уже ушли
+        if (store.get(a.userId()).isEmpty()) {                            // ушёл, стоя в очереди
+            d.left(a.userId());
+            dispatchWaiting();
+            return;
+        }
+        activateClaimed(a.engineerId(), a.userId());
+        messaging.convertAndSend("/queue/" + a.engineerId(),
+                new ChatNotification("0", a.userId(), a.engineerId(), ""));
+        log.debug("REGULAR {} → {} (ждал {} мс)", a.userId(), a.engineerId(), a.waitedNanos() / 1_000_000);
+    }
+
+    /* ---------- сами изменения состояния (общие для своих и чужих событий) ---------- */
+
+    /**
+     * Перевод пары в «занята». true – перевели именно мы: ровно одна из
+     * гонящихся активаций получает true и шлёт busy (новая пара тоже
+     * считается переходом – раньше она создавалась уже активной, и busy не
+     * уходил вовсе).
+     */
+    private boolean activatePair(String cid, String engineerId, String userId) {
+
+        /* ---------- PATCH: удаляем возможный self-chat REGULAR-а ---------- */
+        rooms.remove(userId + '_' + userId);
 
-        boolean stateChanged = r != null && r.isActive();
-        if (r != null) r.setActive(false);
+        boolean stateChanged;
+        while (true) {
+            ChatRoom r = rooms.get(cid);
+            if (r == null) {
+                if (rooms.addIfAbsent(new ChatRoom(cid, engineerId, userId, true))) { stateChanged = true; break; }
+            } else if (r.isActive()) {
+                stateChanged = false;
+                break;
+            } else if (rooms.compareAndSet(r, r.withActive(true))) {
+                stateChanged = true;
+                break;
+            }
+        }
+        refreshAvailability(userId);
+        refreshAvailability(engineerId);
+        return stateChanged;
+    }
 
-        if (stateChanged) {
-            log.info("Пользователь {} СВОБОДЕН (инженер {})", userId, engineerId);
-            messaging.convertAndSend("/topic/user-status",
-                    new UserBusyStatus(userId, false));
+    /**
+     * Перевод пары в «свободна» и удаление. Удаляется только то состояние,
+     * которое видели (или создали) мы: если пару успели снова активировать,
+     * она остаётся.
+     */
+    private boolean releasePair(String engineerId, String userId) {
+        String cid = pairId(engineerId, userId);
+        dispatch.release(engineerId, userId);
+
+        boolean  stateChanged = false;
+        ChatRoom released;
+        while (true) {
+            ChatRoom r = rooms.get(cid);
+            if (r == null || !r.isActive()) { released = r; break; }
+            ChatRoom next = r.withActive(false);
+            if (rooms.compareAndSet(r, next)) {
+                released     = next;
+                stateChanged = true;
+                break;
+            }
         }
 
         inactivity.cancel(engineerId, userId);
         messageService.clearHistory(engineerId, userId);
-        rooms.remove(cid);                    // полностью убираем пару
+        if (released != null) rooms.remove(released);     // полностью убираем пару
+        refreshAvailability(userId);
+        refreshAvailability(engineerId);
 
         /* создаём self-chat для REGULAR-а, чтобы мог писать себе */
         if (!userId.equals(engineerId)) {
-            rooms.putIfAbsent(userId + '_' + userId,
-                    new ChatRoom(userId + '_' + userId, userId, userId, false));
+            rooms.addIfAbsent(new ChatRoom(userId + '_' + userId, userId, userId, false));
         }
+        return stateChanged;
     }
 
-    /** При отключении пользователя – делаем все его комнаты неактивными */
-    public void deactivateChatsForUser(String userId) {
-        rooms.values().forEach(r -> {
-            if (r.getSenderId().equals(userId) || r.getRecipientId().equals(userId)) {
-                r.setActive(false);
-            }
-        });
-        log.info("Все комнаты пользователя {} переведены в неактивные", userId);
+    private void deactivateAll(String userId) {
+        dispatch.left(userId);
+        List<String> partners = activePartners(userId);
+        for (String cid : List.copyOf(activeIds(userId))) {
+            rooms.setActive(cid, false);
+        }
+        refreshAvailability(userId);
+        for (String partner : partners) mailboxes.execute(partner, () -> refreshAvailability(partner));
     }
 
     /* =======================================================================
                         Методы, нужные другим слоям
        ======================================================================= */
 
+    /**
+     * Пересчитать доступность ника и всех его активных собеседников
+     * (от присутствия инженера зависит, считается ли его REGULAR занятым).
+     * Вызывается при входе пользователя.
+     */
+    public void refreshAvailabilityWithPartners(String nick) {
+        refreshAvailability(nick);
+        activePartners(nick).forEach(this::refreshAvailability);
+    }
+
+    /**
+     * Инженер, с которым REGULAR сейчас в активном чате, или null.
+     * Одна проверка вместо пары isUserInActiveChatWithEngineer + findActivePartner.
+     */
+    public String activeEngineerPartner(String userId) {
+        for (String cid : activeIds(userId)) {
+            ChatRoom r = rooms.get(cid);
+            if (r == null || !r.isActive()) continue;
+            String other = otherSide(r, userId);
+            if (store.roleOf(other) == UserRole.ENGINEER) return other;
+        }
+        return null;
+    }
+
     /** REGULAR «занят» инженером? */
     public boolean isUserInActiveChatWithEngineer(String userId) {
-        return rooms.values().stream()
-                .filter(ChatRoom::isActive)
-                .filter(r -> r.getSenderId().equals(userId)
-                        || r.getRecipientId().equals(userId))
-                .anyMatch(r -> {
-                    String other = r.getSenderId().equals(userId)
-                            ? r.getRecipientId() : r.getSenderId();
-                    return store.get(other)
-                            .map(u -> u.getRole() == UserRole.ENGINEER)
-                            .orElse(false);
-                });
+        return activeEngineerPartner(userId) != null;
+    }
+
+    /* =======================================================================
+                        ИЗМЕНЕНИЯ С ДРУГИХ УЗЛОВ КЛАСТЕРА
+       ======================================================================= */
+
+    /*
+     * Узел-источник уже разослал /topic/user-status и уведомления через брокер,
+     * здесь только состояние. Таймер пары живёт на узле инженера.
+     */
+
+    public void applyRemoteRoomCreated(String senderId, String recipientId) {
+        if (!senderId.equals(recipientId)) createRoom(pairId(senderId, recipientId), senderId, recipientId);
+    }
+
+    public void applyRemotePairActivated(String engineerId, String userId) {
+        dispatch.force(engineerId, userId);
+        activatePair(pairId(engineerId, userId), engineerId, userId);
+        if (!store.isRemote(engineerId)) inactivity.touch(engineerId, userId);
+    }
+
+    public void applyRemotePairReleased(String engineerId, String userId) {
+        releasePair(engineerId, userId);
+    }
+
+    public void applyRemoteRoomsDeactivated(String userId) {
+        deactivateAll(userId);
+        dispatchWaiting();                      // его REGULAR-ы с этого узла снова в очереди
+    }
+
+    /** Активные комнаты, где хотя бы одна сторона подключена к этому узлу */
+    public List<ChatRoom> localActiveRooms() {
+        List<ChatRoom> out = new ArrayList<>();
+        for (ChatRoom r : rooms.all()) {
+            if (r.isActive() && (!store.isRemote(r.getSenderId()) || !store.isRemote(r.getRecipientId()))) {
+                out.add(r);
+            }
+        }
+        return out;
+    }
+
+    /* =======================================================================
+                              СНИМОК СОСТОЯНИЯ
+       ======================================================================= */
+
+    /** Копии всех комнат для снимка состояния */
+    public List<ChatRoom> exportRooms() {
+        return rooms.all();
+    }
+
+    /**
+     * Вернуть комнаты из снимка без рассылок: активные сразу попадают в индекс
+     * и закрепляют REGULAR-а за инженером (как applyRemotePairActivated),
+     * затем пересчитывается доступность всех затронутых ников.
+     * Уже существующие комнаты не трогаются. Пользователи к этому моменту
+     * уже восстановлены – инженера узнаём по роли.
+     */
+    public void restoreRooms(Collection<ChatRoom> restored) {
+        Set<String> touched = new HashSet<>();
+        for (ChatRoom r : restored) {
+            rooms.addIfAbsent(new ChatRoom(r.getChatId(), r.getSenderId(), r.getRecipientId(), r.isActive()));
+            if (r.isActive() && !r.getSenderId().equals(r.getRecipientId())) {
+                if (store.roleOf(r.getSenderId()) == UserRole.ENGINEER) dispatch.force(r.getSenderId(), r.getRecipientId());
+                else                                                     dispatch.force(r.getRecipientId(), r.getSenderId());
+            }
+            touched.add(r.getSenderId());
+            touched.add(r.getRecipientId());
+        }
+        touched.forEach(this::refreshAvailability);
     }
 
     /* =======================================================================
@@ -204,19 +518,39 @@ public class ChatRoomService {
      * «касание» от инженера в течение 15 с.
      */
     public void handleInactivity(String engineerId, String userId) {
+        long started = ChatMetrics.start();
+        try {
+            /* 1) удаляем REGULAR-а из онлайна */
+            store.forceRemove(userId);
 
-        /* 1) удаляем REGULAR-а из онлайна */
-        store.forceRemove(userId);
+            /* 2) шлём всем OFFLINE (в ближайшем кадре присутствия) */
+            presence.offline(userId, UserRole.REGULAR);
 
-        /* 2) шлём всем OFFLINE */
-        messaging.convertAndSend(
-                "/topic/public",
-                new User(userId, Status.OFFLINE, UserRole.REGULAR)
-        );
+            /* 3) деактивируем пару, а с ней – всё, что ещё числится за ушедшим
+                  REGULAR-ом (место в очереди раздачи, устаревшие пары) */
+            deactivatePair(engineerId, userId);
+            deactivateChatsForUser(userId);
 
-        /* 3) деактивируем пару */
-        deactivatePair(engineerId, userId);
+            /* 4) REGULAR ушёл – его «личный» таймер и ключ больше не нужны */
+            inactivity.releaseRegular(userId);
+
+            audit.timedOut(userId, engineerId);
+        } finally {
+            ChatMetrics.stop(metrics.inactivity(), started);
+        }
+    }
+
+    /* =======================================================================
+                          HELPERS для тестов и отладки
+       ======================================================================= */
+
+    /** Все комнаты (копии) */
+    Collection<ChatRoom> roomsView() {
+        return rooms.all();
+    }
 
-        log.info("Пользователь {} вышел по 15-секундному тайм-ауту", userId);
+    /** Ники, для которых в индексе есть хотя бы одна активная комната */
+    Set<String> indexedUsers() {
+        return rooms.indexedUsers();
     }
 }
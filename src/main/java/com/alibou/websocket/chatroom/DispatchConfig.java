@@ -0,0 +1,47 @@
+package com.alibou.websocket.chatroom;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Раздача REGULAR-ов инженерам (chat.dispatch.enabled=true): вошедший
+ * REGULAR встаёт в очередь, {@link ChatRoomService} отдаёт его наименее
+ * загруженному инженеру и присылает обоим уведомление. Ручное «взятие»
+ * из списка остаётся. Очередь у каждого узла своя: REGULAR достаётся
+ * инженерам того узла, к которому подключён.
+ */
+@Configuration
+@ConditionalOnProperty(name = "chat.dispatch.enabled", havingValue = "true")
+public class DispatchConfig {
+
+    @Bean
+    public DispatchQueue dispatchQueue(@Value("${chat.dispatch.capacity:1}") int capacity,
+                                       ChatRoomService chatRoomService) {
+        DispatchQueue queue = new DispatchQueue(Math.max(1, capacity));
+        chatRoomService.dispatchWith(queue);
+        return queue;
+    }
+
+    @Bean
+    public MeterBinder dispatchMetrics(DispatchQueue queue) {
+        return registry -> {
+            Gauge.builder("chat.dispatch.waiting", queue, DispatchQueue::waiting)
+                    .description("REGULAR-ы в очереди на инженера")
+                    .register(registry);
+            Gauge.builder("chat.dispatch.engineers", queue, DispatchQueue::engineers)
+                    .description("Инженеры, принимающие REGULAR-ов")
+                    .register(registry);
+            Gauge.builder("chat.dispatch.claimed", queue, DispatchQueue::claimed)
+                    .description("REGULAR-ы, закреплённые за инженерами")
+                    .register(registry);
+            FunctionCounter.builder("chat.dispatch.assigned", queue, DispatchQueue::assigned)
+                    .description("Назначения из очереди")
+                    .register(registry);
+        };
+    }
+}
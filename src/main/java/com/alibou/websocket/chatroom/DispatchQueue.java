@@ -0,0 +1,299 @@
+package com.alibou.websocket.chatroom;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Кто какого REGULAR-а ведёт и кто ждёт инженера.
+ *
+ *  • claims – REGULAR → инженер: REGULAR-а может взять только один инженер,
+ *    второй получает отказ (без этого два инженера, одновременно нажавшие на
+ *    одного пользователя, оба «брали» его);
+ *  • очередь ожидания – по приоритету, внутри приоритета FIFO (REGULAR-ы,
+ *    чей инженер ушёл, встают впереди новых);
+ *  • инженеры упорядочены по нагрузке, при равной – кто дольше без нового
+ *    REGULAR-а: {@link #assign()} берёт первого в очереди и отдаёт наименее
+ *    загруженному, O(log n) на назначение.
+ *
+ * capacity = 0 – только claims, без очереди (раздача выключена).
+ * Всё состояние под одной блокировкой: каждая операция – несколько
+ * операций с TreeSet / HashMap, без обращений к хранилищам.
+ */
+public class DispatchQueue {
+
+    /** Назначение: инженер, REGULAR и сколько тот прождал */
+    public record Assignment(String engineerId, String userId, long waitedNanos) {}
+
+    private record Waiting(String nick, int priority, long seq, long since) {}
+
+    /** Стол инженера; в byLoad перевставляется при каждом изменении нагрузки */
+    private static final class Desk {
+        final String nick;
+        int  load;
+        long lastAssigned;
+
+        Desk(String nick, int load) {
+            this.nick = nick;
+            this.load = load;
+        }
+    }
+
+    private static final int PRIORITY_NORMAL   = 0;
+    private static final int PRIORITY_RETURNED = 1;
+
+    private final int           capacity;
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /* ---------- guarded by lock ---------- */
+    private final Map<String, String>      claims   = new HashMap<>();   // REGULAR → инженер
+    private final Map<String, Set<String>> claimed  = new HashMap<>();   // инженер → его REGULAR-ы
+    private final Map<String, Waiting>     waiting  = new HashMap<>();
+    private final NavigableSet<Waiting>    queue    = new TreeSet<>(
+            Comparator.comparingInt((Waiting w) -> -w.priority()).thenComparingLong(Waiting::seq));
+    private final Map<String, Desk>        desks    = new HashMap<>();
+    private final NavigableSet<Desk>       byLoad   = new TreeSet<>(
+            Comparator.comparingInt((Desk d) -> d.load)
+                      .thenComparingLong(d -> d.lastAssigned)
+                      .thenComparing(d -> d.nick));
+    private long seq;
+    private long assigned;
+
+    /** @param capacity REGULAR-ов на инженера при раздаче; 0 – раздача выключена */
+    public DispatchQueue(int capacity) {
+        this.capacity = capacity;
+    }
+
+    /** Только защита от двойного взятия, без очереди */
+    public static DispatchQueue claimsOnly() {
+        return new DispatchQueue(0);
+    }
+
+    public boolean pushing() {
+        return capacity > 0;
+    }
+
+    /* =======================================================================
+                                    CLAIMS
+       ======================================================================= */
+
+    /**
+     * Инженер берёт REGULAR-а. true – взял (или уже вёл его сам),
+     * false – REGULAR у другого инженера.
+     */
+    public boolean claim(String engineerId, String userId) {
+        lock.lock();
+        try {
+            String owner = claims.get(userId);
+            if (owner != null) return owner.equals(engineerId);
+            unqueue(userId);
+            bind(engineerId, userId);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Пару уже активировали (другой узел, снимок) – признать как есть */
+    public void force(String engineerId, String userId) {
+        lock.lock();
+        try {
+            String owner = claims.get(userId);
+            if (engineerId.equals(owner)) return;
+            if (owner != null) unbind(owner, userId);
+            unqueue(userId);
+            bind(engineerId, userId);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Инженер отпустил REGULAR-а (или пара отпущена по тайм-ауту) */
+    public void release(String engineerId, String userId) {
+        lock.lock();
+        try {
+            if (engineerId.equals(claims.get(userId))) unbind(engineerId, userId);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Инженер, который ведёт REGULAR-а, или null */
+    public String owner(String userId) {
+        lock.lock();
+        try {
+            return claims.get(userId);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /* =======================================================================
+                                   ОЧЕРЕДЬ
+       ======================================================================= */
+
+    /** REGULAR ждёт инженера; повторный вызов и уже взятый REGULAR – ничего не меняют */
+    public void enqueue(String userId) {
+        if (!pushing()) return;
+        lock.lock();
+        try {
+            if (!claims.containsKey(userId)) offer(userId, PRIORITY_NORMAL);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Инженер готов принимать REGULAR-ов (его уже взятые – в нагрузке) */
+    public void engineerOnline(String engineerId) {
+        if (!pushing()) return;
+        lock.lock();
+        try {
+            if (desks.containsKey(engineerId)) return;
+            Desk d = new Desk(engineerId, claimed.getOrDefault(engineerId, Set.of()).size());
+            desks.put(engineerId, d);
+            byLoad.add(d);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Пользователь ушёл. REGULAR – из очереди и у своего инженера;
+     * инженер – из раздачи, его REGULAR-ы встают в начало очереди.
+     */
+    public void left(String nick) {
+        lock.lock();
+        try {
+            unqueue(nick);
+            String owner = claims.get(nick);
+            if (owner != null) unbind(owner, nick);
+
+            Desk d = desks.remove(nick);
+            if (d != null) byLoad.remove(d);
+            Set<String> orphans = claimed.remove(nick);
+            if (orphans != null) {
+                for (String userId : orphans) {
+                    claims.remove(userId);
+                    if (pushing()) offer(userId, PRIORITY_RETURNED);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Раздать ожидающих, пока есть инженер со свободным местом */
+    public List<Assignment> assign() {
+        if (!pushing()) return List.of();
+        lock.lock();
+        try {
+            List<Assignment> out = new ArrayList<>();
+            long now = System.nanoTime();
+            while (!queue.isEmpty() && !byLoad.isEmpty() && byLoad.first().load < capacity) {
+                Waiting w = queue.pollFirst();
+                waiting.remove(w.nick());
+                String engineerId = byLoad.first().nick;
+                bind(engineerId, w.nick());
+                out.add(new Assignment(engineerId, w.nick(), now - w.since()));
+            }
+            assigned += out.size();
+            return out;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /* ---------- под блокировкой ---------- */
+
+    private void offer(String userId, int priority) {
+        if (waiting.containsKey(userId)) return;
+        Waiting w = new Waiting(userId, priority, ++seq, System.nanoTime());
+        waiting.put(userId, w);
+        queue.add(w);
+    }
+
+    private void unqueue(String userId) {
+        Waiting w = waiting.remove(userId);
+        if (w != null) queue.remove(w);
+    }
+
+    private void bind(String engineerId, String userId) {
+        claims.put(userId, engineerId);
+        claimed.computeIfAbsent(engineerId, e -> new HashSet<>()).add(userId);
+        Desk d = desks.get(engineerId);
+        if (d != null) {
+            byLoad.remove(d);
+            d.load++;
+            d.lastAssigned = ++seq;
+            byLoad.add(d);
+        }
+    }
+
+    private void unbind(String engineerId, String userId) {
+        claims.remove(userId);
+        Set<String> mine = claimed.get(engineerId);
+        if (mine != null && mine.remove(userId) && mine.isEmpty()) claimed.remove(engineerId);
+        Desk d = desks.get(engineerId);
+        if (d != null) {
+            byLoad.remove(d);
+            d.load--;
+            byLoad.add(d);
+        }
+    }
+
+    /* ---------- метрики ---------- */
+
+    public int waiting() {
+        lock.lock();
+        try {
+            return waiting.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int engineers() {
+        lock.lock();
+        try {
+            return desks.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int claimed() {
+        lock.lock();
+        try {
+            return claims.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long assigned() {
+        lock.lock();
+        try {
+            return assigned;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Нагрузка инженера в раздаче, -1 – его там нет */
+    public int load(String engineerId) {
+        lock.lock();
+        try {
+            Desk d = desks.get(engineerId);
+            return d == null ? -1 : d.load;
+        } finally {
+            lock.unlock();
+        }
+    }
+}
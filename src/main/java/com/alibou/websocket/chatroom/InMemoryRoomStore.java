@@ -0,0 +1,180 @@
+package com.alibou.websocket.chatroom;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Хранилище по умолчанию, без блокировок на переходах: у каждой комнаты своя
+ * AtomicReference на неизменяемое состояние, переход – compareAndSet.
+ *
+ * Индекс меняется уже после CAS, поэтому его правка может опоздать за
+ * следующим переходом. Кто сменил состояние, тот приводит индекс к нему и
+ * перечитывает комнату: если она успела измениться – повторяет с новым
+ * состоянием ({@link #sync}). Последняя правка индекса каждой комнаты
+ * всегда сделана по её текущему состоянию.
+ *
+ * Удаление – CAS на {@link #REMOVED} и только затем удаление из карты:
+ * addIfAbsent, увидев REMOVED, сначала дочищает карту сам.
+ */
+@Component
+@ConditionalOnProperty(name = "chat.store.type", havingValue = "memory", matchIfMissing = true)
+public class InMemoryRoomStore implements RoomStore {
+
+    private static final ChatRoom REMOVED = new ChatRoom("", "", "", false, -1);
+
+    private final Map<String, AtomicReference<ChatRoom>> rooms        = new ConcurrentHashMap<>();
+    private final Map<String, Set<String>>               activeByUser = new ConcurrentHashMap<>();
+
+    /** Текущее состояние или null (нет комнаты / удаляется) */
+    private ChatRoom current(String chatId) {
+        AtomicReference<ChatRoom> ref = rooms.get(chatId);
+        ChatRoom r = ref == null ? null : ref.get();
+        return r == REMOVED ? null : r;
+    }
+
+    /* ---------- поддержка индекса ---------- */
+
+    /**
+     * Привести индекс комнаты к состоянию applied (null – удалена) и
+     * повторять, пока оно не совпадёт с текущим.
+     * @param pair любое состояние этой комнаты – нужны только стороны
+     */
+    private void sync(ChatRoom pair, ChatRoom applied) {
+        String   cid = pair.getChatId();
+        ChatRoom s   = applied;
+        while (true) {
+            if (s != null && s.isActive()) {
+                indexAdd(pair.getSenderId(), cid);
+                indexAdd(pair.getRecipientId(), cid);
+            } else {
+                indexRemove(pair.getSenderId(), cid);
+                indexRemove(pair.getRecipientId(), cid);
+            }
+            ChatRoom now = current(cid);
+            if (now == s) return;
+            s = now;
+        }
+    }
+
+    private void indexAdd(String nick, String cid) {
+        activeByUser.compute(nick, (k, ids) -> {
+            if (ids == null) ids = ConcurrentHashMap.newKeySet();
+            ids.add(cid);
+            return ids;
+        });
+    }
+
+    private void indexRemove(String nick, String cid) {
+        activeByUser.computeIfPresent(nick, (k, ids) -> {
+            ids.remove(cid);
+            return ids.isEmpty() ? null : ids;
+        });
+    }
+
+    /* =======================================================================
+                                   RoomStore
+       ======================================================================= */
+
+    @Override
+    public ChatRoom get(String chatId) {
+        return current(chatId);
+    }
+
+    @Override
+    public boolean contains(String chatId) {
+        return current(chatId) != null;
+    }
+
+    @Override
+    public boolean addIfAbsent(ChatRoom room) {
+        AtomicReference<ChatRoom> fresh = new AtomicReference<>(room);
+        while (true) {
+            AtomicReference<ChatRoom> ref = rooms.putIfAbsent(room.getChatId(), fresh);
+            if (ref == null) {
+                if (room.isActive()) sync(room, room);
+                return true;
+            }
+            if (ref.get() != REMOVED) return false;
+            rooms.remove(room.getChatId(), ref);          // удаление не дошло до карты – дочищаем
+        }
+    }
+
+    @Override
+    public boolean setActive(String chatId, boolean active) {
+        AtomicReference<ChatRoom> ref = rooms.get(chatId);
+        if (ref == null) return false;
+        while (true) {
+            ChatRoom r = ref.get();
+            if (r == REMOVED || r.isActive() == active) return false;
+            ChatRoom next = r.withActive(active);
+            if (ref.compareAndSet(r, next)) {
+                sync(next, next);
+                return true;
+            }
+        }
+    }
+
+    @Override
+    public boolean compareAndSet(ChatRoom expected, ChatRoom next) {
+        AtomicReference<ChatRoom> ref = rooms.get(expected.getChatId());
+        if (ref == null || !ref.compareAndSet(expected, next)) return false;
+        if (expected.isActive() != next.isActive()) sync(next, next);
+        return true;
+    }
+
+    @Override
+    public void remove(String chatId) {
+        AtomicReference<ChatRoom> ref = rooms.get(chatId);
+        if (ref == null) return;
+        while (true) {
+            ChatRoom r = ref.get();
+            if (r == REMOVED) break;
+            if (ref.compareAndSet(r, REMOVED)) {
+                rooms.remove(chatId, ref);
+                if (r.isActive()) sync(r, null);
+                return;
+            }
+        }
+        rooms.remove(chatId, ref);
+    }
+
+    @Override
+    public boolean remove(ChatRoom expected) {
+        AtomicReference<ChatRoom> ref = rooms.get(expected.getChatId());
+        if (ref == null || !ref.compareAndSet(expected, REMOVED)) return false;
+        rooms.remove(expected.getChatId(), ref);
+        if (expected.isActive()) sync(expected, null);
+        return true;
+    }
+
+    @Override
+    public Set<String> activeIds(String nick) {
+        return activeByUser.getOrDefault(nick, Collections.emptySet());
+    }
+
+    @Override
+    public List<ChatRoom> all() {
+        List<ChatRoom> out = new ArrayList<>(rooms.size());
+        for (AtomicReference<ChatRoom> ref : rooms.values()) {
+            ChatRoom r = ref.get();
+            if (r != REMOVED) out.add(r);
+        }
+        return out;
+    }
+
+    @Override
+    public Set<String> indexedUsers() {
+        return Collections.unmodifiableSet(activeByUser.keySet());
+    }
+
+    @Override
+    public long activeCount() {
+        long n = 0;
+        for (AtomicReference<ChatRoom> ref : rooms.values()) if (ref.get().isActive()) n++;
+        return n;
+    }
+}
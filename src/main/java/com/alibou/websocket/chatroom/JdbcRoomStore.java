@@ -0,0 +1,119 @@
+package com.alibou.websocket.chatroom;
+
+import com.alibou.websocket.store.JdbcSchema;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Комнаты в таблице chat_rooms. Отдельный индекс не нужен: «активные
+ * комнаты пользователя» – запрос по индексам sender_id / recipient_id,
+ * а переходы – условные UPDATE / DELETE по флагу active или по version.
+ */
+@Component
+@ConditionalOnProperty(name = "chat.store.type", havingValue = "jdbc")
+public class JdbcRoomStore implements RoomStore {
+
+    private static final RowMapper<ChatRoom> ROOM = (rs, i) -> new ChatRoom(
+            rs.getString("chat_id"),
+            rs.getString("sender_id"),
+            rs.getString("recipient_id"),
+            rs.getBoolean("active"),
+            rs.getLong("version"));
+
+    private final JdbcTemplate jdbc;
+
+    public JdbcRoomStore(DataSource dataSource) {
+        this.jdbc = new JdbcTemplate(dataSource);
+        JdbcSchema.create(jdbc,
+                "CREATE TABLE IF NOT EXISTS chat_rooms ("
+                        + " chat_id      VARCHAR(512) NOT NULL PRIMARY KEY,"
+                        + " sender_id    VARCHAR(255) NOT NULL,"
+                        + " recipient_id VARCHAR(255) NOT NULL,"
+                        + " active       BOOLEAN      NOT NULL,"
+                        + " version      BIGINT       NOT NULL DEFAULT 0)",
+                "ALTER TABLE chat_rooms ADD COLUMN version BIGINT NOT NULL DEFAULT 0",
+                "CREATE INDEX chat_rooms_sender ON chat_rooms (sender_id)",
+                "CREATE INDEX chat_rooms_recipient ON chat_rooms (recipient_id)");
+        Long max = jdbc.queryForObject("SELECT MAX(version) FROM chat_rooms", Long.class);
+        if (max != null) ChatRoom.generationAbove(max);
+    }
+
+    @Override
+    public ChatRoom get(String chatId) {
+        List<ChatRoom> found = jdbc.query(
+                "SELECT chat_id, sender_id, recipient_id, active, version FROM chat_rooms WHERE chat_id = ?", ROOM, chatId);
+        return found.isEmpty() ? null : found.get(0);
+    }
+
+    @Override
+    public boolean contains(String chatId) {
+        return !jdbc.queryForList("SELECT 1 FROM chat_rooms WHERE chat_id = ?", Integer.class, chatId).isEmpty();
+    }
+
+    @Override
+    public boolean addIfAbsent(ChatRoom room) {
+        try {
+            jdbc.update("INSERT INTO chat_rooms (chat_id, sender_id, recipient_id, active, version) VALUES (?, ?, ?, ?, ?)",
+                    room.getChatId(), room.getSenderId(), room.getRecipientId(), room.isActive(), room.getVersion());
+            return true;
+        } catch (DuplicateKeyException ex) {
+            return false;
+        }
+    }
+
+    @Override
+    public boolean setActive(String chatId, boolean active) {
+        return jdbc.update("UPDATE chat_rooms SET active = ?, version = version + 1 WHERE chat_id = ? AND active <> ?",
+                active, chatId, active) == 1;
+    }
+
+    @Override
+    public boolean compareAndSet(ChatRoom expected, ChatRoom next) {
+        return jdbc.update("UPDATE chat_rooms SET active = ?, version = ? WHERE chat_id = ? AND version = ?",
+                next.isActive(), next.getVersion(), expected.getChatId(), expected.getVersion()) == 1;
+    }
+
+    @Override
+    public void remove(String chatId) {
+        jdbc.update("DELETE FROM chat_rooms WHERE chat_id = ?", chatId);
+    }
+
+    @Override
+    public boolean remove(ChatRoom expected) {
+        return jdbc.update("DELETE FROM chat_rooms WHERE chat_id = ? AND version = ?",
+                expected.getChatId(), expected.getVersion()) == 1;
+    }
+
+    @Override
+    public Set<String> activeIds(String nick) {
+        return new HashSet<>(jdbc.queryForList(
+                "SELECT chat_id FROM chat_rooms WHERE active = TRUE AND (sender_id = ? OR recipient_id = ?)",
+                String.class, nick, nick));
+    }
+
+    @Override
+    public List<ChatRoom> all() {
+        return jdbc.query("SELECT chat_id, sender_id, recipient_id, active, version FROM chat_rooms", ROOM);
+    }
+
+    @Override
+    public Set<String> indexedUsers() {
+        return new HashSet<>(jdbc.queryForList(
+                "SELECT sender_id FROM chat_rooms WHERE active = TRUE"
+                        + " UNION SELECT recipient_id FROM chat_rooms WHERE active = TRUE", String.class));
+    }
+
+    @Override
+    public long activeCount() {
+        Long n = jdbc.queryForObject("SELECT COUNT(*) FROM chat_rooms WHERE active = TRUE", Long.class);
+        return n == null ? 0 : n;
+    }
+}
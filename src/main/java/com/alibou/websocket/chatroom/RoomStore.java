@@ -0,0 +1,62 @@
+package com.alibou.websocket.chatroom;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Комнаты и вторичный индекс «nick → id активных комнат».
+ *
+ * Реализация выбирается свойством chat.store.type:
+ * memory (по умолчанию) – {@link InMemoryRoomStore},
+ * striped – {@link StripedRoomStore}, jdbc – {@link JdbcRoomStore}.
+ * Комнаты неизменяемы ({@link ChatRoom}): состояние меняется заменой
+ * прочитанного через {@link #get} на следующее (compare-and-set), поэтому
+ * из одновременных переходов из одного состояния удаётся ровно один.
+ * Индекс активных комнат после перехода согласован с картой.
+ */
+public interface RoomStore {
+
+    /** Текущее состояние комнаты или null */
+    ChatRoom get(String chatId);
+
+    boolean contains(String chatId);
+
+    /**
+     * Добавить комнату, если её ещё нет (активная сразу попадает в индекс).
+     * @return true – добавили именно эту комнату
+     */
+    boolean addIfAbsent(ChatRoom room);
+
+    /**
+     * Переключить флаг active вместе с индексом.
+     * @return true – состояние действительно изменилось
+     */
+    boolean setActive(String chatId, boolean active);
+
+    /**
+     * Заменить состояние expected (полученное из {@link #get}) на next.
+     * @return false – комнату успели изменить или удалить
+     */
+    boolean compareAndSet(ChatRoom expected, ChatRoom next);
+
+    /** Удалить комнату целиком (вместе с записью в индексе) */
+    void remove(String chatId);
+
+    /**
+     * Удалить комнату, только если она всё ещё в состоянии expected.
+     * @return false – её успели изменить (например, снова активировать)
+     */
+    boolean remove(ChatRoom expected);
+
+    /** id активных комнат пользователя (пустое множество, если их нет); только для чтения */
+    Set<String> activeIds(String nick);
+
+    /** Все комнаты (неизменяемые состояния) */
+    List<ChatRoom> all();
+
+    /** Ники, для которых в индексе есть хотя бы одна активная комната */
+    Set<String> indexedUsers();
+
+    /** Число активных комнат – для метрик, без копирования самих комнат */
+    long activeCount();
+}
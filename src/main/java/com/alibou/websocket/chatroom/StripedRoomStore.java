@@ -0,0 +1,152 @@
+package com.alibou.websocket.chatroom;
+
+import com.alibou.websocket.store.Striped;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Комнаты и индекс на полосах HashMap ({@link Striped}).
+ * Индекс меняется под монитором полосы комнаты; порядок блокировок всегда
+ * «полоса комнаты → полоса ника», чтение индекса берёт только полосу ника.
+ */
+@Component
+@ConditionalOnProperty(name = "chat.store.type", havingValue = "striped")
+public class StripedRoomStore implements RoomStore {
+
+    private final Striped<ChatRoom>    rooms;
+    private final Striped<Set<String>> activeByUser;
+
+    public StripedRoomStore(@Value("${chat.store.stripes:64}") int stripes) {
+        this.rooms        = new Striped<>(stripes);
+        this.activeByUser = new Striped<>(stripes);
+    }
+
+    /* ---------- индекс (вызывать под монитором полосы комнаты) ---------- */
+
+    private void link(ChatRoom r) {
+        indexAdd(r.getSenderId(), r.getChatId());
+        indexAdd(r.getRecipientId(), r.getChatId());
+    }
+
+    private void unlink(ChatRoom r) {
+        indexRemove(r.getSenderId(), r.getChatId());
+        indexRemove(r.getRecipientId(), r.getChatId());
+    }
+
+    private void indexAdd(String nick, String cid) {
+        Striped.Stripe<Set<String>> s = activeByUser.stripe(nick);
+        synchronized (s) {
+            s.map.computeIfAbsent(nick, k -> new HashSet<>()).add(cid);
+        }
+    }
+
+    private void indexRemove(String nick, String cid) {
+        Striped.Stripe<Set<String>> s = activeByUser.stripe(nick);
+        synchronized (s) {
+            Set<String> ids = s.map.get(nick);
+            if (ids != null && ids.remove(cid) && ids.isEmpty()) s.map.remove(nick);
+        }
+    }
+
+    /* =======================================================================
+                                   RoomStore
+       ======================================================================= */
+
+    @Override
+    public ChatRoom get(String chatId) {
+        return rooms.get(chatId);
+    }
+
+    @Override
+    public boolean contains(String chatId) {
+        return rooms.get(chatId) != null;
+    }
+
+    @Override
+    public boolean addIfAbsent(ChatRoom room) {
+        Striped.Stripe<ChatRoom> s = rooms.stripe(room.getChatId());
+        synchronized (s) {
+            if (s.map.putIfAbsent(room.getChatId(), room) != null) return false;
+            if (room.isActive()) link(room);
+            return true;
+        }
+    }
+
+    @Override
+    public boolean setActive(String chatId, boolean active) {
+        Striped.Stripe<ChatRoom> s = rooms.stripe(chatId);
+        synchronized (s) {
+            ChatRoom r = s.map.get(chatId);
+            if (r == null || r.isActive() == active) return false;
+            replace(s, r, r.withActive(active));
+            return true;
+        }
+    }
+
+    @Override
+    public boolean compareAndSet(ChatRoom expected, ChatRoom next) {
+        Striped.Stripe<ChatRoom> s = rooms.stripe(expected.getChatId());
+        synchronized (s) {
+            if (!expected.equals(s.map.get(expected.getChatId()))) return false;
+            replace(s, expected, next);
+            return true;
+        }
+    }
+
+    /** под монитором полосы s */
+    private void replace(Striped.Stripe<ChatRoom> s, ChatRoom from, ChatRoom to) {
+        s.map.put(to.getChatId(), to);
+        if (from.isActive() == to.isActive()) return;
+        if (to.isActive()) link(to);
+        else               unlink(to);
+    }
+
+    @Override
+    public void remove(String chatId) {
+        Striped.Stripe<ChatRoom> s = rooms.stripe(chatId);
+        synchronized (s) {
+            ChatRoom r = s.map.remove(chatId);
+            if (r != null && r.isActive()) unlink(r);
+        }
+    }
+
+    @Override
+    public boolean remove(ChatRoom expected) {
+        Striped.Stripe<ChatRoom> s = rooms.stripe(expected.getChatId());
+        synchronized (s) {
+            if (!s.map.remove(expected.getChatId(), expected)) return false;
+            if (expected.isActive()) unlink(expected);
+            return true;
+        }
+    }
+
+    /** Копия множества: HashSet полосы нельзя отдавать наружу */
+    @Override
+    public Set<String> activeIds(String nick) {
+        Striped.Stripe<Set<String>> s = activeByUser.stripe(nick);
+        synchronized (s) {
+            Set<String> ids = s.map.get(nick);
+            return ids == null ? Set.of() : Set.copyOf(ids);
+        }
+    }
+
+    @Override
+    public List<ChatRoom> all() {
+        return rooms.collect((cid, r) -> r);
+    }
+
+    @Override
+    public Set<String> indexedUsers() {
+        return Set.copyOf(activeByUser.collect((nick, ids) -> nick));
+    }
+
+    @Override
+    public long activeCount() {
+        return rooms.collect((cid, r) -> r.isActive() ? cid : null).size();
+    }
+}
@@ -0,0 +1,271 @@
+package com.alibou.websocket.chatroom;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Хешированное колесо тайм-аутов с «дебаунсом».
+ *
+ *  • touch  – O(1): у живого таймера просто сдвигается дедлайн (CAS),
+ *             новый таймер кладётся в очередь входящих для тик-потока;
+ *  • тик    – обходит только одну ячейку колеса, т.е. таймеры, чей срок
+ *             пришёлся на этот тик; сдвинутые touch-ем таймеры лениво
+ *             перекладываются в нужную ячейку (не чаще раза за TTL);
+ *  • истёкшие обработчики исполняет ограниченный пул воркеров, поэтому
+ *             медленный обработчик не задерживает остальные тайм-ауты.
+ *
+ * Ячейками и счётчиком кругов владеет только тик-поток, остальным потокам
+ * видны лишь {@link #timers} и атомарный дедлайн записи.
+ */
+@Slf4j
+final class TimeoutWheel {
+
+    /* ---------- служебные значения дедлайна ---------- */
+    private static final long EXPIRED   = -1;
+    private static final long CANCELLED = -2;
+
+    static final class Entry {
+        final String     key;
+        final Runnable   onTimeout;
+        final AtomicLong deadline;      // мс монотонных часов или EXPIRED/CANCELLED
+        long             rounds;        // полных оборотов до срабатывания (тик-поток)
+
+        Entry(String key, Runnable onTimeout, long deadline) {
+            this.key       = key;
+            this.onTimeout = onTimeout;
+            this.deadline  = new AtomicLong(deadline);
+        }
+
+        /** Сдвинуть дедлайн вперёд; false – запись уже мертва */
+        boolean extend(long newDeadline) {
+            for (;;) {
+                long d = deadline.get();
+                if (d < 0 || newDeadline < d) return false;
+                if (deadline.compareAndSet(d, newDeadline)) return true;
+            }
+        }
+
+        void kill() {
+            deadline.set(CANCELLED);
+        }
+    }
+
+    private final long tickMs;
+    private final int  mask;
+    private final ArrayDeque<Entry>[] wheel;
+
+    private final Map<String, Entry> timers   = new ConcurrentHashMap<>();
+    private final Queue<Entry>       incoming = new ConcurrentLinkedQueue<>();
+
+    private final ThreadPoolExecutor workers;
+    private final Thread             ticker;
+    private final long               startMs = now();
+    private long                     tick;                 // номер текущего тика (тик-поток)
+    private volatile boolean         running = true;
+
+    /* ---------- метрики ---------- */
+    private volatile long    lastLagMs;
+    private final AtomicLong maxLagMs      = new AtomicLong();
+    private volatile long    lastExpiryDelayMs;
+    private final AtomicLong expiredTotal  = new AtomicLong();
+    /* пишет только тик-поток */
+    private volatile long    scans;
+    private volatile long    scanNanosTotal;
+    private volatile long    lastScanNanos;
+
+    /**
+     * @param tickMs      шаг колеса
+     * @param slots       число ячеек (округляется вверх до степени двойки)
+     * @param workers     число потоков-обработчиков
+     * @param workerQueue ёмкость очереди обработчиков; при переполнении
+     *                    обработчик выполняется в тик-потоке (back-pressure)
+     */
+    @SuppressWarnings("unchecked")
+    TimeoutWheel(String name, long tickMs, int slots, int workers, int workerQueue) {
+        int size = Integer.highestOneBit(Math.max(2, slots) - 1) << 1;
+        this.tickMs = tickMs;
+        this.mask   = size - 1;
+        this.wheel  = new ArrayDeque[size];
+        for (int i = 0; i < size; i++) wheel[i] = new ArrayDeque<>();
+
+        AtomicInteger n = new AtomicInteger();
+        this.workers = new ThreadPoolExecutor(workers, workers, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(workerQueue),
+                r -> daemon(r, name + "-worker-" + n.incrementAndGet()),
+                new ThreadPoolExecutor.CallerRunsPolicy());
+
+        this.ticker = daemon(this::run, name);
+        this.ticker.start();
+    }
+
+    /* =======================================================================
+                                   PUBLIC API
+       ======================================================================= */
+
+    /** «Прикоснуться» к таймеру (создаёт либо сдвигает дедлайн). */
+    void touch(String key, long ttlMs, Runnable onTimeout) {
+        long deadline = now() + ttlMs;
+
+        Entry e = timers.get(key);                       // быстрый путь без аллокаций
+        if (e != null && e.extend(deadline)) return;
+
+        timers.compute(key, (k, cur) -> {
+            if (cur != null) {
+                if (cur.extend(deadline)) return cur;
+                cur.kill();                              // истёк или дедлайн «назад»
+            }
+            Entry fresh = new Entry(k, onTimeout, deadline);
+            incoming.add(fresh);
+            return fresh;
+        });
+    }
+
+    /** Отменить таймер. */
+    void cancel(String key) {
+        Entry e = timers.remove(key);
+        if (e != null) e.kill();
+    }
+
+    /** Сколько мс осталось таймеру; -1 – таймера нет. */
+    long remaining(String key) {
+        Entry e = timers.get(key);
+        if (e == null) return -1;
+        long d = e.deadline.get();
+        return d < 0 ? -1 : Math.max(0, d - now());
+    }
+
+    Set<String> keys()             { return timers.keySet(); }
+    int         size()             { return timers.size(); }
+
+    /** Опоздание последнего тика относительно расписания, мс. */
+    long lagMs()                   { return lastLagMs; }
+    long maxLagMs()                { return maxLagMs.get(); }
+    /** На сколько позже дедлайна отправлен последний истёкший таймер, мс. */
+    long lastExpiryDelayMs()       { return lastExpiryDelayMs; }
+    long expiredTotal()            { return expiredTotal.get(); }
+    /** Тиков и суммарное время их обхода (перенос новых записей + ячейка), нс */
+    long scans()                   { return scans; }
+    long scanNanosTotal()          { return scanNanosTotal; }
+    long lastScanNanos()           { return lastScanNanos; }
+    int  pendingHandlers()         { return workers.getQueue().size(); }
+
+    void shutdown() {
+        running = false;
+        ticker.interrupt();
+        workers.shutdownNow();
+    }
+
+    /* =======================================================================
+                                  тик-поток
+       ======================================================================= */
+
+    private void run() {
+        while (running) {
+            long target = startMs + (tick + 1) * tickMs;
+            long sleep  = target - now();
+            if (sleep > 0) {
+                try {
+                    Thread.sleep(sleep);
+                } catch (InterruptedException ex) {
+                    return;
+                }
+            }
+            long now = now();
+            recordLag(now - target);
+            tick++;
+            long scanStart = System.nanoTime();
+            try {
+                transferIncoming();
+                expire(wheel[(int) (tick & mask)], now);
+            } catch (Exception ex) {
+                log.error("Timeout wheel tick failed", ex);
+            }
+            recordScan(System.nanoTime() - scanStart);
+        }
+    }
+
+    private void transferIncoming() {
+        for (Entry e; (e = incoming.poll()) != null; ) {
+            long d = e.deadline.get();
+            if (d >= 0) place(e, d, tick);
+        }
+    }
+
+    /**
+     * Положить запись в ячейку её дедлайна. from – первый тик, чью ячейку ещё
+     * просмотрят: текущий для новых записей, следующий – для перекладки из
+     * просматриваемой сейчас ячейки (иначе срок, кратный обороту, сработал
+     * бы на оборот позже).
+     */
+    private void place(Entry e, long deadline, long from) {
+        long due = Math.max(from, Math.floorDiv(deadline - startMs + tickMs - 1, tickMs));
+        e.rounds = (due - from) / wheel.length;
+        wheel[(int) (due & mask)].addLast(e);
+    }
+
+    private void expire(ArrayDeque<Entry> bucket, long now) {
+        for (int n = bucket.size(); n > 0; n--) {
+            Entry e = bucket.pollFirst();
+            long  d = e.deadline.get();
+            if (d < 0) continue;                                  // отменён / уже отработал
+
+            if (e.rounds > 0) {                                   // ещё не наш оборот
+                e.rounds--;
+                bucket.addLast(e);
+            } else if (d > now) {                                 // дедлайн сдвинули touch-ем
+                place(e, d, tick + 1);
+            } else if (e.deadline.compareAndSet(d, EXPIRED)) {
+                timers.remove(e.key, e);
+                lastExpiryDelayMs = now - d;
+                expiredTotal.incrementAndGet();
+                dispatch(e);
+            }
+        }
+    }
+
+    private void dispatch(Entry e) {
+        try {
+            workers.execute(() -> {
+                try {
+                    e.onTimeout.run();
+                } catch (Exception ex) {
+                    log.error("Timeout handler failed", ex);
+                }
+            });
+        } catch (Exception ex) {                                  // пул уже остановлен
+            log.warn("Timeout handler for {} dropped: {}", e.key, ex.toString());
+        }
+    }
+
+    private void recordScan(long nanos) {
+        lastScanNanos   = nanos;
+        scanNanosTotal += nanos;
+        scans++;
+    }
+
+    private void recordLag(long lag) {
+        lastLagMs = Math.max(0, lag);
+        maxLagMs.accumulateAndGet(lastLagMs, Math::max);
+    }
+
+    private static long now() {
+        return System.nanoTime() / 1_000_000;
+    }
+
+    private static Thread daemon(Runnable r, String name) {
+        Thread t = new Thread(r, name);
+        t.setDaemon(true);
+        return t;
+    }
+}
@@ -0,0 +1,288 @@
+package com.alibou.websocket.cluster;
+
+import com.alibou.websocket.chat.ChatMessage;
+import com.alibou.websocket.chat.ChatMessageService;
+import com.alibou.websocket.chat.ChatNotification;
+import com.alibou.websocket.chatroom.ChatInactivityService;
+import com.alibou.websocket.chatroom.ChatRoom;
+import com.alibou.websocket.chatroom.ChatRoomService;
+import com.alibou.websocket.cluster.ClusterEvent.Type;
+import com.alibou.websocket.config.PayloadFormat;
+import com.alibou.websocket.config.PayloadFormats;
+import com.alibou.websocket.user.*;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.messaging.converter.MappingJackson2MessageConverter;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.simp.stomp.*;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.Queue;
+
+/**
+ * Репликация состояния между узлами кластера через тот же STOMP-брокер,
+ * на который смотрит broker relay.
+ *
+ *  • сервисы сообщают об изменениях через {@link ClusterReplicator},
+ *    шина публикует их в {@value #TOPIC} со своим nodeId;
+ *  • чужие события применяются через applyRemote*-методы сервисов, свои –
+ *    пропускаются (брокер возвращает их и нам);
+ *  • при подключении узел шлёт HELLO, остальные отвечают своими локальными
+ *    пользователями и активными парами (PAIR_ACTIVATED – вместе с закреплением
+ *    REGULAR-а за инженером, иначе новый узел счёл бы его свободным).
+ *
+ * Ограничения: согласованность итоговая (два узла могут одновременно
+ * пустить один ник), пользователи упавшего узла остаются «онлайн»
+ * на остальных до его возвращения, id сообщений у каждого узла свои.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "chat.cluster.enabled", havingValue = "true")
+public class ClusterBus implements ClusterReplicator {
+
+    static final String TOPIC = "/topic/cluster.state";
+
+    private static final Duration RECONNECT = Duration.ofSeconds(1);
+
+    /* ===== сторонние сервисы ===== */
+    private final OnlineUserStore       store;
+    private final ChatRoomService       chatRoomService;
+    private final ChatMessageService    messageService;
+    private final ChatInactivityService inactivity;
+    private final PresenceService       presence;
+    private final SimpMessagingTemplate messaging;
+
+    private final String                    nodeId;
+    private final ReactorNettyTcpStompClient client;
+    private final ThreadPoolTaskScheduler   scheduler = new ThreadPoolTaskScheduler();
+
+    /* ---------- guarded by this ---------- */
+    private StompSession              session;
+    private final Queue<ClusterEvent> backlog = new ArrayDeque<>();   // до подключения
+    private boolean                   closed;
+
+    public ClusterBus(OnlineUserStore store,
+                      ChatRoomService chatRoomService,
+                      ChatMessageService messageService,
+                      ChatInactivityService inactivity,
+                      PresenceService presence,
+                      SimpMessagingTemplate messaging,
+                      PayloadFormats formats,
+                      @Value("${chat.cluster.node-id}") String nodeId,
+                      @Value("${chat.cluster.broker-host:localhost}") String brokerHost,
+                      @Value("${chat.cluster.broker-port:61613}") int brokerPort) {
+        this.store           = store;
+        this.chatRoomService = chatRoomService;
+        this.messageService  = messageService;
+        this.inactivity      = inactivity;
+        this.presence        = presence;
+        this.messaging       = messaging;
+        this.nodeId          = nodeId;
+        this.client          = new ReactorNettyTcpStompClient(brokerHost, brokerPort);
+        MappingJackson2MessageConverter converter = new MappingJackson2MessageConverter();
+        converter.setObjectMapper(formats.mapper(PayloadFormat.JSON));         // общий ObjectMapper приложения
+        this.client.setMessageConverter(converter);
+    }
+
+    @PostConstruct
+    public void start() {
+        if ("/topic/public".equals(presence.destination())) {
+            throw new IllegalStateException(
+                    "В кластере у каждого узла свой поток присутствия: задайте chat.presence.destination=/topic/public.<node-id>");
+        }
+        presence.replicateTo(this);
+        chatRoomService.replicateTo(this);
+        messageService.replicateTo(this);
+
+        scheduler.setThreadNamePrefix("cluster-bus-");
+        scheduler.setDaemon(true);
+        scheduler.initialize();
+        connect();
+    }
+
+    @PreDestroy
+    public void stop() {
+        StompSession s;
+        synchronized (this) {
+            closed = true;
+            s = session;
+            session = null;
+        }
+        if (s != null && s.isConnected()) s.disconnect();
+        scheduler.shutdown();
+        client.shutdown();
+    }
+
+    public String nodeId() {
+        return nodeId;
+    }
+
+    /** Подключена ли шина к брокеру (для тестов и /admin) */
+    public synchronized boolean connected() {
+        return session != null && session.isConnected();
+    }
+
+    /* =======================================================================
+                                  ПОДКЛЮЧЕНИЕ
+       ======================================================================= */
+
+    private void connect() {
+        client.connectAsync(new Handler()).whenComplete((s, ex) -> {
+            if (ex != null) {
+                log.warn("🔌 Брокер кластера недоступен ({}), повтор через {}", ex.toString(), RECONNECT);
+                scheduleReconnect();
+            }
+        });
+    }
+
+    private void scheduleReconnect() {
+        synchronized (this) {
+            if (closed) return;
+        }
+        scheduler.schedule(this::connect, Instant.now().plus(RECONNECT));
+    }
+
+    private final class Handler extends StompSessionHandlerAdapter {
+
+        @Override
+        public void afterConnected(StompSession s, StompHeaders connectedHeaders) {
+            s.subscribe(TOPIC, this);
+            synchronized (ClusterBus.this) {
+                session = s;
+                s.send(TOPIC, event(Type.HELLO, null, null, null, null));
+                for (ClusterEvent e; (e = backlog.poll()) != null; ) s.send(TOPIC, e);
+            }
+            log.info("🔗 Узел {} подключён к шине кластера", nodeId);
+        }
+
+        @Override
+        public java.lang.reflect.Type getPayloadType(StompHeaders headers) {
+            return ClusterEvent.class;
+        }
+
+        @Override
+        public void handleFrame(StompHeaders headers, Object payload) {
+            ClusterEvent e = (ClusterEvent) payload;
+            if (nodeId.equals(e.origin())) return;
+            try {
+                apply(e);
+            } catch (Exception ex) {
+                log.warn("Не удалось применить {} от {}: {}", e.type(), e.origin(), ex.toString());
+            }
+        }
+
+        @Override
+        public void handleTransportError(StompSession s, Throwable ex) {
+            synchronized (ClusterBus.this) {
+                if (session != s) return;
+                session = null;
+            }
+            log.warn("🔌 Потеряно соединение с шиной кластера: {}", ex.toString());
+            scheduleReconnect();
+        }
+    }
+
+    /* =======================================================================
+                                 ПУБЛИКАЦИЯ
+       ======================================================================= */
+
+    private ClusterEvent event(Type type, String nick, UserRole role, String peer, ChatMessage m) {
+        return new ClusterEvent(nodeId, type, nick, role, peer, m);
+    }
+
+    private synchronized void publish(ClusterEvent e) {
+        if (session != null && session.isConnected()) session.send(TOPIC, e);
+        else if (!closed) backlog.add(e);
+    }
+
+    @Override
+    public void userOnline(User u) {
+        publish(event(Type.USER_ONLINE, u.getNickName(), u.getRole(), null, null));
+    }
+
+    @Override
+    public void userOffline(String nick, UserRole role) {
+        publish(event(Type.USER_OFFLINE, nick, role, null, null));
+    }
+
+    @Override
+    public void roomCreated(String senderId, String recipientId) {
+        publish(event(Type.ROOM_CREATED, senderId, null, recipientId, null));
+    }
+
+    @Override
+    public void pairActivated(String engineerId, String userId) {
+        publish(event(Type.PAIR_ACTIVATED, engineerId, null, userId, null));
+    }
+
+    @Override
+    public void pairReleased(String engineerId, String userId) {
+        publish(event(Type.PAIR_RELEASED, engineerId, null, userId, null));
+    }
+
+    @Override
+    public void userRoomsDeactivated(String nick) {
+        publish(event(Type.USER_ROOMS_DEACTIVATED, nick, null, null, null));
+    }
+
+    @Override
+    public void messageSaved(ChatMessage m) {
+        publish(event(Type.MESSAGE, null, null, null, m));
+    }
+
+    /* =======================================================================
+                            ПРИМЕНЕНИЕ ЧУЖИХ СОБЫТИЙ
+       ======================================================================= */
+
+    void apply(ClusterEvent e) {
+        switch (e.type()) {
+            case HELLO                  -> announceLocalState();
+            case USER_ONLINE            -> userJoined(e);
+            case USER_OFFLINE           -> userLeft(e);
+            case ROOM_CREATED           -> chatRoomService.applyRemoteRoomCreated(e.nick(), e.peer());
+            case PAIR_ACTIVATED         -> chatRoomService.applyRemotePairActivated(e.nick(), e.peer());
+            case PAIR_RELEASED          -> chatRoomService.applyRemotePairReleased(e.nick(), e.peer());
+            case USER_ROOMS_DEACTIVATED -> chatRoomService.applyRemoteRoomsDeactivated(e.nick());
+            case MESSAGE                -> deliver(e.message());
+        }
+    }
+
+    private void userJoined(ClusterEvent e) {
+        User u = new User(e.nick(), Status.ONLINE, e.role());
+        if (!store.addRemote(u, e.origin())) return;          // уже знаем (или ник занят здесь)
+        chatRoomService.refreshAvailabilityWithPartners(u.getNickName());
+        presence.applyRemote(u.getNickName(), Status.ONLINE, u.getRole());
+    }
+
+    private void userLeft(ClusterEvent e) {
+        store.forceRemove(e.nick());
+        if (e.role() == UserRole.REGULAR) inactivity.releaseRegular(e.nick());
+        chatRoomService.refreshAvailabilityWithPartners(e.nick());
+        presence.applyRemote(e.nick(), Status.OFFLINE, e.role());
+    }
+
+    /** Своя копия сообщения; уведомление – если получатель подключён к этому узлу */
+    private void deliver(ChatMessage original) {
+        ChatMessage m = messageService.applyReplica(original);
+        if (store.isRemote(m.getRecipientId()) || store.get(m.getRecipientId()).isEmpty()) return;
+        messaging.convertAndSend("/queue/" + m.getRecipientId(),
+                new ChatNotification(String.valueOf(m.getId()), m.getSenderId(), m.getRecipientId(), m.getContent()));
+    }
+
+    /** Ответ на HELLO: всё, что подключено к этому узлу */
+    private void announceLocalState() {
+        for (User u : store.local()) userOnline(u);
+        for (ChatRoom r : chatRoomService.localActiveRooms()) {
+            /* комнату мог открыть REGULAR своим сообщением – инженер не обязательно sender */
+            if (store.roleOf(r.getSenderId()) == UserRole.ENGINEER) pairActivated(r.getSenderId(), r.getRecipientId());
+            else                                                     pairActivated(r.getRecipientId(), r.getSenderId());
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package com.alibou.websocket.cluster;
+
+import com.alibou.websocket.chat.ChatMessage;
+import com.alibou.websocket.user.UserRole;
+
+/**
+ * Изменение состояния, которое узел рассылает остальным через брокер.
+ *
+ * <pre>
+ *   USER_ONLINE / USER_OFFLINE  nick, role
+ *   ROOM_CREATED                nick = sender, peer = recipient
+ *   PAIR_ACTIVATED / RELEASED   nick = engineer, peer = regular
+ *   USER_ROOMS_DEACTIVATED      nick
+ *   MESSAGE                     message (id узла-источника не используется)
+ *   HELLO                       новый узел просит прислать локальное состояние
+ * </pre>
+ */
+public record ClusterEvent(String origin,
+                           Type type,
+                           String nick,
+                           UserRole role,
+                           String peer,
+                           ChatMessage message) {
+
+    public enum Type {
+        HELLO,
+        USER_ONLINE,
+        USER_OFFLINE,
+        ROOM_CREATED,
+        PAIR_ACTIVATED,
+        PAIR_RELEASED,
+        USER_ROOMS_DEACTIVATED,
+        MESSAGE
+    }
+}
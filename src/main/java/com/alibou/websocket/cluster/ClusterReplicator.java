@@ -0,0 +1,33 @@
+package com.alibou.websocket.cluster;
+
+import com.alibou.websocket.chat.ChatMessage;
+import com.alibou.websocket.user.User;
+import com.alibou.websocket.user.UserRole;
+
+/**
+ * Куда сервисы сообщают об изменениях общего состояния.
+ *
+ * В обычном (одноузловом) режиме используется {@link #NOOP}; в кластерном
+ * {@link ClusterBus} при старте подставляет себя и рассылает изменения
+ * остальным узлам. Вызывается только на узле-источнике изменения:
+ * применение чужих изменений идёт через applyRemote*-методы сервисов
+ * и обратно не реплицируется.
+ */
+public interface ClusterReplicator {
+
+    ClusterReplicator NOOP = new ClusterReplicator() {};
+
+    default void userOnline(User u) {}
+
+    default void userOffline(String nick, UserRole role) {}
+
+    default void roomCreated(String senderId, String recipientId) {}
+
+    default void pairActivated(String engineerId, String userId) {}
+
+    default void pairReleased(String engineerId, String userId) {}
+
+    default void userRoomsDeactivated(String nick) {}
+
+    default void messageSaved(ChatMessage m) {}
+}
@@ -0,0 +1,49 @@
+package com.alibou.websocket.cluster;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.activemq.artemis.core.config.Configuration;
+import org.apache.activemq.artemis.core.config.impl.ConfigurationImpl;
+import org.apache.activemq.artemis.core.server.embedded.EmbeddedActiveMQ;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+/**
+ * Встроенный Artemis с STOMP-акцептором – замена внешнего брокера
+ * для локального запуска и тестов кластерного режима.
+ * Без персистентности и без авторизации: только для доверенной сети.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "chat.cluster.embedded-broker", havingValue = "true")
+public class EmbeddedBroker {
+
+    private final EmbeddedActiveMQ server = new EmbeddedActiveMQ();
+    private final String host;
+    private final int    port;
+
+    public EmbeddedBroker(@Value("${chat.cluster.broker-host:localhost}") String host,
+                          @Value("${chat.cluster.broker-port:61613}") int port) {
+        this.host = host;
+        this.port = port;
+    }
+
+    @PostConstruct
+    public void start() throws Exception {
+        Configuration cfg = new ConfigurationImpl()
+                .setPersistenceEnabled(false)
+                .setSecurityEnabled(false)
+                .setJMXManagementEnabled(false)
+                .addAcceptorConfiguration("stomp", "tcp://" + host + ":" + port + "?protocols=STOMP");
+        server.setConfiguration(cfg);
+        server.start();
+        log.info("📡 Встроенный брокер Artemis слушает STOMP на {}:{}", host, port);
+    }
+
+    @PreDestroy
+    public void stop() throws Exception {
+        server.stop();
+    }
+}
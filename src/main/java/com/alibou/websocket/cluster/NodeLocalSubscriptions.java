@@ -0,0 +1,37 @@
+package com.alibou.websocket.cluster;
+
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.MessageBuilder;
+
+/**
+ * Подменяет подписку клиента на общий адрес адресом своего узла.
+ *
+ * У каждого узла собственная нумерация версий присутствия, поэтому кадры
+ * /topic/public не смешиваются: клиент, подписавшийся на /topic/public,
+ * на самом деле получает поток того узла, к которому подключён
+ * (и у которого спрашивает /users?sinceVersion=).
+ */
+public class NodeLocalSubscriptions implements ChannelInterceptor {
+
+    private final String shared;
+    private final String local;
+
+    public NodeLocalSubscriptions(String shared, String local) {
+        this.shared = shared;
+        this.local  = local;
+    }
+
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        StompHeaderAccessor acc = StompHeaderAccessor.wrap(message);
+        if (acc.getCommand() != StompCommand.SUBSCRIBE || !shared.equals(acc.getDestination())) {
+            return message;
+        }
+        acc.setDestination(local);
+        return MessageBuilder.createMessage(message.getPayload(), acc.getMessageHeaders());
+    }
+}
@@ -0,0 +1,81 @@
+package com.alibou.websocket.config;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Таймеры и счётчики горячих путей для /actuator/prometheus.
+ *
+ * Сервисы начинают с {@link #NOOP} и получают настоящий экземпляр при старте
+ * ({@link MetricsConfig}) – как ClusterReplicator: там, где сервисы собраны
+ * вручную (тесты, JMH), метрики ничего не стоят. У таймеров есть гистограмма
+ * от 1 мкс до 10 с, квантили по узлам считает сам Prometheus.
+ */
+public class ChatMetrics {
+
+    public static final ChatMetrics NOOP = new ChatMetrics(new CompositeMeterRegistry());
+
+    private final Timer   save;
+    private final Timer   process;
+    private final Timer   activate;
+    private final Timer   deactivate;
+    private final Timer   inactivity;
+    private final Counter invalidMessages;
+    private final Counter becameBusy;
+    private final Counter becameFree;
+
+    public ChatMetrics(MeterRegistry registry) {
+        this.save       = timer(registry, "chat.message.save",    "ChatMessageService.save: роли, комната, таймеры, история");
+        this.process    = timer(registry, "chat.message.process", "ChatController.processMessage: save + уведомление получателю");
+        this.activate   = timer(registry, "chat.room.activate",   "ChatRoomService.activateChat");
+        this.deactivate = timer(registry, "chat.room.deactivate", "ChatRoomService.deactivatePair");
+        this.inactivity = timer(registry, "chat.room.inactivity", "ChatRoomService.handleInactivity (тайм-аут пары)");
+
+        this.invalidMessages = Counter.builder("chat.messages.invalid")
+                .description("Сообщения без отправителя, получателя или текста")
+                .register(registry);
+        this.becameBusy = Counter.builder("chat.pairs.state.changes").tag("state", "busy")
+                .description("REGULAR стал занят / свободен")
+                .register(registry);
+        this.becameFree = Counter.builder("chat.pairs.state.changes").tag("state", "free")
+                .description("REGULAR стал занят / свободен")
+                .register(registry);
+    }
+
+    private static Timer timer(MeterRegistry registry, String name, String description) {
+        return Timer.builder(name)
+                .description(description)
+                .publishPercentileHistogram()
+                .minimumExpectedValue(Duration.ofNanos(1_000))
+                .maximumExpectedValue(Duration.ofSeconds(10))
+                .register(registry);
+    }
+
+    /** {@code long t = ChatMetrics.start(); try {…} finally { ChatMetrics.stop(metrics.save(), t); }} */
+    public static long start() {
+        return System.nanoTime();
+    }
+
+    public static void stop(Timer timer, long started) {
+        timer.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+    }
+
+    public Timer save()       { return save; }
+    public Timer process()    { return process; }
+    public Timer activate()   { return activate; }
+    public Timer deactivate() { return deactivate; }
+    public Timer inactivity() { return inactivity; }
+
+    public void invalidMessage() {
+        invalidMessages.increment();
+    }
+
+    public void pairStateChanged(boolean busy) {
+        (busy ? becameBusy : becameFree).increment();
+    }
+}
@@ -0,0 +1,35 @@
+package com.alibou.websocket.config;
+
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.web.socket.WebSocketExtension;
+import org.springframework.web.socket.server.support.DefaultHandshakeHandler;
+
+import java.util.List;
+
+/**
+ * Рукопожатие WebSocket с управляемым permessage-deflate (RFC 7692).
+ *
+ * Tomcat сам соглашается на permessage-deflate, если клиент его предложил
+ * (браузеры предлагают всегда). Сжатие уменьшает кадры в несколько раз, но
+ * у каждой сессии свой Deflater / Inflater (сотни килобайт нативной памяти) и
+ * CPU на каждый кадр – поэтому его можно выключить: chat.ws.deflate=false.
+ */
+public class DeflateHandshakeHandler extends DefaultHandshakeHandler {
+
+    static final String PERMESSAGE_DEFLATE = "permessage-deflate";
+
+    private final boolean deflate;
+
+    public DeflateHandshakeHandler(boolean deflate) {
+        this.deflate = deflate;
+    }
+
+    @Override
+    protected List<WebSocketExtension> filterRequestedExtensions(ServerHttpRequest request,
+                                                                 List<WebSocketExtension> requested,
+                                                                 List<WebSocketExtension> supported) {
+        List<WebSocketExtension> agreed = super.filterRequestedExtensions(request, requested, supported);
+        return deflate ? agreed
+                       : agreed.stream().filter(e -> !PERMESSAGE_DEFLATE.equalsIgnoreCase(e.getName())).toList();
+    }
+}
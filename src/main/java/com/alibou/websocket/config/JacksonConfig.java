@@ -0,0 +1,20 @@
+package com.alibou.websocket.config;
+
+import com.fasterxml.jackson.databind.Module;
+import com.fasterxml.jackson.module.blackbird.BlackbirdModule;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Общий ObjectMapper – тот, что собирает Spring Boot (REST, STOMP, шина кластера).
+ * Blackbird заменяет рефлексию на сгенерированные через LambdaMetafactory
+ * геттеры/сеттеры: меньше CPU на каждый кадр; Boot подключает модуль сам.
+ */
+@Configuration
+public class JacksonConfig {
+
+    @Bean
+    public Module blackbirdModule() {
+        return new BlackbirdModule();
+    }
+}
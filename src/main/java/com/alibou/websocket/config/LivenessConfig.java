@@ -0,0 +1,46 @@
+package com.alibou.websocket.config;
+
+import com.alibou.websocket.chatroom.ChatInactivityService;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.scheduling.TaskScheduler;
+
+/**
+ * Живость по heartbeat-ам STOMP (chat.liveness.mode=heartbeat) вместо
+ * таймеров простоя: простой брокер шлёт и ждёт heartbeat-ы,
+ * {@link SessionActivity} закрывает молчащие сессии, а сообщения чата
+ * таймеры больше не трогают. Подключённый, но молчащий пользователь
+ * остаётся в онлайне. По умолчанию (messages) – таймеры, как раньше.
+ */
+@Configuration
+@ConditionalOnProperty(name = "chat.liveness.mode", havingValue = "heartbeat")
+public class LivenessConfig {
+
+    @Bean
+    public SessionActivity sessionActivity(@Value("${chat.liveness.heartbeat-ms:10000}") long heartbeatMs,
+                                           @Value("${chat.liveness.timeout-ms:0}") long timeoutMs,
+                                           @Lazy @Qualifier("messageBrokerTaskScheduler") TaskScheduler scheduler,
+                                           ChatInactivityService inactivity) {
+        inactivity.livenessByHeartbeat();
+        return new SessionActivity(heartbeatMs, timeoutMs, scheduler);
+    }
+
+    @Bean
+    public MeterBinder livenessMetrics(SessionActivity activity) {
+        return registry -> {
+            Gauge.builder("chat.liveness.sessions", activity, SessionActivity::sessions)
+                    .description("WebSocket-сессии под наблюдением heartbeat-ов")
+                    .register(registry);
+            FunctionCounter.builder("chat.liveness.closed", activity, SessionActivity::closed)
+                    .description("Сессии, закрытые за отсутствие heartbeat-ов")
+                    .register(registry);
+        };
+    }
+}
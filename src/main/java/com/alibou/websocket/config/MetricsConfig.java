@@ -0,0 +1,91 @@
+package com.alibou.websocket.config;
+
+import com.alibou.websocket.chat.ChatMessageService;
+import com.alibou.websocket.chat.MessageStore;
+import com.alibou.websocket.chatroom.ChatInactivityService;
+import com.alibou.websocket.chatroom.ChatRoomService;
+import com.alibou.websocket.chatroom.RoomStore;
+import com.alibou.websocket.user.OnlineUserStore;
+import com.alibou.websocket.user.User;
+import com.alibou.websocket.user.UserRole;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Метрики чата в /actuator/prometheus.
+ *
+ *  • {@link ChatMetrics} – таймеры save / processMessage / activate /
+ *    deactivate / handleInactivity и счётчики; сервисам он подставляется здесь;
+ *  • {@link #chatGauges} – состояние на момент опроса: онлайн по ролям,
+ *    активные комнаты, живые таймеры, сообщения в истории, обход колеса
+ *    тайм-аутов. Считаются только при scrape, горячий путь не трогают.
+ *
+ * Память процесса – стандартные jvm_memory_used_bytes{area="heap"} actuator-а.
+ */
+@Configuration
+public class MetricsConfig {
+
+    @Bean
+    public ChatMetrics chatMetrics(MeterRegistry registry,
+                                   ChatRoomService chatRoomService,
+                                   ChatMessageService chatMessageService) {
+        ChatMetrics metrics = new ChatMetrics(registry);
+        chatRoomService.measureWith(metrics);
+        chatMessageService.measureWith(metrics);
+        return metrics;
+    }
+
+    @Bean
+    public MeterBinder chatGauges(OnlineUserStore users,
+                                  RoomStore rooms,
+                                  MessageStore messages,
+                                  ChatInactivityService inactivity) {
+        return registry -> {
+            for (UserRole role : UserRole.values()) {
+                Gauge.builder("chat.users.online", users, s -> countLocal(s, role))
+                        .tag("role", role.name())
+                        .description("Пользователи, подключённые к этому узлу")
+                        .register(registry);
+            }
+            Gauge.builder("chat.rooms.active", rooms, RoomStore::activeCount)
+                    .description("Активные комнаты инженер ↔ пользователь")
+                    .register(registry);
+            Gauge.builder("chat.messages.stored", messages, MessageStore::size)
+                    .description("Сообщения во всех окнах истории")
+                    .register(registry);
+            Gauge.builder("chat.inactivity.timers", inactivity, ChatInactivityService::liveTimers)
+                    .description("Живые таймеры бездействия")
+                    .register(registry);
+            FunctionCounter.builder("chat.inactivity.expired", inactivity, ChatInactivityService::expiredTimers)
+                    .description("Сработавшие таймеры бездействия")
+                    .register(registry);
+            FunctionTimer.builder("chat.watchdog.scan", inactivity,
+                            ChatInactivityService::watchdogScans,
+                            ChatInactivityService::watchdogScanNanosTotal,
+                            TimeUnit.NANOSECONDS)
+                    .description("Обход колеса тайм-аутов за тик")
+                    .register(registry);
+            Gauge.builder("chat.watchdog.scan.last", inactivity, s -> s.watchdogLastScanNanos() / 1e9)
+                    .baseUnit("seconds")
+                    .description("Длительность последнего обхода колеса")
+                    .register(registry);
+            Gauge.builder("chat.watchdog.lag", inactivity, s -> s.watchdogLagMs() / 1e3)
+                    .baseUnit("seconds")
+                    .description("Опоздание последнего тика колеса")
+                    .register(registry);
+        };
+    }
+
+    private static long countLocal(OnlineUserStore users, UserRole role) {
+        long n = 0;
+        for (User u : users.local()) if (u.getRole() == role) n++;
+        return n;
+    }
+}
@@ -0,0 +1,110 @@
+package com.alibou.websocket.config;
+
+import com.alibou.websocket.snapshot.StateSnapshotService;
+import com.alibou.websocket.user.OnlineUserStore;
+import com.alibou.websocket.user.User;
+import com.alibou.websocket.user.UserService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.event.ContextClosedEvent;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Плавный вывод узла: POST /admin/drain или остановка (SIGTERM).
+ *
+ *  1. {@link SessionGate} закрывается – новые сессии не принимаются;
+ *  2. все пользователи узла выходят разом ({@link UserService#drain}):
+ *     комнаты – одним проходом, OFFLINE – одним кадром присутствия;
+ *  3. сессии закрываются с 1012 параллельно, не дольше deadline-ms.
+ *     Их SessionDisconnectEvent-ы {@link WebSocketDisconnectListener}
+ *     пропускает – уход уже учтён.
+ *
+ * Со снимком (chat.snapshot.enabled) при остановке шаг 2 пропускается: онлайн
+ * и комнаты забирает снимок, и клиенты, закрытые с 1012, возвращаются к
+ * поднятому узлу. POST /admin/drain выводит узел из работы без рестарта –
+ * там снимок никто не поднимет, и уход всегда полный.
+ *
+ * При остановке drain идёт по ContextClosedEvent – раньше, чем Spring
+ * начинает останавливать брокер и закрывать сессии поодиночке.
+ */
+@Slf4j
+@Component
+public class NodeDrain implements ApplicationListener<ContextClosedEvent> {
+
+    /** Итог drain-а; rooms – деактивированные активные комнаты */
+    public record Report(boolean handoff, int users, int rooms,
+                         int sessions, int closed, int abandoned, long millis) {}
+
+    private final SessionGate     gate;
+    private final UserService     userService;
+    private final OnlineUserStore store;
+    private final boolean         snapshot;
+    private final long            deadlineMs;
+    private final int             parallelism;
+    private final boolean         onShutdown;
+
+    private Report report;   // guarded by this
+
+    public NodeDrain(SessionGate gate,
+                     UserService userService,
+                     OnlineUserStore store,
+                     Optional<StateSnapshotService> snapshot,
+                     @Value("${chat.drain.deadline-ms:10000}") long deadlineMs,
+                     @Value("${chat.drain.parallelism:32}") int parallelism,
+                     @Value("${chat.drain.on-shutdown:true}") boolean onShutdown) {
+        this.gate        = gate;
+        this.userService = userService;
+        this.store       = store;
+        this.snapshot    = snapshot.isPresent();
+        this.deadlineMs  = deadlineMs;
+        this.parallelism = parallelism;
+        this.onShutdown  = onShutdown;
+    }
+
+    /** drain начат – отключения сессий уже учтены им */
+    public boolean draining() {
+        return gate.isClosed();
+    }
+
+    /** Вывести узел (POST /admin/drain); повторный вызов дожидается первого и возвращает его итог */
+    public Report drain() {
+        return drain(false);
+    }
+
+    /** shutdown – узел останавливается, и его состояние заберёт снимок */
+    private synchronized Report drain(boolean shutdown) {
+        if (report != null) return report;
+        boolean handoff = shutdown && snapshot;
+        long started = System.nanoTime();
+        gate.close();
+
+        List<User> leaving = List.copyOf(store.local());
+        int users = leaving.size();
+        int rooms = handoff ? 0 : userService.drain(leaving);
+
+        long left = Math.max(0, deadlineMs - (System.nanoTime() - started) / 1_000_000);
+        SessionGate.Closing c = gate.closeAll(parallelism, Duration.ofMillis(left));
+
+        /* вошедшие, пока собирали список (CONNECT по уже открытой сессии) */
+        if (!handoff) {
+            List<User> late = List.copyOf(store.local());
+            users += late.size();
+            rooms += userService.drain(late);
+        }
+
+        report = new Report(handoff, users, rooms, c.sessions(), c.closed(), c.abandoned(),
+                (System.nanoTime() - started) / 1_000_000);
+        log.info("🚪 Drain узла: {}", report);
+        return report;
+    }
+
+    @Override
+    public void onApplicationEvent(ContextClosedEvent event) {
+        if (onShutdown) drain(true);
+    }
+}
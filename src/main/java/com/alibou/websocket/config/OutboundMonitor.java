@@ -0,0 +1,174 @@
+package com.alibou.websocket.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHandler;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.support.ExecutorChannelInterceptor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.WebSocketHandlerDecorator;
+import org.springframework.web.socket.handler.WebSocketHandlerDecoratorFactory;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Наблюдение за исходящим каналом.
+ *
+ *  • как interceptor clientOutboundChannel считает, сколько сообщений
+ *    каждой сессии стоит в очереди executor-а;
+ *  • как декоратор WebSocket-обработчика считает сессии, закрытые Spring-ом
+ *    из-за превышения send-time-limit / send-buffer-size-limit
+ *    (CloseStatus.SESSION_NOT_RELIABLE). Уборку такой сессии делает
+ *    обычный SessionDisconnectEvent → UserService.disconnect;
+ *  • как обработчик переполнения очереди executor-а ({@link #overflow()})
+ *    считает задачи, не влезшие в очередь, и выполняет их в отправившем
+ *    потоке: рассылка на число сессий больше очереди не теряет кадры,
+ *    а притормаживает отправителя. Память и медленных клиентов
+ *    ограничивают лимиты буфера каждой сессии.
+ */
+@Slf4j
+@Component
+public class OutboundMonitor implements ExecutorChannelInterceptor, WebSocketHandlerDecoratorFactory {
+
+    /** Срез для /admin/outbound */
+    public record Stats(int poolSize,
+                        int activeThreads,
+                        int queueDepth,
+                        int queueCapacity,
+                        int sessions,
+                        int maxPendingPerSession,
+                        String maxPendingSession,
+                        long evictions,
+                        long overflows) {}
+
+    private final ThreadPoolTaskExecutor executor;
+
+    /**
+     * sessionId → сообщений в очереди outbound-executor-а. Запись живёт от
+     * открытия до закрытия сессии: кадры после закрытия (DISCONNECT_ACK
+     * брокера) не заводят её заново.
+     */
+    private final Map<String, AtomicInteger> pending = new ConcurrentHashMap<>();
+    private final AtomicInteger              sessions  = new AtomicInteger();
+    private final AtomicLong                 evictions = new AtomicLong();
+    private final AtomicLong                 overflows = new AtomicLong();
+
+    public OutboundMonitor(@Lazy @Qualifier("clientOutboundChannelExecutor") ThreadPoolTaskExecutor executor) {
+        this.executor = executor;
+    }
+
+    /* =======================================================================
+                            очередь outbound-executor-а
+       ======================================================================= */
+
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        String sid = SimpMessageHeaderAccessor.getSessionId(message.getHeaders());
+        AtomicInteger n = sid == null ? null : pending.get(sid);
+        if (n != null) n.incrementAndGet();
+        return message;
+    }
+
+    @Override
+    public void afterSendCompletion(Message<?> message, MessageChannel channel, boolean sent, Exception ex) {
+        if (!sent || ex != null) release(message);                 // в очередь так и не попало
+    }
+
+    @Override
+    public void afterMessageHandled(Message<?> message, MessageChannel channel,
+                                    MessageHandler handler, Exception ex) {
+        release(message);
+    }
+
+    private void release(Message<?> message) {
+        String sid = SimpMessageHeaderAccessor.getSessionId(message.getHeaders());
+        AtomicInteger n = sid == null ? null : pending.get(sid);
+        if (n != null) n.decrementAndGet();
+    }
+
+    /**
+     * Очередь полна: отправить в вызывающем потоке (брокер, рассылка
+     * присутствия) вместо AbortPolicy, которая роняла бы кадры молча.
+     */
+    public RejectedExecutionHandler overflow() {
+        return (task, pool) -> {
+            if (overflows.getAndIncrement() == 0) {
+                log.warn("📮 Очередь исходящего канала переполнена ({} задач) – отправка в вызывающем потоке",
+                        pool.getQueue().size());
+            }
+            if (!pool.isShutdown()) task.run();
+        };
+    }
+
+    /* =======================================================================
+                                 сессии и вытеснение
+       ======================================================================= */
+
+    @Override
+    public WebSocketHandler decorate(WebSocketHandler handler) {
+        return new WebSocketHandlerDecorator(handler) {
+            @Override
+            public void afterConnectionEstablished(WebSocketSession session) throws Exception {
+                sessions.incrementAndGet();
+                pending.put(session.getId(), new AtomicInteger());
+                super.afterConnectionEstablished(session);
+            }
+
+            @Override
+            public void afterConnectionClosed(WebSocketSession session, CloseStatus status) throws Exception {
+                sessions.decrementAndGet();
+                pending.remove(session.getId());
+                if (CloseStatus.SESSION_NOT_RELIABLE.equalsCode(status)) {
+                    evictions.incrementAndGet();
+                    log.warn("🐢 Сессия {} вытеснена: не успевает забирать сообщения ({})",
+                            session.getId(), status.getReason());
+                }
+                super.afterConnectionClosed(session, status);
+            }
+        };
+    }
+
+    /* =======================================================================
+                                      метрики
+       ======================================================================= */
+
+    public long evictions() {
+        return evictions.get();
+    }
+
+    public long overflows() {
+        return overflows.get();
+    }
+
+    public int pendingFor(String sessionId) {
+        AtomicInteger n = pending.get(sessionId);
+        return n == null ? 0 : n.get();
+    }
+
+    public Stats stats() {
+        String worst = null;
+        int    max   = 0;
+        for (Map.Entry<String, AtomicInteger> e : pending.entrySet()) {
+            int n = e.getValue().get();
+            if (n > max) {
+                max   = n;
+                worst = e.getKey();
+            }
+        }
+        var pool = executor.getThreadPoolExecutor();
+        return new Stats(pool.getPoolSize(), pool.getActiveCount(),
+                pool.getQueue().size(), executor.getQueueCapacity(),
+                sessions.get(), max, worst, evictions.get(), overflows.get());
+    }
+}
@@ -0,0 +1,33 @@
+package com.alibou.websocket.config;
+
+import org.springframework.util.MimeType;
+import org.springframework.util.MimeTypeUtils;
+
+/** Кодировка тела кадров STOMP; клиент выбирает её заголовком accept в CONNECT */
+public enum PayloadFormat {
+
+    JSON (MimeTypeUtils.APPLICATION_JSON),
+    CBOR (new MimeType("application", "cbor")),
+    SMILE(new MimeType("application", "x-jackson-smile"));
+
+    private final MimeType mimeType;
+
+    PayloadFormat(MimeType mimeType) {
+        this.mimeType = mimeType;
+    }
+
+    public MimeType mimeType() {
+        return mimeType;
+    }
+
+    /** Первый из перечисленных в accept форматов, который мы умеем; иначе JSON */
+    public static PayloadFormat negotiate(String accept) {
+        if (accept == null || accept.isBlank()) return JSON;
+        for (MimeType wanted : MimeTypeUtils.parseMimeTypes(accept)) {
+            for (PayloadFormat f : values()) {
+                if (f.mimeType.equalsTypeAndSubtype(wanted)) return f;
+            }
+        }
+        return JSON;
+    }
+}
@@ -0,0 +1,200 @@
+package com.alibou.websocket.config;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHandler;
+import org.springframework.messaging.converter.DefaultContentTypeResolver;
+import org.springframework.messaging.converter.MappingJackson2MessageConverter;
+import org.springframework.messaging.converter.MessageConverter;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.ExecutorChannelInterceptor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MimeType;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.WebSocketHandlerDecorator;
+import org.springframework.web.socket.handler.WebSocketHandlerDecoratorFactory;
+import org.springframework.web.socket.handler.WebSocketSessionDecorator;
+import org.springframework.web.socket.sockjs.transport.SockJsSession;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * JSON по умолчанию и CBOR / Smile по желанию клиента.
+ *
+ *  • все три ObjectMapper-а – копии общего (Spring Boot) с его модулями и настройками;
+ *  • {@link #converters()} – конвертеры для брокера и @MessageMapping: входящий
+ *    SEND с content-type application/cbor или application/x-jackson-smile
+ *    читается своим конвертером, исходящие кадры сервер пишет в JSON один раз;
+ *  • клиент выбирает формат заголовком {@code accept} в CONNECT; его кадры
+ *    MESSAGE перекодируются в потоках clientOutboundChannel (широковещательный
+ *    кадр – один раз на формат, а не на каждого подписчика) и уходят
+ *    бинарными WebSocket-кадрами;
+ *  • SockJS умеет только текст: там accept игнорируется, сессия остаётся на JSON.
+ */
+@Component
+public class PayloadFormats implements ExecutorChannelInterceptor, WebSocketHandlerDecoratorFactory {
+
+    public static final String ACCEPT_HEADER = "accept";
+
+    private final Map<PayloadFormat, ObjectMapper> mappers = new EnumMap<>(PayloadFormat.class);
+
+    /** сессии на «голом» WebSocket – только им можно слать бинарные кадры */
+    private final Set<String>                binaryCapable = ConcurrentHashMap.newKeySet();
+    /** sessionId → формат, выбранный в CONNECT (JSON не хранится) */
+    private final Map<String, PayloadFormat> chosen        = new ConcurrentHashMap<>();
+
+    /** последний перекодированный кадр каждого формата: JSON-байты → результат */
+    private final Map<PayloadFormat, Transcoded> last = new ConcurrentHashMap<>();
+
+    private record Transcoded(byte[] json, byte[] encoded) {}
+
+    public PayloadFormats(ObjectMapper objectMapper) {
+        mappers.put(PayloadFormat.JSON,  objectMapper);
+        mappers.put(PayloadFormat.CBOR,  objectMapper.copyWith(new CBORFactory()));
+        mappers.put(PayloadFormat.SMILE, objectMapper.copyWith(new SmileFactory()));
+    }
+
+    public ObjectMapper mapper(PayloadFormat format) {
+        return mappers.get(format);
+    }
+
+    /** JSON первым (он же по умолчанию), бинарные – только при точном content-type */
+    public List<MessageConverter> converters() {
+        List<MessageConverter> out = new ArrayList<>();
+        for (PayloadFormat f : PayloadFormat.values()) {
+            MappingJackson2MessageConverter c = new MappingJackson2MessageConverter(f.mimeType());
+            c.setObjectMapper(mappers.get(f));
+            if (f == PayloadFormat.JSON) {
+                DefaultContentTypeResolver resolver = new DefaultContentTypeResolver();
+                resolver.setDefaultMimeType(f.mimeType());
+                c.setContentTypeResolver(resolver);
+            } else {
+                c.setStrictContentTypeMatch(true);
+            }
+            out.add(c);
+        }
+        return out;
+    }
+
+    /* =======================================================================
+                    каналы: выбор формата (inbound), перекодирование (outbound)
+       ======================================================================= */
+
+    /** CONNECT: запомнить формат сессии */
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        if (SimpMessageHeaderAccessor.getMessageType(message.getHeaders()) == SimpMessageType.CONNECT) {
+            String        sid    = SimpMessageHeaderAccessor.getSessionId(message.getHeaders());
+            PayloadFormat format = PayloadFormat.negotiate(
+                    StompHeaderAccessor.wrap(message).getFirstNativeHeader(ACCEPT_HEADER));
+            if (sid != null && format != PayloadFormat.JSON && binaryCapable.contains(sid)) chosen.put(sid, format);
+        }
+        return message;
+    }
+
+    /** MESSAGE: перекодировать уже в потоке отправки, а не в потоке брокера */
+    @Override
+    public Message<?> beforeHandle(Message<?> message, MessageChannel channel, MessageHandler handler) {
+        if (SimpMessageHeaderAccessor.getMessageType(message.getHeaders()) != SimpMessageType.MESSAGE) return message;
+        String        sid    = SimpMessageHeaderAccessor.getSessionId(message.getHeaders());
+        PayloadFormat format = sid == null ? null : chosen.get(sid);
+        return format == null ? message : transcode(message, format);
+    }
+
+    private Message<?> transcode(Message<?> message, PayloadFormat format) {
+        if (!(message.getPayload() instanceof byte[] json) || json.length == 0) return message;
+        SimpMessageHeaderAccessor headers = SimpMessageHeaderAccessor.wrap(message);
+        MimeType type = headers.getContentType();
+        if (type != null && !PayloadFormat.JSON.mimeType().equalsTypeAndSubtype(type)) return message;
+
+        headers.setContentType(format.mimeType());
+        headers.removeNativeHeader(StompHeaderAccessor.STOMP_CONTENT_TYPE_HEADER);
+        headers.removeNativeHeader(StompHeaderAccessor.STOMP_CONTENT_LENGTH_HEADER);
+        return MessageBuilder.createMessage(encode(json, format), headers.getMessageHeaders());
+    }
+
+    /** JSON-байты кадра → format; один и тот же кадр всем подписчикам кодируется один раз */
+    public byte[] encode(byte[] json, PayloadFormat format) {
+        Transcoded t = last.get(format);
+        if (t != null && t.json() == json) return t.encoded();
+        try {
+            JsonNode tree    = mappers.get(PayloadFormat.JSON).readTree(json);
+            byte[]   encoded = mappers.get(format).writeValueAsBytes(tree);
+            last.put(format, new Transcoded(json, encoded));
+            return encoded;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Не удалось перекодировать кадр в " + format, e);
+        }
+    }
+
+    /* =======================================================================
+                         сессии: бинарные кадры для «голого» WebSocket
+       ======================================================================= */
+
+    @Override
+    public WebSocketHandler decorate(WebSocketHandler handler) {
+        return new WebSocketHandlerDecorator(handler) {
+            @Override
+            public void afterConnectionEstablished(WebSocketSession session) throws Exception {
+                if (session instanceof SockJsSession) {
+                    super.afterConnectionEstablished(session);
+                    return;
+                }
+                binaryCapable.add(session.getId());
+                super.afterConnectionEstablished(new BinaryFrames(session));
+            }
+
+            @Override
+            public void afterConnectionClosed(WebSocketSession session, CloseStatus status) throws Exception {
+                binaryCapable.remove(session.getId());
+                chosen.remove(session.getId());
+                super.afterConnectionClosed(session, status);
+            }
+        };
+    }
+
+    /**
+     * Spring шлёт бинарным кадром только application/octet-stream, остальное –
+     * TextMessage из тех же байтов; сессии с CBOR / Smile отдаём сами байты.
+     */
+    private final class BinaryFrames extends WebSocketSessionDecorator {
+
+        BinaryFrames(WebSocketSession session) {
+            super(session);
+        }
+
+        @Override
+        public void sendMessage(WebSocketMessage<?> message) throws IOException {
+            if (message instanceof TextMessage text && chosen.containsKey(getId())) {
+                super.sendMessage(new BinaryMessage(text.asBytes()));
+            } else {
+                super.sendMessage(message);
+            }
+        }
+    }
+
+    /* ---------- метрики ---------- */
+
+    public int binarySessions() {
+        return chosen.size();
+    }
+}
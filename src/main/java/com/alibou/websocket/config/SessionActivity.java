@@ -0,0 +1,168 @@
+package com.alibou.websocket.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.WebSocketHandlerDecorator;
+import org.springframework.web.socket.handler.WebSocketHandlerDecoratorFactory;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Живость сессий по входящим кадрам (chat.liveness.mode=heartbeat).
+ *
+ *  • декоратор WebSocket-обработчика отмечает время последнего кадра
+ *    сессии – heartbeat-а или любого STOMP-кадра: одна запись в уже
+ *    существующую ячейку, без таймеров на сообщение;
+ *  • раз в heartbeat-ms обход на планировщике брокера закрывает сессии,
+ *    молчащие дольше timeout-ms (проверка каждой – O(1)). Уборку делает
+ *    обычный SessionDisconnectEvent → UserService.disconnect.
+ *
+ * Простой брокер и сам закрывает сессию без heartbeat-ов, но только если
+ * клиент их согласовал; обход ловит и клиентов с heart-beat:0,0, и режим
+ * кластера, где heartbeat-ы уходят во внешний брокер.
+ */
+@Slf4j
+public class SessionActivity implements WebSocketHandlerDecoratorFactory, SmartLifecycle {
+
+    /** Закрытие молчащей сессии; коды 4000–4999 – для приложений */
+    static final CloseStatus SILENT = new CloseStatus(4000, "no heartbeat");
+
+    private static final class Slot {
+        final WebSocketSession session;
+        volatile long          lastSeen;
+
+        Slot(WebSocketSession session, long now) {
+            this.session  = session;
+            this.lastSeen = now;
+        }
+    }
+
+    private final long          heartbeatMs;
+    private final long          timeoutMs;
+    private final TaskScheduler scheduler;
+
+    private final Map<String, Slot> slots  = new ConcurrentHashMap<>();
+    private final AtomicLong        closed = new AtomicLong();
+    private volatile ScheduledFuture<?> sweep;
+
+    /**
+     * @param heartbeatMs интервал heartbeat-ов в обе стороны и шаг обхода
+     * @param timeoutMs   сколько сессия может молчать; 0 – три интервала
+     */
+    public SessionActivity(long heartbeatMs, long timeoutMs, TaskScheduler scheduler) {
+        this.heartbeatMs = heartbeatMs;
+        this.timeoutMs   = timeoutMs > 0 ? timeoutMs : 3 * heartbeatMs;
+        this.scheduler   = scheduler;
+    }
+
+    /** heart-beat сервера для CONNECTED: шлём и ждём раз в heartbeatMs */
+    public long[] heartbeat() {
+        return new long[]{heartbeatMs, heartbeatMs};
+    }
+
+    /** Планировщик брокера: на нём же heartbeat-ы простого брокера */
+    public TaskScheduler scheduler() {
+        return scheduler;
+    }
+
+    /* =======================================================================
+                                 входящие кадры
+       ======================================================================= */
+
+    @Override
+    public WebSocketHandler decorate(WebSocketHandler handler) {
+        return new WebSocketHandlerDecorator(handler) {
+            @Override
+            public void afterConnectionEstablished(WebSocketSession session) throws Exception {
+                slots.put(session.getId(), new Slot(session, System.currentTimeMillis()));
+                super.afterConnectionEstablished(session);
+            }
+
+            @Override
+            public void handleMessage(WebSocketSession session, WebSocketMessage<?> message) throws Exception {
+                seen(session.getId(), System.currentTimeMillis());
+                super.handleMessage(session, message);
+            }
+
+            @Override
+            public void afterConnectionClosed(WebSocketSession session, CloseStatus status) throws Exception {
+                slots.remove(session.getId());
+                super.afterConnectionClosed(session, status);
+            }
+        };
+    }
+
+    void seen(String sessionId, long now) {
+        Slot s = slots.get(sessionId);
+        if (s != null) s.lastSeen = now;
+    }
+
+    /** Сколько мс сессия молчит; -1 – сессии нет */
+    public long idleMillis(String sessionId) {
+        Slot s = slots.get(sessionId);
+        return s == null ? -1 : System.currentTimeMillis() - s.lastSeen;
+    }
+
+    /* =======================================================================
+                                      обход
+       ======================================================================= */
+
+    /** Закрыть молчащие дольше timeoutMs; @return сколько закрыто */
+    int sweep(long now) {
+        int n = 0;
+        for (Slot s : slots.values()) {
+            if (now - s.lastSeen <= timeoutMs) continue;
+            slots.remove(s.session.getId(), s);
+            try {
+                s.session.close(SILENT);
+            } catch (IOException e) {
+                log.debug("Сессия {} закрылась с ошибкой: {}", s.session.getId(), e.toString());
+            }
+            n++;
+        }
+        if (n > 0) {
+            closed.addAndGet(n);
+            log.info("💤 Закрыто сессий без heartbeat-ов: {}", n);
+        }
+        return n;
+    }
+
+    @Override
+    public void start() {
+        sweep = scheduler.scheduleWithFixedDelay(() -> sweep(System.currentTimeMillis()),
+                Duration.ofMillis(heartbeatMs));
+    }
+
+    @Override
+    public void stop() {
+        ScheduledFuture<?> f = sweep;
+        if (f != null) f.cancel(false);
+        sweep = null;
+    }
+
+    @Override
+    public boolean isRunning() {
+        return sweep != null;
+    }
+
+    /* ---------- метрики ---------- */
+
+    public int sessions() {
+        return slots.size();
+    }
+
+    /** Сессии, закрытые обходом с момента старта */
+    public long closed() {
+        return closed.get();
+    }
+}
@@ -0,0 +1,140 @@
+package com.alibou.websocket.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.WebSocketHandlerDecorator;
+import org.springframework.web.socket.handler.WebSocketHandlerDecoratorFactory;
+import org.springframework.web.socket.server.HandshakeInterceptor;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Вход WebSocket-сессий на узел и их массовое закрытие при drain.
+ *
+ *  • пока ворота открыты, рукопожатие проходит как обычно, а декоратор
+ *    обработчика держит список открытых сессий;
+ *  • {@link #close()} – новые рукопожатия получают 503; сессия, успевшая
+ *    установиться в момент закрытия, сразу закрывается с 1012;
+ *  • {@link #closeAll} закрывает все открытые сессии параллельно и не
+ *    дольше дедлайна: кто не успел, остаётся на обычную остановку Spring.
+ */
+@Slf4j
+@Component
+public class SessionGate implements WebSocketHandlerDecoratorFactory, HandshakeInterceptor {
+
+    /** Итог массового закрытия; abandoned – не уложились в дедлайн */
+    public record Closing(int sessions, int closed, int abandoned) {}
+
+    private final Map<String, WebSocketSession> open = new ConcurrentHashMap<>();
+    private volatile boolean closed;
+
+    /** Больше не принимать новые сессии */
+    public void close() {
+        closed = true;
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /* =======================================================================
+                                   ВХОД
+       ======================================================================= */
+
+    @Override
+    public boolean beforeHandshake(ServerHttpRequest request, ServerHttpResponse response,
+                                   WebSocketHandler wsHandler, Map<String, Object> attributes) {
+        if (!closed) return true;
+        response.setStatusCode(HttpStatus.SERVICE_UNAVAILABLE);
+        return false;
+    }
+
+    @Override
+    public void afterHandshake(ServerHttpRequest request, ServerHttpResponse response,
+                               WebSocketHandler wsHandler, Exception exception) {
+    }
+
+    @Override
+    public WebSocketHandler decorate(WebSocketHandler handler) {
+        return new WebSocketHandlerDecorator(handler) {
+            @Override
+            public void afterConnectionEstablished(WebSocketSession session) throws Exception {
+                open.put(session.getId(), session);
+                super.afterConnectionEstablished(session);
+                if (closed) session.close(CloseStatus.SERVICE_RESTARTED);   // проскочила в момент закрытия
+            }
+
+            @Override
+            public void afterConnectionClosed(WebSocketSession session, CloseStatus status) throws Exception {
+                open.remove(session.getId());
+                super.afterConnectionClosed(session, status);
+            }
+        };
+    }
+
+    /* =======================================================================
+                                 ЗАКРЫТИЕ
+       ======================================================================= */
+
+    /**
+     * Закрыть все открытые сессии с 1012 (клиент переподключается к другому
+     * узлу или к этому после рестарта): parallelism потоков, не дольше deadline.
+     */
+    public Closing closeAll(int parallelism, Duration deadline) {
+        List<WebSocketSession> sessions = new ArrayList<>(open.values());
+        if (sessions.isEmpty()) return new Closing(0, 0, 0);
+
+        AtomicInteger n = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, Math.min(parallelism, sessions.size())), r -> {
+            Thread t = new Thread(r, "drain-close-" + n.getAndIncrement());
+            t.setDaemon(true);
+            return t;
+        });
+        List<Callable<Void>> tasks = new ArrayList<>(sessions.size());
+        for (WebSocketSession s : sessions) {
+            tasks.add(() -> {
+                try {
+                    s.close(CloseStatus.SERVICE_RESTARTED);
+                } catch (IOException e) {
+                    log.debug("Сессия {} закрылась с ошибкой: {}", s.getId(), e.toString());
+                }
+                return null;
+            });
+        }
+
+        int done = 0;
+        try {
+            for (Future<Void> f : pool.invokeAll(tasks, deadline.toMillis(), TimeUnit.MILLISECONDS)) {
+                if (!f.isCancelled()) done++;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            pool.shutdownNow();
+        }
+        return new Closing(sessions.size(), done, sessions.size() - done);
+    }
+
+    /* ---------- метрики ---------- */
+
+    public int sessions() {
+        return open.size();
+    }
+}
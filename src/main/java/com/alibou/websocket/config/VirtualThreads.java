@@ -0,0 +1,97 @@
+package com.alibou.websocket.config;
+
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Виртуальные потоки для режима chat.threads.virtual=true.
+ *
+ * Сборка по умолчанию остаётся на Java 17, поэтому Thread.ofVirtual()
+ * и Executors.newThreadPerTaskExecutor() достаются через MethodHandle:
+ * на Java 21+ режим работает и без профиля jdk21, на 17 – приложение
+ * падает при старте с понятной ошибкой, а не где-то в обработке кадра.
+ */
+public final class VirtualThreads {
+
+    private static final MethodHandle OF_VIRTUAL;      // Thread.ofVirtual()
+    private static final MethodHandle NAME;            // Thread.Builder.name(String, long)
+    private static final MethodHandle FACTORY;         // Thread.Builder.factory()
+    private static final MethodHandle PER_TASK;        // Executors.newThreadPerTaskExecutor(ThreadFactory)
+
+    static {
+        MethodHandle ofVirtual = null, name = null, factory = null, perTask = null;
+        try {
+            MethodHandles.Lookup lookup  = MethodHandles.publicLookup();
+            Class<?>             builder = Class.forName("java.lang.Thread$Builder");
+            Class<?>             virtual = Class.forName("java.lang.Thread$Builder$OfVirtual");
+            ofVirtual = lookup.findStatic(Thread.class, "ofVirtual", MethodType.methodType(virtual));
+            name      = lookup.findVirtual(builder, "name", MethodType.methodType(builder, String.class, long.class));
+            factory   = lookup.findVirtual(builder, "factory", MethodType.methodType(ThreadFactory.class));
+            perTask   = lookup.findStatic(java.util.concurrent.Executors.class, "newThreadPerTaskExecutor",
+                    MethodType.methodType(ExecutorService.class, ThreadFactory.class));
+        } catch (ReflectiveOperationException ignored) {
+            // JVM младше 21 – supported() вернёт false
+        }
+        OF_VIRTUAL = ofVirtual;
+        NAME       = name;
+        FACTORY    = factory;
+        PER_TASK   = perTask;
+    }
+
+    private VirtualThreads() {
+    }
+
+    public static boolean supported() {
+        return PER_TASK != null;
+    }
+
+    public static void requireSupported() {
+        if (!supported()) {
+            throw new IllegalStateException("chat.threads.virtual=true требует Java 21+, сейчас "
+                    + Runtime.version() + ": запустите на JDK 21 или выключите режим");
+        }
+    }
+
+    /** Фабрика виртуальных потоков с именами prefix0, prefix1, … */
+    public static ThreadFactory factory(String prefix) {
+        requireSupported();
+        try {
+            return (ThreadFactory) FACTORY.invoke(NAME.invoke(OF_VIRTUAL.invoke(), prefix, 0L));
+        } catch (Throwable ex) {
+            throw new IllegalStateException("Не удалось создать фабрику виртуальных потоков", ex);
+        }
+    }
+
+    /** Новый виртуальный поток на каждую задачу (Tomcat) */
+    public static ExecutorService perTaskExecutor(String prefix) {
+        ThreadFactory threads = factory(prefix);
+        try {
+            return (ExecutorService) PER_TASK.invoke(threads);
+        } catch (Throwable ex) {
+            throw new IllegalStateException("Не удалось создать executor виртуальных потоков", ex);
+        }
+    }
+
+    /**
+     * Executor канала STOMP на виртуальных потоках. Остаётся
+     * ThreadPoolTaskExecutor-ом, чтобы очередь и её лимит (и /admin/outbound)
+     * работали как у пула платформенных потоков: до concurrency задач
+     * получают каждая свой виртуальный поток, остальные ждут в очереди.
+     * Простаивающие потоки завершаются, держать их незачем.
+     */
+    public static ThreadPoolTaskExecutor channelExecutor(String prefix, int concurrency, int queueCapacity) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setThreadFactory(factory(prefix));
+        executor.setCorePoolSize(concurrency);
+        executor.setMaxPoolSize(concurrency);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setKeepAliveSeconds(10);
+        executor.setAllowCoreThreadTimeOut(true);
+        return executor;
+    }
+}
@@ -0,0 +1,29 @@
+package com.alibou.websocket.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Режим виртуальных потоков: запросы Tomcat (REST, SockJS, WebSocket-кадры)
+ * обрабатываются каждый в своём виртуальном потоке вместо пула из
+ * server.tomcat.threads.max платформенных. Каналы STOMP переключает
+ * {@link WebSocketConfig} по тому же свойству.
+ */
+@Slf4j
+@Configuration
+@ConditionalOnProperty(name = "chat.threads.virtual", havingValue = "true")
+public class VirtualThreadsConfig {
+
+    public VirtualThreadsConfig() {
+        VirtualThreads.requireSupported();
+        log.info("🧵 Режим виртуальных потоков: Tomcat, clientInboundChannel, clientOutboundChannel");
+    }
+
+    @Bean
+    public TomcatProtocolHandlerCustomizer<?> virtualThreadsProtocolHandlerCustomizer() {
+        return handler -> handler.setExecutor(VirtualThreads.perTaskExecutor("tomcat-handler-"));
+    }
+}
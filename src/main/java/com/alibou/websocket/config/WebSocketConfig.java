@@ -1,45 +1,169 @@
 package com.alibou.websocket.config;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.alibou.websocket.cluster.NodeLocalSubscriptions;
+import jakarta.servlet.ServletContext;
+import jakarta.websocket.server.ServerContainer;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Configuration;
-import org.springframework.messaging.converter.DefaultContentTypeResolver;
-import org.springframework.messaging.converter.MappingJackson2MessageConverter;
 import org.springframework.messaging.converter.MessageConverter;
+import org.springframework.messaging.simp.config.ChannelRegistration;
 import org.springframework.messaging.simp.config.MessageBrokerRegistry;
-import org.springframework.util.MimeTypeUtils;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.web.socket.config.annotation.EnableWebSocketMessageBroker;
 import org.springframework.web.socket.config.annotation.StompEndpointRegistry;
 import org.springframework.web.socket.config.annotation.WebSocketMessageBrokerConfigurer;
+import org.springframework.web.socket.config.annotation.WebSocketTransportRegistration;
+import org.springframework.web.context.ServletContextAware;
+import org.springframework.web.socket.sockjs.transport.handler.WebSocketTransportHandler;
 
 import java.util.List;
+import java.util.Optional;
 
 @Configuration
 @EnableWebSocketMessageBroker
-public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
+@RequiredArgsConstructor
+public class WebSocketConfig implements WebSocketMessageBrokerConfigurer, ServletContextAware {
+
+    private final OutboundMonitor outboundMonitor;
+    private final PayloadFormats  payloadFormats;
+    private final SessionGate     sessionGate;
+
+    /** Есть при chat.liveness.mode=heartbeat (см. {@link LivenessConfig}) */
+    private final Optional<SessionActivity> sessionActivity;
+
+    /* ---------- исходящий канал (см. application.properties) ---------- */
+    @Value("${chat.ws.outbound.core-pool-size:8}")       private int outboundCorePool;
+    @Value("${chat.ws.outbound.max-pool-size:32}")       private int outboundMaxPool;
+    @Value("${chat.ws.outbound.queue-capacity:10000}")   private int outboundQueue;
+    @Value("${chat.ws.send-time-limit-ms:5000}")         private int sendTimeLimitMs;
+    @Value("${chat.ws.send-buffer-bytes:262144}")        private int sendBufferBytes;
+    @Value("${chat.ws.message-size-limit-bytes:65536}")  private int messageSizeLimit;
+
+    /* ---------- рукопожатие и буферы контейнера ---------- */
+    @Value("${chat.ws.deflate:true}")                    private boolean deflate;
+    @Value("${chat.ws.container-buffer-bytes:65536}")    private int     containerBufferBytes;
+
+    /* ---------- виртуальные потоки вместо пулов каналов (см. VirtualThreadsConfig) ---------- */
+    @Value("${chat.threads.virtual:false}")              private boolean virtualThreads;
+    @Value("${chat.threads.virtual-concurrency:10000}")  private int     virtualConcurrency;
+
+    /* ---------- кластерный режим: общий STOMP-брокер вместо встроенного ---------- */
+    @Value("${chat.cluster.enabled:false}")              private boolean clustered;
+    @Value("${chat.cluster.broker-host:localhost}")      private String  brokerHost;
+    @Value("${chat.cluster.broker-port:61613}")          private int     brokerPort;
+    @Value("${chat.presence.destination:/topic/public}") private String  presenceDestination;
 
     @Override
     public void configureMessageBroker(MessageBrokerRegistry registry) {
         // Чтобы поддерживались топики и очереди
-        registry.enableSimpleBroker("/topic", "/queue");
+        if (clustered) {
+            // подписки и рассылки всех узлов сходятся в одном брокере
+            registry.enableStompBrokerRelay("/topic", "/queue")
+                    .setRelayHost(brokerHost)
+                    .setRelayPort(brokerPort);
+        } else {
+            var broker = registry.enableSimpleBroker("/topic", "/queue");
+            // heartbeat-ы в обе стороны: мёртвое соединение брокер закрывает сам
+            sessionActivity.ifPresent(a -> broker.setHeartbeatValue(a.heartbeat()).setTaskScheduler(a.scheduler()));
+        }
         registry.setApplicationDestinationPrefixes("/app");
         // Для точечных сообщений
         registry.setUserDestinationPrefix("/user");
     }
 
+    /**
+     * /stomp – «голый» WebSocket без кадрирования SockJS: клиент пробует его
+     * первым. /ws – SockJS для сетей, где WebSocket не проходит (и его
+     * /ws/websocket для старых клиентов без SockJS). На drain-е оба отвечают
+     * 503 ({@link SessionGate}).
+     */
     @Override
     public void registerStompEndpoints(StompEndpointRegistry registry) {
+        DeflateHandshakeHandler handshake = new DeflateHandshakeHandler(deflate);
+        registry.addEndpoint("/stomp")
+                .setHandshakeHandler(handshake)
+                .addInterceptors(sessionGate);
         registry.addEndpoint("/ws")
-                .withSockJS();
+                .addInterceptors(sessionGate)
+                .withSockJS()
+                .setTransportHandlerOverrides(new WebSocketTransportHandler(handshake));
+    }
+
+    /**
+     * Буфер входящего кадра у Tomcat – на каждую сессию, 8 КБ по умолчанию:
+     * кадр больше буфера Tomcat не собирает и закрывает сессию (1009), хотя
+     * STOMP разрешает до message-size-limit. Выравниваем их.
+     * (ServletServerContainerFactoryBean не годится: без Tomcat – MOCK-тесты –
+     * он падает при старте.)
+     */
+    @Override
+    public void setServletContext(ServletContext servletContext) {
+        if (servletContext.getAttribute(ServerContainer.class.getName()) instanceof ServerContainer container) {
+            container.setDefaultMaxTextMessageBufferSize(containerBufferBytes);
+            container.setDefaultMaxBinaryMessageBufferSize(containerBufferBytes);
+        }
+    }
+
+    /**
+     * В кластере подписка на /topic/public получает поток присутствия своего узла.
+     * В режиме виртуальных потоков кадры клиентов обрабатываются каждый в своём
+     * потоке: блокировки save() и JDBC-хранилищ не выбирают пул.
+     */
+    @Override
+    public void configureClientInboundChannel(ChannelRegistration registration) {
+        registration.interceptors(payloadFormats);                   // accept в CONNECT
+        if (clustered) {
+            registration.interceptors(new NodeLocalSubscriptions("/topic/public", presenceDestination));
+        }
+        if (virtualThreads) {
+            registration.taskExecutor(VirtualThreads.channelExecutor("ws-in-", virtualConcurrency, Integer.MAX_VALUE));
+        }
+    }
+
+    /**
+     * Ограниченная очередь вместо неограниченной очереди по умолчанию;
+     * обслуживает её пул платформенных потоков или виртуальные потоки.
+     * Рассылка на сессий больше, чем мест в очереди, не теряет кадры:
+     * лишнее отправляет вызывающий поток ({@link OutboundMonitor#overflow()}).
+     */
+    @Override
+    public void configureClientOutboundChannel(ChannelRegistration registration) {
+        registration.interceptors(outboundMonitor, payloadFormats);
+        ThreadPoolTaskExecutor executor;
+        if (virtualThreads) {
+            executor = VirtualThreads.channelExecutor("ws-out-", virtualConcurrency, outboundQueue);
+        } else {
+            executor = new ThreadPoolTaskExecutor();
+            executor.setThreadNamePrefix("clientOutboundChannel-");
+            executor.setCorePoolSize(outboundCorePool);
+            executor.setMaxPoolSize(outboundMaxPool);
+            executor.setQueueCapacity(outboundQueue);
+        }
+        executor.setRejectedExecutionHandler(outboundMonitor.overflow());
+        registration.taskExecutor(executor);
+    }
+
+    /**
+     * Буфер отправки каждой сессии ограничен по размеру и по времени:
+     * сессию, которая не успевает забирать сообщения, Spring закрывает
+     * (SESSION_NOT_RELIABLE), а не держит под неё поток и память.
+     */
+    @Override
+    public void configureWebSocketTransport(WebSocketTransportRegistration registration) {
+        registration.setSendTimeLimit(sendTimeLimitMs)
+                .setSendBufferSizeLimit(sendBufferBytes)
+                .setMessageSizeLimit(messageSizeLimit)
+                .addDecoratorFactory(outboundMonitor)
+                .addDecoratorFactory(payloadFormats)
+                .addDecoratorFactory(sessionGate);
+        sessionActivity.ifPresent(registration::addDecoratorFactory);
     }
 
+    /** JSON по умолчанию, CBOR / Smile по content-type – см. {@link PayloadFormats} */
     @Override
     public boolean configureMessageConverters(List<MessageConverter> messageConverters) {
-        DefaultContentTypeResolver resolver = new DefaultContentTypeResolver();
-        resolver.setDefaultMimeType(MimeTypeUtils.APPLICATION_JSON);
-        MappingJackson2MessageConverter converter = new MappingJackson2MessageConverter();
-        converter.setObjectMapper(new ObjectMapper());
-        converter.setContentTypeResolver(resolver);
-        messageConverters.add(converter);
+        messageConverters.addAll(payloadFormats.converters());
         return false;
     }
 }
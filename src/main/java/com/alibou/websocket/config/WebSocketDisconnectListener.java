@@ -1,7 +1,6 @@
 package com.alibou.websocket.config;
 
-import com.alibou.websocket.user.Status;
-import com.alibou.websocket.user.User;
+import com.alibou.websocket.user.OnlineUserStore;
 import com.alibou.websocket.user.UserService;
 import lombok.RequiredArgsConstructor;
 import org.springframework.context.ApplicationListener;
@@ -14,13 +13,20 @@ import org.springframework.web.socket.messaging.SessionDisconnectEvent;
 public class WebSocketDisconnectListener
         implements ApplicationListener<SessionDisconnectEvent> {
 
-    private final UserService userService;   // внедряем наш сервис
+    private final UserService     userService;   // внедряем наш сервис
+    private final OnlineUserStore store;
+    private final NodeDrain       drain;         // при drain-е уход всех уже учтён разом
 
     @Override
     public void onApplicationEvent(SessionDisconnectEvent ev) {
+        if (drain.draining()) return;
         StompHeaderAccessor acc = StompHeaderAccessor.wrap(ev.getMessage());
-        String nick = acc.getFirstNativeHeader("nickName");
         String ses  = acc.getSessionId();                // ← ID этой сессии
+        String nick = acc.getFirstNativeHeader("nickName");
+        if (nick == null) {
+            // у DISCONNECT, сгенерированного при обрыве/вытеснении сессии, заголовков нет
+            nick = store.nickOf(ses);
+        }
         if (nick != null) {
             userService.disconnect(nick, ses);
         }
@@ -0,0 +1,5 @@
+package com.alibou.websocket.exception;
+
+public class RegularAlreadyTakenException extends RuntimeException {
+    public RegularAlreadyTakenException(String message) { super(message); }
+}
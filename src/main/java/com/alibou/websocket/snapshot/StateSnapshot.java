@@ -0,0 +1,108 @@
+package com.alibou.websocket.snapshot;
+
+import com.alibou.websocket.chatroom.ChatInactivityService.PendingTimer;
+import com.alibou.websocket.chatroom.ChatRoom;
+import com.alibou.websocket.user.Status;
+import com.alibou.websocket.user.User;
+import com.alibou.websocket.user.UserRole;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Снимок in-memory состояния: онлайн, комнаты и остатки таймеров.
+ *
+ * Бинарный формат (DataOutput, big-endian):
+ * <pre>
+ *   int   MAGIC            "CSNP"
+ *   short VERSION
+ *   long  takenAt          epoch millis
+ *   int   n; n × { utf nick, byte status, byte role }
+ *   int   n; n × { utf chatId, utf sender, utf recipient, boolean active }
+ *   int   n; n × { boolean pair, [utf engineerId], utf userId, long remainingMs }
+ * </pre>
+ * Enum-ы пишутся порядковым номером, поэтому новое значение в Status или
+ * UserRole добавляется только в конец, а любое другое изменение формата
+ * требует поднять {@link #VERSION}.
+ */
+record StateSnapshot(long takenAt,
+                     List<User> users,
+                     List<ChatRoom> rooms,
+                     List<PendingTimer> timers) {
+
+    static final int   MAGIC   = 0x43534E50;           // "CSNP"
+    static final short VERSION = 1;
+
+    /** Файл другого формата или версии */
+    static final class UnsupportedFormatException extends IOException {
+        UnsupportedFormatException(String message) {
+            super(message);
+        }
+    }
+
+    void writeTo(DataOutput out) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeShort(VERSION);
+        out.writeLong(takenAt);
+
+        out.writeInt(users.size());
+        for (User u : users) {
+            out.writeUTF(u.getNickName());
+            out.writeByte(u.getStatus().ordinal());
+            out.writeByte(u.getRole().ordinal());
+        }
+
+        out.writeInt(rooms.size());
+        for (ChatRoom r : rooms) {
+            out.writeUTF(r.getChatId());
+            out.writeUTF(r.getSenderId());
+            out.writeUTF(r.getRecipientId());
+            out.writeBoolean(r.isActive());
+        }
+
+        out.writeInt(timers.size());
+        for (PendingTimer t : timers) {
+            out.writeBoolean(t.engineerId() != null);
+            if (t.engineerId() != null) out.writeUTF(t.engineerId());
+            out.writeUTF(t.userId());
+            out.writeLong(t.remainingMs());
+        }
+    }
+
+    static StateSnapshot readFrom(DataInput in) throws IOException {
+        if (in.readInt() != MAGIC) {
+            throw new UnsupportedFormatException("не файл снимка");
+        }
+        short version = in.readShort();
+        if (version != VERSION) {
+            throw new UnsupportedFormatException("версия " + version + ", ожидается " + VERSION);
+        }
+        long takenAt = in.readLong();
+
+        Status[]   statuses = Status.values();
+        UserRole[] roles    = UserRole.values();
+
+        int n = in.readInt();
+        List<User> users = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            users.add(new User(in.readUTF(), statuses[in.readByte()], roles[in.readByte()]));
+        }
+
+        n = in.readInt();
+        List<ChatRoom> rooms = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            rooms.add(new ChatRoom(in.readUTF(), in.readUTF(), in.readUTF(), in.readBoolean()));
+        }
+
+        n = in.readInt();
+        List<PendingTimer> timers = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            String engineerId = in.readBoolean() ? in.readUTF() : null;
+            timers.add(new PendingTimer(engineerId, in.readUTF(), in.readLong()));
+        }
+        return new StateSnapshot(takenAt, users, rooms, timers);
+    }
+}
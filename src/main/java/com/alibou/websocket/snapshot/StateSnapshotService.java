@@ -0,0 +1,170 @@
+package com.alibou.websocket.snapshot;
+
+import com.alibou.websocket.chatroom.ChatInactivityService;
+import com.alibou.websocket.chatroom.ChatRoomService;
+import com.alibou.websocket.user.OnlineUserStore;
+import com.alibou.websocket.user.User;
+import com.alibou.websocket.user.UserService;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.event.ContextClosedEvent;
+import org.springframework.stereotype.Service;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Снимок состояния для быстрого рестарта.
+ *
+ *  • на остановке онлайн, комнаты и остатки таймеров пишутся в
+ *    {@link StateSnapshot} (через временный файл + atomic move). Снимок
+ *    делается по ContextClosedEvent – до того, как Spring остановит
+ *    WebSocket-обработчик: тот закрывает все сессии, и их
+ *    SessionDisconnectEvent-ы успели бы вывести всех в OFFLINE;
+ *  • на старте снимок читается и удаляется: пары снова активны, таймеры
+ *    продолжают отсчёт с того же остатка – время простоя не засчитывается;
+ *  • поднятые из снимка ники ждут переподключения клиента; кто не вернулся
+ *    за reconnect-grace-ms, уходит в OFFLINE как при обычном kick;
+ *  • снимок старше max-age-ms считается устаревшим и игнорируется.
+ */
+@Slf4j
+@Service
+@ConditionalOnProperty(name = "chat.snapshot.enabled", havingValue = "true")
+public class StateSnapshotService implements ApplicationListener<ContextClosedEvent> {
+
+    private final OnlineUserStore       store;
+    private final ChatRoomService       chatRoomService;
+    private final ChatInactivityService inactivity;
+    private final UserService           userService;
+
+    private final Path file;
+    private final long reconnectGraceMs;
+    private final long maxAgeMs;
+
+    private final ScheduledExecutorService sweeper = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "snapshot-reconnect-sweeper");
+        t.setDaemon(true);
+        return t;
+    });
+
+    public StateSnapshotService(OnlineUserStore store,
+                                ChatRoomService chatRoomService,
+                                ChatInactivityService inactivity,
+                                UserService userService,
+                                @Value("${chat.snapshot.file:/app/uploads/state.snapshot}") String file,
+                                @Value("${chat.snapshot.reconnect-grace-ms:30000}") long reconnectGraceMs,
+                                @Value("${chat.snapshot.max-age-ms:600000}") long maxAgeMs) {
+        this.store            = store;
+        this.chatRoomService  = chatRoomService;
+        this.inactivity       = inactivity;
+        this.userService      = userService;
+        this.file             = Path.of(file);
+        this.reconnectGraceMs = reconnectGraceMs;
+        this.maxAgeMs         = maxAgeMs;
+    }
+
+    /* =======================================================================
+                                   ЗАПИСЬ
+       ======================================================================= */
+
+    @Override
+    public void onApplicationEvent(ContextClosedEvent event) {
+        save();
+    }
+
+    public void save() {
+        sweeper.shutdownNow();
+        try {
+            write(take());
+        } catch (IOException e) {
+            log.error("Снимок состояния не записан: {}", e.toString());
+        }
+    }
+
+    /** Собрать снимок текущего состояния */
+    StateSnapshot take() {
+        return new StateSnapshot(System.currentTimeMillis(),
+                store.local(),                       // чужие узлы снимают себя сами
+                chatRoomService.exportRooms(),
+                inactivity.exportTimers());
+    }
+
+    void write(StateSnapshot s) throws IOException {
+        long started = System.nanoTime();
+        Path parent = file.toAbsolutePath().getParent();
+        Files.createDirectories(parent);
+        Path tmp = Files.createTempFile(parent, "state", ".tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+            s.writeTo(out);
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        log.info("📸 Снимок записан: {} пользователей, {} комнат, {} таймеров ({} ms)",
+                s.users().size(), s.rooms().size(), s.timers().size(),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+    }
+
+    /* =======================================================================
+                                   ЧТЕНИЕ
+       ======================================================================= */
+
+    @PostConstruct
+    public void load() {
+        if (!Files.exists(file)) return;
+        try {
+            StateSnapshot s;
+            try (DataInputStream in = new DataInputStream(
+                    new BufferedInputStream(Files.newInputStream(file)))) {
+                s = StateSnapshot.readFrom(in);
+            }
+            long age = System.currentTimeMillis() - s.takenAt();
+            if (age > maxAgeMs) {
+                log.warn("📸 Снимок устарел ({} ms) – пропускаем", age);
+            } else {
+                restore(s);
+            }
+        } catch (IOException e) {
+            log.warn("📸 Снимок не прочитан ({}) – стартуем с пустым состоянием", e.getMessage());
+        } finally {
+            try {
+                Files.deleteIfExists(file);            // второй раз тот же снимок не поднимаем
+            } catch (IOException e) {
+                log.warn("📸 Снимок не удалён: {}", e.toString());
+            }
+        }
+    }
+
+    void restore(StateSnapshot s) {
+        long started = System.nanoTime();
+
+        for (User u : s.users()) store.restore(u);
+        chatRoomService.restoreRooms(s.rooms());
+        for (User u : s.users()) chatRoomService.refreshAvailabilityWithPartners(u.getNickName());
+        inactivity.restoreTimers(s.timers());
+
+        sweeper.schedule(this::dropUnclaimed, reconnectGraceMs, TimeUnit.MILLISECONDS);
+
+        log.info("📸 Состояние восстановлено: {} пользователей, {} комнат, {} таймеров, простой {} ms ({} ms)",
+                s.users().size(), s.rooms().size(), s.timers().size(),
+                System.currentTimeMillis() - s.takenAt(),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+    }
+
+    /** Клиенты, не вернувшиеся после рестарта, уходят в OFFLINE */
+    void dropUnclaimed() {
+        List<String> gone = store.unclaimed();
+        gone.forEach(userService::forceDisconnect);
+        if (!gone.isEmpty()) {
+            log.info("📸 Не переподключились после рестарта: {}", gone.size());
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package com.alibou.websocket.store;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+/**
+ * DDL для JDBC-хранилищ: таблицы создаются через CREATE TABLE IF NOT EXISTS,
+ * индексы и столбцы, добавленные позже, – отдельными командами; повторное
+ * создание не считается ошибкой (у MySQL нет CREATE INDEX IF NOT EXISTS и
+ * ADD COLUMN IF NOT EXISTS). Диалект – общее подмножество MySQL и H2.
+ */
+@Slf4j
+public final class JdbcSchema {
+
+    private JdbcSchema() {}
+
+    public static void create(JdbcTemplate jdbc, String table, String... indexes) {
+        jdbc.execute(table);
+        for (String index : indexes) {
+            try {
+                jdbc.execute(index);
+            } catch (DataAccessException ex) {
+                log.debug("Уже существует: {}", index);
+            }
+        }
+    }
+}
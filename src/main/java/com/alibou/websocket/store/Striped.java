@@ -0,0 +1,81 @@
+package com.alibou.websocket.store;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiFunction;
+
+/**
+ * HashMap, поделённая на полосы со своим монитором (lock striping).
+ *
+ * Операции над разными ключами почти никогда не делят блокировку, а внутри
+ * полосы – обычная HashMap без накладных расходов ConcurrentHashMap.
+ * Для составной операции вызывающий берёт {@code synchronized (stripe(key))}
+ * и работает с {@link Stripe#map}.
+ */
+public final class Striped<V> {
+
+    /** Полоса: карта, охраняемая монитором самой полосы */
+    public static final class Stripe<V> {
+        public final Map<String, V> map = new HashMap<>();
+    }
+
+    private final Stripe<V>[] stripes;
+    private final int         mask;
+
+    @SuppressWarnings("unchecked")
+    public Striped(int stripes) {
+        int n = Integer.highestOneBit(Math.max(1, stripes - 1)) << 1;   // степень двойки
+        this.stripes = new Stripe[n];
+        for (int i = 0; i < n; i++) this.stripes[i] = new Stripe<>();
+        this.mask = n - 1;
+    }
+
+    public Stripe<V> stripe(String key) {
+        int h = key.hashCode();
+        return stripes[(h ^ (h >>> 16)) & mask];
+    }
+
+    public V get(String key) {
+        Stripe<V> s = stripe(key);
+        synchronized (s) {
+            return s.map.get(key);
+        }
+    }
+
+    public V putIfAbsent(String key, V value) {
+        Stripe<V> s = stripe(key);
+        synchronized (s) {
+            return s.map.putIfAbsent(key, value);
+        }
+    }
+
+    public V remove(String key) {
+        Stripe<V> s = stripe(key);
+        synchronized (s) {
+            return s.map.remove(key);
+        }
+    }
+
+    public V put(String key, V value) {
+        Stripe<V> s = stripe(key);
+        synchronized (s) {
+            return s.map.put(key, value);
+        }
+    }
+
+    /** Копия записей; полосы обходятся по одной, поэтому срез не атомарен целиком */
+    public <R> List<R> collect(BiFunction<String, V, R> mapper) {
+        List<R> out = new ArrayList<>();
+        for (Stripe<V> s : stripes) {
+            synchronized (s) {
+                s.map.forEach((k, v) -> {
+                    R r = mapper.apply(k, v);
+                    if (r != null) out.add(r);
+                });
+            }
+        }
+        return out;
+    }
+}
@@ -2,11 +2,12 @@ package com.alibou.websocket.user;
 
 
 import com.alibou.websocket.chatroom.ChatRoomService;
+import com.alibou.websocket.config.NodeDrain;
+import com.alibou.websocket.config.OutboundMonitor;
 import com.alibou.websocket.user.*;
 import lombok.RequiredArgsConstructor;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
-import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.List;
@@ -19,7 +20,8 @@ public class AdminController {
     private final OnlineUserStore store;
     private final ChatRoomService chatRoomService;
     private final UserService     userService;
-    private final SimpMessagingTemplate messaging;
+    private final OutboundMonitor outbound;
+    private final NodeDrain       drain;
 
     /** 1. Список инженеров и пользователей + флаг занятости */
     @GetMapping("/overview")
@@ -47,9 +49,19 @@ public class AdminController {
         if (chatRoomService.isUserInActiveChat(nick)) {
             return ResponseEntity.status(HttpStatus.CONFLICT).build();   // ещё занят
         }
-        userService.forceDisconnect(nick);                               // (<- новая функция)
-        messaging.convertAndSend("/topic/public",
-                new User(nick, Status.OFFLINE, UserRole.REGULAR));
+        userService.forceDisconnect(nick);                               // сам публикует OFFLINE
         return ResponseEntity.ok().build();
     }
+
+    /** 4. Состояние исходящего канала: очередь executor-а, самая «отстающая» сессия, вытеснения */
+    @GetMapping("/outbound")
+    public OutboundMonitor.Stats outbound() {
+        return outbound.stats();
+    }
+
+    /** 5. Вывести узел: новые сессии – 503, все уходят одним кадром, сессии закрываются с 1012 */
+    @PostMapping("/drain")
+    public NodeDrain.Report drain() {
+        return drain.drain();
+    }
 }
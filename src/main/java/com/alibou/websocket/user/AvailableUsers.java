@@ -0,0 +1,75 @@
+package com.alibou.websocket.user;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
+
+/**
+ * Материализованное представление «кто сейчас свободен».
+ *
+ *  • visible  – все ONLINE, кто не занят чатом с инженером (обычный /users)
+ *  • regulars – подмножество visible с ролью REGULAR (/users?role=ENGINEER)
+ *
+ * Представление не пересчитывается целиком: после каждого изменения онлайна
+ * или комнат ChatRoomService вызывает {@link #refresh} для затронутых ников.
+ * Пересчёт одного ника сериализуется блокировкой его полосы, поэтому
+ * последний refresh всегда видит самое свежее состояние. Это ReentrantLock,
+ * а не compute() (монитор корзины ConcurrentHashMap): внутри идут чтения
+ * хранилищ, с JDBC – блокирующие, и виртуальный поток не должен держать
+ * под ними свой carrier (chat.threads.virtual).
+ */
+@Component
+@RequiredArgsConstructor
+public class AvailableUsers {
+
+    private final OnlineUserStore store;
+
+    private static final int STRIPES = 64;
+
+    private final Map<String, User> visible  = new ConcurrentHashMap<>();
+    private final Map<String, User> regulars = new ConcurrentHashMap<>();
+    private final ReentrantLock[]   locks    = new ReentrantLock[STRIPES];
+
+    {
+        for (int i = 0; i < STRIPES; i++) locks[i] = new ReentrantLock();
+    }
+
+    /**
+     * Пересчитать доступность одного ника.
+     * @param busyWithEngineer проверка «занят инженером» (вызывается под блокировкой ника)
+     */
+    public void refresh(String nick, Predicate<String> busyWithEngineer) {
+        ReentrantLock lock = locks[(nick.hashCode() & 0x7fffffff) % STRIPES];
+        lock.lock();
+        try {
+            User u = store.get(nick)
+                    .filter(x -> x.getStatus() == Status.ONLINE)
+                    .orElse(null);
+            boolean free = u != null && !busyWithEngineer.test(nick);
+
+            if (free) visible.put(nick, u);
+            else      visible.remove(nick);
+
+            if (free && u.getRole() == UserRole.REGULAR) regulars.put(nick, u);
+            else                                         regulars.remove(nick);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Свободные REGULAR-ы */
+    public Collection<User> regulars() {
+        return Collections.unmodifiableCollection(regulars.values());
+    }
+
+    /** Все ONLINE, не занятые чатом с инженером */
+    public Collection<User> visible() {
+        return Collections.unmodifiableCollection(visible.values());
+    }
+}
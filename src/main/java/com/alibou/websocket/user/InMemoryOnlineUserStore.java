@@ -0,0 +1,104 @@
+package com.alibou.websocket.user;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/** Хранилище по умолчанию: одна ConcurrentHashMap, атомарность через compute */
+@Component
+@ConditionalOnProperty(name = "chat.store.type", havingValue = "memory", matchIfMissing = true)
+public class InMemoryOnlineUserStore implements OnlineUserStore {
+
+    private record Online(String sessionId, User user) {
+        boolean remote() {
+            return sessionId != null && sessionId.startsWith(REMOTE);
+        }
+    }
+
+    private final Map<String, Online> users = new ConcurrentHashMap<>();
+
+    /** sessionId → nick; меняется только внутри users.compute(...) своего ника */
+    private final Map<String, String> bySession = new ConcurrentHashMap<>();
+
+    @Override
+    public boolean addIfAbsent(String nick, String sessionId, User u) {
+        Online fresh = new Online(sessionId, u);
+        return users.compute(nick, (n, cur) -> {
+            if (cur != null && cur.sessionId != null) return cur;
+            if (sessionId != null) bySession.put(sessionId, nick);
+            return fresh;
+        }) == fresh;
+    }
+
+    @Override
+    public boolean restore(User u) {
+        return users.putIfAbsent(u.getNickName(), new Online(null, u)) == null;
+    }
+
+    @Override
+    public boolean addRemote(User u, String node) {
+        return users.putIfAbsent(u.getNickName(), new Online(REMOTE + node, u)) == null;
+    }
+
+    @Override
+    public boolean isRemote(String nick) {
+        Online o = users.get(nick);
+        return o != null && o.remote();
+    }
+
+    @Override
+    public List<User> local() {
+        return users.values().stream().filter(o -> !o.remote()).map(o -> o.user).toList();
+    }
+
+    @Override
+    public List<String> unclaimed() {
+        return users.entrySet().stream()
+                .filter(e -> e.getValue().sessionId == null)
+                .map(Map.Entry::getKey)
+                .toList();
+    }
+
+    @Override
+    public void forceRemove(String nick) {
+        users.computeIfPresent(nick, (n, online) -> unlinkSession(online));
+    }
+
+    @Override
+    public void remove(String nick, String sessionId) {
+        users.computeIfPresent(nick, (n, online) ->
+                Objects.equals(online.sessionId, sessionId) ? unlinkSession(online) : online);
+    }
+
+    @Override
+    public String nickOf(String sessionId) {
+        return sessionId == null ? null : bySession.get(sessionId);
+    }
+
+    private Online unlinkSession(Online online) {
+        if (online.sessionId != null) bySession.remove(online.sessionId);
+        return null;
+    }
+
+    @Override
+    public Optional<User> get(String nick) {
+        return Optional.ofNullable(users.get(nick)).map(o -> o.user);
+    }
+
+    @Override
+    public UserRole roleOf(String nick) {
+        Online o = users.get(nick);
+        return o == null ? null : o.user.getRole();
+    }
+
+    @Override
+    public Collection<User> all() {
+        return users.values().stream().map(o -> o.user).toList();
+    }
+}
@@ -0,0 +1,136 @@
+package com.alibou.websocket.user;
+
+import com.alibou.websocket.store.JdbcSchema;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Онлайн-пользователи в таблице online_users: состояние переживает рестарт
+ * и может быть общим для нескольких узлов. Атомарность каждой операции
+ * обеспечивает сама БД (первичный ключ и условные UPDATE/DELETE).
+ */
+@Component
+@ConditionalOnProperty(name = "chat.store.type", havingValue = "jdbc")
+public class JdbcOnlineUserStore implements OnlineUserStore {
+
+    private static final RowMapper<User> USER = (rs, i) -> new User(
+            rs.getString("nick"),
+            Status.valueOf(rs.getString("status")),
+            UserRole.valueOf(rs.getString("role")));
+
+    private final JdbcTemplate jdbc;
+
+    public JdbcOnlineUserStore(DataSource dataSource) {
+        this.jdbc = new JdbcTemplate(dataSource);
+        JdbcSchema.create(jdbc,
+                "CREATE TABLE IF NOT EXISTS online_users ("
+                        + " nick       VARCHAR(255) NOT NULL PRIMARY KEY,"
+                        + " session_id VARCHAR(255),"
+                        + " status     VARCHAR(16)  NOT NULL,"
+                        + " role       VARCHAR(16)  NOT NULL)",
+                "CREATE INDEX online_users_session ON online_users (session_id)");
+    }
+
+    /* =======================================================================
+                                   ИЗМЕНЕНИЯ
+       ======================================================================= */
+
+    @Override
+    public boolean addIfAbsent(String nick, String sessionId, User u) {
+        if (insert(nick, sessionId, u)) return true;
+        /* ник занят – забираем его, только если он ждал переподключения */
+        return jdbc.update("UPDATE online_users SET session_id = ?, status = ?, role = ?"
+                        + " WHERE nick = ? AND session_id IS NULL",
+                sessionId, status(u), u.getRole().name(), nick) == 1;
+    }
+
+    @Override
+    public boolean restore(User u) {
+        return insert(u.getNickName(), null, u);
+    }
+
+    @Override
+    public boolean addRemote(User u, String node) {
+        return insert(u.getNickName(), REMOTE + node, u);
+    }
+
+    private boolean insert(String nick, String sessionId, User u) {
+        try {
+            jdbc.update("INSERT INTO online_users (nick, session_id, status, role) VALUES (?, ?, ?, ?)",
+                    nick, sessionId, status(u), u.getRole().name());
+            return true;
+        } catch (DuplicateKeyException ex) {
+            return false;
+        }
+    }
+
+    /** UserService ставит ONLINE уже после добавления, в таблицу сразу пишем итоговый статус */
+    private static String status(User u) {
+        return (u.getStatus() == null ? Status.ONLINE : u.getStatus()).name();
+    }
+
+    @Override
+    public void forceRemove(String nick) {
+        jdbc.update("DELETE FROM online_users WHERE nick = ?", nick);
+    }
+
+    @Override
+    public void remove(String nick, String sessionId) {
+        if (sessionId == null) jdbc.update("DELETE FROM online_users WHERE nick = ? AND session_id IS NULL", nick);
+        else                   jdbc.update("DELETE FROM online_users WHERE nick = ? AND session_id = ?", nick, sessionId);
+    }
+
+    /* =======================================================================
+                                    ЧТЕНИЕ
+       ======================================================================= */
+
+    @Override
+    public boolean isRemote(String nick) {
+        return !jdbc.queryForList("SELECT 1 FROM online_users WHERE nick = ? AND session_id LIKE ?",
+                Integer.class, nick, REMOTE + "%").isEmpty();
+    }
+
+    @Override
+    public String nickOf(String sessionId) {
+        if (sessionId == null || sessionId.startsWith(REMOTE)) return null;     // чужие узлы по сессии не ищутся
+        List<String> nicks = jdbc.queryForList("SELECT nick FROM online_users WHERE session_id = ?",
+                String.class, sessionId);
+        return nicks.isEmpty() ? null : nicks.get(0);
+    }
+
+    @Override
+    public Optional<User> get(String nick) {
+        return jdbc.query("SELECT nick, status, role FROM online_users WHERE nick = ?", USER, nick)
+                .stream().findFirst();
+    }
+
+    @Override
+    public UserRole roleOf(String nick) {
+        List<String> roles = jdbc.queryForList("SELECT role FROM online_users WHERE nick = ?", String.class, nick);
+        return roles.isEmpty() ? null : UserRole.valueOf(roles.get(0));
+    }
+
+    @Override
+    public List<User> local() {
+        return jdbc.query("SELECT nick, status, role FROM online_users"
+                + " WHERE session_id IS NULL OR session_id NOT LIKE ?", USER, REMOTE + "%");
+    }
+
+    @Override
+    public List<String> unclaimed() {
+        return jdbc.queryForList("SELECT nick FROM online_users WHERE session_id IS NULL", String.class);
+    }
+
+    @Override
+    public Collection<User> all() {
+        return jdbc.query("SELECT nick, status, role FROM online_users", USER);
+    }
+}
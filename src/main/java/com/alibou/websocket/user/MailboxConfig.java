@@ -0,0 +1,47 @@
+package com.alibou.websocket.user;
+
+import com.alibou.websocket.chatroom.ChatInactivityService;
+import com.alibou.websocket.chatroom.ChatRoomService;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Ящики жизненного цикла (chat.mailbox.enabled=true): вход, выход, выброс
+ * админом и тайм-ауты одного ника выполняются по очереди, а не наперегонки
+ * из потоков STOMP, HTTP и watchdog-а. Без свойства всё идёт в вызывающем
+ * потоке, как раньше.
+ */
+@Configuration
+@ConditionalOnProperty(name = "chat.mailbox.enabled", havingValue = "true")
+public class MailboxConfig {
+
+    @Bean(destroyMethod = "close")
+    public UserMailboxes userMailboxes(@Value("${chat.mailbox.shards:0}") int shards,
+                                       UserService userService,
+                                       ChatInactivityService inactivity,
+                                       ChatRoomService chatRoomService) {
+        UserMailboxes mailboxes = new UserMailboxes(
+                shards > 0 ? shards : Runtime.getRuntime().availableProcessors());
+        userService.serializeWith(mailboxes);
+        inactivity.serializeWith(mailboxes);
+        chatRoomService.serializeWith(mailboxes);
+        return mailboxes;
+    }
+
+    @Bean
+    public MeterBinder mailboxMetrics(UserMailboxes mailboxes) {
+        return registry -> {
+            Gauge.builder("chat.mailbox.pending", mailboxes, UserMailboxes::pending)
+                    .description("События жизненного цикла, ждущие в ящиках")
+                    .register(registry);
+            FunctionCounter.builder("chat.mailbox.executed", mailboxes, UserMailboxes::executed)
+                    .description("События жизненного цикла, выполненные через ящики")
+                    .register(registry);
+        };
+    }
+}
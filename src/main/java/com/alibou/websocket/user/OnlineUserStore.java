@@ -1,36 +1,62 @@
 package com.alibou.websocket.user;
 
-import org.springframework.stereotype.Component;
-
 import java.util.Collection;
-import java.util.Map;
+import java.util.List;
 import java.util.Optional;
-import java.util.concurrent.ConcurrentHashMap;
-
-@Component
-public class OnlineUserStore {
-
-    private record Online(String sessionId, User user) {}
-
-    private final Map<String, Online> users = new ConcurrentHashMap<>();
-
-    /** true – ник свободен и добавлен, false – занят */
-    public boolean addIfAbsent(String nick, String sessionId, User u) {
-        return users.putIfAbsent(nick, new Online(sessionId, u)) == null;
-    }
-    public void forceRemove(String nick) {
-        users.remove(nick);
-    }
-    public void remove(String nick, String sessionId) {
-        users.computeIfPresent(nick, (n, online) ->
-                online.sessionId.equals(sessionId) ? null : online);
-    }
-
-    public Optional<User> get(String nick) {
-        return Optional.ofNullable(users.get(nick)).map(o -> o.user);
-    }
-
-    public Collection<User> all() {
-        return users.values().stream().map(o -> o.user).toList();
-    }
+
+/**
+ * Кто сейчас онлайн и под какой сессией.
+ *
+ * Реализация выбирается свойством chat.store.type:
+ * memory (по умолчанию) – {@link InMemoryOnlineUserStore},
+ * striped – {@link StripedOnlineUserStore}, jdbc – {@link JdbcOnlineUserStore}.
+ * Все операции над одним ником атомарны.
+ *
+ * У записи три состояния сессии: обычный sessionId; null – пользователь поднят
+ * из снимка и ещё не переподключился; {@value #REMOTE}node – пользователь
+ * подключён к другому узлу кластера.
+ */
+public interface OnlineUserStore {
+
+    String REMOTE = "@";
+
+    /**
+     * true – ник свободен (или ждал переподключения после рестарта) и занят
+     * этой сессией, false – ник уже используется живой сессией.
+     */
+    boolean addIfAbsent(String nick, String sessionId, User u);
+
+    /** Вернуть пользователя из снимка: место под ник держится до переподключения */
+    boolean restore(User u);
+
+    /**
+     * Пользователь другого узла кластера. Ник остаётся занятым, пока тот
+     * узел не сообщит о выходе; по sessionId такая запись не ищется.
+     */
+    boolean addRemote(User u, String node);
+
+    /** Пользователь подключён к другому узлу кластера? */
+    boolean isRemote(String nick);
+
+    /** Пользователи, подключённые (или ожидаемые после рестарта) к этому узлу */
+    List<User> local();
+
+    /** Ники, поднятые из снимка, чьи клиенты так и не переподключились */
+    List<String> unclaimed();
+
+    /** Удалить ник независимо от сессии */
+    void forceRemove(String nick);
+
+    /** Удалить ник, только если он всё ещё принадлежит этой сессии */
+    void remove(String nick, String sessionId);
+
+    /** Ник, под которым вошла сессия, или null (например, после logout) */
+    String nickOf(String sessionId);
+
+    Optional<User> get(String nick);
+
+    /** Роль онлайн-пользователя или null – горячий путь без Optional */
+    UserRole roleOf(String nick);
+
+    Collection<User> all();
 }
@@ -0,0 +1,4 @@
+package com.alibou.websocket.user;
+
+/** Одно изменение присутствия: ник стал ONLINE / OFFLINE, version – его номер */
+public record PresenceChange(long version, String nickName, Status status, UserRole role) {}
@@ -0,0 +1,11 @@
+package com.alibou.websocket.user;
+
+import java.util.List;
+
+/**
+ * Кадр /topic/public: изменения с версиями в (fromVersion, toVersion],
+ * не больше одного на ник. Следующий кадр начинается с toVersion этого,
+ * поэтому разрыв (fromVersion ≠ последней известной версии) означает,
+ * что клиенту нужно догнать состояние через /users?sinceVersion=.
+ */
+public record PresenceDelta(long fromVersion, long toVersion, List<PresenceChange> changes) {}
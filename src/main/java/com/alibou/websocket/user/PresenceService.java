@@ -0,0 +1,183 @@
+package com.alibou.websocket.user;
+
+import com.alibou.websocket.cluster.ClusterReplicator;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Единственный источник кадров присутствия для /topic/public.
+ *
+ *  • каждое ONLINE / OFFLINE получает следующий номер версии;
+ *  • изменения копятся и раз в flush-ms уходят одним {@link PresenceDelta},
+ *    где у каждого ника осталось только последнее изменение;
+ *  • последние log-size изменений хранятся, чтобы /users?sinceVersion=
+ *    отдавал дельту, а для слишком старой версии – полный срез.
+ *
+ * Изменения идемпотентны (повторный ONLINE ничего не ломает), поэтому
+ * клиенту достаточно применить срез/дельту и дальше кадры по порядку.
+ *
+ * В кластере у каждого узла свой счётчик версий и свой адрес
+ * (chat.presence.destination), а изменения других узлов попадают сюда
+ * через {@link #applyRemote}.
+ */
+@Slf4j
+@Service
+public class PresenceService {
+
+    private final SimpMessagingTemplate messaging;
+    private final OnlineUserStore       store;
+    private final long                  flushMs;
+    private final int                   logSize;
+    private final String                destination;
+
+    private volatile ClusterReplicator replicator = ClusterReplicator.NOOP;
+
+    /* ---------- guarded by this ---------- */
+    private long                              version;
+    private long                              flushedVersion;
+    private Map<String, PresenceChange>       pending = new LinkedHashMap<>();
+    private final ArrayDeque<PresenceChange>  recent  = new ArrayDeque<>();
+
+    private final ScheduledExecutorService flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "presence-flusher");
+        t.setDaemon(true);
+        return t;
+    });
+
+    public PresenceService(SimpMessagingTemplate messaging,
+                           OnlineUserStore store,
+                           @Value("${chat.presence.flush-ms:100}") long flushMs,
+                           @Value("${chat.presence.log-size:10000}") int logSize,
+                           @Value("${chat.presence.destination:/topic/public}") String destination) {
+        this.messaging   = messaging;
+        this.store       = store;
+        this.flushMs     = flushMs;
+        this.logSize     = Math.max(1, logSize);
+        this.destination = destination;
+    }
+
+    public void replicateTo(ClusterReplicator replicator) {
+        this.replicator = replicator;
+    }
+
+    public String destination() {
+        return destination;
+    }
+
+    @PostConstruct
+    public void start() {
+        flusher.scheduleWithFixedDelay(this::flushSafely, flushMs, flushMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        flusher.shutdownNow();
+        flush();
+    }
+
+    /* =======================================================================
+                                   ИЗМЕНЕНИЯ
+       ======================================================================= */
+
+    public void online(User u) {
+        record(u.getNickName(), Status.ONLINE, u.getRole());
+        replicator.userOnline(u);
+    }
+
+    public void offline(String nick, UserRole role) {
+        record(nick, Status.OFFLINE, role);
+        replicator.userOffline(nick, role);
+    }
+
+    /**
+     * Узел уходит: OFFLINE всех разом под одной блокировкой и сразу кадр –
+     * фоновый flush не может разрезать их на несколько кадров.
+     */
+    public void offlineAll(Collection<User> users) {
+        synchronized (this) {
+            for (User u : users) record(u.getNickName(), Status.OFFLINE, u.getRole());
+        }
+        for (User u : users) replicator.userOffline(u.getNickName(), u.getRole());
+        flush();
+    }
+
+    /** Изменение, пришедшее с другого узла: только в свой поток, без повторной репликации */
+    public void applyRemote(String nick, Status status, UserRole role) {
+        record(nick, status, role);
+    }
+
+    private synchronized void record(String nick, Status status, UserRole role) {
+        PresenceChange c = new PresenceChange(++version, nick, status, role);
+        pending.remove(nick);                 // LinkedHashMap: ник переезжает в конец
+        pending.put(nick, c);
+        recent.addLast(c);
+        if (recent.size() > logSize) recent.removeFirst();
+    }
+
+    public synchronized long version() {
+        return version;
+    }
+
+    /* =======================================================================
+                                    КАДРЫ
+       ======================================================================= */
+
+    /** Отправить накопленное одним кадром */
+    void flush() {
+        PresenceDelta delta;
+        synchronized (this) {
+            if (pending.isEmpty()) return;
+            delta = new PresenceDelta(flushedVersion, version, List.copyOf(pending.values()));
+            flushedVersion = version;
+            pending = new LinkedHashMap<>();
+        }
+        messaging.convertAndSend(destination, delta);
+    }
+
+    private void flushSafely() {
+        try {
+            flush();
+        } catch (Exception ex) {
+            log.warn("Presence flush failed: {}", ex.toString());
+        }
+    }
+
+    /* =======================================================================
+                                  СИНХРОНИЗАЦИЯ
+       ======================================================================= */
+
+    /**
+     * Дельта после sinceVersion (по одному изменению на ник) или полный срез
+     * онлайна, если sinceVersion не задана либо уже выпала из журнала.
+     */
+    public synchronized PresenceSync sync(Long sinceVersion) {
+        long oldest = recent.isEmpty() ? version + 1 : recent.peekFirst().version();
+        if (sinceVersion != null && sinceVersion >= oldest - 1 && sinceVersion <= version) {
+            Map<String, PresenceChange> latest = new LinkedHashMap<>();
+            Iterator<PresenceChange> it = recent.descendingIterator();
+            while (it.hasNext()) {
+                PresenceChange c = it.next();
+                if (c.version() <= sinceVersion) break;
+                latest.putIfAbsent(c.nickName(), c);
+            }
+            List<PresenceChange> changes = new ArrayList<>(latest.values());
+            Collections.reverse(changes);
+            return new PresenceSync(version, false, changes);
+        }
+
+        List<PresenceChange> snapshot = new ArrayList<>();
+        for (User u : store.all()) {
+            snapshot.add(new PresenceChange(version, u.getNickName(), Status.ONLINE, u.getRole()));
+        }
+        return new PresenceSync(version, true, snapshot);
+    }
+}
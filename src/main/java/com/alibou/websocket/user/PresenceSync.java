@@ -0,0 +1,13 @@
+package com.alibou.websocket.user;
+
+import java.util.List;
+
+/**
+ * Ответ /users?sinceVersion=.
+ *
+ * @param version текущая версия присутствия
+ * @param full    true – sinceVersion слишком старая (или не задана):
+ *                changes содержит полный срез онлайна, а не дельту
+ * @param changes изменения после sinceVersion (по одному на ник) либо срез
+ */
+public record PresenceSync(long version, boolean full, List<PresenceChange> changes) {}
@@ -0,0 +1,127 @@
+package com.alibou.websocket.user;
+
+import com.alibou.websocket.store.Striped;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+
+/**
+ * Хранилище на полосах HashMap со своими мониторами ({@link Striped}).
+ * Порядок блокировок всегда «полоса ника → полоса сессии», поэтому
+ * {@link #nickOf} берёт только полосу сессии и взаимоблокировки нет.
+ */
+@Component
+@ConditionalOnProperty(name = "chat.store.type", havingValue = "striped")
+public class StripedOnlineUserStore implements OnlineUserStore {
+
+    private record Online(String sessionId, User user) {
+        boolean remote() {
+            return sessionId != null && sessionId.startsWith(REMOTE);
+        }
+    }
+
+    private final Striped<Online> users;
+    private final Striped<String> bySession;          // sessionId → nick
+
+    public StripedOnlineUserStore(@Value("${chat.store.stripes:64}") int stripes) {
+        this.users     = new Striped<>(stripes);
+        this.bySession = new Striped<>(stripes);
+    }
+
+    /* =======================================================================
+                                   ИЗМЕНЕНИЯ
+       ======================================================================= */
+
+    @Override
+    public boolean addIfAbsent(String nick, String sessionId, User u) {
+        Striped.Stripe<Online> s = users.stripe(nick);
+        synchronized (s) {
+            Online cur = s.map.get(nick);
+            if (cur != null && cur.sessionId != null) return false;
+            s.map.put(nick, new Online(sessionId, u));
+            if (sessionId != null) bySession.put(sessionId, nick);
+            return true;
+        }
+    }
+
+    @Override
+    public boolean restore(User u) {
+        return users.putIfAbsent(u.getNickName(), new Online(null, u)) == null;
+    }
+
+    @Override
+    public boolean addRemote(User u, String node) {
+        return users.putIfAbsent(u.getNickName(), new Online(REMOTE + node, u)) == null;
+    }
+
+    @Override
+    public void forceRemove(String nick) {
+        Striped.Stripe<Online> s = users.stripe(nick);
+        synchronized (s) {
+            Online online = s.map.remove(nick);
+            if (online != null) unlinkSession(online);
+        }
+    }
+
+    @Override
+    public void remove(String nick, String sessionId) {
+        Striped.Stripe<Online> s = users.stripe(nick);
+        synchronized (s) {
+            Online online = s.map.get(nick);
+            if (online != null && Objects.equals(online.sessionId, sessionId)) {
+                s.map.remove(nick);
+                unlinkSession(online);
+            }
+        }
+    }
+
+    private void unlinkSession(Online online) {
+        if (online.sessionId != null && !online.remote()) bySession.remove(online.sessionId);
+    }
+
+    /* =======================================================================
+                                    ЧТЕНИЕ
+       ======================================================================= */
+
+    @Override
+    public boolean isRemote(String nick) {
+        Online o = users.get(nick);
+        return o != null && o.remote();
+    }
+
+    @Override
+    public String nickOf(String sessionId) {
+        return sessionId == null ? null : bySession.get(sessionId);
+    }
+
+    @Override
+    public Optional<User> get(String nick) {
+        return Optional.ofNullable(users.get(nick)).map(Online::user);
+    }
+
+    @Override
+    public UserRole roleOf(String nick) {
+        Online o = users.get(nick);
+        return o == null ? null : o.user.getRole();
+    }
+
+    @Override
+    public List<User> local() {
+        return users.collect((nick, o) -> o.remote() ? null : o.user);
+    }
+
+    @Override
+    public List<String> unclaimed() {
+        return users.collect((nick, o) -> o.sessionId == null ? nick : null);
+    }
+
+    @Override
+    public Collection<User> all() {
+        return users.collect((nick, o) -> o.user);
+    }
+}
@@ -15,23 +15,30 @@ import java.util.List;
 @RequiredArgsConstructor
 public class UserController {
 
-    private final UserService userService;
+    private final UserService     userService;
+    private final PresenceService presence;
 
+    /** ONLINE уйдёт в /topic/public ближайшим кадром PresenceService */
     @MessageMapping("/user.addUser")
-    @SendTo("/topic/public")
-    public User addUser(@Payload User user,
+    public void addUser(@Payload User user,
                         @Header("simpSessionId") String sessId) {
         userService.saveUser(user, sessId);
-        return user;
     }
 
+    /** OFFLINE публикует сам UserService.disconnect */
     @MessageMapping("/user.disconnectUser")
-    @SendTo("/topic/public")
-    public User disconnectUser(@Payload User user,
+    public void disconnectUser(@Payload User user,
                                @Header("simpSessionId") String sessionId) {
-
         userService.disconnect(user.getNickName(), sessionId);
-        return user;           // прилетит тем, кто подписан на /topic/public
+    }
+
+    /**
+     * Догнать присутствие: дельта после sinceVersion
+     * (или полный срез, если версия слишком старая).
+     */
+    @GetMapping(value = "/users", params = "sinceVersion")
+    public ResponseEntity<PresenceSync> syncPresence(@RequestParam long sinceVersion) {
+        return ResponseEntity.ok(presence.sync(sinceVersion));
     }
 
     @GetMapping("/users")
@@ -0,0 +1,214 @@
+package com.alibou.websocket.user;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Почтовые ящики жизненного цикла пользователя: N однопоточных исполнителей,
+ * ник → ящик по хешу. Вход, выход, выброс админом и тайм-ауты одного ника
+ * идут строго друг за другом в одном потоке, разные ники – параллельно в
+ * разных ящиках, без общей блокировки.
+ *
+ *  • {@link #run} / {@link #call} – вызывающий ждёт результат (исключения
+ *    пробрасываются как есть); {@link #execute} – без ожидания (таймеры,
+ *    работа над другим ником из задачи ящика);
+ *  • {@link #execute} всегда ставит задачу в ящик ника, в том числе из
+ *    потока ящика: вход инженера, раздающий ожидающих, не обгоняет выход
+ *    REGULAR-а – назначение выполнится в ящике REGULAR-а до или после него;
+ *  • run / call из потока ящика выполняются сразу на месте: ожидание чужого
+ *    ящика из ящика могло бы зациклиться. Работу над чужим ником задача
+ *    ящика отдаёт через execute;
+ *  • после {@link #close()} задачи выполняются в вызывающем потоке.
+ *
+ * {@link #direct()} – без потоков, всё на месте (режим по умолчанию и тесты).
+ */
+@Slf4j
+public class UserMailboxes implements AutoCloseable {
+
+    /** Поток ящика – по нему узнаём вложенный вызов */
+    private static final class MailboxThread extends Thread {
+        MailboxThread(Runnable r, String name) {
+            super(r, name);
+            setDaemon(true);
+        }
+    }
+
+    private final ThreadPoolExecutor[] shards;
+    private final AtomicLong           submitted = new AtomicLong();
+    private final AtomicLong           executed  = new AtomicLong();
+
+    /** @param shards число ящиков; 0 – без потоков */
+    public UserMailboxes(int shards) {
+        this.shards = new ThreadPoolExecutor[shards];
+        for (int i = 0; i < shards; i++) {
+            String name = "user-mailbox-" + i;
+            this.shards[i] = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                    new LinkedBlockingQueue<>(), r -> new MailboxThread(r, name));
+        }
+    }
+
+    public static UserMailboxes direct() {
+        return new UserMailboxes(0);
+    }
+
+    int shard(String nick) {
+        int h = nick.hashCode();
+        return ((h ^ (h >>> 16)) & 0x7fffffff) % shards.length;
+    }
+
+    /** Ждать нельзя: ящиков нет или мы сами в ящике */
+    private boolean inline() {
+        return shards.length == 0 || Thread.currentThread() instanceof MailboxThread;
+    }
+
+    /* =======================================================================
+                                   ЗАДАЧИ
+       ======================================================================= */
+
+    /** Выполнить в ящике ника и дождаться */
+    public void run(String nick, Runnable task) {
+        call(nick, () -> {
+            task.run();
+            return null;
+        });
+    }
+
+    /** Выполнить в ящике ника и вернуть результат */
+    public <T> T call(String nick, Supplier<T> task) {
+        if (inline()) return task.get();
+        FutureTask<T> f = new FutureTask<>(task::get);
+        try {
+            shards[shard(nick)].execute(counted(f));
+            submitted.incrementAndGet();
+        } catch (RejectedExecutionException closed) {
+            return task.get();
+        }
+        try {
+            return f.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException re) throw re;
+            if (e.getCause() instanceof Error err)           throw err;
+            throw new IllegalStateException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Прервано ожидание ящика " + nick, e);
+        }
+    }
+
+    /** Поставить в ящик ника, не дожидаясь (и из потока ящика – тоже в очередь) */
+    public void execute(String nick, Runnable task) {
+        if (shards.length == 0) {
+            task.run();
+            return;
+        }
+        Runnable logged = () -> {
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                log.warn("Задача ящика {} упала", nick, e);
+            }
+        };
+        try {
+            shards[shard(nick)].execute(counted(logged));
+            submitted.incrementAndGet();
+        } catch (RejectedExecutionException closed) {
+            logged.run();
+        }
+    }
+
+    private Runnable counted(Runnable task) {
+        return () -> {
+            try {
+                task.run();
+            } finally {
+                executed.incrementAndGet();
+            }
+        };
+    }
+
+    /* =======================================================================
+                              ОЖИДАНИЕ И ОСТАНОВКА
+       ======================================================================= */
+
+    /**
+     * Дождаться, пока все ящики выполнят то, что в них уже лежит, и то, что
+     * эти задачи успели поставить в другие ящики (назначения раздачи).
+     * @return false – не успели за timeout
+     */
+    public boolean quiesce(Duration timeout) {
+        if (inline()) return true;
+        long deadline = System.nanoTime() + timeout.toNanos();
+        do {
+            if (!drainOnce(deadline - System.nanoTime())) return false;
+        } while (executed.get() < submitted.get() && !shards[0].isShutdown());
+        return true;
+    }
+
+    /** Один проход: метка в каждый ящик и ожидание всех меток */
+    private boolean drainOnce(long timeoutNanos) {
+        if (timeoutNanos <= 0) return false;
+        CompletableFuture<?>[] marks = new CompletableFuture<?>[shards.length];
+        for (int i = 0; i < shards.length; i++) {
+            CompletableFuture<Void> mark = new CompletableFuture<>();
+            try {
+                shards[i].execute(() -> mark.complete(null));
+            } catch (RejectedExecutionException closed) {
+                mark.complete(null);
+            }
+            marks[i] = mark;
+        }
+        try {
+            CompletableFuture.allOf(marks).get(timeoutNanos, TimeUnit.NANOSECONDS);
+            return true;
+        } catch (TimeoutException e) {
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    @Override
+    public void close() {
+        for (ThreadPoolExecutor s : shards) s.shutdown();
+        for (ThreadPoolExecutor s : shards) {
+            try {
+                if (!s.awaitTermination(5, TimeUnit.SECONDS)) s.shutdownNow();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                s.shutdownNow();
+            }
+        }
+    }
+
+    /* ---------- метрики ---------- */
+
+    public int shards() {
+        return shards.length;
+    }
+
+    /** Задачи, ждущие в ящиках */
+    public int pending() {
+        int n = 0;
+        for (ThreadPoolExecutor s : shards) n += s.getQueue().size();
+        return n;
+    }
+
+    /** Выполнено задач через ящики с момента старта */
+    public long executed() {
+        return executed.get();
+    }
+}
@@ -1,15 +1,17 @@
 package com.alibou.websocket.user;
 
+import com.alibou.websocket.audit.AuditLog;
 import com.alibou.websocket.chatroom.ChatInactivityService;
 import com.alibou.websocket.chatroom.ChatRoomService;
 import com.alibou.websocket.exception.NickAlreadyOnlineException;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.stereotype.Service;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
-import java.util.Map;
 import java.util.Optional;
 
 @Service
@@ -20,7 +22,23 @@ public class UserService {
     private final OnlineUserStore        store;
     private final ChatRoomService        chatRoomService;
     private final ChatInactivityService  inactivity;
-    private final SimpMessagingTemplate  messagingTemplate;
+    private final PresenceService        presence;
+    private final AvailableUsers         available;
+
+    /** Сколько drain ждёт уже начатых входов и выходов в ящиках */
+    private static final Duration SETTLE = Duration.ofSeconds(5);
+
+    private volatile AuditLog      audit     = AuditLog.NOOP;
+    private volatile UserMailboxes mailboxes = UserMailboxes.direct();
+
+    public void auditTo(AuditLog audit) {
+        this.audit = audit;
+    }
+
+    /** Вход / выход / выброс одного ника – по очереди в его ящике */
+    public void serializeWith(UserMailboxes mailboxes) {
+        this.mailboxes = mailboxes;
+    }
 
     /* =======================================================================
                                  LOGIN
@@ -28,6 +46,10 @@ public class UserService {
 
     /** Пользователь заходит */
     public void saveUser(User user, String sessionId) {
+        mailboxes.run(user.getNickName(), () -> login(user, sessionId));
+    }
+
+    private void login(User user, String sessionId) {
         /* 1) пытаемся добавить в OnlineUserStore */
         if (!store.addIfAbsent(user.getNickName(), sessionId, user)) {
             throw new NickAlreadyOnlineException(
@@ -39,9 +61,15 @@ public class UserService {
         if (user.getRole() == UserRole.REGULAR) {
             inactivity.touchRegular(user.getNickName());
         }
+        chatRoomService.refreshAvailabilityWithPartners(user.getNickName());
+        presence.online(user);
+
+        /* 3) аудит */
+        audit.online(user.getNickName(), sessionId, user.getRole());
 
-        /* 3) логируем */
-        log.info("ONLINE  ⇢ {}@{} role={}", user.getNickName(), sessionId, user.getRole());
+        /* 4) раздача: REGULAR – в очередь, инженер – принимает ожидающих */
+        if (user.getRole() == UserRole.REGULAR)  chatRoomService.regularWaiting(user.getNickName());
+        if (user.getRole() == UserRole.ENGINEER) chatRoomService.engineerOnline(user.getNickName());
     }
 
     /* =======================================================================
@@ -49,17 +77,20 @@ public class UserService {
        ======================================================================= */
 
     public void forceDisconnect(String nick) {
+        mailboxes.run(nick, () -> kick(nick));
+    }
+
+    private void kick(String nick) {
         /* 1) определяем роль (если ещё в Store) */
         Optional<User> opt  = store.get(nick);
         UserRole       role = opt.map(User::getRole).orElse(UserRole.REGULAR);
 
-        /* 2) собираем отладочную инфу до отмены таймеров */
-        Map<String, Long> tLeft = inactivity.timersFor(nick);
-        List<String>      rooms = chatRoomService.activeRoomsFor(nick);
+        /* 2) отладочная инфа до отмены таймеров */
+        logLeaving(nick, "-", role);
 
         /* 3) отменяем «личный» таймер */
         if (role == UserRole.ENGINEER) inactivity.cancelEngineer(nick);
-        else                           inactivity.cancelRegular(nick);
+        else                           inactivity.releaseRegular(nick);
 
         /* 4) удаляем из OnlineUserStore */
         store.forceRemove(nick);
@@ -67,10 +98,9 @@ public class UserService {
         /* 5) деактивируем все чаты */
         chatRoomService.deactivateChatsForUser(nick);
 
-        /* 6) лог + OFFLINE всем */
-        log.info("OFFLINE ⇢ {}@- role={} timers={} rooms={}", nick, role, tLeft, rooms);
-        messagingTemplate.convertAndSend("/topic/public",
-                new User(nick, Status.OFFLINE, role));
+        /* 6) аудит + OFFLINE всем */
+        audit.kicked(nick, role);
+        presence.offline(nick, role);
     }
 
     /* =======================================================================
@@ -79,16 +109,19 @@ public class UserService {
 
     /** Добровольный logout или SessionDisconnectEvent */
     public void disconnect(String nick, String sessionId) {
+        mailboxes.run(nick, () -> leave(nick, sessionId));
+    }
+
+    private void leave(String nick, String sessionId) {
         Optional<User> opt  = store.get(nick);
         UserRole       role = opt.map(User::getRole).orElse(UserRole.REGULAR);
 
         /* 1) отладочная инфа (до отмены таймеров) */
-        Map<String, Long> tLeft = inactivity.timersFor(nick);
-        List<String>      rooms = chatRoomService.activeRoomsFor(nick);
+        logLeaving(nick, sessionId, role);
 
         /* 2) отменяем «личный» таймер */
         if (role == UserRole.ENGINEER) inactivity.cancelEngineer(nick);
-        else                           inactivity.cancelRegular(nick);
+        else                           inactivity.releaseRegular(nick);
 
         /* 3) удаляем из Store */
         store.remove(nick, sessionId);
@@ -96,31 +129,62 @@ public class UserService {
         /* 4) деактивируем все его комнаты */
         chatRoomService.deactivateChatsForUser(nick);
 
-        /* 5) лог + OFFLINE всем */
-        log.info("OFFLINE ⇢ {}@{} role={} timers={} rooms={}",
-                nick, sessionId, role, tLeft, rooms);
-        messagingTemplate.convertAndSend("/topic/public",
-                new User(nick, Status.OFFLINE, role));
+        /* 5) аудит + OFFLINE всем */
+        audit.offline(nick, sessionId, role);
+        presence.offline(nick, role);
+    }
+
+    /* =======================================================================
+                                 DRAIN УЗЛА
+       ======================================================================= */
+
+    /**
+     * Узел уходит, новые сессии уже не принимаются: все его пользователи
+     * выходят разом. Сначала ящики доделывают начатые входы и выходы, затем
+     * таймеры и онлайн каждого, комнаты – одним проходом, OFFLINE – одним
+     * кадром присутствия.
+     * @return сколько активных комнат деактивировано
+     */
+    public int drain(Collection<User> leaving) {
+        if (leaving.isEmpty()) return 0;
+        if (!mailboxes.quiesce(SETTLE)) log.warn("Ящики не опустели за {} – drain идёт как есть", SETTLE);
+
+        List<String> nicks = new ArrayList<>(leaving.size());
+        for (User u : leaving) {
+            String nick = u.getNickName();
+            if (u.getRole() == UserRole.ENGINEER) inactivity.cancelEngineer(nick);
+            else                                   inactivity.releaseRegular(nick);
+            store.forceRemove(nick);
+            audit.offline(nick, null, u.getRole());
+            nicks.add(nick);
+        }
+        int rooms = chatRoomService.deactivateChatsForUsers(nicks);
+        presence.offlineAll(leaving);
+        return rooms;
+    }
+
+    /**
+     * Оставшиеся таймеры и активные комнаты уходящего – только при DEBUG:
+     * timersFor и activeRoomsFor перебирают все таймеры и комнаты.
+     */
+    private void logLeaving(String nick, String sessionId, UserRole role) {
+        if (log.isDebugEnabled()) {
+            log.debug("OFFLINE ⇢ {}@{} role={} timers={} rooms={}", nick, sessionId, role,
+                    inactivity.timersFor(nick), chatRoomService.activeRoomsFor(nick));
+        }
     }
 
     /* =======================================================================
                            QUERIES ДЛЯ CONTROLLER-ОВ
        ======================================================================= */
 
-    /** «Свободные» REGULAR-ы (видно инженеру) */
+    /** «Свободные» REGULAR-ы (видно инженеру), берутся из готового представления */
     public List<User> findConnectedUsersForEngineer() {
-        return store.all().stream()
-                .filter(u -> u.getStatus() == Status.ONLINE)
-                .filter(u -> u.getRole() == UserRole.REGULAR)
-                .filter(u -> !chatRoomService.isUserInActiveChatWithEngineer(u.getNickName()))
-                .toList();
+        return List.copyOf(available.regulars());
     }
 
     /** Все ONLINE, кто не «занят» чатом с инженером */
     public List<User> findConnectedUsers() {
-        return store.all().stream()
-                .filter(u -> u.getStatus() == Status.ONLINE)
-                .filter(u -> !chatRoomService.isUserInActiveChatWithEngineer(u.getNickName()))
-                .toList();
+        return List.copyOf(available.visible());
     }
 }
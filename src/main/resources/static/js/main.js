@@ -17,6 +17,13 @@ let role = null;
 let selectedUserId = null;
 let lastRenderedMsgId = null;
 
+/* ---- курсоры истории (GET /messages/...?afterId=&beforeId=&limit=) ---- */
+const HISTORY_PAGE = 50;      // сколько сообщений грузим за один запрос
+let lastSeenMsgId = 0;        // максимальный id, известный клиенту в открытом чате
+let oldestLoadedId = null;    // id самого старого показанного сообщения
+let ownSentSinceSeen = 0;     // свои сообщения после lastSeenMsgId (тоже занимают id)
+let loadingOlder = false;
+
 // Обработчик для отправки сообщения при нажатии Enter (без Shift)
 messageInput.addEventListener('keydown', function (e) {
     if (e.key === 'Enter' && !e.shiftKey) {
@@ -48,6 +55,7 @@ async function deactivateCurrentChat() {
 
     // чистим экран
     selectedUserId = null;
+    resetHistoryCursors();
     chatArea.innerHTML = '';
     // прячем поле ввода только если REGULAR, ENGINEER оставляем возможность писать «самому себе»
     if (role === 'REGULAR') {
@@ -72,84 +80,186 @@ function connect(event) {
     role = document.querySelector('#role').value.trim();
 
     if (nickname && role) {
-        // создаём SockJS + STOMP без предварительного скрытия формы
-        const socket = new SockJS('/ws');
-        stompClient = Stomp.over(socket);
-        stompClient.connect({nickName: nickname}, onConnected, onError);
+        // без предварительного скрытия формы; сначала «голый» WebSocket
+        openStomp(true);
     }
     event.preventDefault();
 }
 
 /**
- * Коллбэк при успешном подключении STOMP
+ * STOMP поверх /stomp (чистый WebSocket, без кадрирования SockJS, со сжатием
+ * permessage-deflate, тела MESSAGE – в CBOR); если WebSocket не прошёл
+ * (прокси, старый браузер) – повторяем через SockJS /ws, там всё в JSON
  */
-function onConnected() {
+function openStomp(preferNative) {
+    let connected = false;
+    const native = preferNative && !!window.WebSocket;
+    const socket = native
+        ? new WebSocket((location.protocol === 'https:' ? 'wss://' : 'ws://') + location.host + '/stomp')
+        : new SockJS('/ws');
+    stompClient = Stomp.over(socket);
+    stompClient.connect(native ? {nickName: nickname, accept: CBOR_TYPE} : {nickName: nickname},
+        frame => { connected = true; onConnected(frame); },
+        error => {
+            // строка – обрыв транспорта, кадр ERROR – отказ сервера
+            if (preferNative && !connected && typeof error === 'string') {
+                openStomp(false);
+            } else {
+                onError(error);
+            }
+        });
+    if (native) decodeBinaryFrames(socket);   // connect() уже повесил свой onmessage
+}
 
-    /* 1. личная очередь ошибок (ник занят) ---------------- */
-    stompClient.subscribe('/user/queue/errors', frame => {
-        alert(frame.body);
-        stompClient.disconnect();  // остаёмся на форме логина
-    });
 
-    /* 2. подтверждение успешной регистрации --------------- */
-    stompClient.subscribe('/topic/public', frame => {
-        const user = JSON.parse(frame.body);
-
-        // ==== НОВОЕ: если мы REGULAR и тот ENGINEER, с которым в чате, ушёл OFFLINE:
-        if (
-            role === 'REGULAR' &&
-            user.role === 'ENGINEER' &&
-            user.status === 'OFFLINE' &&
-            user.nickName === selectedUserId
-        ) {
-            // Инженер, с которым мы ранее переписывались, ушёл в OFFLINE:
-            selectedUserId = null;
-            chatArea.innerHTML = '';            // очищаем историю чата
-            // Оставляем поле ввода, чтобы REGULAR мог снова писать самому себе
-            messageForm.classList.remove('hidden');
-            finishChatBtn.classList.add('hidden');
-        }
 
-        /* === Существующая логика: нас отключили за бездействие === */
-        if (user.nickName === nickname && user.status === 'OFFLINE') {
-            alert('Вы были отключены за отсутствие активности');
-
-            /* сворачиваем UI в исходное состояние */
-            chatPage.classList.add('hidden');
-            usernamePage.classList.remove('hidden');
-            messageForm.classList.add('hidden');
-            finishChatBtn.classList.add('hidden');
-            selectedUserId = null;
-            lastRenderedMsgId = null;
-
-            /* закрываем STOMP-сессию (чтобы можно было залогиниться заново) */
-            if (stompClient && stompClient.connected) {
-                stompClient.disconnect();
-            }
-            return; // дальше код не нужен
+/* =======================================================================
+   CBOR на «голом» WebSocket: после CONNECT с accept: application/cbor сервер
+   шлёт все кадры бинарными, а тела MESSAGE – в CBOR. stomp.js 2.3.3 режет
+   кадры по NUL и бинарных тел не понимает, поэтому бинарный кадр до него
+   разбираем сами и отдаём текстом, с телом в JSON – подписчики не меняются.
+   ======================================================================= */
+const CBOR_TYPE = 'application/cbor';
+
+function decodeBinaryFrames(socket) {
+    const onmessage = socket.onmessage;
+    socket.binaryType = 'arraybuffer';
+    socket.onmessage = evt => onmessage(evt.data instanceof ArrayBuffer
+        ? {data: binaryFrameToText(new Uint8Array(evt.data))}
+        : evt);
+}
+
+/** Один STOMP-кадр из байтов в текст; тело CBOR – в JSON, content-length убираем */
+function binaryFrameToText(bytes) {
+    const utf8 = new TextDecoder();
+    let end = 0;                                   // пустая строка после заголовков
+    while (end + 1 < bytes.length && !(bytes[end] === 10 && bytes[end + 1] === 10)) end++;
+    if (end + 1 >= bytes.length) return utf8.decode(bytes);       // heart-beat
+
+    const lines = utf8.decode(bytes.subarray(0, end)).split('\n');
+    let length = -1, cbor = false;
+    const head = [lines[0]];
+    for (const line of lines.slice(1)) {
+        const name = line.substring(0, line.indexOf(':'));
+        const value = line.substring(name.length + 1);
+        if (name === 'content-length') { if (length < 0) length = parseInt(value, 10); continue; }
+        if (name === 'content-type' && value.startsWith(CBOR_TYPE)) {
+            cbor = true;
+            head.push('content-type:application/json');
+            continue;
         }
+        head.push(line);
+    }
 
-        /* если это мы сами и статус ONLINE – просто заходим в чат-UI */
-        if (user.nickName === nickname && user.status === 'ONLINE') {
-            switchToChatUI();
-            return;
+    const start = end + 2;
+    const stop = length >= 0 ? start + length : bytes.indexOf(0, start);
+    const body = bytes.subarray(start, stop < 0 ? bytes.length : stop);
+    head.push('', cbor ? JSON.stringify(decodeCbor(body)) : utf8.decode(body));
+    return head.join('\n') + '\0';
+}
+
+/** RFC 8949 в объём, который пишет Jackson: числа, строки, массивы, объекты, в т.ч. без длины */
+function decodeCbor(bytes) {
+    const view = new DataView(bytes.buffer, bytes.byteOffset, bytes.byteLength);
+    const utf8 = new TextDecoder();
+    const BREAK = {};
+    let pos = 0;
+
+    function length(info) {
+        switch (info) {
+            case 24: pos += 1; return view.getUint8(pos - 1);
+            case 25: pos += 2; return view.getUint16(pos - 2);
+            case 26: pos += 4; return view.getUint32(pos - 4);
+            case 27: pos += 8; return Number(view.getBigUint64(pos - 8));
+            case 31: return -1;                    // до кадра break
+            default:
+                if (info < 24) return info;
+                throw new Error('CBOR: неверная длина ' + info);
         }
+    }
+
+    function half(h) {
+        const exp = (h >> 10) & 31, frac = h & 1023, sign = h & 0x8000 ? -1 : 1;
+        if (exp === 0) return sign * frac * 2 ** -24;
+        if (exp === 31) return frac ? NaN : sign * Infinity;
+        return sign * (1 + frac / 1024) * 2 ** (exp - 15);
+    }
 
-        /* ---------- реакция на любые ONLINE/OFFLINE REGULAR-ов -------- */
-        if (role === 'ENGINEER' && user.role === 'REGULAR') {
-            findAndDisplayConnectedUsers();
+    function chunk(major, len) {
+        const raw = bytes.subarray(pos, pos += len);
+        return major === 3 ? utf8.decode(raw) : btoa(String.fromCharCode(...raw));   // байты – base64, как в JSON
+    }
+
+    function item() {
+        const initial = view.getUint8(pos++);
+        if (initial === 0xff) return BREAK;
+        const major = initial >> 5, info = initial & 31;
+        if (major === 7) {
+            switch (info) {
+                case 20: return false;
+                case 21: return true;
+                case 22: return null;
+                case 23: return undefined;
+                case 25: pos += 2; return half(view.getUint16(pos - 2));
+                case 26: pos += 4; return view.getFloat32(pos - 4);
+                case 27: pos += 8; return view.getFloat64(pos - 8);
+                default: throw new Error('CBOR: неизвестное простое значение ' + info);
+            }
+        }
+        const len = length(info);
+        switch (major) {
+            case 0: return len;
+            case 1: return -1 - len;
+            case 2:
+            case 3: {
+                if (len >= 0) return chunk(major, len);
+                let s = '';
+                for (let part = item(); part !== BREAK; part = item()) s += part;
+                return s;
+            }
+            case 4: {
+                const a = [];
+                for (let i = 0; len < 0 || i < len; i++) {
+                    const v = item();
+                    if (v === BREAK) break;
+                    a.push(v);
+                }
+                return a;
+            }
+            case 5: {
+                const o = {};
+                for (let i = 0; len < 0 || i < len; i++) {
+                    const k = item();
+                    if (k === BREAK) break;
+                    o[k] = item();
+                }
+                return o;
+            }
+            default: return item();                // тег (BigDecimal и т.п.) – берём само значение
         }
+    }
 
-        /* ---------- активный собеседник внезапно OFFLINE ------------- */
-        if (
-            user.role === 'REGULAR' &&
-            user.status === 'OFFLINE' &&
-            user.nickName === selectedUserId
-        ) {
-            selectedUserId = null;
-            chatArea.innerHTML = '';
-            messageForm.classList.add('hidden');
-            finishChatBtn.classList.add('hidden');
+    return item();
+}
+
+/**
+ * Коллбэк при успешном подключении STOMP
+ */
+function onConnected() {
+
+    /* 1. личная очередь ошибок (ник занят) ---------------- */
+    stompClient.subscribe('/user/queue/errors', frame => {
+        alert(frame.body);
+        stompClient.disconnect();  // остаёмся на форме логина
+    });
+
+    /* 2. кадры присутствия (и подтверждение нашей регистрации) */
+    stompClient.subscribe('/topic/public', async frame => {
+        presenceListDirty = false;
+        await applyPresenceDelta(JSON.parse(frame.body), onPresenceChange,
+            () => { presenceListDirty = true; });
+        if (presenceListDirty && role === 'ENGINEER') {
+            await findAndDisplayConnectedUsers();
         }
     });
 
@@ -170,6 +280,102 @@ function onConnected() {
 
 
 
+/* =======================================================================
+   Присутствие: /topic/public шлёт кадры {fromVersion, toVersion, changes[]},
+   по одному изменению на ник. Пропущенный кадр догоняем через
+   /users?sinceVersion= (дельта, либо полный срез, если версия устарела).
+   ======================================================================= */
+let presenceVersion   = null;    // последняя применённая версия
+let presenceListDirty = false;   // инженеру нужно перерисовать список
+
+async function applyPresenceDelta(delta, onChange, onFullResync) {
+    if (presenceVersion !== null && delta.fromVersion > presenceVersion) {
+        await resyncPresence(onChange, onFullResync);
+    }
+    for (const change of delta.changes) {
+        if (presenceVersion !== null && change.version <= presenceVersion) continue;
+        if (onChange(change) === false) return;          // нас отключили – дальше не нужно
+    }
+    presenceVersion = Math.max(presenceVersion ?? 0, delta.toVersion);
+}
+
+async function resyncPresence(onChange, onFullResync) {
+    try {
+        const res  = await fetch(`/users?sinceVersion=${presenceVersion}`);
+        const sync = await res.json();                   // {version, full, changes}
+        if (sync.full) onFullResync();
+        else sync.changes.forEach(onChange);
+        presenceVersion = sync.version;
+    } catch (error) {
+        console.error('Не удалось догнать присутствие:', error);
+    }
+}
+
+/** Одно изменение присутствия; false – дальше кадр не обрабатывать */
+function onPresenceChange(user) {
+    // ==== НОВОЕ: если мы REGULAR и тот ENGINEER, с которым в чате, ушёл OFFLINE:
+    if (
+        role === 'REGULAR' &&
+        user.role === 'ENGINEER' &&
+        user.status === 'OFFLINE' &&
+        user.nickName === selectedUserId
+    ) {
+        // Инженер, с которым мы ранее переписывались, ушёл в OFFLINE:
+        selectedUserId = null;
+        resetHistoryCursors();
+        chatArea.innerHTML = '';            // очищаем историю чата
+        // Оставляем поле ввода, чтобы REGULAR мог снова писать самому себе
+        messageForm.classList.remove('hidden');
+        finishChatBtn.classList.add('hidden');
+    }
+
+    /* === Существующая логика: нас отключили за бездействие === */
+    if (user.nickName === nickname && user.status === 'OFFLINE') {
+        alert('Вы были отключены за отсутствие активности');
+
+        /* сворачиваем UI в исходное состояние */
+        chatPage.classList.add('hidden');
+        usernamePage.classList.remove('hidden');
+        messageForm.classList.add('hidden');
+        finishChatBtn.classList.add('hidden');
+        selectedUserId = null;
+        resetHistoryCursors();
+        lastRenderedMsgId = null;
+
+        /* закрываем STOMP-сессию (чтобы можно было залогиниться заново) */
+        if (stompClient && stompClient.connected) {
+            stompClient.disconnect();
+        }
+        presenceVersion = null;
+        return false; // дальше кадр не нужен
+    }
+
+    /* если это мы сами и статус ONLINE – просто заходим в чат-UI */
+    if (user.nickName === nickname && user.status === 'ONLINE') {
+        switchToChatUI();
+        return true;
+    }
+
+    /* ---------- реакция на любые ONLINE/OFFLINE REGULAR-ов -------- */
+    if (role === 'ENGINEER' && user.role === 'REGULAR') {
+        presenceListDirty = true;           // список перерисуем один раз на кадр
+    }
+
+    /* ---------- активный собеседник внезапно OFFLINE ------------- */
+    if (
+        user.role === 'REGULAR' &&
+        user.status === 'OFFLINE' &&
+        user.nickName === selectedUserId
+    ) {
+        selectedUserId = null;
+        resetHistoryCursors();
+        chatArea.innerHTML = '';
+        messageForm.classList.add('hidden');
+        finishChatBtn.classList.add('hidden');
+    }
+    return true;
+}
+
 /**
  * Загружаем всех ONLINE-пользователей с сервера и отображаем
  */
@@ -217,6 +423,7 @@ async function onUserStatus(payload) {
     /* ---------- 1. REGULAR слышит «я стал свободен» --------------- */
     if (role === 'REGULAR' && userId === nickname && !busy) {
         selectedUserId = null;
+        resetHistoryCursors();
         chatArea.innerHTML = '';
         messageForm.classList.remove('hidden'); // ← чтобы можно было писать себе
         finishChatBtn.classList.add('hidden');
@@ -229,6 +436,7 @@ async function onUserStatus(payload) {
     /* 2-A. если сообщение про активного собеседника и тот освободился */
     if (userId === selectedUserId && !busy) {
         selectedUserId = null;
+        resetHistoryCursors();
         chatArea.innerHTML = '';
         messageForm.classList.add('hidden');
         finishChatBtn.classList.add('hidden');
@@ -289,13 +497,25 @@ async function userItemClick(event) {
     const clickedUser = event.currentTarget;
     clickedUser.classList.add('active');
 
+    const sameChat = selectedUserId === clickedUser.getAttribute('id') && lastSeenMsgId > 0;
     selectedUserId = clickedUser.getAttribute('id');
-    await fetch(`/chatrooms/activate/${nickname}/${selectedUserId}`, {method: 'POST'});
+    const res = await fetch(`/chatrooms/activate/${nickname}/${selectedUserId}`, {method: 'POST'});
+    if (res.status === 409) {
+        // пользователя уже взял другой инженер
+        alert(await res.text());
+        selectedUserId = null;
+        resetHistoryCursors();
+        clickedUser.classList.remove('active');
+        messageForm.classList.add('hidden');
+        await findAndDisplayConnectedUsers();
+        return;
+    }
 // 2. показываем кнопку «Закончить разговор»
     finishChatBtn.classList.remove('hidden');
 // 3. обновляем список – у других инженеров пользователь исчезнет
     await findAndDisplayConnectedUsers();
-    fetchAndDisplayUserChat().then();
+// 4. тот же собеседник – догружаем только новое, иначе последнюю страницу
+    (sameChat ? fetchChatDelta() : fetchAndDisplayUserChat()).then();
 
     // Сбрасываем счётчик непрочитанных для данного пользователя
     const nbrMsg = clickedUser.querySelector('.nbr-msg');
@@ -304,22 +524,110 @@ async function userItemClick(event) {
 }
 
 /**
- * Подгружаем историю сообщений между текущим (nickname) и выбранным (selectedUserId)
+ * Сервер назначил инженеру REGULAR-а: открываем диалог без клика по списку
+ */
+async function openAssignedChat(userId) {
+    document.querySelectorAll('.user-item').forEach(item =>
+        item.classList.toggle('active', item.id === userId));
+    selectedUserId = userId;
+    messageForm.classList.remove('hidden');
+    finishChatBtn.classList.remove('hidden');
+    await fetchAndDisplayUserChat();
+}
+
+/**
+ * Подгружаем последнюю страницу истории между текущим (nickname) и выбранным (selectedUserId)
  */
 async function fetchAndDisplayUserChat() {
     try {
-        const userChatResponse = await fetch(`/messages/${nickname}/${selectedUserId}`);
-        const userChat = await userChatResponse.json();
+        const userChat = await fetchHistory({limit: HISTORY_PAGE});
         chatArea.innerHTML = '';
+        resetHistoryCursors();
         userChat.forEach(chat => {
             displayMessage(chat.senderId, chat.content, chat.id);
         });
+        rememberLoaded(userChat);
         chatArea.scrollTop = chatArea.scrollHeight;
     } catch (error) {
         console.error('Ошибка при загрузке чата:', error);
     }
 }
 
+/**
+ * GET истории выбранного чата с курсорами {afterId, beforeId, limit}
+ */
+async function fetchHistory(params) {
+    const query = new URLSearchParams(params).toString();
+    const response = await fetch(`/messages/${nickname}/${selectedUserId}?${query}`);
+    return response.json();
+}
+
+/*
+ * Чат закрыт: сервер очищает историю пары, и после новой активации id снова
+ * идут с 1 – курсоры старого чата дали бы afterId больше любого нового id
+ */
+function resetHistoryCursors() {
+    lastSeenMsgId = 0;
+    oldestLoadedId = null;
+    ownSentSinceSeen = 0;
+}
+
+/* запоминаем границы загруженного диапазона id */
+function rememberLoaded(messages) {
+    if (!messages.length) return;
+    const first = Number(messages[0].id);
+    const last = Number(messages[messages.length - 1].id);
+    if (oldestLoadedId === null || first < oldestLoadedId) oldestLoadedId = first;
+    if (last > lastSeenMsgId) {
+        lastSeenMsgId = last;
+        ownSentSinceSeen = 0;
+    }
+}
+
+/**
+ * Догружаем только сообщения после lastSeenMsgId.
+ * Свои сообщения уже показаны эхом при отправке, поэтому берём только чужие.
+ */
+async function fetchChatDelta() {
+    try {
+        const delta = await fetchHistory({afterId: lastSeenMsgId, limit: HISTORY_PAGE});
+        delta.filter(m => m.senderId !== nickname)
+            .forEach(m => displayMessage(m.senderId, m.content, m.id));
+        rememberLoaded(delta);
+        chatArea.scrollTop = chatArea.scrollHeight;
+    } catch (error) {
+        console.error('Ошибка при загрузке новых сообщений:', error);
+    }
+}
+
+/**
+ * Прокрутили к началу – подгружаем страницу более старых сообщений
+ */
+async function loadOlderMessages() {
+    if (loadingOlder || !selectedUserId || oldestLoadedId === null || oldestLoadedId <= 1) return;
+    loadingOlder = true;
+    try {
+        const older = await fetchHistory({beforeId: oldestLoadedId, limit: HISTORY_PAGE});
+        if (!older.length) {                 // старше ничего не сохранилось
+            oldestLoadedId = 1;
+            return;
+        }
+        const prevHeight = chatArea.scrollHeight;
+        const first = chatArea.firstChild;
+        older.forEach(m => chatArea.insertBefore(createMessageElement(m.senderId, m.content), first));
+        rememberLoaded(older);
+        chatArea.scrollTop = chatArea.scrollHeight - prevHeight;   // остаёмся на том же месте
+    } catch (error) {
+        console.error('Ошибка при загрузке истории:', error);
+    } finally {
+        loadingOlder = false;
+    }
+}
+
+chatArea.addEventListener('scroll', () => {
+    if (chatArea.scrollTop === 0) loadOlderMessages();
+});
+
 /**
  * Обработчик ошибок WebSocket
  */
@@ -357,6 +665,7 @@ function sendMessage(event) {
         // echo в чат сразу, только если пишем не себе
         if (nickname !== selectedUserId) {
             displayMessage(nickname, text);
+            ownSentSinceSeen++;
         }
         messageInput.value = '';
     }
@@ -397,6 +706,12 @@ async function onMessageReceived(payload) {
     }
 
 
+    // раздача: системное уведомление от REGULAR-а – сервер назначил его нам
+    if (role === 'ENGINEER' && String(message.id) === '0' && message.content === '') {
+        await openAssignedChat(message.senderId);
+        return;
+    }
+
     // Если мы REGULAR и ещё не видим чат, значит, инженер начал диалог
     if (role === 'REGULAR') {
 
@@ -426,7 +741,20 @@ async function onMessageReceived(payload) {
     if (selectedUserId
         && message.senderId === selectedUserId
         && message.id.toString() !== lastRenderedMsgId) {
-        displayMessage(message.senderId, message.content, message.id);
+        const msgId = Number(message.id);
+        if (lastSeenMsgId > 0 && msgId <= lastSeenMsgId) {
+            // нумерация началась заново – закрытие чата мы пропустили; берём историю с нуля
+            await fetchAndDisplayUserChat();
+        } else if (lastSeenMsgId > 0 && msgId > lastSeenMsgId + ownSentSinceSeen + 1) {
+            // между известным и пришедшим есть пропущенные сообщения – берём только дельту
+            await fetchChatDelta();
+        } else {
+            displayMessage(message.senderId, message.content, message.id);
+            if (msgId > lastSeenMsgId) {
+                lastSeenMsgId = msgId;
+                ownSentSinceSeen = 0;
+            }
+        }
         chatArea.scrollTop = chatArea.scrollHeight;
     } else {
         // Иначе это может быть сообщение от другого пользователя.
@@ -447,6 +775,14 @@ async function onMessageReceived(payload) {
  * Отображаем сообщение (простой вывод в чат)
  */
 function displayMessage(senderId, content, id = null) {
+    chatArea.appendChild(createMessageElement(senderId, content));
+    if (id !== null && id !== undefined) {
+        lastRenderedMsgId = id.toString();
+    }
+}
+
+/* div-пузырь сообщения */
+function createMessageElement(senderId, content) {
     const messageContainer = document.createElement('div');
     messageContainer.classList.add('message');
     // Если это наше собственное сообщение
@@ -459,10 +795,7 @@ function displayMessage(senderId, content, id = null) {
     const message = document.createElement('p');
     message.textContent = content;
     messageContainer.appendChild(message);
-    chatArea.appendChild(messageContainer);
-    if (id !== null && id !== undefined) {
-        lastRenderedMsgId = id.toString();
-    }
+    return messageContainer;
 }
 
 /**
@@ -501,33 +834,47 @@ async function adminInit() {
     await adminReloadOverview();
 
     // 3) «подглядываем» все новые сообщения
+    //    сервер шлёт пачки {seq, dropped, messages[]} раз в ~100 мс
     stompClient.subscribe('/topic/admin-feed', frame => {
-        const msg = JSON.parse(frame.body);            // новое сообщение
+        const batch = JSON.parse(frame.body);
+        if (batch.dropped > 0) {
+            console.warn(`admin-feed: пропущено ${batch.dropped} сообщений (перегрузка)`);
+        }
         const pair = selectedPair();                   // выбранная пара в чате
         if (!pair) return;
         const [left, right] = pair;
-        if (
-            (msg.senderId === left && msg.recipientId === right) ||
-            (msg.senderId === right && msg.recipientId === left)
-        ) {
-            displayMessage(msg.senderId, msg.content, msg.id);
+
+        const fragment = document.createDocumentFragment();
+        batch.messages.forEach(msg => {
+            if (
+                (msg.senderId === left && msg.recipientId === right) ||
+                (msg.senderId === right && msg.recipientId === left)
+            ) {
+                fragment.appendChild(createMessageElement(msg.senderId, msg.content));
+                lastRenderedMsgId = msg.id.toString();
+            }
+        });
+        if (fragment.childNodes.length) {              // одна перерисовка на пачку
+            chatArea.appendChild(fragment);
             chatArea.scrollTop = chatArea.scrollHeight;
         }
     });
 
     // 4) ONLINE / OFFLINE
-    stompClient.subscribe('/topic/public', frame => {
-        const u = JSON.parse(frame.body);              // {nickName, role, status}
-        if (u.role === 'ADMIN') return;                // самих админов не показываем
-
-        if (u.status === 'OFFLINE') {                  // ушёл – убираем
-            document.getElementById(u.nickName)?.remove();
-            delete chatBusy[u.nickName];
-            return;
-        }
-        // ONLINE – добавляем/обновляем
-        upsertUserLi(u.nickName, u.role, chatBusy[u.nickName] ?? false);
-    });
+    //    (отдельная подписка админа; разрыв версий – перечитываем overview)
+    stompClient.subscribe('/topic/public', frame =>
+        applyPresenceDelta(JSON.parse(frame.body), u => {
+            if (u.role === 'ADMIN') return true;       // самих админов не показываем
+
+            if (u.status === 'OFFLINE') {              // ушёл – убираем
+                document.getElementById(u.nickName)?.remove();
+                delete chatBusy[u.nickName];
+                return true;
+            }
+            // ONLINE – добавляем/обновляем
+            upsertUserLi(u.nickName, u.role, chatBusy[u.nickName] ?? false);
+            return true;
+        }, adminReloadOverview));
 
     // 5) BUSY / FREE
     stompClient.subscribe('/topic/user-status', frame => {
@@ -582,7 +929,7 @@ async function adminSelectUser(nick, busy) {
     chatArea.dataset.left = nick;
     chatArea.dataset.right = partner;
 
-    const history = await fetch(`/messages/${nick}/${partner}`)
+    const history = await fetch(`/messages/${nick}/${partner}?limit=${HISTORY_PAGE}`)
         .then(r => r.json());
     history.forEach(m => displayMessage(m.senderId, m.content, m.id));
     chatArea.scrollTop = chatArea.scrollHeight;
@@ -0,0 +1,141 @@
+package com.alibou.websocket.audit;
+
+import com.alibou.websocket.chat.ChatMessage;
+import com.alibou.websocket.user.UserRole;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AuditLogTest {
+
+    @TempDir
+    Path dir;
+
+    private AuditLog audit;
+
+    @AfterEach
+    void tearDown() {
+        if (audit != null) audit.close();
+    }
+
+    @Test
+    void writesStructuredLinesWithoutContent() throws Exception {
+        audit = start(1024, 1 << 20, 1.0);
+        audit.online("reg\"1", "s-1", UserRole.REGULAR);
+        audit.pairBusy("eng", "reg\"1");
+        audit.message(message(7, "eng", "reg\"1", "секрет"));
+        audit.offline("reg\"1", "s-1", UserRole.REGULAR);
+        audit.close();
+
+        List<String> lines = Files.readAllLines(dir.resolve("audit.log"));
+        assertThat(lines).hasSize(4);
+        assertThat(lines.get(0)).contains("\"event\":\"ONLINE\"", "\"user\":\"reg\\\"1\"",
+                "\"session\":\"s-1\"", "\"role\":\"REGULAR\"");
+        assertThat(lines.get(1)).contains("\"event\":\"BUSY\"", "\"peer\":\"eng\"");
+        assertThat(lines.get(2)).contains("\"event\":\"MESSAGE\"", "\"chat\":\"eng_reg\\\"1\"", "\"id\":7")
+                                .doesNotContain("секрет");
+        assertThat(lines.get(3)).contains("\"event\":\"OFFLINE\"");
+        assertThat(audit.written()).isEqualTo(4);
+    }
+
+    @Test
+    void messagesAreSampled() {
+        audit = start(1024, 1 << 20, 0.0);
+        for (int i = 0; i < 100; i++) audit.message(message(i, "eng", "reg", "hi"));
+        audit.online("reg", "s-1", UserRole.REGULAR);                   // не сэмплируется
+        audit.close();
+
+        assertThat(audit.sampledOut()).isEqualTo(100);
+        assertThat(audit.written()).isEqualTo(1);
+    }
+
+    @Test
+    void fullRingDropsInsteadOfBlocking() throws Exception {
+        audit = new AuditLog(dir.resolve("audit.log"), 64, 1 << 20, 2, 60_000, 1.0);  // поток записи не запущен
+
+        int threads = 4, each = 1_000;
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        CountDownLatch  done = new CountDownLatch(threads);
+        for (int t = 0; t < threads; t++) {
+            pool.execute(() -> {
+                for (int i = 0; i < each; i++) audit.pairFree("eng", "reg");
+                done.countDown();
+            });
+        }
+        assertThat(done.await(10, TimeUnit.SECONDS)).isTrue();
+        pool.shutdown();
+
+        assertThat(audit.pending()).isEqualTo(64);
+        assertThat(audit.dropped()).isEqualTo(threads * each - 64);
+
+        audit.start();                                                   // накопленное уходит в файл
+        audit.close();
+        assertThat(Files.readAllLines(dir.resolve("audit.log"))).hasSize(64);
+    }
+
+    @Test
+    void rollsBySizeAndKeepsMaxFiles() throws Exception {
+        audit = start(16, 200, 2);
+        for (int batch = 0; batch < 6; batch++) {
+            for (int i = 0; i < 3; i++) audit.online("user-" + batch + "-" + i, "s", UserRole.REGULAR);
+            awaitWritten(3L * (batch + 1));
+        }
+        audit.close();
+
+        List<Path> files = new ArrayList<>();
+        try (var list = Files.list(dir)) {
+            list.sorted().forEach(files::add);
+        }
+        assertThat(files).extracting(p -> p.getFileName().toString())
+                         .containsExactly("audit.log", "audit.log.1", "audit.log.2");
+        for (Path p : files) assertThat(Files.size(p)).isLessThanOrEqualTo(500);
+        assertThat(Files.readString(dir.resolve("audit.log"))).contains("user-5-2");
+    }
+
+    /* ---------- helpers ---------- */
+
+    private AuditLog start(int ring, long maxFileBytes, double sampleRate) {
+        return start(ring, maxFileBytes, 2, sampleRate);
+    }
+
+    private AuditLog start(int ring, long maxFileBytes, int maxFiles) {
+        return start(ring, maxFileBytes, maxFiles, 1.0);
+    }
+
+    private AuditLog start(int ring, long maxFileBytes, int maxFiles, double sampleRate) {
+        AuditLog a = new AuditLog(dir.resolve("audit.log"), ring, maxFileBytes, maxFiles, 10, sampleRate);
+        try {
+            a.start();
+        } catch (Exception e) {
+            throw new AssertionError(e);
+        }
+        return a;
+    }
+
+    private void awaitWritten(long n) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (audit.written() < n && System.nanoTime() < deadline) Thread.sleep(5);
+        assertThat(audit.written()).isEqualTo(n);
+    }
+
+    private static ChatMessage message(long id, String from, String to, String text) {
+        ChatMessage m = new ChatMessage();
+        m.setId(id);
+        m.setChatId(from + "_" + to);
+        m.setSenderId(from);
+        m.setRecipientId(to);
+        m.setContent(text);
+        return m;
+    }
+}
@@ -0,0 +1,92 @@
+package com.alibou.websocket.chat;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class AdminFeedAggregatorTest {
+
+    private final SimpMessagingTemplate messaging = mock(SimpMessagingTemplate.class);
+    private AdminFeedAggregator feed;
+
+    @AfterEach
+    void tearDown() {
+        if (feed != null) feed.stop();
+    }
+
+    @Test
+    void coalescesMessagesWithinWindow() {
+        feed = new AdminFeedAggregator(messaging, 60_000, 100, 1_000);   // поток не запущен – flush вручную
+        for (int i = 1; i <= 250; i++) feed.offer(msg(i));
+        feed.flush();
+
+        List<AdminFeedBatch> frames = sent(3);
+        assertThat(frames).extracting(b -> b.messages().size()).containsExactly(100, 100, 50);
+        assertThat(frames.get(0).messages().get(0).getId()).isEqualTo(1);
+        assertThat(frames.get(2).messages().get(49).getId()).isEqualTo(250);
+        assertThat(frames).extracting(AdminFeedBatch::seq).containsExactly(1L, 2L, 3L);
+    }
+
+    @Test
+    void dropsOldestUnderBackpressure() {
+        feed = new AdminFeedAggregator(messaging, 60_000, 100, 300);
+        for (int i = 1; i <= 1_000; i++) feed.offer(msg(i));
+        feed.flush();
+
+        List<AdminFeedBatch> frames = sent(3);
+        assertThat(frames.get(0).dropped()).isEqualTo(700);
+        assertThat(frames.get(0).messages().get(0).getId()).isEqualTo(701);
+        assertThat(frames.get(1).dropped()).isZero();
+        assertThat(feed.droppedTotal()).isEqualTo(700);
+    }
+
+    @Test
+    void senderThreadFlushesByTimeAndLosesNothingUnderConcurrency() throws Exception {
+        feed = new AdminFeedAggregator(messaging, 20, 50, 1_000_000);
+        feed.start();
+
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            int base = t * 10_000;
+            futures.add(pool.submit(() -> {
+                for (int i = 1; i <= 10_000; i++) feed.offer(msg(base + i));
+            }));
+        }
+        for (Future<?> f : futures) f.get();
+        pool.shutdown();
+
+        verify(messaging, timeout(2_000).atLeastOnce()).convertAndSend(eq(AdminFeedAggregator.DESTINATION), any(Object.class));
+        long deadline = System.currentTimeMillis() + 2_000;
+        while (feed.pending() > 0 && System.currentTimeMillis() < deadline) Thread.sleep(10);
+
+        List<AdminFeedBatch> frames = sent((int) feed.framesTotal());
+        assertThat(frames.stream().mapToInt(b -> b.messages().size()).sum()).isEqualTo(40_000);
+        assertThat(frames).allSatisfy(b -> assertThat(b.messages()).hasSizeLessThanOrEqualTo(50));
+        assertThat(feed.framesTotal()).isLessThan(40_000 / 10);        // кадров на порядок меньше сообщений
+    }
+
+    private List<AdminFeedBatch> sent(int frames) {
+        ArgumentCaptor<Object> captor = ArgumentCaptor.forClass(Object.class);
+        verify(messaging, times(frames)).convertAndSend(eq(AdminFeedAggregator.DESTINATION), captor.capture());
+        return captor.getAllValues().stream().map(AdminFeedBatch.class::cast).toList();
+    }
+
+    private static ChatMessage msg(long id) {
+        ChatMessage m = new ChatMessage();
+        m.setId(id);
+        m.setContent("x");
+        return m;
+    }
+}
@@ -0,0 +1,98 @@
+package com.alibou.websocket.chat;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ChatHistoryTest {
+
+    @Test
+    void keepsOnlyLastCapacityMessages() {
+        ChatHistory h = new ChatHistory(100);
+        for (int i = 0; i < 1_000; i++) h.append(msg());
+
+        List<ChatMessage> view = h.snapshot();
+        assertThat(view).hasSize(100);
+        assertThat(view.get(0).getId()).isEqualTo(901);
+        assertThat(view.get(99).getId()).isEqualTo(1_000);
+        assertThatThrownBy(() -> view.add(msg())).isInstanceOf(UnsupportedOperationException.class);
+    }
+
+    @Test
+    void snapshotIsStableWhileWriterContinues() {
+        ChatHistory h = new ChatHistory(10);
+        for (int i = 0; i < 10; i++) h.append(msg());
+        List<ChatMessage> before = h.snapshot();
+
+        for (int i = 0; i < 500; i++) h.append(msg());     // окно сдвинулось далеко вперёд
+
+        assertThat(before).extracting(ChatMessage::getId)
+                .containsExactly(1L, 2L, 3L, 4L, 5L, 6L, 7L, 8L, 9L, 10L);
+        assertThat(h.snapshot()).extracting(ChatMessage::getId).startsWith(501L).endsWith(510L);
+    }
+
+    @Test
+    void concurrentReadersAlwaysSeeContiguousIds() throws Exception {
+        ChatHistory h = new ChatHistory(300);
+        AtomicBoolean done = new AtomicBoolean();
+        ExecutorService pool = Executors.newFixedThreadPool(6);
+        List<Future<?>> futures = new ArrayList<>();
+
+        for (int w = 0; w < 2; w++) {
+            futures.add(pool.submit(() -> {
+                for (int i = 0; i < 50_000; i++) h.append(msg());
+            }));
+        }
+        for (int r = 0; r < 4; r++) {
+            futures.add(pool.submit(() -> {
+                while (!done.get()) {
+                    List<ChatMessage> view = h.snapshot();
+                    for (int i = 1; i < view.size(); i++) {
+                        assertThat(view.get(i).getId()).isEqualTo(view.get(i - 1).getId() + 1);
+                    }
+                }
+            }));
+        }
+        futures.get(0).get();
+        futures.get(1).get();
+        done.set(true);
+        for (Future<?> f : futures) f.get();
+        pool.shutdown();
+
+        assertThat(h.size()).isEqualTo(300);
+        assertThat(h.snapshot().get(299).getId()).isEqualTo(100_000);
+    }
+
+    @Test
+    void pagesByCursors() {
+        ChatHistory h = new ChatHistory(100);
+        for (int i = 0; i < 150; i++) h.append(msg());          // в окне id 51..150
+
+        assertThat(ids(h.page(null, null, 5))).containsExactly(146L, 147L, 148L, 149L, 150L);
+        assertThat(ids(h.page(147L, null, null))).containsExactly(148L, 149L, 150L);
+        assertThat(ids(h.page(10L, null, 3))).containsExactly(51L, 52L, 53L);   // курсор уже вытеснен
+        assertThat(ids(h.page(null, 55L, 3))).containsExactly(52L, 53L, 54L);
+        assertThat(ids(h.page(60L, 64L, null))).containsExactly(61L, 62L, 63L);
+        assertThat(h.page(150L, null, 10)).isEmpty();
+        assertThat(h.page(null, 51L, 10)).isEmpty();
+        assertThat(h.page(null, null, null)).hasSize(100);
+    }
+
+    private static List<Long> ids(List<ChatMessage> page) {
+        return page.stream().map(ChatMessage::getId).toList();
+    }
+
+    private static ChatMessage msg() {
+        ChatMessage m = new ChatMessage();
+        m.setContent("x");
+        return m;
+    }
+}
@@ -0,0 +1,193 @@
+package com.alibou.websocket.chat;
+
+import com.alibou.websocket.chatroom.ChatInactivityService;
+import com.alibou.websocket.chatroom.ChatRoomService;
+import com.alibou.websocket.user.OnlineUserStore;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+class ChatJournalTest {
+
+    private static final int SEGMENT = 4 * 1024;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void replaysLastMessagesAcrossSegments() throws Exception {
+        ChatJournal journal = open();
+        for (int i = 1; i <= 500; i++) {
+            journal.append(msg("a_b", i, "hello " + i));
+            if (i % 5 == 0) journal.append(msg("c_d", i / 5, "привет " + i));
+        }
+        journal.close();
+        assertThat(segments()).hasSizeGreaterThan(5);              // был rollover
+
+        Map<String, List<ChatMessage>> replayed = replay(open(), 50);
+        assertThat(replayed.get("a_b")).extracting(ChatMessage::getId)
+                .hasSize(50).startsWith(451L).endsWith(500L);
+        assertThat(replayed.get("a_b").get(49).getContent()).isEqualTo("hello 500");
+        assertThat(replayed.get("c_d")).hasSize(50);
+        assertThat(replayed.get("c_d").get(49).getContent()).isEqualTo("привет 500");
+    }
+
+    @Test
+    void clearForgetsChatAndDropsUnusedSegments() throws Exception {
+        ChatJournal journal = open();
+        for (int i = 1; i <= 300; i++) journal.append(msg("old_chat", i, "x".repeat(40)));
+        journal.clear("old_chat");
+        journal.append(msg("new_chat", 1, "fresh"));
+        journal.close();
+        int before = segments().size();
+
+        Map<String, List<ChatMessage>> replayed = replay(open(), 100);
+        assertThat(replayed).containsOnlyKeys("new_chat");
+        assertThat(segments().size()).isLessThan(before);          // сегменты old_chat удалены
+    }
+
+    @Test
+    void tornTailIsIgnoredAndOverwritten() throws Exception {
+        ChatJournal journal = open();
+        journal.append(msg("a_b", 1, "one"));
+        journal.append(msg("a_b", 2, "two"));
+        journal.close();
+
+        Path last = segments().get(segments().size() - 1);
+        try (RandomAccessFile f = new RandomAccessFile(last.toFile(), "rw")) {
+            long end = 0;
+            for (int len; (len = readInt(f, end)) > 0; ) end += 8 + len;
+            f.seek(end);
+            f.writeInt(100);                                         // длина есть, тела и crc нет
+        }
+
+        journal = open();
+        assertThat(replay(journal, 10).get("a_b")).extracting(ChatMessage::getId).containsExactly(1L, 2L);
+        journal = open();                                           // повторный replay не нужен – просто дописываем
+        journal.append(msg("a_b", 3, "three"));
+        journal.close();
+
+        assertThat(replay(open(), 10).get("a_b")).extracting(ChatMessage::getId).containsExactly(1L, 2L, 3L);
+    }
+
+    @Test
+    void historyRestoreContinuesIdSequence() {
+        ChatHistory h = new ChatHistory(10);
+        h.restore(List.of(msg("a_b", 7, "7"), msg("a_b", 5, "5"), msg("a_b", 6, "6")));
+
+        assertThat(h.snapshot()).extracting(ChatMessage::getId).containsExactly(5L, 6L, 7L);
+        assertThat(h.append(new ChatMessage()).getId()).isEqualTo(8);
+    }
+
+    @Test
+    void rolloverDropsSegmentsLeftBehindByTrimmedChats() throws Exception {
+        ChatJournal journal = open(20);
+        for (int i = 1; i <= 3_000; i++) journal.append(msg("a_b", i, "hello " + i));
+
+        assertThat(journal.segmentCount()).isLessThanOrEqualTo(3);   // без рестарта
+        assertThat(segments()).hasSize(journal.segmentCount());
+        journal.close();
+
+        assertThat(replay(open(20), 20).get("a_b")).extracting(ChatMessage::getId)
+                .hasSize(20).startsWith(2_981L).endsWith(3_000L);
+    }
+
+    @Test
+    void clearStaysInForceWhileOlderSegmentSurvives() throws Exception {
+        ChatJournal journal = open(20);
+        journal.append(msg("quiet", 1, "держит первый сегмент"));
+        for (int i = 1; i <= 10; i++) journal.append(msg("gone", i, "x"));
+        for (int i = 1; i <= 40; i++) journal.append(msg("busy", i, "y".repeat(40)));
+        journal.clear("gone");
+        for (int i = 41; i <= 400; i++) journal.append(msg("busy", i, "y".repeat(40)));
+        journal.close();
+
+        Map<String, List<ChatMessage>> replayed = replay(open(20), 20);
+        assertThat(replayed).containsOnlyKeys("quiet", "busy");
+        assertThat(replayed.get("busy")).extracting(ChatMessage::getId).endsWith(400L);
+    }
+
+    @Test
+    void concurrentSavesReachJournalInIdOrder() throws Exception {
+        ChatJournal journal = open(10_000);
+        MessageStore store = new InMemoryMessageStore(10_000);
+        Thread[] writers = new Thread[4];
+        for (int t = 0; t < writers.length; t++) {
+            writers[t] = new Thread(() -> {
+                for (int i = 0; i < 500; i++) store.append(msg("a_b", 0, "m"), journal::append);
+            });
+            writers[t].start();
+        }
+        for (Thread w : writers) w.join();
+        journal.close();
+
+        assertThat(replay(open(10_000), 10_000).get("a_b")).extracting(ChatMessage::getId)
+                .hasSize(2_000).isSorted().startsWith(1L).endsWith(2_000L);
+    }
+
+    @Test
+    void clearHistoryUsesRoomChatId() throws Exception {
+        ChatJournal journal = open();
+        MessageStore store = new InMemoryMessageStore(100);
+        ChatMessageService service = new ChatMessageService(mock(ChatRoomService.class),
+                mock(ChatInactivityService.class), mock(OnlineUserStore.class), store, Optional.of(journal));
+        String chatId = ChatRoomService.pairId("zed", "amy");
+        store.append(msg(chatId, 0, "hi"), journal::append);
+
+        service.clearHistory("zed", "amy");
+        journal.close();
+
+        assertThat(store.size()).isZero();
+        assertThat(replay(open(), 10)).doesNotContainKey(chatId);
+    }
+
+    private ChatJournal open() {
+        return open(1_000);
+    }
+
+    private ChatJournal open(int keepPerChat) {
+        ChatJournal j = new ChatJournal(dir.toString(), SEGMENT, 50, keepPerChat);
+        j.open();
+        return j;
+    }
+
+    private static Map<String, List<ChatMessage>> replay(ChatJournal journal, int perChat) {
+        Map<String, List<ChatMessage>> out = new HashMap<>();
+        journal.replay(perChat, out::put);
+        journal.close();
+        return out;
+    }
+
+    private List<Path> segments() throws Exception {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.sorted().toList();
+        }
+    }
+
+    private static int readInt(RandomAccessFile f, long pos) throws Exception {
+        f.seek(pos);
+        return f.readInt();
+    }
+
+    private static ChatMessage msg(String chatId, long id, String content) {
+        ChatMessage m = new ChatMessage();
+        m.setChatId(chatId);
+        m.setId(id);
+        m.setTimestamp(1_700_000_000_000L + id);
+        m.setSenderId("s");
+        m.setRecipientId("r");
+        m.setContent(content);
+        return m;
+    }
+}
@@ -0,0 +1,129 @@
+package com.alibou.websocket.chat;
+
+import com.alibou.websocket.chatroom.ChatInactivityService;
+import com.alibou.websocket.chatroom.ChatRoomService;
+import com.alibou.websocket.chatroom.InMemoryRoomStore;
+import com.alibou.websocket.user.AvailableUsers;
+import com.alibou.websocket.user.InMemoryOnlineUserStore;
+import com.alibou.websocket.user.OnlineUserStore;
+import com.alibou.websocket.user.PresenceService;
+import com.alibou.websocket.user.Status;
+import com.alibou.websocket.user.User;
+import com.alibou.websocket.user.UserRole;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.LongStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Горячий путь {@link ChatMessageService#save} на многих парах: нумерация в
+ * каждом чате своя и без пропусков, а таймеры простоя сообщение трогает
+ * только при живости по сообщениям. Байты и наносекунды на сообщение –
+ * ChatMessageServiceBenchmark в benchmarks/.
+ */
+class ChatMessageServiceTest {
+
+    private static final int PAIRS   = 64;
+    private static final int PER     = 2_000;
+    private static final int THREADS = 8;
+
+    private final String[] engineers = new String[PAIRS];
+    private final String[] regulars  = new String[PAIRS];
+
+    private ChatInactivityService inactivity;
+    private ChatMessageService    service;
+    private MessageStore          history;
+
+    @BeforeEach
+    void setUp() {
+        build(false);
+    }
+
+    private void build(boolean heartbeat) {
+        OnlineUserStore store = new InMemoryOnlineUserStore();
+        SimpMessagingTemplate messaging = mock(SimpMessagingTemplate.class);
+        ChatRoomService rooms = new ChatRoomService(store, new InMemoryRoomStore(), messaging,
+                mock(ChatInactivityService.class), mock(ChatMessageService.class),
+                new AvailableUsers(store), mock(PresenceService.class));
+        inactivity = new ChatInactivityService(rooms, store, mock(PresenceService.class));
+        if (heartbeat) inactivity.livenessByHeartbeat();
+        history    = new InMemoryMessageStore(PER * THREADS);
+        service    = new ChatMessageService(rooms, inactivity, store, history, Optional.empty());
+
+        for (int i = 0; i < PAIRS; i++) {
+            engineers[i] = eng(i);
+            regulars[i]  = reg(i);
+            store.addIfAbsent(eng(i), "s-e" + i, new User(eng(i), Status.ONLINE, UserRole.ENGINEER));
+            store.addIfAbsent(reg(i), "s-r" + i, new User(reg(i), Status.ONLINE, UserRole.REGULAR));
+            rooms.activateChat(eng(i), reg(i));
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        inactivity.shutdown();
+    }
+
+    @Test
+    void concurrentSavesNumberEachChatWithoutGaps() throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            int offset = t;
+            futures.add(pool.submit(() -> send(offset, PER)));
+        }
+        for (Future<?> f : futures) f.get();
+        pool.shutdown();
+
+        int perPair = THREADS * PER / PAIRS;
+        for (int i = 0; i < PAIRS; i++) {
+            List<ChatMessage> chat = history.page(ChatRoomService.pairId(eng(i), reg(i)), null, null, null);
+            assertThat(chat).extracting(ChatMessage::getId)
+                    .containsExactlyElementsOf(LongStream.rangeClosed(1, perPair).boxed().toList());
+        }
+    }
+
+    /**
+     * Таймеры: каждое сообщение сдвигает таймер пары, а ответ инженера
+     * снимает личный таймер REGULAR-а, который следующее его сообщение
+     * заводит заново. При живости по heartbeat-ам сообщение таймеров не касается.
+     */
+    @Test
+    void heartbeatLivenessLeavesTimersAlone() {
+        send(0, PER);
+        assertThat(inactivity.liveTimers()).isPositive();
+        inactivity.shutdown();
+
+        build(true);
+        send(0, PER);
+        assertThat(inactivity.liveTimers()).isZero();
+        assertThat(inactivity.cachedTimers()).isZero();
+    }
+
+    /** Поток пишет попеременно REGULAR → ENGINEER и ENGINEER → REGULAR по своим парам */
+    private void send(int offset, int count) {
+        for (int i = 0; i < count; i++) {
+            int pair = (offset + i * THREADS) % PAIRS;
+            boolean fromRegular = (i & 1) == 0;
+            ChatMessage m = new ChatMessage();
+            m.setSenderId(fromRegular ? regulars[pair] : engineers[pair]);
+            m.setRecipientId(fromRegular ? engineers[pair] : regulars[pair]);
+            m.setContent("hello");
+            service.save(m);
+        }
+    }
+
+    private static String eng(int i) { return "eng" + i; }
+    private static String reg(int i) { return "reg" + i; }
+}
@@ -0,0 +1,9 @@
+package com.alibou.websocket.chat;
+
+class InMemoryMessageStoreTest extends MessageStoreConformanceTest {
+
+    @Override
+    protected MessageStore create(int capacity) {
+        return new InMemoryMessageStore(capacity);
+    }
+}
@@ -0,0 +1,63 @@
+package com.alibou.websocket.chat;
+
+import com.alibou.websocket.store.H2DataSources;
+import com.zaxxer.hikari.HikariDataSource;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class JdbcMessageStoreTest extends MessageStoreConformanceTest {
+
+    private HikariDataSource dataSource;
+
+    @Override
+    protected MessageStore create(int capacity) {
+        dataSource = H2DataSources.fresh();
+        return new JdbcMessageStore(dataSource, capacity);
+    }
+
+    /** Гонка за первое сообщение чата: проигравший INSERT счётчика не ломает свою транзакцию */
+    @Test
+    void racingFirstMessagesShareOneCounter() throws Exception {
+        int threads = 8;
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            for (int chat = 0; chat < 20; chat++) {
+                String        chatId = "race_" + chat;
+                CyclicBarrier start  = new CyclicBarrier(threads);
+                List<Future<ChatMessage>> saved = new ArrayList<>();
+                for (int t = 0; t < threads; t++) {
+                    ChatMessage m = ChatMessage.builder()
+                            .chatId(chatId).senderId("s" + t).recipientId("r").content("hi").build();
+                    saved.add(pool.submit(() -> {
+                        start.await();
+                        return messages.append(m);
+                    }));
+                }
+                List<Long> ids = new ArrayList<>();
+                for (Future<ChatMessage> f : saved) ids.add(f.get().getId());
+                assertThat(ids).containsExactlyInAnyOrder(1L, 2L, 3L, 4L, 5L, 6L, 7L, 8L);
+                assertThat(messages.page(chatId, null, null, null)).hasSize(threads);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Override
+    protected int concurrentOps() {
+        return 1_000;
+    }
+
+    @Override
+    protected void dispose() {
+        dataSource.close();
+    }
+}
@@ -0,0 +1,172 @@
+package com.alibou.websocket.chat;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.LongStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Общий контракт {@link MessageStore} (нумерация, окно, курсоры), в том числе
+ * под конкуренцией; каждая реализация подключается подклассом. Пропускная
+ * способность – StoreBenchmark в benchmarks/.
+ */
+abstract class MessageStoreConformanceTest {
+
+    private static final int CAPACITY = 100;
+    private static final int THREADS  = 8;
+
+    protected MessageStore messages;
+
+    protected abstract MessageStore create(int capacity);
+
+    /** Сообщений на поток в конкурентном тесте */
+    protected int concurrentOps() {
+        return 50_000;
+    }
+
+    protected void dispose() {}
+
+    @BeforeEach
+    void setUp() {
+        messages = create(CAPACITY);
+    }
+
+    @AfterEach
+    void tearDown() {
+        dispose();
+    }
+
+    private static ChatMessage msg(String chatId, String content) {
+        ChatMessage m = new ChatMessage();
+        m.setChatId(chatId);
+        m.setSenderId("a");
+        m.setRecipientId("b");
+        m.setContent(content);
+        return m;
+    }
+
+    private static List<Long> ids(List<ChatMessage> page) {
+        return page.stream().map(ChatMessage::getId).toList();
+    }
+
+    @Test
+    void eachChatHasItsOwnCounter() {
+        ChatMessage first = messages.append(msg("a_b", "hi"));
+        messages.append(msg("a_b", "there"));
+        ChatMessage other = messages.append(msg("a_c", "hey"));
+
+        assertThat(first.getId()).isEqualTo(1);
+        assertThat(first.getTimestamp()).isPositive();
+        assertThat(other.getId()).isEqualTo(1);
+        assertThat(messages.page("a_b", null, null, null))
+                .extracting(ChatMessage::getContent).containsExactly("hi", "there");
+        assertThat(messages.page("missing", null, null, null)).isEmpty();
+    }
+
+    @Test
+    void keepsWindowAndPagesByCursors() {
+        for (int i = 0; i < 150; i++) messages.append(msg("a_b", "x"));      // в окне id 51..150
+
+        List<ChatMessage> all = messages.page("a_b", null, null, null);
+        assertThat(all).hasSize(CAPACITY);
+        assertThatThrownBy(() -> all.add(msg("a_b", "y"))).isInstanceOf(UnsupportedOperationException.class);
+
+        assertThat(ids(messages.page("a_b", null, null, 5))).containsExactly(146L, 147L, 148L, 149L, 150L);
+        assertThat(ids(messages.page("a_b", 147L, null, null))).containsExactly(148L, 149L, 150L);
+        assertThat(ids(messages.page("a_b", 10L, null, 3))).containsExactly(51L, 52L, 53L);
+        assertThat(ids(messages.page("a_b", null, 55L, 3))).containsExactly(52L, 53L, 54L);
+        assertThat(ids(messages.page("a_b", 60L, 64L, null))).containsExactly(61L, 62L, 63L);
+        assertThat(messages.page("a_b", 150L, null, 10)).isEmpty();
+        assertThat(messages.page("a_b", null, 51L, 10)).isEmpty();
+    }
+
+    @Test
+    void clearRestartsNumbering() {
+        messages.append(msg("a_b", "old"));
+        messages.append(msg("a_b", "old"));
+
+        messages.clear("a_b");
+
+        assertThat(messages.page("a_b", null, null, null)).isEmpty();
+        assertThat(messages.append(msg("a_b", "new")).getId()).isEqualTo(1);
+    }
+
+    @Test
+    void sizeCountsOnlyWhatTheWindowsKeep() {
+        for (int i = 0; i < CAPACITY + 50; i++) messages.append(msg("a_b", "m" + i));
+        for (int i = 0; i < 3; i++)             messages.append(msg("c_d", "m" + i));
+        assertThat(messages.size()).isEqualTo(CAPACITY + 3);
+
+        messages.clear("c_d");
+        assertThat(messages.size()).isEqualTo(CAPACITY);
+    }
+
+    @Test
+    void restoreKeepsIdsAndContinuesCounter() {
+        List<ChatMessage> journal = new ArrayList<>();
+        for (long id : new long[]{7, 5, 6}) {                   // журнал мог записать не по порядку
+            ChatMessage m = msg("a_b", "m" + id);
+            m.setId(id);
+            m.setTimestamp(1_000 + id);
+            journal.add(m);
+        }
+
+        messages.restore("a_b", journal);
+
+        assertThat(messages.page("a_b", null, null, null))
+                .extracting(ChatMessage::getId, ChatMessage::getTimestamp)
+                .containsExactly(
+                        org.assertj.core.groups.Tuple.tuple(5L, 1_005L),
+                        org.assertj.core.groups.Tuple.tuple(6L, 1_006L),
+                        org.assertj.core.groups.Tuple.tuple(7L, 1_007L));
+        assertThat(messages.append(msg("a_b", "next")).getId()).isEqualTo(8);
+    }
+
+    @Test
+    void concurrentAppendsGetUniqueContiguousIds() throws Exception {
+        int perThread = CAPACITY / THREADS;
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            futures.add(pool.submit(() -> {
+                for (int i = 0; i < perThread; i++) messages.append(msg("a_b", "x"));
+            }));
+        }
+        for (Future<?> f : futures) f.get();
+        pool.shutdown();
+
+        assertThat(ids(messages.page("a_b", null, null, null)))
+                .containsExactlyElementsOf(LongStream.rangeClosed(1, THREADS * perThread).boxed().toList());
+    }
+
+    /** Потоки пишут в свои чаты и время от времени читают дельту */
+    @Test
+    void concurrentAppendsAndPagesKeepWindow() throws Exception {
+        int ops = concurrentOps();
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            int thread = t;
+            futures.add(pool.submit(() -> {
+                for (int i = 0; i < ops; i++) {
+                    String chatId = "eng" + thread + "_reg" + (i % 16);
+                    ChatMessage m = messages.append(msg(chatId, "hello"));
+                    if (i % 16 == 0) messages.page(chatId, m.getId() - 10, null, 20);
+                }
+            }));
+        }
+        for (Future<?> f : futures) f.get();
+        pool.shutdown();
+
+        assertThat(messages.page("eng0_reg0", null, null, null)).hasSizeLessThanOrEqualTo(CAPACITY);
+    }
+}
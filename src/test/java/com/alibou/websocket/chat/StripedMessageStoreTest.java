@@ -0,0 +1,9 @@
+package com.alibou.websocket.chat;
+
+class StripedMessageStoreTest extends MessageStoreConformanceTest {
+
+    @Override
+    protected MessageStore create(int capacity) {
+        return new StripedMessageStore(capacity, 64);
+    }
+}
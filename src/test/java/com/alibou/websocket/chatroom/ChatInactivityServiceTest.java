@@ -0,0 +1,67 @@
+package com.alibou.websocket.chatroom;
+
+import com.alibou.websocket.chat.ChatMessageService;
+import com.alibou.websocket.user.AvailableUsers;
+import com.alibou.websocket.user.InMemoryOnlineUserStore;
+import com.alibou.websocket.user.OnlineUserStore;
+import com.alibou.websocket.user.PresenceService;
+import com.alibou.websocket.user.Status;
+import com.alibou.websocket.user.User;
+import com.alibou.websocket.user.UserRole;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Кэш ключей таймеров не растёт от пользователей, которые уже ушли:
+ * ни от отмены «личного» таймера, ни от тайм-аута пары.
+ */
+class ChatInactivityServiceTest {
+
+    private final OnlineUserStore store = new InMemoryOnlineUserStore();
+
+    private ChatInactivityService inactivity;
+    private ChatRoomService       rooms;
+
+    @BeforeEach
+    void setUp() {
+        inactivity = new ChatInactivityService(rooms(mock(ChatInactivityService.class)), store, mock(PresenceService.class));
+        rooms      = rooms(inactivity);
+    }
+
+    private ChatRoomService rooms(ChatInactivityService timers) {
+        return new ChatRoomService(store, new InMemoryRoomStore(), mock(SimpMessagingTemplate.class),
+                timers, mock(ChatMessageService.class), new AvailableUsers(store), mock(PresenceService.class));
+    }
+
+    @AfterEach
+    void tearDown() {
+        inactivity.shutdown();
+    }
+
+    @Test
+    void cancellingUnknownRegularCachesNothing() {
+        for (int i = 0; i < 1_000; i++) inactivity.cancelRegular("r" + i);
+
+        assertThat(inactivity.cachedTimers()).isZero();
+        assertThat(inactivity.liveTimers()).isZero();
+    }
+
+    @Test
+    void pairTimeoutForgetsRegularTimer() {
+        store.addIfAbsent("e", "s-e", new User("e", Status.ONLINE, UserRole.ENGINEER));
+        store.addIfAbsent("r", "s-r", new User("r", Status.ONLINE, UserRole.REGULAR));
+        inactivity.touchRegular("r");
+        inactivity.cancelRegular("r");                   // первое сообщение инженеру
+        assertThat(inactivity.cachedTimers()).isEqualTo(1);
+
+        rooms.handleInactivity("e", "r");
+
+        assertThat(inactivity.cachedTimers()).isZero();
+        assertThat(inactivity.liveTimers()).isZero();
+    }
+}
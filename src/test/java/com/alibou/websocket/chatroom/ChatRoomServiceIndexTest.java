@@ -0,0 +1,257 @@
+package com.alibou.websocket.chatroom;
+
+import com.alibou.websocket.chat.ChatMessageService;
+import com.alibou.websocket.chat.ChatNotification;
+import com.alibou.websocket.exception.RegularAlreadyTakenException;
+import com.alibou.websocket.user.AvailableUsers;
+import com.alibou.websocket.user.InMemoryOnlineUserStore;
+import com.alibou.websocket.user.OnlineUserStore;
+import com.alibou.websocket.user.PresenceService;
+import com.alibou.websocket.user.Status;
+import com.alibou.websocket.user.User;
+import com.alibou.websocket.user.UserRole;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+/**
+ * Индекс «nick → активные комнаты» не должен расходиться с картой комнат
+ * ни при последовательных, ни при конкурентных изменениях.
+ */
+class ChatRoomServiceIndexTest {
+
+    private static final int ENGINEERS = 8;
+    private static final int REGULARS  = 40;
+
+    private OnlineUserStore       store;
+    private ChatRoomService       service;
+    private SimpMessagingTemplate messaging;
+
+    @BeforeEach
+    void setUp() {
+        store = new InMemoryOnlineUserStore();
+        messaging = mock(SimpMessagingTemplate.class);
+        service = new ChatRoomService(store, new InMemoryRoomStore(),
+                messaging,
+                mock(ChatInactivityService.class),
+                mock(ChatMessageService.class),
+                new AvailableUsers(store),
+                mock(PresenceService.class));
+
+        for (int i = 0; i < ENGINEERS; i++) {
+            store.addIfAbsent(eng(i), "s-" + eng(i), new User(eng(i), Status.ONLINE, UserRole.ENGINEER));
+        }
+        for (int i = 0; i < REGULARS; i++) {
+            store.addIfAbsent(reg(i), "s-" + reg(i), new User(reg(i), Status.ONLINE, UserRole.REGULAR));
+        }
+    }
+
+    @Test
+    void indexFollowsEverySequentialOperation() {
+        Random rnd = new Random(42);
+        for (int i = 0; i < 5_000; i++) {
+            randomOperation(rnd);
+            assertConsistent();
+        }
+    }
+
+    @Test
+    void indexSurvivesConcurrentStorm() throws Exception {
+        int threads = 8;
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+
+        for (int t = 0; t < threads; t++) {
+            futures.add(pool.submit(() -> {
+                start.await();
+                ThreadLocalRandom rnd = ThreadLocalRandom.current();
+                for (int i = 0; i < 20_000; i++) randomOperation(rnd);
+                return null;
+            }));
+        }
+        start.countDown();
+        for (var f : futures) f.get(30, TimeUnit.SECONDS);
+        pool.shutdown();
+
+        assertConsistent();
+    }
+
+    @Test
+    void lookupsUseOnlyActiveRooms() {
+        service.activateChat(eng(0), reg(0));
+        service.activateChat(eng(0), reg(1));
+
+        assertThat(service.isUserInActiveChat(reg(0))).isTrue();
+        assertThat(service.isUserInActiveChatWithEngineer(reg(0))).isTrue();
+        assertThat(service.findActivePartner(reg(1))).contains(eng(0));
+        assertThat(service.activeRoomsFor(eng(0))).containsExactlyInAnyOrder(
+                ChatRoomService.pairId(eng(0), reg(0)),
+                ChatRoomService.pairId(eng(0), reg(1)));
+
+        service.deactivatePair(eng(0), reg(0));
+        assertThat(service.isUserInActiveChat(reg(0))).isFalse();
+        assertThat(service.findActivePartner(reg(0))).isEmpty();
+
+        service.deactivateChatsForUser(eng(0));
+        assertThat(service.isUserInActiveChat(eng(0))).isFalse();
+        assertThat(service.indexedUsers()).isEmpty();
+        assertConsistent();
+    }
+
+    @Test
+    void onlyOneEngineerTakesRegular() throws Exception {
+        ExecutorService pool  = Executors.newFixedThreadPool(ENGINEERS);
+        CountDownLatch  start = new CountDownLatch(1);
+        AtomicInteger   won   = new AtomicInteger();
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < ENGINEERS; i++) {
+            String e = eng(i);
+            futures.add(pool.submit(() -> {
+                start.await();
+                try {
+                    service.activateChat(e, reg(0));
+                    won.incrementAndGet();
+                } catch (RegularAlreadyTakenException taken) {
+                    // ожидаемо для всех, кроме одного
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (var f : futures) f.get(30, TimeUnit.SECONDS);
+        pool.shutdown();
+
+        assertThat(won).hasValue(1);
+        assertThat(service.activePartners(reg(0))).hasSize(1);
+        verify(messaging, times(1)).convertAndSend(eq("/queue/" + reg(0)), any(ChatNotification.class));
+
+        /* свой же REGULAR – можно повторно; после release – другому */
+        String owner = service.activePartners(reg(0)).get(0);
+        String other = owner.equals(eng(0)) ? eng(1) : eng(0);
+        service.activateChat(owner, reg(0));
+        assertThatThrownBy(() -> service.activateChat(other, reg(0)))
+                .isInstanceOf(RegularAlreadyTakenException.class);
+        service.deactivatePair(owner, reg(0));
+        service.activateChat(other, reg(0));
+        assertThat(service.activePartners(reg(0))).containsExactly(other);
+    }
+
+    /** Комната, созданная первым сообщением, не закрепляет REGULAR-а в обход claim */
+    @Test
+    void messageRoomLeavesRegularFree() {
+        String cid = service.chatRoomId(eng(0), reg(0), true);
+
+        assertThat(cid).isEqualTo(ChatRoomService.pairId(eng(0), reg(0)));
+        assertThat(service.isUserInActiveChat(reg(0))).isFalse();
+        assertThat(service.activeEngineerPartner(reg(0))).isNull();
+
+        service.activateChat(eng(1), reg(0));                            // свободен – берёт другой
+        assertThat(service.activePartners(reg(0))).containsExactly(eng(1));
+        assertThatThrownBy(() -> service.activateChat(eng(0), reg(0)))
+                .isInstanceOf(RegularAlreadyTakenException.class);
+        assertConsistent();
+    }
+
+    /**
+     * Активации и освобождения одной пары наперегонки: busy и free
+     * чередуются – их разность равна конечному состоянию пары, а новая пара
+     * тоже объявляется занятой.
+     */
+    @Test
+    void busyAndFreeAreAnnouncedExactlyOnce() throws Exception {
+        AtomicInteger busy = new AtomicInteger();
+        AtomicInteger free = new AtomicInteger();
+        doAnswer(inv -> {
+            UserBusyStatus st = inv.getArgument(1);
+            (st.isBusy() ? busy : free).incrementAndGet();
+            return null;
+        }).when(messaging).convertAndSend(eq("/topic/user-status"), any(UserBusyStatus.class));
+
+        int threads = 8;
+        ExecutorService pool  = Executors.newFixedThreadPool(threads);
+        CountDownLatch  start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            futures.add(pool.submit(() -> {
+                start.await();
+                ThreadLocalRandom rnd = ThreadLocalRandom.current();
+                for (int i = 0; i < 5_000; i++) {
+                    if (rnd.nextBoolean()) service.activateChat(eng(0), reg(0));
+                    else                   service.deactivatePair(eng(0), reg(0));
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (var f : futures) f.get(60, TimeUnit.SECONDS);
+        pool.shutdown();
+
+        boolean active = service.isUserInActiveChat(reg(0));
+        assertThat(busy.get()).isPositive();
+        assertThat(busy.get() - free.get()).isEqualTo(active ? 1 : 0);
+        assertConsistent();
+
+        /* пара не потеряна: после последнего шага она в том состоянии, о котором объявили */
+        service.activateChat(eng(0), reg(0));
+        assertThat(busy.get() - free.get()).isEqualTo(1);
+        assertThat(service.activePartners(reg(0))).containsExactly(eng(0));
+    }
+
+    /* ================================================================== */
+
+    private void randomOperation(Random rnd) {
+        String e = eng(rnd.nextInt(ENGINEERS));
+        String r = reg(rnd.nextInt(REGULARS));
+        switch (rnd.nextInt(5)) {
+            case 0, 1 -> {
+                try {
+                    service.activateChat(e, r);
+                } catch (RegularAlreadyTakenException taken) {
+                    // REGULAR у другого инженера
+                }
+            }
+            case 2    -> service.deactivatePair(e, r);
+            case 3    -> service.deactivateChatsForUser(rnd.nextBoolean() ? e : r);
+            default   -> service.getChatRoomId(r, e, true);
+        }
+    }
+
+    /** Полный перебор карты комнат против индекса */
+    private void assertConsistent() {
+        Map<String, Set<String>> expected = new HashMap<>();
+        for (ChatRoom room : service.roomsView()) {
+            if (!room.isActive()) continue;
+            expected.computeIfAbsent(room.getSenderId(), k -> new HashSet<>()).add(room.getChatId());
+            expected.computeIfAbsent(room.getRecipientId(), k -> new HashSet<>()).add(room.getChatId());
+        }
+
+        assertThat(service.indexedUsers()).containsExactlyInAnyOrderElementsOf(expected.keySet());
+        for (int i = 0; i < ENGINEERS; i++) assertUser(eng(i), expected);
+        for (int i = 0; i < REGULARS; i++)  assertUser(reg(i), expected);
+    }
+
+    private void assertUser(String nick, Map<String, Set<String>> expected) {
+        Set<String> ids = expected.getOrDefault(nick, Set.of());
+        assertThat(service.activeRoomsFor(nick)).containsExactlyInAnyOrderElementsOf(ids);
+        assertThat(service.isUserInActiveChat(nick)).isEqualTo(!ids.isEmpty());
+    }
+
+    private static String eng(int i) { return "eng" + i; }
+    private static String reg(int i) { return "reg" + i; }
+}
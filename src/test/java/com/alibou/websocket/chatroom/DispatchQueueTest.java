@@ -0,0 +1,190 @@
+package com.alibou.websocket.chatroom;
+
+import com.alibou.websocket.chatroom.DispatchQueue.Assignment;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+
+class DispatchQueueTest {
+
+    @Test
+    void fifoToLeastLoadedEngineer() {
+        DispatchQueue q = new DispatchQueue(2);
+        for (int i = 1; i <= 3; i++) q.engineerOnline("e" + i);
+        for (int i = 1; i <= 7; i++) q.enqueue("r" + i);
+
+        List<Assignment> out = q.assign();
+
+        assertThat(out).extracting(Assignment::userId)
+                .containsExactly("r1", "r2", "r3", "r4", "r5", "r6");
+        assertThat(out).extracting(Assignment::engineerId)
+                .containsExactly("e1", "e2", "e3", "e1", "e2", "e3");
+        assertThat(q.waiting()).isEqualTo(1);
+
+        /* место освободилось – следующий в очереди туда */
+        q.release("e2", "r2");
+        assertThat(q.assign()).extracting(Assignment::engineerId, Assignment::userId)
+                .containsExactly(tuple("e2", "r7"));
+    }
+
+    @Test
+    void regularsOfLeavingEngineerGoFirst() {
+        DispatchQueue q = new DispatchQueue(1);
+        q.engineerOnline("e1");
+        q.enqueue("r1");
+        assertThat(q.assign()).extracting(Assignment::engineerId).containsExactly("e1");
+        q.enqueue("r2");
+        q.enqueue("r3");
+
+        q.left("e1");
+        q.engineerOnline("e2");
+
+        assertThat(q.assign()).extracting(Assignment::userId).containsExactly("r1");
+        assertThat(q.owner("r1")).isEqualTo("e2");
+        assertThat(q.waiting()).isEqualTo(2);
+    }
+
+    @Test
+    void claimedRegularIsNotQueuedOrTakenTwice() {
+        DispatchQueue q = new DispatchQueue(1);
+        q.engineerOnline("e1");
+        q.engineerOnline("e2");
+
+        assertThat(q.claim("e1", "r1")).isTrue();
+        assertThat(q.claim("e1", "r1")).isTrue();
+        assertThat(q.claim("e2", "r1")).isFalse();
+        assertThat(q.load("e1")).isEqualTo(1);
+
+        q.enqueue("r1");
+        assertThat(q.waiting()).isZero();
+
+        /* REGULAR ушёл – место у инженера свободно */
+        q.left("r1");
+        assertThat(q.load("e1")).isZero();
+        assertThat(q.owner("r1")).isNull();
+    }
+
+    @Test
+    void claimsOnlyKeepsNoQueue() {
+        DispatchQueue q = DispatchQueue.claimsOnly();
+        q.engineerOnline("e1");
+        q.enqueue("r1");
+
+        assertThat(q.assign()).isEmpty();
+        assertThat(q.waiting()).isZero();
+        assertThat(q.claim("e1", "r1")).isTrue();
+        assertThat(q.claim("e2", "r1")).isFalse();
+    }
+
+    /**
+     * Сотни инженеров: разовый наплыв делится поровну, а в постоянном потоке
+     * (REGULAR-ы приходят, пары отпускаются) очередь не ждёт, пока у кого-то
+     * есть место, и назначения распределяются ровно. Скорость раздачи –
+     * DispatchQueueBenchmark в benchmarks/.
+     */
+    @Test
+    void fairWithHundredsOfEngineers() {
+        int engineers = 500, capacity = 3, arrivals = 300_000;
+        DispatchQueue q = new DispatchQueue(capacity);
+        for (int i = 0; i < engineers; i++) q.engineerOnline("e" + i);
+
+        /* 1. наплыв: по два на каждого */
+        for (int i = 0; i < 2 * engineers; i++) q.enqueue("burst-" + i);
+        Map<String, Integer> perEngineer = new HashMap<>();
+        for (Assignment a : q.assign()) perEngineer.merge(a.engineerId(), 1, Integer::sum);
+        assertThat(perEngineer).hasSize(engineers);
+        assertThat(perEngineer.values()).containsOnly(2);
+        for (int i = 0; i < 2 * engineers; i++) q.left("burst-" + i);
+
+        /* 2. поток: приход, раздача, случайное завершение одной из пар */
+        Random rnd = new Random(7);
+        List<Assignment> busy = new ArrayList<>();
+        Map<String, Integer> total = new HashMap<>();
+        for (int i = 0; i < arrivals; i++) {
+            q.enqueue("r" + i);
+            for (Assignment a : q.assign()) {
+                busy.add(a);
+                total.merge(a.engineerId(), 1, Integer::sum);
+            }
+            if (busy.size() > engineers && rnd.nextInt(10) < 9 || busy.size() == engineers * capacity) {
+                int k = rnd.nextInt(busy.size());
+                Assignment done = busy.get(k);
+                busy.set(k, busy.get(busy.size() - 1));
+                busy.remove(busy.size() - 1);
+                q.release(done.engineerId(), done.userId());
+                q.left(done.userId());
+            }
+            if (i % 10_000 == 0 && q.waiting() > 0) {
+                for (int e = 0; e < engineers; e++) assertThat(q.load("e" + e)).isEqualTo(capacity);
+            }
+        }
+
+        int min = total.values().stream().mapToInt(Integer::intValue).min().orElseThrow();
+        int max = total.values().stream().mapToInt(Integer::intValue).max().orElseThrow();
+        double mean = (double) q.assigned() / engineers;
+        assertThat(total).hasSize(engineers);
+        assertThat(max).isLessThan((int) (mean * 1.5));
+        assertThat(min).isGreaterThan((int) (mean * 0.5));
+    }
+
+    /** Конкурентные claim / enqueue / assign / left не расходятся в учёте */
+    @Test
+    void bookkeepingSurvivesConcurrentStorm() throws Exception {
+        int engineers = 50, regulars = 400, threads = 8;
+        DispatchQueue q = new DispatchQueue(4);
+        for (int i = 0; i < engineers; i++) q.engineerOnline("e" + i);
+
+        ExecutorService pool  = Executors.newFixedThreadPool(threads);
+        CountDownLatch  start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            futures.add(pool.submit(() -> {
+                start.await();
+                ThreadLocalRandom rnd = ThreadLocalRandom.current();
+                for (int i = 0; i < 50_000; i++) {
+                    String e = "e" + rnd.nextInt(engineers);
+                    String r = "r" + rnd.nextInt(regulars);
+                    switch (rnd.nextInt(5)) {
+                        case 0  -> q.enqueue(r);
+                        case 1  -> q.claim(e, r);
+                        case 2  -> q.release(e, r);
+                        case 3  -> q.left(r);
+                        default -> q.assign();
+                    }
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (var f : futures) f.get(60, TimeUnit.SECONDS);
+        pool.shutdown();
+
+        /* нагрузка инженеров = число закреплённых REGULAR-ов */
+        int load = 0;
+        for (int i = 0; i < engineers; i++) load += q.load("e" + i);
+        assertThat(load).isEqualTo(q.claimed());
+
+        /* никто не ждёт, пока у кого-то есть место; взятые в очередь не встают */
+        int claimedBefore = q.claimed();
+        q.assign();
+        if (q.waiting() > 0) {
+            for (int i = 0; i < engineers; i++) assertThat(q.load("e" + i)).isGreaterThanOrEqualTo(4);
+        }
+        for (int i = 0; i < regulars; i++) if (q.owner("r" + i) != null) q.enqueue("r" + i);
+        assertThat(q.claimed() + q.waiting()).isLessThanOrEqualTo(regulars);
+        assertThat(q.claimed()).isGreaterThanOrEqualTo(claimedBefore);
+    }
+}
@@ -0,0 +1,9 @@
+package com.alibou.websocket.chatroom;
+
+class InMemoryRoomStoreTest extends RoomStoreConformanceTest {
+
+    @Override
+    protected RoomStore create() {
+        return new InMemoryRoomStore();
+    }
+}
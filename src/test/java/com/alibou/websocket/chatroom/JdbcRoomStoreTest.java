@@ -0,0 +1,25 @@
+package com.alibou.websocket.chatroom;
+
+import com.alibou.websocket.store.H2DataSources;
+import com.zaxxer.hikari.HikariDataSource;
+
+class JdbcRoomStoreTest extends RoomStoreConformanceTest {
+
+    private HikariDataSource dataSource;
+
+    @Override
+    protected RoomStore create() {
+        dataSource = H2DataSources.fresh();
+        return new JdbcRoomStore(dataSource);
+    }
+
+    @Override
+    protected int concurrentOps() {
+        return 2_000;
+    }
+
+    @Override
+    protected void dispose() {
+        dataSource.close();
+    }
+}
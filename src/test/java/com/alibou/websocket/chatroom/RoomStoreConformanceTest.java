@@ -0,0 +1,294 @@
+package com.alibou.websocket.chatroom;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Общий контракт {@link RoomStore} (комнаты + индекс активных), в том числе
+ * под конкуренцией; каждая реализация подключается подклассом. Пропускная
+ * способность – StoreBenchmark и RoomTransitionBenchmark в benchmarks/.
+ */
+abstract class RoomStoreConformanceTest {
+
+    private static final int THREADS = 8;
+
+    protected RoomStore rooms;
+
+    protected abstract RoomStore create();
+
+    /** Операций на поток в конкурентных тестах */
+    protected int concurrentOps() {
+        return 50_000;
+    }
+
+    protected void dispose() {}
+
+    @BeforeEach
+    void setUp() {
+        rooms = create();
+    }
+
+    @AfterEach
+    void tearDown() {
+        dispose();
+    }
+
+    private static ChatRoom room(String a, String b, boolean active) {
+        return new ChatRoom(ChatRoomService.pairId(a, b), a, b, active);
+    }
+
+    @Test
+    void activeRoomIsIndexedForBothSides() {
+        assertThat(rooms.addIfAbsent(room("eng", "reg", true))).isTrue();
+        assertThat(rooms.addIfAbsent(room("eng", "reg", false))).isFalse();
+
+        assertThat(rooms.contains("eng_reg")).isTrue();
+        assertThat(rooms.get("eng_reg").isActive()).isTrue();
+        assertThat(rooms.activeIds("eng")).containsExactly("eng_reg");
+        assertThat(rooms.activeIds("reg")).containsExactly("eng_reg");
+        assertThat(rooms.activeIds("nobody")).isEmpty();
+        assertThat(rooms.indexedUsers()).containsExactlyInAnyOrder("eng", "reg");
+    }
+
+    @Test
+    void inactiveRoomIsStoredButNotIndexed() {
+        rooms.addIfAbsent(room("reg", "reg", false));
+
+        assertThat(rooms.get("reg_reg")).isNotNull();
+        assertThat(rooms.activeIds("reg")).isEmpty();
+        assertThat(rooms.indexedUsers()).isEmpty();
+    }
+
+    @Test
+    void setActiveReportsOnlyRealFlips() {
+        rooms.addIfAbsent(room("eng", "reg", false));
+
+        assertThat(rooms.setActive("eng_reg", true)).isTrue();
+        assertThat(rooms.setActive("eng_reg", true)).isFalse();
+        assertThat(rooms.activeIds("reg")).containsExactly("eng_reg");
+
+        assertThat(rooms.setActive("eng_reg", false)).isTrue();
+        assertThat(rooms.setActive("eng_reg", false)).isFalse();
+        assertThat(rooms.activeIds("reg")).isEmpty();
+        assertThat(rooms.setActive("missing", true)).isFalse();
+    }
+
+    @Test
+    void removeDropsRoomAndIndex() {
+        rooms.addIfAbsent(room("eng", "a", true));
+        rooms.addIfAbsent(room("eng", "b", true));
+
+        rooms.remove("a_eng");
+
+        assertThat(rooms.get("a_eng")).isNull();
+        assertThat(rooms.activeIds("eng")).containsExactly("b_eng");
+        assertThat(rooms.indexedUsers()).containsExactlyInAnyOrder("eng", "b");
+    }
+
+    @Test
+    void activeCountFollowsFlips() {
+        rooms.addIfAbsent(room("eng", "a", true));
+        rooms.addIfAbsent(room("eng", "b", false));
+        rooms.addIfAbsent(room("c", "c", false));
+        assertThat(rooms.activeCount()).isEqualTo(1);
+
+        rooms.setActive("b_eng", true);
+        assertThat(rooms.activeCount()).isEqualTo(2);
+
+        rooms.remove("a_eng");
+        rooms.setActive("b_eng", false);
+        assertThat(rooms.activeCount()).isZero();
+    }
+
+    @Test
+    void readStatesAreSnapshots() {
+        rooms.addIfAbsent(room("eng", "reg", true));
+        ChatRoom before = rooms.all().get(0);
+
+        rooms.setActive("eng_reg", false);
+
+        assertThat(before.isActive()).isTrue();
+        assertThat(rooms.get("eng_reg").isActive()).isFalse();
+        assertThat(rooms.get("eng_reg").getVersion()).isEqualTo(before.getVersion() + 1);
+    }
+
+    @Test
+    void compareAndSetAppliesOnlyOverExpectedState() {
+        rooms.addIfAbsent(room("eng", "reg", false));
+        ChatRoom seen = rooms.get("eng_reg");
+
+        assertThat(rooms.compareAndSet(seen, seen.withActive(true))).isTrue();
+        assertThat(rooms.activeIds("reg")).containsExactly("eng_reg");
+
+        /* устаревшее состояние – отказ, даже если флаг совпадает */
+        assertThat(rooms.compareAndSet(seen, seen.withActive(true))).isFalse();
+        assertThat(rooms.compareAndSet(seen, seen.withActive(false))).isFalse();
+        assertThat(rooms.get("eng_reg").isActive()).isTrue();
+
+        ChatRoom now = rooms.get("eng_reg");
+        assertThat(rooms.compareAndSet(now, now.withActive(false))).isTrue();
+        assertThat(rooms.activeIds("reg")).isEmpty();
+        assertThat(rooms.compareAndSet(room("x", "y", false), room("x", "y", true))).isFalse();
+    }
+
+    @Test
+    void removeOfStaleStateKeepsRoom() {
+        rooms.addIfAbsent(room("eng", "reg", true));
+        ChatRoom seen = rooms.get("eng_reg");
+        rooms.setActive("eng_reg", false);
+        ChatRoom released = rooms.get("eng_reg");
+        rooms.setActive("eng_reg", true);                  // пару успели взять снова
+
+        assertThat(rooms.remove(seen)).isFalse();
+        assertThat(rooms.remove(released)).isFalse();
+        assertThat(rooms.activeIds("eng")).containsExactly("eng_reg");
+
+        assertThat(rooms.remove(rooms.get("eng_reg"))).isTrue();
+        assertThat(rooms.get("eng_reg")).isNull();
+        assertThat(rooms.indexedUsers()).isEmpty();
+    }
+
+    /** Удалённая и созданная заново такая же комната – не то же состояние (ABA) */
+    @Test
+    void recreatedRoomRejectsStaleState() {
+        rooms.addIfAbsent(room("eng", "reg", true));
+        ChatRoom seen = rooms.get("eng_reg");                            // A прочитал пару и встал
+
+        ChatRoom freed = seen.withActive(false);                         // B отпустил и удалил
+        assertThat(rooms.compareAndSet(seen, freed)).isTrue();
+        assertThat(rooms.remove(freed)).isTrue();
+
+        assertThat(rooms.addIfAbsent(room("eng", "reg", true))).isTrue(); // C создал заново
+        ChatRoom fresh = rooms.get("eng_reg");
+        assertThat(fresh.getVersion()).isGreaterThan(freed.getVersion());
+
+        assertThat(rooms.compareAndSet(seen, seen.withActive(false))).isFalse();
+        assertThat(rooms.remove(seen)).isFalse();
+        assertThat(rooms.remove(freed)).isFalse();
+        assertThat(rooms.get("eng_reg")).isEqualTo(fresh);
+        assertThat(rooms.activeIds("reg")).containsExactly("eng_reg");
+    }
+
+    @Test
+    void concurrentActivationFlipsOnce() throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        try {
+            for (int n = 0; n < 50; n++) {
+                ChatRoom r = room("eng", "reg" + n, false);
+                rooms.addIfAbsent(r);
+                CountDownLatch start = new CountDownLatch(1);
+                AtomicInteger flips = new AtomicInteger();
+                List<Future<?>> futures = new ArrayList<>();
+                for (int t = 0; t < THREADS; t++) {
+                    futures.add(pool.submit(() -> {
+                        start.await();
+                        if (rooms.setActive(r.getChatId(), true)) flips.incrementAndGet();
+                        return null;
+                    }));
+                }
+                start.countDown();
+                for (Future<?> f : futures) f.get();
+                assertThat(flips).hasValue(1);
+            }
+            assertThat(rooms.activeIds("eng")).hasSize(50);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Переходы через compareAndSet и setActive вперемешку на нескольких
+     * «горячих» комнатах: в каждой успешных подъёмов ровно на конечное
+     * состояние больше, чем опусканий (ни один переход не потерян и не
+     * засчитан дважды), а индекс совпадает с конечными состояниями.
+     */
+    @Test
+    void concurrentFlipsStayBalanced() throws Exception {
+        int hot = 4;
+        for (int n = 0; n < hot; n++) rooms.addIfAbsent(room("eng", "reg" + n, false));
+        AtomicInteger[] ups   = new AtomicInteger[hot];
+        AtomicInteger[] downs = new AtomicInteger[hot];
+        for (int n = 0; n < hot; n++) {
+            ups[n]   = new AtomicInteger();
+            downs[n] = new AtomicInteger();
+        }
+
+        ExecutorService pool  = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch  start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            futures.add(pool.submit(() -> {
+                start.await();
+                ThreadLocalRandom rnd = ThreadLocalRandom.current();
+                for (int i = 0; i < concurrentOps() / 10; i++) {
+                    int     n   = rnd.nextInt(hot);
+                    String  cid = ChatRoomService.pairId("eng", "reg" + n);
+                    boolean up  = rnd.nextBoolean();
+                    boolean flipped;
+                    if (rnd.nextBoolean()) {
+                        flipped = rooms.setActive(cid, up);
+                    } else {
+                        ChatRoom r = rooms.get(cid);
+                        flipped = r.isActive() != up && rooms.compareAndSet(r, r.withActive(up));
+                    }
+                    if (flipped) (up ? ups[n] : downs[n]).incrementAndGet();
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> f : futures) f.get(60, TimeUnit.SECONDS);
+        pool.shutdown();
+
+        int active = 0;
+        for (int n = 0; n < hot; n++) {
+            ChatRoom r = rooms.get(ChatRoomService.pairId("eng", "reg" + n));
+            assertThat(ups[n].get() - downs[n].get()).as("room %d", n).isEqualTo(r.isActive() ? 1 : 0);
+            if (r.isActive()) {
+                active++;
+                assertThat(rooms.activeIds("reg" + n)).containsExactly(r.getChatId());
+            } else {
+                assertThat(rooms.activeIds("reg" + n)).isEmpty();
+            }
+        }
+        assertThat(rooms.activeIds("eng")).hasSize(active);
+        assertThat(rooms.activeCount()).isEqualTo(active);
+    }
+
+    /** Жизненный цикл пары с чтениями индекса, как в горячем пути save */
+    @Test
+    void concurrentPairLifecyclesLeaveNothingIndexed() throws Exception {
+        int ops = concurrentOps();
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            String eng = "eng" + t;
+            futures.add(pool.submit(() -> {
+                for (int i = 0; i < ops / 10; i++) {
+                    String reg = "reg" + (i % 64);
+                    String cid = ChatRoomService.pairId(eng, reg);
+                    rooms.addIfAbsent(new ChatRoom(cid, eng, reg, false));
+                    rooms.setActive(cid, true);
+                    for (int r = 0; r < 6; r++) {
+                        for (String id : rooms.activeIds(reg)) rooms.get(id);
+                    }
+                    rooms.setActive(cid, false);
+                    rooms.remove(cid);
+                }
+            }));
+        }
+        for (Future<?> f : futures) f.get();
+        pool.shutdown();
+
+        assertThat(rooms.all()).isEmpty();
+        assertThat(rooms.indexedUsers()).isEmpty();
+    }
+}
@@ -0,0 +1,9 @@
+package com.alibou.websocket.chatroom;
+
+class StripedRoomStoreTest extends RoomStoreConformanceTest {
+
+    @Override
+    protected RoomStore create() {
+        return new StripedRoomStore(64);
+    }
+}
@@ -0,0 +1,129 @@
+package com.alibou.websocket.chatroom;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TimeoutWheelTest {
+
+    private static final long TICK_MS = 10;
+
+    private final TimeoutWheel wheel = new TimeoutWheel("test-wheel", TICK_MS, 64, 4, 1_000);
+
+    @AfterEach
+    void tearDown() {
+        wheel.shutdown();
+    }
+
+    @Test
+    void firesOnceAfterTtl() throws Exception {
+        CountDownLatch fired = new CountDownLatch(1);
+        long start = System.nanoTime();
+        wheel.touch("a", 100, fired::countDown);
+
+        assertThat(fired.await(2, TimeUnit.SECONDS)).isTrue();
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertThat(elapsedMs).isGreaterThanOrEqualTo(100L);                 // не раньше срока
+        assertThat(wheel.remaining("a")).isEqualTo(-1);
+        assertThat(wheel.size()).isZero();
+    }
+
+    @Test
+    void touchPostponesAndCancelPrevents() throws Exception {
+        AtomicInteger postponed = new AtomicInteger();
+        AtomicInteger cancelled = new AtomicInteger();
+        wheel.touch("p", 150, postponed::incrementAndGet);
+        wheel.touch("c", 150, cancelled::incrementAndGet);
+        wheel.cancel("c");
+
+        for (int i = 0; i < 5; i++) {                 // 5 × 60 мс > TTL, но каждый touch сдвигает срок
+            Thread.sleep(60);
+            wheel.touch("p", 150, postponed::incrementAndGet);
+        }
+        assertThat(postponed.get()).isZero();
+
+        Thread.sleep(400);
+        assertThat(postponed.get()).isEqualTo(1);
+        assertThat(cancelled.get()).isZero();
+    }
+
+    @Test
+    void deadlinesBeyondOneRevolutionWaitExtraRounds() throws Exception {
+        CountDownLatch fired = new CountDownLatch(1);
+        long start = System.nanoTime();
+        wheel.touch("long", 64 * TICK_MS * 2 + 50, fired::countDown);   // > 2 оборотов
+
+        assertThat(fired.await(3, TimeUnit.SECONDS)).isTrue();
+        assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start))
+                .isGreaterThanOrEqualTo(64 * TICK_MS * 2 + 50);
+    }
+
+    /**
+     * Срок сдвинули ровно на оборот: при перекладке запись попадает в ту же
+     * ячейку, которую колесо как раз просматривает, и не должна ждать лишний оборот.
+     */
+    @Test
+    void postponedByExactlyOneRevolutionFiresOnTime() throws Exception {
+        long tickMs = 500;
+        TimeoutWheel small = new TimeoutWheel("test-wheel-small", tickMs, 2, 1, 10);   // оборот – 1 с
+        try {
+            CountDownLatch fired = new CountDownLatch(1);
+            long start = System.nanoTime();
+            small.touch("k", 750, fired::countDown);
+            Thread.sleep(tickMs + 50);                                    // запись уже в ячейке
+
+            long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            small.touch("k", 750 + 2 * tickMs - elapsed, fired::countDown);   // тот же срок + оборот
+
+            assertThat(fired.await(5, TimeUnit.SECONDS)).isTrue();
+            assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start))
+                    .isGreaterThanOrEqualTo(750 + 2 * tickMs)
+                    .isLessThan(750 + 3 * tickMs);                        // оборот спустя было бы >= 2750
+        } finally {
+            small.shutdown();
+        }
+    }
+
+    @Test
+    void slowHandlerDoesNotDelayOtherTimeouts() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch fast = new CountDownLatch(1);
+        wheel.touch("slow", 50, () -> {
+            try {
+                release.await();
+            } catch (InterruptedException ignored) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        wheel.touch("fast", 100, fast::countDown);
+
+        assertThat(fast.await(1, TimeUnit.SECONDS)).isTrue();
+        release.countDown();
+    }
+
+    @Test
+    void holdsHundredThousandTimers() throws Exception {
+        int n = 100_000;
+        CountDownLatch all = new CountDownLatch(n);
+        ConcurrentHashMap<String, Boolean> seen = new ConcurrentHashMap<>();
+        for (int i = 0; i < n; i++) {
+            String key = "k" + i;
+            wheel.touch(key, 1_000 + (i % 300), () -> {
+                seen.put(key, Boolean.TRUE);
+                all.countDown();
+            });
+        }
+        assertThat(wheel.size()).isEqualTo(n);
+
+        assertThat(all.await(10, TimeUnit.SECONDS)).isTrue();
+        assertThat(seen).hasSize(n);
+        assertThat(wheel.expiredTotal()).isEqualTo(n);
+        assertThat(wheel.size()).isZero();
+    }
+}
@@ -0,0 +1,239 @@
+package com.alibou.websocket.cluster;
+
+import com.alibou.websocket.ChatApplication;
+import com.alibou.websocket.chat.ChatMessage;
+import com.alibou.websocket.chat.ChatMessageService;
+import com.alibou.websocket.chat.ChatNotification;
+import com.alibou.websocket.chatroom.ChatRoomService;
+import com.alibou.websocket.chatroom.UserBusyStatus;
+import com.alibou.websocket.user.OnlineUserStore;
+import com.alibou.websocket.user.PresenceDelta;
+import com.alibou.websocket.user.Status;
+import com.alibou.websocket.user.User;
+import com.alibou.websocket.user.UserRole;
+import com.alibou.websocket.user.UserService;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.messaging.converter.MappingJackson2MessageConverter;
+import org.springframework.messaging.simp.stomp.StompFrameHandler;
+import org.springframework.messaging.simp.stomp.StompHeaders;
+import org.springframework.messaging.simp.stomp.StompSession;
+import org.springframework.messaging.simp.stomp.StompSessionHandlerAdapter;
+import org.springframework.web.socket.WebSocketHttpHeaders;
+import org.springframework.web.socket.client.standard.StandardWebSocketClient;
+import org.springframework.web.socket.messaging.WebSocketStompClient;
+import org.springframework.web.socket.sockjs.client.SockJsClient;
+import org.springframework.web.socket.sockjs.client.WebSocketTransport;
+
+import java.lang.reflect.Type;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.function.Predicate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Два узла в одной JVM за общим брокером (встроенный Artemis на узле A):
+ * инженер подключён к A, пользователь – к B.
+ */
+class ClusterIntegrationTest {
+
+    private static ConfigurableApplicationContext nodeA;
+    private static ConfigurableApplicationContext nodeB;
+    private static WebSocketStompClient           stomp;
+    private static int                            brokerPort;
+
+    @BeforeAll
+    static void startNodes() throws Exception {
+        try (ServerSocket s = new ServerSocket(0)) {
+            brokerPort = s.getLocalPort();
+        }
+        nodeA = node("node-a", brokerPort, true);
+        nodeB = node("node-b", brokerPort, false);
+        await(() -> nodeA.getBean(ClusterBus.class).connected() && nodeB.getBean(ClusterBus.class).connected());
+
+        stomp = new WebSocketStompClient(new SockJsClient(List.of(new WebSocketTransport(new StandardWebSocketClient()))));
+        stomp.setMessageConverter(new MappingJackson2MessageConverter());
+    }
+
+    @AfterAll
+    static void stopNodes() {
+        if (stomp != null) stomp.stop();
+        if (nodeB != null) nodeB.close();
+        if (nodeA != null) nodeA.close();
+    }
+
+    private static ConfigurableApplicationContext node(String id, int brokerPort, boolean embeddedBroker) {
+        return new SpringApplicationBuilder(ChatApplication.class).run(
+                "--server.port=0",
+                "--spring.autoconfigure.exclude="
+                        + "org.springframework.boot.autoconfigure.jdbc.DataSourceAutoConfiguration,"
+                        + "org.springframework.boot.autoconfigure.orm.jpa.HibernateJpaAutoConfiguration",
+                "--spring.devtools.restart.enabled=false",
+                "--spring.jmx.enabled=false",
+                "--chat.snapshot.enabled=false",
+                "--chat.journal.enabled=false",
+                "--chat.presence.flush-ms=20",
+                "--chat.cluster.enabled=true",
+                "--chat.cluster.node-id=" + id,
+                "--chat.presence.destination=/topic/public." + id,
+                "--chat.cluster.broker-port=" + brokerPort,
+                "--chat.cluster.embedded-broker=" + embeddedBroker);
+    }
+
+    @Test
+    void usersRoomsAndMessagesAreSharedAcrossNodes() throws Exception {
+        Client eng = connect(nodeA, "eng");
+        Client reg = connect(nodeB, "reg");
+
+        eng.session.send("/app/user.addUser", new User("eng", Status.ONLINE, UserRole.ENGINEER));
+        reg.session.send("/app/user.addUser", new User("reg", Status.ONLINE, UserRole.REGULAR));
+
+        /* оба узла видят обоих, свободный REGULAR виден инженеру на другом узле */
+        await(() -> nodeA.getBean(OnlineUserStore.class).isRemote("reg")
+                 && nodeB.getBean(OnlineUserStore.class).isRemote("eng"));
+        assertThat(nodeA.getBean(UserService.class).findConnectedUsersForEngineer())
+                .extracting(User::getNickName).contains("reg");
+        assertThat(eng.presence.poll(5, TimeUnit.SECONDS)).isNotNull();   // кадр своего узла A
+
+        /* инженер на A берёт пользователя с B */
+        assertThat(post(nodeA, "/chatrooms/activate/eng/reg")).isEqualTo(200);
+        assertThat(reg.expect(n -> n.getContent().isEmpty())).isNotNull();                 // системное уведомление от A
+        assertThat(eng.status.poll(5, TimeUnit.SECONDS)).isEqualTo(new UserBusyStatus("reg", true));
+        await(() -> nodeB.getBean(ChatRoomService.class).isUserInActiveChatWithEngineer("reg"));
+
+        /* сообщения в обе стороны */
+        eng.session.send("/app/chat", message("eng", "reg", "hello from A"));
+        assertThat(reg.expect(n -> "hello from A".equals(n.getContent())).getSenderId()).isEqualTo("eng");
+
+        reg.session.send("/app/chat", message("reg", "eng", "hello from B"));
+        assertThat(eng.expect(n -> "hello from B".equals(n.getContent())).getSenderId()).isEqualTo("reg");
+
+        for (ConfigurableApplicationContext node : List.of(nodeA, nodeB)) {
+            assertThat(node.getBean(ChatMessageService.class).findChatMessages("eng", "reg"))
+                    .extracting(ChatMessage::getContent)
+                    .containsExactly("hello from A", "hello from B");
+        }
+
+        /* пользователь на B завершает чат – инженер на A видит, что он свободен */
+        assertThat(post(nodeB, "/chatrooms/deactivate/eng/reg")).isEqualTo(200);
+        assertThat(eng.status.poll(5, TimeUnit.SECONDS)).isEqualTo(new UserBusyStatus("reg", false));
+        await(() -> !nodeA.getBean(ChatRoomService.class).isUserInActiveChatWithEngineer("reg"));
+
+        /* выход пользователя на B виден на A */
+        reg.session.send("/app/user.disconnectUser", new User("reg", Status.OFFLINE, UserRole.REGULAR));
+        await(() -> nodeA.getBean(OnlineUserStore.class).get("reg").isEmpty());
+    }
+
+    @Test
+    void lateNodeLearnsExistingPairsAsClaimed() throws Exception {
+        Client eng = connect(nodeA, "eng-early");
+        Client reg = connect(nodeA, "reg-early");
+        eng.session.send("/app/user.addUser", new User("eng-early", Status.ONLINE, UserRole.ENGINEER));
+        reg.session.send("/app/user.addUser", new User("reg-early", Status.ONLINE, UserRole.REGULAR));
+        await(() -> nodeA.getBean(OnlineUserStore.class).get("reg-early").isPresent());
+        assertThat(post(nodeA, "/chatrooms/activate/eng-early/reg-early")).isEqualTo(200);
+
+        /* узел C подключается, когда пара уже есть: узнаёт её из ответа на HELLO */
+        ConfigurableApplicationContext nodeC = node("node-c", brokerPort, false);
+        try {
+            await(() -> nodeC.getBean(ClusterBus.class).connected());
+            await(() -> nodeC.getBean(ChatRoomService.class).isUserInActiveChatWithEngineer("reg-early"));
+
+            Client other = connect(nodeC, "eng-late");
+            other.session.send("/app/user.addUser", new User("eng-late", Status.ONLINE, UserRole.ENGINEER));
+            await(() -> nodeC.getBean(OnlineUserStore.class).get("eng-late").isPresent());
+            assertThat(post(nodeC, "/chatrooms/activate/eng-late/reg-early")).isEqualTo(409);
+            assertThat(nodeC.getBean(ChatRoomService.class).activePartners("reg-early")).containsExactly("eng-early");
+        } finally {
+            nodeC.close();
+        }
+    }
+
+    /* =======================================================================
+                                   КЛИЕНТЫ
+       ======================================================================= */
+
+    private record Client(StompSession session,
+                          BlockingQueue<ChatNotification> queue,
+                          BlockingQueue<UserBusyStatus> status,
+                          BlockingQueue<PresenceDelta> presence) {
+
+        ChatNotification expect(Predicate<ChatNotification> p) throws InterruptedException {
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (System.nanoTime() < deadline) {
+                ChatNotification n = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (n != null && p.test(n)) return n;
+            }
+            throw new AssertionError("notification not received");
+        }
+    }
+
+    private static Client connect(ConfigurableApplicationContext node, String nick) throws Exception {
+        String url = "http://localhost:" + port(node) + "/ws";
+        StompHeaders connect = new StompHeaders();
+        connect.add("nickName", nick);
+        StompSession s = stomp.connectAsync(url, new WebSocketHttpHeaders(), connect, new StompSessionHandlerAdapter() {})
+                .get(10, TimeUnit.SECONDS);
+
+        Client c = new Client(s, new LinkedBlockingQueue<>(), new LinkedBlockingQueue<>(), new LinkedBlockingQueue<>());
+        subscribe(s, "/queue/" + nick, ChatNotification.class, c.queue);
+        subscribe(s, "/topic/user-status", UserBusyStatus.class, c.status);
+        subscribe(s, "/topic/public", PresenceDelta.class, c.presence);
+        Thread.sleep(200);                                     // подписки доходят до брокера асинхронно
+        return c;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> void subscribe(StompSession s, String destination, Class<T> type, BlockingQueue<T> sink) {
+        s.subscribe(destination, new StompFrameHandler() {
+            @Override
+            public Type getPayloadType(StompHeaders headers) {
+                return type;
+            }
+
+            @Override
+            public void handleFrame(StompHeaders headers, Object payload) {
+                sink.add((T) payload);
+            }
+        });
+    }
+
+    private static ChatMessage message(String from, String to, String content) {
+        ChatMessage m = new ChatMessage();
+        m.setSenderId(from);
+        m.setRecipientId(to);
+        m.setContent(content);
+        return m;
+    }
+
+    private static int post(ConfigurableApplicationContext node, String path) throws Exception {
+        HttpRequest req = HttpRequest.newBuilder(URI.create("http://localhost:" + port(node) + path))
+                .POST(HttpRequest.BodyPublishers.noBody())
+                .build();
+        return HttpClient.newHttpClient().send(req, HttpResponse.BodyHandlers.discarding()).statusCode();
+    }
+
+    private static String port(ConfigurableApplicationContext node) {
+        return node.getEnvironment().getProperty("local.server.port");
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!condition.getAsBoolean()) {
+            if (System.nanoTime() > deadline) throw new AssertionError("condition not met in 10s");
+            Thread.sleep(20);
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package com.alibou.websocket.config;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.web.socket.WebSocketExtension;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+class DeflateHandshakeHandlerTest {
+
+    private final ServerHttpRequest request = mock(ServerHttpRequest.class);
+
+    /** так рукопожатие предлагают браузеры */
+    private final List<WebSocketExtension> offered =
+            WebSocketExtension.parseExtensions("permessage-deflate; client_max_window_bits, x-webkit-deflate-frame");
+    private final List<WebSocketExtension> supported =
+            List.of(new WebSocketExtension("permessage-deflate"));
+
+    @Test
+    void agreesToDeflateWhenEnabled() {
+        List<WebSocketExtension> agreed =
+                new DeflateHandshakeHandler(true).filterRequestedExtensions(request, offered, supported);
+
+        assertThat(agreed).extracting(WebSocketExtension::getName).containsExactly("permessage-deflate");
+    }
+
+    @Test
+    void dropsDeflateWhenDisabled() {
+        List<WebSocketExtension> agreed =
+                new DeflateHandshakeHandler(false).filterRequestedExtensions(request, offered, supported);
+
+        assertThat(agreed).isEmpty();
+    }
+}
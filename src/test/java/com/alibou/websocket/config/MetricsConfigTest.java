@@ -0,0 +1,101 @@
+package com.alibou.websocket.config;
+
+import com.alibou.websocket.chat.ChatMessage;
+import com.alibou.websocket.chat.ChatMessageService;
+import com.alibou.websocket.chat.InMemoryMessageStore;
+import com.alibou.websocket.chatroom.ChatInactivityService;
+import com.alibou.websocket.chatroom.ChatRoom;
+import com.alibou.websocket.chatroom.ChatRoomService;
+import com.alibou.websocket.chatroom.InMemoryRoomStore;
+import com.alibou.websocket.user.AvailableUsers;
+import com.alibou.websocket.user.InMemoryOnlineUserStore;
+import com.alibou.websocket.user.OnlineUserStore;
+import com.alibou.websocket.user.PresenceService;
+import com.alibou.websocket.user.Status;
+import com.alibou.websocket.user.User;
+import com.alibou.websocket.user.UserRole;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+class MetricsConfigTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final MetricsConfig       config   = new MetricsConfig();
+
+    private OnlineUserStore       users;
+    private InMemoryRoomStore     roomStore;
+    private InMemoryMessageStore  messageStore;
+    private ChatRoomService       rooms;
+    private ChatInactivityService inactivity;
+    private ChatMessageService    messages;
+
+    @BeforeEach
+    void setUp() {
+        users        = new InMemoryOnlineUserStore();
+        roomStore    = new InMemoryRoomStore();
+        messageStore = new InMemoryMessageStore(100);
+        rooms        = new ChatRoomService(users, roomStore, mock(SimpMessagingTemplate.class),
+                mock(ChatInactivityService.class), mock(ChatMessageService.class),
+                new AvailableUsers(users), mock(PresenceService.class));
+        inactivity   = new ChatInactivityService(rooms, users, mock(PresenceService.class));
+        messages     = new ChatMessageService(rooms, inactivity, users, messageStore, Optional.empty());
+
+        config.chatMetrics(registry, rooms, messages);
+        config.chatGauges(users, roomStore, messageStore, inactivity).bindTo(registry);
+
+        users.addIfAbsent("eng", "s-e", new User("eng", Status.ONLINE, UserRole.ENGINEER));
+        users.addIfAbsent("reg", "s-r", new User("reg", Status.ONLINE, UserRole.REGULAR));
+    }
+
+    @AfterEach
+    void tearDown() {
+        inactivity.shutdown();
+    }
+
+    @Test
+    void hotPathsAreTimed() {
+        roomStore.addIfAbsent(new ChatRoom("eng_reg", "eng", "reg", false));
+        rooms.activateChat("eng", "reg");
+        messages.save(message("eng", "reg"));
+        messages.save(message("reg", "eng"));
+        rooms.deactivatePair("eng", "reg");
+        rooms.deactivatePair("eng", "reg");                      // повтор – без смены состояния
+
+        assertThat(registry.get("chat.room.activate").timer().count()).isEqualTo(1);
+        assertThat(registry.get("chat.message.save").timer().count()).isEqualTo(2);
+        assertThat(registry.get("chat.room.deactivate").timer().count()).isEqualTo(2);
+        assertThat(registry.get("chat.pairs.state.changes").tag("state", "busy").counter().count()).isEqualTo(1);
+        assertThat(registry.get("chat.pairs.state.changes").tag("state", "free").counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    void gaugesReadStateAtScrape() throws Exception {
+        rooms.activateChat("eng", "reg");
+        messages.save(message("eng", "reg"));
+
+        assertThat(registry.get("chat.users.online").tag("role", "ENGINEER").gauge().value()).isEqualTo(1);
+        assertThat(registry.get("chat.users.online").tag("role", "REGULAR").gauge().value()).isEqualTo(1);
+        assertThat(registry.get("chat.rooms.active").gauge().value()).isEqualTo(1);
+        assertThat(registry.get("chat.messages.stored").gauge().value()).isEqualTo(1);
+        assertThat(registry.get("chat.inactivity.timers").gauge().value()).isPositive();
+
+        Thread.sleep(350);                                        // несколько тиков колеса по 100 мс
+        assertThat(registry.get("chat.watchdog.scan").functionTimer().count()).isGreaterThanOrEqualTo(2);
+    }
+
+    private static ChatMessage message(String from, String to) {
+        ChatMessage m = new ChatMessage();
+        m.setSenderId(from);
+        m.setRecipientId(to);
+        m.setContent("hi");
+        return m;
+    }
+}
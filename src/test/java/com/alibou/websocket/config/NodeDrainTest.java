@@ -0,0 +1,202 @@
+package com.alibou.websocket.config;
+
+import com.alibou.websocket.chat.ChatMessageService;
+import com.alibou.websocket.chatroom.ChatInactivityService;
+import com.alibou.websocket.chatroom.ChatRoomService;
+import com.alibou.websocket.chatroom.InMemoryRoomStore;
+import com.alibou.websocket.snapshot.StateSnapshotService;
+import com.alibou.websocket.user.AvailableUsers;
+import com.alibou.websocket.user.InMemoryOnlineUserStore;
+import com.alibou.websocket.user.OnlineUserStore;
+import com.alibou.websocket.user.PresenceChange;
+import com.alibou.websocket.user.PresenceDelta;
+import com.alibou.websocket.user.PresenceService;
+import com.alibou.websocket.user.Status;
+import com.alibou.websocket.user.User;
+import com.alibou.websocket.user.UserRole;
+import com.alibou.websocket.user.UserService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.context.event.ContextClosedEvent;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.util.HashMap;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Drain узла на 5k сессий: 500 инженеров, 4500 REGULAR-ов, у каждого
+ * инженера по четыре активных пары. Закрытие сессии стоит 1 мс (кадр close
+ * по сети); сколько длится drain целиком – NodeDrainBenchmark в benchmarks/.
+ */
+class NodeDrainTest {
+
+    private static final int  ENGINEERS = 500;
+    private static final int  REGULARS  = 4_500;
+    private static final int  SESSIONS  = ENGINEERS + REGULARS;
+    private static final long CLOSE_MS  = 1;
+
+    private final SimpMessagingTemplate messaging = mock(SimpMessagingTemplate.class);
+    private final OnlineUserStore       store     = new InMemoryOnlineUserStore();
+    private final SessionGate           gate      = new SessionGate();
+    private final WebSocketHandler      handler   = gate.decorate(mock(WebSocketHandler.class));
+
+    private ChatRoomService       rooms;
+    private ChatInactivityService inactivity;
+    private UserService           users;
+
+    @BeforeEach
+    void setUp() {
+        PresenceService presence = new PresenceService(messaging, store, 60_000, 10_000, "/topic/public");
+        AvailableUsers  available = new AvailableUsers(store);
+        rooms      = new ChatRoomService(store, new InMemoryRoomStore(), messaging,
+                mock(ChatInactivityService.class), mock(ChatMessageService.class), available, presence);
+        inactivity = new ChatInactivityService(rooms, store, presence);
+        users      = new UserService(store, rooms, inactivity, presence, available);
+    }
+
+    @AfterEach
+    void tearDown() {
+        inactivity.shutdown();
+    }
+
+    private NodeDrain drain(boolean snapshot, long deadlineMs) {
+        return new NodeDrain(gate, users, store,
+                snapshot ? Optional.of(mock(StateSnapshotService.class)) : Optional.empty(),
+                deadlineMs, 32, true);
+    }
+
+    /** Вход пользователя и его сессия; закрытие – CLOSE_MS и afterConnectionClosed, как у Tomcat */
+    private WebSocketSession login(String nick, UserRole role, CountDownLatch hang) throws Exception {
+        String id = "s-" + nick;
+        WebSocketSession s = mock(WebSocketSession.class);
+        when(s.getId()).thenReturn(id);
+        doAnswer(inv -> {
+            if (hang != null) hang.await();
+            Thread.sleep(CLOSE_MS);
+            handler.afterConnectionClosed(s, inv.getArgument(0));
+            return null;
+        }).when(s).close(any(CloseStatus.class));
+        handler.afterConnectionEstablished(s);
+        users.saveUser(new User(nick, Status.ONLINE, role), id);
+        return s;
+    }
+
+    private void populate() throws Exception {
+        for (int e = 0; e < ENGINEERS; e++) login("e" + e, UserRole.ENGINEER, null);
+        for (int r = 0; r < REGULARS; r++) {
+            login("r" + r, UserRole.REGULAR, null);
+            if (r < ENGINEERS * 4) rooms.activateChat("e" + (r % ENGINEERS), "r" + r);
+        }
+        assertThat(gate.sessions()).isEqualTo(SESSIONS);
+    }
+
+    @Test
+    void drainsFiveThousandSessionsWithOneOfflineFrame() throws Exception {
+        populate();
+
+        NodeDrain.Report report = drain(false, 10_000).drain();
+
+        assertThat(report.users()).isEqualTo(SESSIONS);
+        assertThat(report.rooms()).isEqualTo(ENGINEERS * 4);
+        assertThat(report.closed()).isEqualTo(SESSIONS);
+        assertThat(report.abandoned()).isZero();
+
+        assertThat(gate.sessions()).isZero();
+        assertThat(store.local()).isEmpty();
+        assertThat(users.findConnectedUsers()).isEmpty();
+        for (int e = 0; e < ENGINEERS; e++) assertThat(rooms.isUserInActiveChat("e" + e)).isFalse();
+        assertThat(inactivity.liveTimers()).isZero();
+
+        /* все OFFLINE – одним кадром после последнего входа */
+        ArgumentCaptor<Object> frames = ArgumentCaptor.forClass(Object.class);
+        verify(messaging, times(1)).convertAndSend(eq("/topic/public"), frames.capture());
+        PresenceDelta delta = (PresenceDelta) frames.getValue();
+        assertThat(delta.changes()).hasSize(SESSIONS)
+                .extracting(PresenceChange::status).containsOnly(Status.OFFLINE);
+    }
+
+    @Test
+    void deadlineBoundsHangingCloses() throws Exception {
+        CountDownLatch hang = new CountDownLatch(1);
+        for (int i = 0; i < 50; i++) login("r" + i, UserRole.REGULAR, null);
+        for (int i = 50; i < 55; i++) login("r" + i, UserRole.REGULAR, hang);
+
+        NodeDrain.Report report = drain(false, 300).drain();
+        hang.countDown();
+
+        assertThat(report.closed()).isEqualTo(50);
+        assertThat(report.abandoned()).isEqualTo(5);
+        assertThat(report.millis()).isLessThan(2_000);
+        assertThat(store.local()).isEmpty();                              // уход учтён и без закрытия сессии
+    }
+
+    @Test
+    void gateRejectsNewSessionsAndRepeatedDrainReturnsSameReport() throws Exception {
+        login("e0", UserRole.ENGINEER, null);
+        NodeDrain drain = drain(false, 1_000);
+        NodeDrain.Report first = drain.drain();
+
+        ServerHttpResponse response = mock(ServerHttpResponse.class);
+        assertThat(gate.beforeHandshake(null, response, handler, new HashMap<>())).isFalse();
+        verify(response).setStatusCode(HttpStatus.SERVICE_UNAVAILABLE);
+        assertThat(drain.draining()).isTrue();
+        assertThat(drain.drain()).isSameAs(first);
+
+        /* сессия, установившаяся уже после закрытия ворот, закрывается сразу */
+        WebSocketSession late = mock(WebSocketSession.class);
+        when(late.getId()).thenReturn("late");
+        handler.afterConnectionEstablished(late);
+        verify(late).close(CloseStatus.SERVICE_RESTARTED);
+    }
+
+    @Test
+    void snapshotTakesOverStateInsteadOfOffline() throws Exception {
+        login("e0", UserRole.ENGINEER, null);
+        login("r0", UserRole.REGULAR, null);
+        rooms.activateChat("e0", "r0");
+
+        NodeDrain drain = drain(true, 1_000);
+        drain.onApplicationEvent(mock(ContextClosedEvent.class));
+        NodeDrain.Report report = drain.drain();
+
+        assertThat(report.handoff()).isTrue();
+        assertThat(report.closed()).isEqualTo(2);
+        assertThat(store.local()).hasSize(2);
+        assertThat(rooms.isUserInActiveChat("r0")).isTrue();
+        verify(messaging, never()).convertAndSend(eq("/topic/public"), any(Object.class));
+    }
+
+    @Test
+    void adminDrainWithSnapshotStillTakesUsersOffline() throws Exception {
+        login("e0", UserRole.ENGINEER, null);
+        login("r0", UserRole.REGULAR, null);
+        rooms.activateChat("e0", "r0");
+
+        NodeDrain.Report report = drain(true, 1_000).drain();       // POST /admin/drain – рестарта не будет
+
+        assertThat(report.handoff()).isFalse();
+        assertThat(report.users()).isEqualTo(2);
+        assertThat(report.rooms()).isEqualTo(1);
+        assertThat(store.local()).isEmpty();
+        assertThat(rooms.isUserInActiveChat("r0")).isFalse();
+        verify(messaging).convertAndSend(eq("/topic/public"), any(Object.class));
+    }
+}
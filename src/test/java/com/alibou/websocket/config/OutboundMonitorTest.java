@@ -0,0 +1,161 @@
+package com.alibou.websocket.config;
+
+import com.alibou.websocket.user.InMemoryOnlineUserStore;
+import com.alibou.websocket.user.OnlineUserStore;
+import com.alibou.websocket.user.Status;
+import com.alibou.websocket.user.User;
+import com.alibou.websocket.user.UserRole;
+import com.alibou.websocket.user.UserService;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHandler;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.*;
+
+class OutboundMonitorTest {
+
+    private final OutboundMonitor monitor = new OutboundMonitor(mock(ThreadPoolTaskExecutor.class));
+
+    @Test
+    void countsQueuedMessagesPerSession() throws Exception {
+        monitor.decorate(mock(WebSocketHandler.class)).afterConnectionEstablished(session("s1"));
+        MessageChannel channel = mock(MessageChannel.class);
+        MessageHandler handler = mock(MessageHandler.class);
+        Message<?> m1 = outbound("s1");
+        Message<?> m2 = outbound("s1");
+
+        monitor.preSend(m1, channel);
+        monitor.preSend(m2, channel);
+        monitor.afterSendCompletion(m1, channel, true, null);
+        monitor.afterSendCompletion(m2, channel, true, null);
+        assertThat(monitor.pendingFor("s1")).isEqualTo(2);
+
+        monitor.afterMessageHandled(m1, channel, handler, null);
+        assertThat(monitor.pendingFor("s1")).isEqualTo(1);
+
+        Message<?> rejected = outbound("s1");                       // очередь executor-а полна
+        monitor.preSend(rejected, channel);
+        monitor.afterSendCompletion(rejected, channel, false, new IllegalStateException());
+        assertThat(monitor.pendingFor("s1")).isEqualTo(1);
+    }
+
+    /** DISCONNECT_ACK брокера приходит после закрытия сессии и не должен оставлять запись */
+    @Test
+    void closedSessionIsNotTrackedAgain() throws Exception {
+        WebSocketHandler decorated = monitor.decorate(mock(WebSocketHandler.class));
+        WebSocketSession s = session("s1");
+        decorated.afterConnectionEstablished(s);
+        decorated.afterConnectionClosed(s, CloseStatus.NORMAL);
+
+        SimpMessageHeaderAccessor acc = SimpMessageHeaderAccessor.create(SimpMessageType.DISCONNECT_ACK);
+        acc.setSessionId("s1");
+        Message<?> ack = MessageBuilder.createMessage(new byte[0], acc.getMessageHeaders());
+        MessageChannel channel = mock(MessageChannel.class);
+        monitor.preSend(ack, channel);
+        monitor.afterSendCompletion(ack, channel, true, null);
+
+        assertThat(monitor.pendingFor("s1")).isZero();          // отправка ещё не обработана – была бы 1
+    }
+
+    /** Рассылка на сессий больше, чем мест в очереди: ни один кадр не теряется, переполнения посчитаны */
+    @Test
+    void overflowRunsInCallerAndIsCounted() throws Exception {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(1);
+        executor.setMaxPoolSize(1);
+        executor.setQueueCapacity(10);
+        executor.setRejectedExecutionHandler(monitor.overflow());
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.initialize();
+
+        CountDownLatch busy = new CountDownLatch(1);
+        AtomicInteger  sent = new AtomicInteger();
+        executor.execute(() -> {
+            try {
+                busy.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        for (int i = 0; i < 100; i++) executor.execute(sent::incrementAndGet);   // 10 в очередь, 90 – на месте
+        assertThat(sent.get()).isEqualTo(90);
+        busy.countDown();
+        executor.shutdown();
+        executor.getThreadPoolExecutor().awaitTermination(5, TimeUnit.SECONDS);
+
+        assertThat(sent.get()).isEqualTo(100);
+        assertThat(monitor.overflows()).isEqualTo(90);
+    }
+
+    @Test
+    void countsOnlyUnreliableClosesAsEvictions() throws Exception {
+        WebSocketHandler decorated = monitor.decorate(mock(WebSocketHandler.class));
+        WebSocketSession slow = session("slow");
+        WebSocketSession fine = session("fine");
+
+        decorated.afterConnectionEstablished(slow);
+        decorated.afterConnectionEstablished(fine);
+        decorated.afterConnectionClosed(slow, CloseStatus.SESSION_NOT_RELIABLE.withReason("Send time limit exceeded"));
+        decorated.afterConnectionClosed(fine, CloseStatus.NORMAL);
+
+        assertThat(monitor.evictions()).isEqualTo(1);
+    }
+
+    @Test
+    void evictedSessionIsCleanedUpThroughUserService() {
+        OnlineUserStore store = new InMemoryOnlineUserStore();
+        store.addIfAbsent("reg", "s-reg", new User("reg", Status.ONLINE, UserRole.REGULAR));
+        UserService users = mock(UserService.class);
+        WebSocketDisconnectListener listener = new WebSocketDisconnectListener(users, store, mock(NodeDrain.class));
+
+        // DISCONNECT, который Spring публикует при закрытии сессии, без nickName
+        StompHeaderAccessor acc = StompHeaderAccessor.create(StompCommand.DISCONNECT);
+        acc.setSessionId("s-reg");
+        Message<byte[]> msg = MessageBuilder.createMessage(new byte[0], acc.getMessageHeaders());
+        listener.onApplicationEvent(new SessionDisconnectEvent(this, msg, "s-reg", CloseStatus.SESSION_NOT_RELIABLE));
+
+        verify(users).disconnect("reg", "s-reg");
+    }
+
+    @Test
+    void storeForgetsSessionOnRemove() {
+        OnlineUserStore store = new InMemoryOnlineUserStore();
+        store.addIfAbsent("a", "s1", new User("a", Status.ONLINE, UserRole.REGULAR));
+        assertThat(store.nickOf("s1")).isEqualTo("a");
+
+        store.remove("a", "s1");
+        assertThat(store.nickOf("s1")).isNull();
+
+        store.addIfAbsent("a", "s2", new User("a", Status.ONLINE, UserRole.REGULAR));
+        store.forceRemove("a");
+        assertThat(store.nickOf("s2")).isNull();
+    }
+
+    private static Message<?> outbound(String sessionId) {
+        SimpMessageHeaderAccessor acc = SimpMessageHeaderAccessor.create();
+        acc.setSessionId(sessionId);
+        return MessageBuilder.createMessage(new byte[0], acc.getMessageHeaders());
+    }
+
+    private static WebSocketSession session(String id) {
+        WebSocketSession s = mock(WebSocketSession.class);
+        when(s.getId()).thenReturn(id);
+        return s;
+    }
+}
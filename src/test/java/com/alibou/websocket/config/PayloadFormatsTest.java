@@ -0,0 +1,174 @@
+package com.alibou.websocket.config;
+
+import com.alibou.websocket.chat.ChatMessage;
+import com.alibou.websocket.chat.ChatNotification;
+import com.alibou.websocket.user.PresenceChange;
+import com.alibou.websocket.user.PresenceDelta;
+import com.alibou.websocket.user.Status;
+import com.alibou.websocket.user.UserRole;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHandler;
+import org.springframework.messaging.converter.CompositeMessageConverter;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.util.MimeTypeUtils;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.sockjs.transport.SockJsSession;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.*;
+
+class PayloadFormatsTest {
+
+    private final MessageChannel channel = mock(MessageChannel.class);
+    private final MessageHandler handler = mock(MessageHandler.class);
+
+    private PayloadFormats formats;
+    private ObjectMapper   json;
+
+    @BeforeEach
+    void setUp() {
+        json    = Jackson2ObjectMapperBuilder.json().build();
+        formats = new PayloadFormats(json);
+    }
+
+    @Test
+    void negotiatesFirstSupportedFormat() {
+        assertThat(PayloadFormat.negotiate(null)).isEqualTo(PayloadFormat.JSON);
+        assertThat(PayloadFormat.negotiate("text/plain")).isEqualTo(PayloadFormat.JSON);
+        assertThat(PayloadFormat.negotiate("application/x-jackson-smile, application/cbor"))
+                .isEqualTo(PayloadFormat.SMILE);
+        assertThat(PayloadFormat.negotiate("application/cbor")).isEqualTo(PayloadFormat.CBOR);
+    }
+
+    @Test
+    void convertersPickFormatByContentType() throws Exception {
+        CompositeMessageConverter converter = new CompositeMessageConverter(formats.converters());
+        ChatMessage m = new ChatMessage(0, "eng_reg", "eng", "reg", "привет", 0);
+
+        Message<?> plain = converter.toMessage(m, null);
+        assertThat(new String((byte[]) plain.getPayload(), StandardCharsets.UTF_8)).contains("\"content\":\"привет\"");
+
+        SimpMessageHeaderAccessor headers = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        headers.setContentType(PayloadFormat.CBOR.mimeType());
+        byte[] cbor = formats.mapper(PayloadFormat.CBOR).writeValueAsBytes(m);
+        Message<byte[]> in = MessageBuilder.createMessage(cbor, headers.getMessageHeaders());
+
+        ChatMessage read = (ChatMessage) converter.fromMessage(in, ChatMessage.class);
+        assertThat(read.getContent()).isEqualTo("привет");
+        assertThat(read.getSenderId()).isEqualTo("eng");
+    }
+
+    /** Ради чего CBOR/Smile: кадр меньше JSON; CPU на кадр – PayloadBenchmark в benchmarks/ */
+    @Test
+    void binaryFramesAreSmallerThanJson() throws Exception {
+        List<PresenceChange> changes = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            changes.add(new PresenceChange(1_000 + i, "regular-" + i,
+                    (i & 1) == 0 ? Status.ONLINE : Status.OFFLINE, UserRole.REGULAR));
+        }
+        Object presence = new PresenceDelta(1_000, 1_050, changes);
+        Object chat     = new ChatNotification("42", "engineer-17", "regular-4711",
+                "Добрый день! Проверьте, пожалуйста, настройки роутера и перезагрузите его.");
+
+        for (Object frame : List.of(chat, presence)) {
+            int plain = formats.mapper(PayloadFormat.JSON).writeValueAsBytes(frame).length;
+            assertThat(formats.mapper(PayloadFormat.CBOR).writeValueAsBytes(frame)).hasSizeLessThan(plain);
+            assertThat(formats.mapper(PayloadFormat.SMILE).writeValueAsBytes(frame)).hasSizeLessThan(plain);
+        }
+    }
+
+    @Test
+    void optedInRawSessionGetsBinaryFrames() throws Exception {
+        WebSocketSession raw      = session("s-1", WebSocketSession.class);
+        WebSocketSession wrapped  = establish(raw);
+        formats.preSend(connect("s-1", "application/cbor"), channel);
+
+        byte[] payload = json.writeValueAsBytes(new ChatNotification("1", "eng", "reg", "hi"));
+        Message<?> out = formats.beforeHandle(message("s-1", payload), channel, handler);
+
+        assertThat(SimpMessageHeaderAccessor.wrap(out).getContentType()).isEqualTo(PayloadFormat.CBOR.mimeType());
+        ChatNotification back = formats.mapper(PayloadFormat.CBOR).readValue((byte[]) out.getPayload(), ChatNotification.class);
+        assertThat(back.getContent()).isEqualTo("hi");
+        assertThat(((byte[]) out.getPayload()).length).isLessThan(payload.length);
+
+        /* тот же кадр другому подписчику – из кэша */
+        Message<?> again = formats.beforeHandle(message("s-1", payload), channel, handler);
+        assertThat(again.getPayload()).isSameAs(out.getPayload());
+
+        /* сессия отдаёт кадры бинарными */
+        wrapped.sendMessage(new TextMessage("MESSAGE\n\n\0".getBytes(StandardCharsets.UTF_8)));
+        ArgumentCaptor<WebSocketMessage<?>> sent = ArgumentCaptor.forClass(WebSocketMessage.class);
+        verify(raw).sendMessage(sent.capture());
+        assertThat(sent.getValue()).isInstanceOf(BinaryMessage.class);
+    }
+
+    @Test
+    void sockJsAndJsonSessionsStayOnText() throws Exception {
+        WebSocketSession sockJs = session("s-sockjs", SockJsSession.class);
+        establish(sockJs);
+        formats.preSend(connect("s-sockjs", "application/cbor"), channel);
+
+        WebSocketSession raw = session("s-json", WebSocketSession.class);
+        WebSocketSession wrapped = establish(raw);
+        formats.preSend(connect("s-json", null), channel);
+
+        byte[] payload = "{\"a\":1}".getBytes(StandardCharsets.UTF_8);
+        assertThat(formats.beforeHandle(message("s-sockjs", payload), channel, handler).getPayload()).isSameAs(payload);
+        assertThat(formats.beforeHandle(message("s-json", payload), channel, handler).getPayload()).isSameAs(payload);
+        assertThat(formats.binarySessions()).isZero();
+
+        TextMessage text = new TextMessage("MESSAGE\n\n\0");
+        wrapped.sendMessage(text);
+        verify(raw).sendMessage(text);
+    }
+
+    /* ---------- helpers ---------- */
+
+    private static <T extends WebSocketSession> T session(String id, Class<T> type) {
+        T s = mock(type);
+        when(s.getId()).thenReturn(id);
+        return s;
+    }
+
+    /** Сессия, которую увидит STOMP-обработчик после декоратора */
+    private WebSocketSession establish(WebSocketSession session) throws Exception {
+        WebSocketHandler delegate = mock(WebSocketHandler.class);
+        formats.decorate(delegate).afterConnectionEstablished(session);
+        ArgumentCaptor<WebSocketSession> seen = ArgumentCaptor.forClass(WebSocketSession.class);
+        verify(delegate).afterConnectionEstablished(seen.capture());
+        return seen.getValue();
+    }
+
+    private static Message<byte[]> connect(String sessionId, String accept) {
+        StompHeaderAccessor headers = StompHeaderAccessor.create(StompCommand.CONNECT);
+        headers.setSessionId(sessionId);
+        if (accept != null) headers.setNativeHeader(PayloadFormats.ACCEPT_HEADER, accept);
+        return MessageBuilder.createMessage(new byte[0], headers.getMessageHeaders());
+    }
+
+    private static Message<byte[]> message(String sessionId, byte[] payload) {
+        SimpMessageHeaderAccessor headers = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        headers.setSessionId(sessionId);
+        headers.setDestination("/queue/reg");
+        headers.setContentType(MimeTypeUtils.APPLICATION_JSON);
+        return MessageBuilder.createMessage(payload, headers.getMessageHeaders());
+    }
+}
@@ -0,0 +1,58 @@
+package com.alibou.websocket.config;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.WebSocketSession;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class SessionActivityTest {
+
+    private final SessionActivity  activity = new SessionActivity(100, 0, mock(TaskScheduler.class));
+    private final WebSocketHandler handler  = activity.decorate(mock(WebSocketHandler.class));
+
+    private WebSocketSession session(String id) throws Exception {
+        WebSocketSession s = mock(WebSocketSession.class);
+        when(s.getId()).thenReturn(id);
+        handler.afterConnectionEstablished(s);
+        return s;
+    }
+
+    @Test
+    void framesKeepSessionAliveSilenceClosesIt() throws Exception {
+        WebSocketSession talking = session("a");
+        WebSocketSession silent  = session("b");
+        long start = System.currentTimeMillis();
+
+        /* heartbeat клиента – кадр "\n" */
+        handler.handleMessage(talking, new TextMessage("\n"));
+        activity.seen("a", start + 250);
+
+        assertThat(activity.sweep(start + 200)).isZero();               // ещё в пределах 3 × 100 мс
+        assertThat(activity.sweep(start + 400)).isEqualTo(1);
+
+        verify(silent).close(SessionActivity.SILENT);
+        verify(talking, never()).close(SessionActivity.SILENT);
+        assertThat(activity.idleMillis("b")).isEqualTo(-1);
+        assertThat(activity.sessions()).isEqualTo(1);
+        assertThat(activity.closed()).isEqualTo(1);
+    }
+
+    @Test
+    void closedSessionIsForgotten() throws Exception {
+        WebSocketSession s = session("a");
+        assertThat(activity.idleMillis("a")).isBetween(0L, 1_000L);
+
+        handler.afterConnectionClosed(s, CloseStatus.NORMAL);
+
+        assertThat(activity.sessions()).isZero();
+        assertThat(activity.sweep(Long.MAX_VALUE)).isZero();
+    }
+}
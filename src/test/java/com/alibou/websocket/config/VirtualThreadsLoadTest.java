@@ -0,0 +1,221 @@
+package com.alibou.websocket.config;
+
+import com.alibou.websocket.chat.ChatMessage;
+import com.alibou.websocket.chat.ChatNotification;
+import com.alibou.websocket.load.LoadServer;
+import com.alibou.websocket.user.Status;
+import com.alibou.websocket.user.User;
+import com.alibou.websocket.user.UserRole;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.messaging.converter.MappingJackson2MessageConverter;
+import org.springframework.messaging.simp.stomp.StompFrameHandler;
+import org.springframework.messaging.simp.stomp.StompHeaders;
+import org.springframework.messaging.simp.stomp.StompSession;
+import org.springframework.messaging.simp.stomp.StompSessionHandlerAdapter;
+import org.springframework.web.socket.WebSocketHttpHeaders;
+import org.springframework.web.socket.client.standard.StandardWebSocketClient;
+import org.springframework.web.socket.messaging.WebSocketStompClient;
+
+import java.lang.reflect.Type;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Сравнение пулов платформенных потоков и chat.threads.virtual=true под нагрузкой.
+ *
+ * Узел ({@link LoadServer}) запускается отдельным процессом на JDBC-хранилище
+ * (H2 с искусственной задержкой каждого запроса), к нему подключается
+ * load.sessions STOMP-сессий. load.pairs пар «инженер – пользователь»
+ * активируются через REST одновременно, затем инженеры шлют load.rate
+ * сообщений в секунду; задержка – от send до кадра в /queue получателя.
+ * Остальные сессии просто висят подключёнными.
+ *
+ * По умолчанию выключен. Запуск (виртуальный режим требует JDK 21 у узла):
+ *   mvn test -Dtest=VirtualThreadsLoadTest -Dload.sessions=10000 \
+ *            -Dload.java=/path/to/jdk-21/bin/java
+ * Итог – в stdout и target/load-report.txt.
+ */
+@EnabledIfSystemProperty(named = "load.sessions", matches = "\\d+")
+class VirtualThreadsLoadTest {
+
+    private static final int    SESSIONS   = Integer.getInteger("load.sessions", 0);
+    private static final int    PAIRS      = Integer.getInteger("load.pairs", 100);
+    private static final int    RATE       = Integer.getInteger("load.rate", 50);
+    private static final int    WARMUP_S   = Integer.getInteger("load.warmup-seconds", 5);
+    private static final int    MEASURE_S  = Integer.getInteger("load.seconds", 20);
+    private static final int    DB_LATENCY = Integer.getInteger("load.db-latency-us", 1000);
+    private static final String JAVA       = System.getProperty("load.java", LoadServer.currentJava());
+    private static final String MODES      = System.getProperty("load.modes", "platform,virtual");
+
+    @Test
+    void compareThreadModes() throws Exception {
+        List<String> report = new ArrayList<>();
+        report.add(String.format("%-9s %8s %6s %9s %9s %9s %9s %9s %9s",
+                "mode", "sessions", "pairs", "sent", "lost", "p50 ms", "p99 ms", "max ms", "rest p99"));
+        for (String mode : MODES.split(",")) {
+            Result r = run(mode.trim());
+            report.add(String.format("%-9s %8d %6d %9d %9d %9.1f %9.1f %9.1f %9.1f",
+                    mode.trim(), SESSIONS, PAIRS, r.sent, r.sent - r.latencies.length,
+                    ms(percentile(r.latencies, 0.50)), ms(percentile(r.latencies, 0.99)),
+                    ms(percentile(r.latencies, 1.0)), ms(percentile(r.rest, 0.99))));
+
+            assertThat(r.latencies.length).as("доставлено в режиме " + mode).isGreaterThan(0);
+        }
+        report.forEach(System.out::println);
+        Files.write(Path.of("target", "load-report.txt"), report,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+
+    /* =======================================================================
+                                   ОДИН ПРОГОН
+       ======================================================================= */
+
+    private record Result(long sent, long[] latencies, long[] rest) {}
+
+    private Result run(String mode) throws Exception {
+        int     port   = LoadServer.freePort();
+        Process server = LoadServer.start(JAVA, port, DB_LATENCY, Path.of("target", "load-server-" + mode + ".log"),
+                List.of("--server.tomcat.max-connections=" + (SESSIONS + 1_000),
+                        "--chat.store.type=jdbc",
+                        "--chat.threads.virtual=" + "virtual".equals(mode)));
+        WebSocketStompClient stomp = new WebSocketStompClient(new StandardWebSocketClient());
+        stomp.setMessageConverter(new MappingJackson2MessageConverter());
+        stomp.setInboundMessageSizeLimit(16 * 1024);
+        try {
+            ConcurrentLinkedQueue<Long> latencies = new ConcurrentLinkedQueue<>();
+            AtomicLong                  measureFrom = new AtomicLong(Long.MAX_VALUE);
+
+            /* ---------- подключаем все сессии, первые 2 × PAIRS – участники пар ---------- */
+            StompSession[] engineers = new StompSession[PAIRS];
+            Semaphore      inFlight  = new Semaphore(256);
+            List<CompletableFuture<StompSession>> all = new ArrayList<>(SESSIONS);
+            for (int i = 0; i < SESSIONS; i++) {
+                String nick = i < PAIRS ? "eng-" + i : i < 2 * PAIRS ? "reg-" + (i - PAIRS) : "idle-" + i;
+                inFlight.acquire();
+                CompletableFuture<StompSession> f = connect(stomp, port, nick, latencies, measureFrom);
+                f.whenComplete((s, ex) -> inFlight.release());
+                all.add(f);
+            }
+            for (int i = 0; i < SESSIONS; i++) {
+                StompSession s = all.get(i).get(60, TimeUnit.SECONDS);
+                if (i < PAIRS) {
+                    engineers[i] = s;
+                    s.send("/app/user.addUser", new User("eng-" + i, Status.ONLINE, UserRole.ENGINEER));
+                } else if (i < 2 * PAIRS) {
+                    s.send("/app/user.addUser", new User("reg-" + (i - PAIRS), Status.ONLINE, UserRole.REGULAR));
+                }
+            }
+            Thread.sleep(1_000);
+
+            /* ---------- все пары активируются одновременно через REST ---------- */
+            long[] rest = activateAll(port);
+
+            /* ---------- сообщения с постоянной частотой ---------- */
+            long sent = sendAtRate(engineers, measureFrom);
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+            while (latencies.size() < sent && System.nanoTime() < deadline) Thread.sleep(50);
+
+            long[] sorted = latencies.stream().mapToLong(Long::longValue).sorted().toArray();
+            return new Result(sent, sorted, rest);
+        } finally {
+            stomp.stop();
+            LoadServer.stop(server);
+        }
+    }
+
+    private CompletableFuture<StompSession> connect(WebSocketStompClient stomp, int port, String nick,
+                                                    ConcurrentLinkedQueue<Long> latencies, AtomicLong measureFrom) {
+        StompHeaders connect = new StompHeaders();
+        connect.add("nickName", nick);
+        return stomp.connectAsync("ws://localhost:" + port + "/ws/websocket",
+                        new WebSocketHttpHeaders(), connect, new StompSessionHandlerAdapter() {})
+                .thenApply(s -> {
+                    s.subscribe("/queue/" + nick, new StompFrameHandler() {
+                        @Override
+                        public Type getPayloadType(StompHeaders headers) {
+                            return ChatNotification.class;
+                        }
+
+                        @Override
+                        public void handleFrame(StompHeaders headers, Object payload) {
+                            String content = ((ChatNotification) payload).getContent();
+                            if (content == null || content.isEmpty()) return;     // системное уведомление
+                            long sentAt = Long.parseLong(content);
+                            if (sentAt >= measureFrom.get()) latencies.add(System.nanoTime() - sentAt);
+                        }
+                    });
+                    return s;
+                });
+    }
+
+    private long[] activateAll(int port) {
+        HttpClient http = HttpClient.newHttpClient();
+        List<CompletableFuture<Long>> calls = new ArrayList<>(PAIRS);
+        for (int i = 0; i < PAIRS; i++) {
+            HttpRequest req = HttpRequest.newBuilder(
+                            URI.create("http://localhost:" + port + "/chatrooms/activate/eng-" + i + "/reg-" + i))
+                    .POST(HttpRequest.BodyPublishers.noBody())
+                    .build();
+            long start = System.nanoTime();
+            calls.add(http.sendAsync(req, HttpResponse.BodyHandlers.discarding())
+                    .thenApply(resp -> {
+                        assertThat(resp.statusCode()).isEqualTo(200);
+                        return System.nanoTime() - start;
+                    }));
+        }
+        return calls.stream().mapToLong(CompletableFuture::join).sorted().toArray();
+    }
+
+    /** Один поток отправки: у StompSession нет потокобезопасной записи */
+    private long sendAtRate(StompSession[] engineers, AtomicLong measureFrom) throws InterruptedException {
+        ScheduledExecutorService ticker = Executors.newSingleThreadScheduledExecutor();
+        AtomicLong sent  = new AtomicLong();
+        AtomicLong next  = new AtomicLong();
+        int        perTick = Math.max(1, RATE / 100);
+        long       warmupEnd = System.nanoTime() + TimeUnit.SECONDS.toNanos(WARMUP_S);
+        ticker.scheduleAtFixedRate(() -> {
+            if (System.nanoTime() >= warmupEnd) measureFrom.compareAndSet(Long.MAX_VALUE, warmupEnd);
+            for (int k = 0; k < perTick; k++) {
+                int  i   = (int) (next.getAndIncrement() % PAIRS);
+                long now = System.nanoTime();
+                ChatMessage m = new ChatMessage();
+                m.setSenderId("eng-" + i);
+                m.setRecipientId("reg-" + i);
+                m.setContent(String.valueOf(now));
+                engineers[i].send("/app/chat", m);
+                if (now >= warmupEnd) sent.incrementAndGet();
+            }
+        }, 0, 10, TimeUnit.MILLISECONDS);
+        Thread.sleep(TimeUnit.SECONDS.toMillis(WARMUP_S + MEASURE_S));
+        ticker.shutdown();
+        ticker.awaitTermination(5, TimeUnit.SECONDS);
+        return sent.get();
+    }
+
+    private static long percentile(long[] sorted, double q) {
+        if (sorted.length == 0) return 0;
+        int i = (int) Math.ceil(q * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, i))];
+    }
+
+    private static double ms(long nanos) {
+        return nanos / 1e6;
+    }
+}
@@ -0,0 +1,57 @@
+package com.alibou.websocket.config;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledForJreRange;
+import org.junit.jupiter.api.condition.JRE;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class VirtualThreadsTest {
+
+    @Test
+    @EnabledForJreRange(max = JRE.JAVA_20)
+    void failsFastBeforeJava21() {
+        assertThat(VirtualThreads.supported()).isFalse();
+        assertThatThrownBy(() -> VirtualThreads.channelExecutor("ws-in-", 10, 10))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("Java 21");
+    }
+
+    @Test
+    @EnabledForJreRange(min = JRE.JAVA_21)
+    void channelExecutorRunsOnNamedVirtualThreads() throws Exception {
+        ThreadPoolTaskExecutor executor = VirtualThreads.channelExecutor("ws-in-", 4, 100);
+        executor.initialize();
+        try {
+            CompletableFuture<Thread> ran = new CompletableFuture<>();
+            executor.execute(() -> ran.complete(Thread.currentThread()));
+            Thread t = ran.get(5, TimeUnit.SECONDS);
+
+            assertThat(t.getName()).startsWith("ws-in-");
+            assertThat(Thread.class.getMethod("isVirtual").invoke(t)).isEqualTo(true);
+            assertThat(executor.getThreadPoolExecutor().getQueue().remainingCapacity()).isEqualTo(100);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    @EnabledForJreRange(min = JRE.JAVA_21)
+    void perTaskExecutorStartsThreadPerTask() throws Exception {
+        ExecutorService executor = VirtualThreads.perTaskExecutor("tomcat-handler-");
+        try {
+            Thread a = executor.submit(Thread::currentThread).get(5, TimeUnit.SECONDS);
+            Thread b = executor.submit(Thread::currentThread).get(5, TimeUnit.SECONDS);
+            assertThat(a).isNotSameAs(b);
+            assertThat(a.getName()).startsWith("tomcat-handler-");
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
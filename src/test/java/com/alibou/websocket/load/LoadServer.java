@@ -0,0 +1,134 @@
+package com.alibou.websocket.load;
+
+import com.alibou.websocket.ChatApplication;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+
+import javax.sql.DataSource;
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Узел для нагрузочных прогонов в отдельной JVM (у каждого процесса свой
+ * лимит дескрипторов, 10k сессий с обеих сторон в одну JVM не влезают).
+ *
+ * Каждый execute* к БД ждёт -Dload.db-latency-us микросекунд – так H2
+ * в памяти отвечает со скоростью сетевой MySQL, и save() действительно
+ * блокирует поток канала.
+ */
+public class LoadServer {
+
+    public static void main(String[] args) {
+        long latencyNanos = Long.getLong("load.db-latency-us", 0) * 1_000;
+        new SpringApplicationBuilder(ChatApplication.class)
+                .initializers(ctx -> ctx.getBeanFactory().addBeanPostProcessor(new BeanPostProcessor() {
+                    @Override
+                    public Object postProcessAfterInitialization(Object bean, String name) {
+                        return bean instanceof DataSource ds && latencyNanos > 0
+                                ? delayed(ds, DataSource.class, latencyNanos)
+                                : bean;
+                    }
+                }))
+                .run(args);
+    }
+
+    /** Прокси DataSource → Connection → Statement с задержкой перед execute* */
+    private static Object delayed(Object target, Class<?> type, long nanos) {
+        return Proxy.newProxyInstance(LoadServer.class.getClassLoader(), new Class<?>[]{type}, (proxy, m, a) -> {
+            if (m.getName().startsWith("execute")) Thread.sleep(nanos / 1_000_000, (int) (nanos % 1_000_000));
+            Object result;
+            try {
+                result = m.invoke(target, a);
+            } catch (InvocationTargetException ex) {
+                throw ex.getCause();
+            }
+            boolean jdbc = result instanceof Connection || result instanceof Statement;
+            return jdbc && m.getReturnType().isInterface() ? delayed(result, m.getReturnType(), nanos) : result;
+        });
+    }
+
+    /* =======================================================================
+                          ЗАПУСК ИЗ ТЕСТА (отдельный процесс)
+       ======================================================================= */
+
+    /**
+     * Поднять узел на H2 с классами тестового classpath и дождаться /ws/info.
+     * @param java     java нужной версии (виртуальным потокам нужен JDK 21)
+     * @param log      куда писать stdout узла
+     * @param settings дополнительные --ключи Spring
+     */
+    public static Process start(String java, int port, long dbLatencyUs, Path log,
+                                List<String> settings) throws Exception {
+        String classpath = System.getProperty("surefire.test.class.path", System.getProperty("java.class.path"));
+        List<String> cmd = new ArrayList<>(List.of(
+                java, "-Xmx1536m",
+                "-Dspring.devtools.restart.enabled=false",
+                "-Dload.db-latency-us=" + dbLatencyUs,
+                "-cp", classpath, LoadServer.class.getName(),
+                "--server.port=" + port,
+                "--spring.datasource.url=jdbc:h2:mem:load;MODE=MySQL;DB_CLOSE_DELAY=-1",
+                "--spring.datasource.driver-class-name=org.h2.Driver",
+                "--spring.datasource.username=sa",
+                "--spring.datasource.password=",
+                "--spring.jmx.enabled=false",
+                "--chat.snapshot.enabled=false",
+                "--chat.journal.enabled=false"));
+        cmd.addAll(settings);
+        Process server = new ProcessBuilder(cmd)
+                .redirectErrorStream(true)
+                .redirectOutput(log.toFile())
+                .start();
+        try {
+            awaitStarted(port, server, log);
+            return server;
+        } catch (Exception | Error ex) {
+            stop(server);
+            throw ex;
+        }
+    }
+
+    public static void stop(Process server) throws InterruptedException {
+        server.destroy();
+        if (!server.waitFor(30, TimeUnit.SECONDS)) server.destroyForcibly();
+    }
+
+    /** java текущей JVM – если -Dload.java не задан */
+    public static String currentJava() {
+        return System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+    }
+
+    public static int freePort() throws IOException {
+        try (ServerSocket s = new ServerSocket(0)) {
+            return s.getLocalPort();
+        }
+    }
+
+    private static void awaitStarted(int port, Process server, Path log) throws Exception {
+        HttpClient http     = HttpClient.newHttpClient();
+        long       deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(120);
+        while (System.nanoTime() < deadline) {
+            if (!server.isAlive()) throw new AssertionError("узел завершился, см. " + log);
+            try {
+                http.send(HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/ws/info")).build(),
+                        HttpResponse.BodyHandlers.discarding());
+                return;
+            } catch (IOException notYet) {
+                Thread.sleep(250);
+            }
+        }
+        throw new AssertionError("узел не поднялся за 120 с");
+    }
+}
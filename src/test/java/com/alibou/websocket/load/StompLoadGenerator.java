@@ -0,0 +1,627 @@
+package com.alibou.websocket.load;
+
+import com.alibou.websocket.chat.ChatMessage;
+import com.alibou.websocket.chat.ChatNotification;
+import com.alibou.websocket.chatroom.UserBusyStatus;
+import com.alibou.websocket.config.PayloadFormat;
+import com.alibou.websocket.config.PayloadFormats;
+import com.alibou.websocket.user.PresenceChange;
+import com.alibou.websocket.user.PresenceDelta;
+import com.alibou.websocket.user.Status;
+import com.alibou.websocket.user.User;
+import com.alibou.websocket.user.UserRole;
+import jakarta.websocket.ContainerProvider;
+import jakarta.websocket.WebSocketContainer;
+import lombok.extern.slf4j.Slf4j;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.messaging.converter.CompositeMessageConverter;
+import org.springframework.messaging.converter.MessageConverter;
+import org.springframework.messaging.converter.StringMessageConverter;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompFrameHandler;
+import org.springframework.messaging.simp.stomp.StompHeaders;
+import org.springframework.messaging.simp.stomp.StompSession;
+import org.springframework.messaging.simp.stomp.StompSessionHandlerAdapter;
+import org.springframework.web.socket.WebSocketExtension;
+import org.springframework.web.socket.WebSocketHttpHeaders;
+import org.springframework.web.socket.client.WebSocketClient;
+import org.springframework.web.socket.client.standard.StandardWebSocketClient;
+import org.springframework.web.socket.messaging.WebSocketStompClient;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+import org.springframework.web.socket.sockjs.client.SockJsClient;
+import org.springframework.web.socket.sockjs.client.WebSocketTransport;
+
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Type;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * Нагрузка на STOMP-узел «как в проде» из одной JVM: engineers инженеров и
+ * regulars REGULAR-ов проходят настоящий сценарий
+ *
+ *   CONNECT → /app/user.addUser → POST /chatrooms/activate
+ *   → /app/chat в обе стороны с частотой rate
+ *   → POST /chatrooms/deactivate (чётные пары) | тайм-аут бездействия (нечётные)
+ *   → /app/user.disconnectUser → DISCONNECT
+ *
+ * Транспорт – как у браузера: native – /stomp (чистый WebSocket,
+ * permessage-deflate при deflate=true), sockjs – /ws через SockJS (его
+ * WebSocket-транспорт, кадры a[...]), raw – /ws/websocket без SockJS и без
+ * сжатия по умолчанию. format=cbor|smile – заголовок accept в CONNECT.
+ * В отчёте на доставленное сообщение: байты на loopback (узел на этой же
+ * машине, Linux) и CPU генератора и узла (узлу нужен server-pid).
+ *
+ * Пара p – это REGULAR reg-p и инженер eng-(p % engineers). Время отправки
+ * берётся по расписанию, а не по факту (без coordinated omission): если
+ * генератор или узел отстали, задержка это покажет.
+ *
+ * Запуск тестом – {@link StompLoadTest}; из командной строки против
+ * работающего узла:
+ *   mvn -q test-compile dependency:build-classpath -Dmdep.outputFile=target/test.classpath
+ *   java -cp target/test-classes:target/classes:$(cat target/test.classpath) \
+ *        com.alibou.websocket.load.StompLoadGenerator url=http://host:8080 engineers=100 regulars=2000 rate=1000
+ * Ключи – как у -Dload.* (см. {@link Settings}); код выхода 1 – были ошибки.
+ */
+@Slf4j
+public class StompLoadGenerator {
+
+    /** Значения в гистограммах – микросекунды, до 10 минут, 3 значащие цифры */
+    private static final long HIGHEST_US = TimeUnit.MINUTES.toMicros(10);
+
+    /** Кадр /topic/public на ~100k пользователей */
+    private static final int OBSERVER_FRAME_LIMIT = 8 * 1024 * 1024;
+
+    /**
+     * @param url               http-адрес узла
+     * @param rate              сообщений в секунду на все пары
+     * @param timeouts          ждать тайм-аута бездействия у нечётных пар
+     * @param inactivitySeconds тайм-аут пары на узле (ChatInactivityService)
+     * @param connectConcurrency одновременных CONNECT / REST-запросов
+     * @param transport         native (/stomp) | sockjs (/ws) | raw (/ws/websocket)
+     * @param deflate           предлагать permessage-deflate в рукопожатии
+     * @param format            тело кадров от узла: JSON | CBOR | SMILE (SockJS – только JSON)
+     * @param serverPid         pid узла для его CPU; 0 – не считать
+     */
+    public record Settings(String url, int engineers, int regulars, int rate,
+                           int warmupSeconds, int seconds,
+                           boolean timeouts, int inactivitySeconds, int connectConcurrency,
+                           String transport, boolean deflate, PayloadFormat format, long serverPid) {
+
+        public static Settings fromSystemProperties() {
+            return new Settings(
+                    System.getProperty("load.url", "http://localhost:8080"),
+                    Integer.getInteger("load.engineers", 10),
+                    Integer.getInteger("load.regulars", 100),
+                    Integer.getInteger("load.rate", 200),
+                    Integer.getInteger("load.warmup-seconds", 5),
+                    Integer.getInteger("load.seconds", 30),
+                    Boolean.parseBoolean(System.getProperty("load.timeouts", "true")),
+                    Integer.getInteger("load.inactivity-seconds", 20),
+                    Integer.getInteger("load.connect-concurrency", 256),
+                    System.getProperty("load.transport", "native"),
+                    Boolean.parseBoolean(System.getProperty("load.deflate", "true")),
+                    PayloadFormat.valueOf(System.getProperty("load.format", "json").toUpperCase(Locale.ROOT)),
+                    Long.getLong("load.server-pid", 0));
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (eq < 0) throw new IllegalArgumentException("ожидается ключ=значение: " + arg);
+            System.setProperty("load." + arg.substring(0, eq), arg.substring(eq + 1));
+        }
+        Report report = new StompLoadGenerator(Settings.fromSystemProperties()).run();
+        report.print(System.out);
+        report.write(Path.of("target"));
+        System.exit(report.errors() > 0 ? 1 : 0);
+    }
+
+    /* ===== состояние прогона ===== */
+
+    private final Settings settings;
+    private final int      pairs;
+
+    private final Histogram latency    = new ConcurrentHistogram(HIGHEST_US, 3);   // send → кадр получателя
+    private final Histogram connect    = new ConcurrentHistogram(HIGHEST_US, 3);   // CONNECT → CONNECTED
+    private final Histogram activate   = new ConcurrentHistogram(HIGHEST_US, 3);   // REST activate
+    private final Histogram deactivate = new ConcurrentHistogram(HIGHEST_US, 3);   // REST deactivate
+    private final Histogram timeout    = new ConcurrentHistogram(HIGHEST_US, 3);   // опоздание тайм-аута
+
+    private final AtomicLong sent            = new AtomicLong();
+    private final AtomicLong delivered       = new AtomicLong();
+    private final AtomicLong connectFailures = new AtomicLong();
+    private final AtomicLong stompErrors     = new AtomicLong();   // ERROR-кадры и ошибки транспорта
+    private final AtomicLong userErrors      = new AtomicLong();   // /user/queue/errors
+    private final AtomicLong restErrors      = new AtomicLong();
+    private final AtomicLong activations     = new AtomicLong();   // системные уведомления REGULAR-ам
+
+    /** с какого момента (nanoTime) сообщения идут в статистику */
+    private volatile long measureFrom = Long.MAX_VALUE;
+    /** счётчики трафика и CPU на начало замера */
+    private Usage measureStart;
+    private volatile boolean closing;
+
+    /** последнее сообщение пары (nanoTime) – от него отсчитывается тайм-аут */
+    private final AtomicLongArray lastActivity;
+    /** REGULAR → когда узел должен его отпустить по тайм-ауту */
+    private final Map<String, Long> awaitingTimeout = new ConcurrentHashMap<>();
+    /** REGULAR-ы, которых узел вправе отключить сам (по тайм-ауту) */
+    private final Set<String>       mayTimeOut      = ConcurrentHashMap.newKeySet();
+
+    private final HttpClient http = HttpClient.newHttpClient();
+
+    public StompLoadGenerator(Settings settings) {
+        this.settings     = settings;
+        this.pairs        = settings.regulars();
+        this.lastActivity = new AtomicLongArray(pairs);
+    }
+
+    static String engineer(int i) { return "eng-" + i; }
+    static String regular(int p)  { return "reg-" + p; }
+
+    /* =======================================================================
+                                   СЦЕНАРИЙ
+       ======================================================================= */
+
+    public Report run() throws Exception {
+        ThreadPoolTaskScheduler heartbeats = new ThreadPoolTaskScheduler();
+        heartbeats.setPoolSize(2);
+        heartbeats.setThreadNamePrefix("load-heartbeat-");
+        heartbeats.initialize();
+        WebSocketStompClient stomp    = stompClient(64 * 1024, heartbeats);
+        WebSocketStompClient watching = stompClient(OBSERVER_FRAME_LIMIT, heartbeats);
+        try {
+            /* ---------- 1. сессии: инженеры, REGULAR-ы и наблюдатель за занятостью и присутствием ---------- */
+            Client observer = connectAll(watching, List.of(new User("load-observer", Status.ONLINE, UserRole.ENGINEER)))[0];
+            if (observer == null) throw new IllegalStateException("узел " + settings.url() + " недоступен");
+            observer.session.subscribe("/topic/user-status", handler(UserBusyStatus.class, this::onBusyStatus));
+            observer.session.subscribe("/topic/public", handler(PresenceDelta.class, this::onPresence));
+
+            List<User> users = new ArrayList<>(settings.engineers() + pairs);
+            for (int i = 0; i < settings.engineers(); i++) users.add(new User(engineer(i), Status.ONLINE, UserRole.ENGINEER));
+            for (int p = 0; p < pairs; p++)                 users.add(new User(regular(p), Status.ONLINE, UserRole.REGULAR));
+            Client[] clients = connectAll(stomp, users);
+            Client[] engineers = new Client[settings.engineers()];
+            Client[] regulars  = new Client[pairs];
+            System.arraycopy(clients, 0, engineers, 0, engineers.length);
+            System.arraycopy(clients, engineers.length, regulars, 0, pairs);
+
+            /* ---------- 2. addUser: сначала инженеры, потом REGULAR-ы ---------- */
+            for (Client c : clients) if (c != null) c.send("/app/user.addUser", c.user);
+            Thread.sleep(1_000);
+
+            /* ---------- 3. активация всех пар ---------- */
+            restAll("activate", activate);
+            Thread.sleep(500);
+
+            /* ---------- 4. переписка ---------- */
+            long measured = traffic(engineers, regulars);
+            long drainUntil = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while (delivered.get() < sent.get() && System.nanoTime() < drainUntil) Thread.sleep(50);
+            Usage usage = Usage.now(settings).minus(measureStart);
+
+            /* ---------- 5. деактивация чётных пар, тайм-аут нечётных ---------- */
+            long timeoutsMissed = 0;
+            if (settings.timeouts()) {
+                long inactivity = TimeUnit.SECONDS.toNanos(settings.inactivitySeconds());
+                for (int p = 1; p < pairs; p += 2) {
+                    mayTimeOut.add(regular(p));
+                    awaitingTimeout.put(regular(p), lastActivity.get(p) + inactivity);
+                }
+            }
+            restAll("deactivate", deactivate);
+            if (settings.timeouts()) {
+                long until = System.nanoTime() + TimeUnit.SECONDS.toNanos(settings.inactivitySeconds() + 10);
+                while (!awaitingTimeout.isEmpty() && System.nanoTime() < until) Thread.sleep(100);
+                timeoutsMissed = awaitingTimeout.size();
+            }
+
+            /* ---------- 6. выход ---------- */
+            closing = true;
+            for (Client c : clients) {
+                if (c == null || !c.session.isConnected()) continue;        // отключён узлом по тайм-ауту
+                c.send("/app/user.disconnectUser", c.user);
+                c.session.disconnect();
+            }
+            observer.session.disconnect();
+
+            return new Report(settings, measured, sent.get(), delivered.get(),
+                    connectFailures.get(), stompErrors.get(), userErrors.get(), restErrors.get(), timeoutsMissed,
+                    activations.get(), usage, latency, connect, activate, deactivate, timeout);
+        } finally {
+            closing = true;
+            stomp.stop();
+            watching.stop();
+            heartbeats.shutdown();
+        }
+    }
+
+    /** Сообщения по расписанию, один поток: у StompSession нет потокобезопасной записи */
+    private long traffic(Client[] engineers, Client[] regulars) {
+        long interval  = TimeUnit.SECONDS.toNanos(1) / Math.max(1, settings.rate());
+        long start     = System.nanoTime();
+        long warmupEnd = start + TimeUnit.SECONDS.toNanos(settings.warmupSeconds());
+        long end       = warmupEnd + TimeUnit.SECONDS.toNanos(settings.seconds());
+        measureFrom = warmupEnd;
+
+        for (long k = 0; ; k++) {
+            long due = start + k * interval;
+            if (due >= end) break;
+            long now;
+            while ((now = System.nanoTime()) < due) LockSupport.parkNanos(due - now);
+
+            if (measureStart == null && due >= warmupEnd) measureStart = Usage.now(settings);
+
+            int     p         = (int) (k % pairs);
+            boolean toRegular = ((k / pairs) & 1) == 0;
+            Client  from      = toRegular ? engineers[p % engineers.length] : regulars[p];
+            Client  to        = toRegular ? regulars[p] : engineers[p % engineers.length];
+            if (from == null || to == null) continue;                    // не подключился
+
+            ChatMessage m = new ChatMessage();
+            m.setSenderId(from.user.getNickName());
+            m.setRecipientId(to.user.getNickName());
+            m.setContent(String.valueOf(due));
+            from.send("/app/chat", m);
+            lastActivity.set(p, now);
+            if (due >= warmupEnd) sent.incrementAndGet();
+        }
+        return TimeUnit.NANOSECONDS.toMillis(end - warmupEnd);
+    }
+
+    /* =======================================================================
+                                    СЕССИИ
+       ======================================================================= */
+
+    /** Участник сценария: одна STOMP-сессия, запись под её монитором */
+    private record Client(User user, StompSession session) {
+        void send(String destination, Object payload) {
+            synchronized (session) {
+                session.send(destination, payload);
+            }
+        }
+    }
+
+    /**
+     * Буфер кадра у клиента Tomcat – на каждую сессию (8 КБ по умолчанию),
+     * поэтому большой только у наблюдателя: кадр присутствия при 10k
+     * пользователей весит сотни килобайт. Конвертеры – как у узла: кадр
+     * читается по своему content-type. Heartbeat-ы – как у stomp.js в
+     * браузере (10 с в обе стороны): при chat.liveness.mode=heartbeat узел
+     * закрывает молчащие сессии.
+     */
+    private WebSocketStompClient stompClient(int frameLimit, TaskScheduler heartbeats) {
+        WebSocketContainer container = ContainerProvider.getWebSocketContainer();
+        container.setDefaultMaxTextMessageBufferSize(Math.max(8 * 1024, frameLimit));
+        container.setDefaultMaxBinaryMessageBufferSize(Math.max(8 * 1024, frameLimit));
+        WebSocketClient ws = new StandardWebSocketClient(container);
+        if ("sockjs".equals(settings.transport())) ws = new SockJsClient(List.of(new WebSocketTransport(ws)));
+
+        List<MessageConverter> converters = new ArrayList<>();
+        converters.add(new StringMessageConverter());
+        converters.addAll(new PayloadFormats(Jackson2ObjectMapperBuilder.json().build()).converters());
+
+        WebSocketStompClient stomp = new WebSocketStompClient(ws);
+        stomp.setMessageConverter(new CompositeMessageConverter(converters));
+        stomp.setInboundMessageSizeLimit(frameLimit);
+        stomp.setTaskScheduler(heartbeats);
+        stomp.setDefaultHeartbeat(new long[]{10_000, 10_000});
+        stomp.start();
+        return stomp;
+    }
+
+    private String endpoint() {
+        URI base = URI.create(settings.url());
+        return switch (settings.transport()) {
+            case "sockjs" -> base.resolve("/ws").toString();
+            case "raw"    -> base.resolve("/ws/websocket").toString().replaceFirst("^http", "ws");
+            case "native" -> base.resolve("/stomp").toString().replaceFirst("^http", "ws");
+            default       -> throw new IllegalArgumentException("load.transport: native | sockjs | raw");
+        };
+    }
+
+    private Client[] connectAll(WebSocketStompClient stomp, List<User> users) throws InterruptedException {
+        Semaphore inFlight = new Semaphore(settings.connectConcurrency());
+        List<CompletableFuture<StompSession>> futures = new ArrayList<>(users.size());
+        for (User u : users) {
+            inFlight.acquire();
+            long started = System.nanoTime();
+            CompletableFuture<StompSession> f = connect(stomp, u.getNickName());
+            f.whenComplete((s, ex) -> {
+                inFlight.release();
+                if (ex == null) connect.recordValue(micros(System.nanoTime() - started));
+            });
+            futures.add(f);
+        }
+        Client[] clients = new Client[users.size()];
+        for (int i = 0; i < clients.length; i++) {
+            try {
+                clients[i] = new Client(users.get(i), futures.get(i).get(60, TimeUnit.SECONDS));
+            } catch (Exception ex) {
+                connectFailures.incrementAndGet();
+                log.warn("{} не подключился: {}", users.get(i).getNickName(), ex.toString());
+            }
+        }
+        return clients;
+    }
+
+    private CompletableFuture<StompSession> connect(WebSocketStompClient stomp, String nick) {
+        StompHeaders headers = new StompHeaders();
+        headers.add("nickName", nick);
+        if (settings.format() != PayloadFormat.JSON) {
+            headers.add(PayloadFormats.ACCEPT_HEADER, settings.format().mimeType().toString());
+        }
+        WebSocketHttpHeaders handshake = new WebSocketHttpHeaders();
+        if (settings.deflate()) handshake.setSecWebSocketExtensions(List.of(new WebSocketExtension("permessage-deflate")));
+        return stomp.connectAsync(endpoint(), handshake, headers, new SessionErrors(nick))
+                .thenApply(s -> {
+                    s.subscribe("/queue/" + nick, handler(ChatNotification.class, this::onNotification));
+                    s.subscribe("/user/queue/errors", handler(String.class, error -> {
+                        userErrors.incrementAndGet();
+                        log.warn("{}: {}", nick, error);
+                    }));
+                    return s;
+                });
+    }
+
+    /** ERROR-кадры узла и обрывы соединений до завершения сценария */
+    private class SessionErrors extends StompSessionHandlerAdapter {
+        private final String     nick;
+        private volatile boolean connected;      // до CONNECTED ошибку считает connectAll
+
+        SessionErrors(String nick) {
+            this.nick = nick;
+        }
+
+        @Override
+        public void afterConnected(StompSession s, StompHeaders headers) {
+            connected = true;
+        }
+
+        @Override
+        public void handleFrame(StompHeaders headers, Object payload) {
+            if (closing) return;                 // «Session closed.» в ответ на наш DISCONNECT
+            stompErrors.incrementAndGet();
+            log.warn("ERROR-кадр: {}", headers.getFirst("message"));
+        }
+
+        @Override
+        public void handleException(StompSession s, StompCommand command, StompHeaders headers,
+                                    byte[] payload, Throwable ex) {
+            stompErrors.incrementAndGet();
+            log.warn("ошибка обработки кадра {}: {}", command, ex.toString());
+        }
+
+        @Override
+        public void handleTransportError(StompSession s, Throwable ex) {
+            if (closing || !connected || mayTimeOut.contains(nick)) return;
+            stompErrors.incrementAndGet();
+            log.warn("обрыв сессии {}: {}", nick, ex.toString());
+        }
+    }
+
+    private static <T> StompFrameHandler handler(Class<T> type, Consumer<T> onFrame) {
+        return new StompFrameHandler() {
+            @Override
+            public Type getPayloadType(StompHeaders headers) {
+                return type;
+            }
+
+            @Override
+            public void handleFrame(StompHeaders headers, Object payload) {
+                onFrame.accept(type.cast(payload));
+            }
+        };
+    }
+
+    private void onNotification(ChatNotification n) {
+        String content = n.getContent();
+        if (content == null || content.isEmpty()) {        // системное уведомление об активации
+            activations.incrementAndGet();
+            return;
+        }
+        long now = System.nanoTime();
+        long due;
+        try {
+            due = Long.parseLong(content);
+        } catch (NumberFormatException foreign) {
+            return;                                       // чужое сообщение (узел не пустой)
+        }
+        if (due < measureFrom) return;
+        latency.recordValue(micros(now - due));
+        delivered.incrementAndGet();
+    }
+
+    /*
+     * Пару по тайм-ауту отпускает тот из двух таймеров (пары или «личный»
+     * REGULAR-а), что сработал первым: первый – с busy=false, второй – только
+     * с OFFLINE в кадре присутствия. Засчитываем первое из двух событий.
+     */
+    private void onBusyStatus(UserBusyStatus s) {
+        if (!s.isBusy()) released(s.getUserId());
+    }
+
+    private void onPresence(PresenceDelta delta) {
+        for (PresenceChange c : delta.changes()) {
+            if (c.status() == Status.OFFLINE) released(c.nickName());
+        }
+    }
+
+    private void released(String regular) {
+        Long deadline = awaitingTimeout.remove(regular);
+        if (deadline != null) timeout.recordValue(micros(Math.max(0, System.nanoTime() - deadline)));
+    }
+
+    /* =======================================================================
+                                     REST
+       ======================================================================= */
+
+    /**
+     * POST /chatrooms/{action}/eng/reg для всех пар (deactivate – только чётных,
+     * если нечётные ждут тайм-аута).
+     */
+    private void restAll(String action, Histogram into) throws InterruptedException {
+        Semaphore inFlight = new Semaphore(settings.connectConcurrency());
+        List<CompletableFuture<?>> calls = new ArrayList<>(pairs);
+        int step = "deactivate".equals(action) && settings.timeouts() ? 2 : 1;
+        for (int p = 0; p < pairs; p += step) {
+            HttpRequest req = HttpRequest.newBuilder(URI.create(settings.url()).resolve(
+                            "/chatrooms/" + action + "/" + engineer(p % settings.engineers()) + "/" + regular(p)))
+                    .POST(HttpRequest.BodyPublishers.noBody())
+                    .build();
+            inFlight.acquire();
+            long started = System.nanoTime();
+            calls.add(http.sendAsync(req, HttpResponse.BodyHandlers.discarding())
+                    .whenComplete((resp, ex) -> {
+                        inFlight.release();
+                        if (ex != null || resp.statusCode() / 100 != 2) {
+                            restErrors.incrementAndGet();
+                            log.warn("{} {}: {}", action, req.uri(), ex != null ? ex.toString() : resp.statusCode());
+                        } else {
+                            into.recordValue(micros(System.nanoTime() - started));
+                        }
+                    }));
+        }
+        calls.forEach(c -> c.exceptionally(ex -> null).join());
+    }
+
+    private static long micros(long nanos) {
+        return Math.min(HIGHEST_US, TimeUnit.NANOSECONDS.toMicros(nanos));
+    }
+
+    /* =======================================================================
+                             ТРАФИК И CPU ЗА ЗАМЕР
+       ======================================================================= */
+
+    /**
+     * Снимок счётчиков; -1 – недоступно. wireBytes – принятое интерфейсом lo
+     * (/proc/net/dev): это кадры в обе стороны вместе с TCP/IP-заголовками,
+     * уже после permessage-deflate – если узел на этой же машине и больше
+     * на lo никто не шумит.
+     */
+    public record Usage(long wireBytes, long clientCpuNanos, long serverCpuNanos) {
+
+        static Usage now(Settings settings) {
+            String host = URI.create(settings.url()).getHost();
+            boolean local = "localhost".equals(host) || "127.0.0.1".equals(host);
+            long client = ManagementFactory.getOperatingSystemMXBean()
+                    instanceof com.sun.management.OperatingSystemMXBean os ? os.getProcessCpuTime() : -1;
+            long server = settings.serverPid() <= 0 ? -1 : ProcessHandle.of(settings.serverPid())
+                    .flatMap(h -> h.info().totalCpuDuration())
+                    .map(d -> d.toNanos())
+                    .orElse(-1L);
+            return new Usage(local ? loopbackBytes() : -1, client, server);
+        }
+
+        private static long loopbackBytes() {
+            try {
+                for (String line : Files.readAllLines(Path.of("/proc/net/dev"))) {
+                    String t = line.trim();
+                    if (t.startsWith("lo:")) return Long.parseLong(t.substring(3).trim().split("\\s+")[0]);
+                }
+            } catch (Exception unavailable) {
+                // не Linux
+            }
+            return -1;
+        }
+
+        Usage minus(Usage start) {
+            return start == null ? new Usage(-1, -1, -1) : new Usage(
+                    diff(wireBytes, start.wireBytes), diff(clientCpuNanos, start.clientCpuNanos),
+                    diff(serverCpuNanos, start.serverCpuNanos));
+        }
+
+        private static long diff(long end, long start) {
+            return end < 0 || start < 0 ? -1 : end - start;
+        }
+    }
+
+    /* =======================================================================
+                                    ОТЧЁТ
+       ======================================================================= */
+
+    /**
+     * Итог прогона. errors() – всё, что узел сделал не так: не подключил,
+     * прислал ERROR, ответил не 2xx, потерял сообщение, не отпустил пару.
+     */
+    public record Report(Settings settings, long measuredMs, long sent, long delivered,
+                         long connectFailures, long stompErrors, long userErrors, long restErrors,
+                         long timeoutsMissed, long activations, Usage usage,
+                         Histogram latency, Histogram connect, Histogram activate,
+                         Histogram deactivate, Histogram timeout) {
+
+        public long lost() {
+            return Math.max(0, sent - delivered);
+        }
+
+        public long errors() {
+            return connectFailures + stompErrors + userErrors + restErrors + timeoutsMissed + lost();
+        }
+
+        public void print(PrintStream out) {
+            double seconds = measuredMs / 1000.0;
+            out.printf("sessions: %d engineers + %d regulars, target %d msg/s, %d s measured%n",
+                    settings.engineers(), settings.regulars(), settings.rate(), measuredMs / 1000);
+            out.printf("throughput: sent %.1f msg/s, delivered %.1f msg/s (%d / %d, lost %d)%n",
+                    sent / seconds, delivered / seconds, delivered, sent, lost());
+            out.printf("errors: connect %d, stomp %d, user-queue %d, rest %d, timeouts missed %d%n",
+                    connectFailures, stompErrors, userErrors, restErrors, timeoutsMissed);
+            out.printf("transport: %s, format %s, deflate %s%n",
+                    settings.transport(), settings.format(), settings.deflate() ? "offered" : "off");
+            out.printf("per delivered message: wire %s B (loopback, both directions), cpu client %s us, server %s us%n",
+                    perMessage(usage.wireBytes(), 1), perMessage(usage.clientCpuNanos(), 1e3),
+                    perMessage(usage.serverCpuNanos(), 1e3));
+            out.printf("%-12s %8s %9s %9s %9s %9s %9s%n", "ms", "count", "p50", "p90", "p99", "p99.9", "max");
+            row(out, "message", latency);
+            row(out, "connect", connect);
+            row(out, "activate", activate);
+            row(out, "deactivate", deactivate);
+            row(out, "timeout+", timeout);
+        }
+
+        private String perMessage(long total, double unit) {
+            return total < 0 || delivered == 0 ? "n/a" : String.format(Locale.ROOT, "%.1f", total / unit / delivered);
+        }
+
+        private static void row(PrintStream out, String name, Histogram h) {
+            out.printf("%-12s %8d %9.1f %9.1f %9.1f %9.1f %9.1f%n", name, h.getTotalCount(),
+                    h.getValueAtPercentile(50) / 1e3, h.getValueAtPercentile(90) / 1e3,
+                    h.getValueAtPercentile(99) / 1e3, h.getValueAtPercentile(99.9) / 1e3,
+                    h.getMaxValue() / 1e3);
+        }
+
+        /** stomp-load-report.txt и распределение задержек в формате .hgrm (мс) */
+        public void write(Path dir) throws Exception {
+            Files.createDirectories(dir);
+            try (PrintStream out = new PrintStream(Files.newOutputStream(dir.resolve("stomp-load-report.txt")))) {
+                print(out);
+            }
+            try (PrintStream out = new PrintStream(Files.newOutputStream(dir.resolve("stomp-load-latency.hgrm")))) {
+                latency.outputPercentileDistribution(out, 1000.0);
+            }
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package com.alibou.websocket.load;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * {@link StompLoadGenerator} тестом. Без -Dload.url поднимает свой узел
+ * ({@link LoadServer}, отдельная JVM) с -Dload.store (memory по умолчанию)
+ * -Dload.virtual и -Dload.server-deflate (chat.ws.deflate). По умолчанию выключен:
+ *   mvn test -Dtest=StompLoadTest -Dload.engineers=100 -Dload.regulars=2000 -Dload.rate=1000
+ * Итог – в stdout, target/stomp-load-report.txt и target/stomp-load-latency.hgrm.
+ */
+@EnabledIfSystemProperty(named = "load.engineers", matches = "\\d+")
+class StompLoadTest {
+
+    @Test
+    void realFlowWithoutServerErrors() throws Exception {
+        String  url    = System.getProperty("load.url");
+        Process server = null;
+        if (url == null) {
+            int port = LoadServer.freePort();
+            server = LoadServer.start(System.getProperty("load.java", LoadServer.currentJava()), port,
+                    Long.getLong("load.db-latency-us", 0), Path.of("target", "stomp-load-server.log"),
+                    List.of("--server.tomcat.max-connections="
+                                    + (Integer.getInteger("load.engineers") + Integer.getInteger("load.regulars", 100) + 1_000),
+                            "--chat.store.type=" + System.getProperty("load.store", "memory"),
+                            "--chat.threads.virtual=" + Boolean.getBoolean("load.virtual"),
+                            "--chat.ws.deflate=" + System.getProperty("load.server-deflate", "true"),
+                            // сценарий ждёт тайм-аутов бездействия – они есть только у таймеров
+                            "--chat.liveness.mode=" + (Boolean.parseBoolean(System.getProperty("load.timeouts", "true"))
+                                    ? "messages" : "heartbeat"),
+                            "--chat.dispatch.enabled=false"));             // пары назначает сам генератор
+            System.setProperty("load.url", "http://localhost:" + port);
+            System.setProperty("load.server-pid", String.valueOf(server.pid()));
+        }
+        try {
+            StompLoadGenerator.Report report =
+                    new StompLoadGenerator(StompLoadGenerator.Settings.fromSystemProperties()).run();
+            report.print(System.out);
+            report.write(Path.of("target"));
+
+            assertThat(report.delivered()).isPositive();
+            assertThat(report.errors()).as("ошибки узла, см. отчёт").isZero();
+        } finally {
+            if (server != null) {
+                LoadServer.stop(server);
+                System.clearProperty("load.url");
+                System.clearProperty("load.server-pid");
+            }
+        }
+    }
+}
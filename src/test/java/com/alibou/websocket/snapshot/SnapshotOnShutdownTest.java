@@ -0,0 +1,93 @@
+package com.alibou.websocket.snapshot;
+
+import com.alibou.websocket.ChatApplication;
+import com.alibou.websocket.chatroom.ChatRoom;
+import com.alibou.websocket.chatroom.ChatRoomService;
+import com.alibou.websocket.user.OnlineUserStore;
+import com.alibou.websocket.user.Status;
+import com.alibou.websocket.user.User;
+import com.alibou.websocket.user.UserRole;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.messaging.converter.MappingJackson2MessageConverter;
+import org.springframework.messaging.simp.stomp.StompHeaders;
+import org.springframework.messaging.simp.stomp.StompSession;
+import org.springframework.messaging.simp.stomp.StompSessionHandlerAdapter;
+import org.springframework.web.socket.WebSocketHttpHeaders;
+import org.springframework.web.socket.client.standard.StandardWebSocketClient;
+import org.springframework.web.socket.messaging.WebSocketStompClient;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Настоящая остановка контекста с подключёнными клиентами: Spring закрывает
+ * их сессии, а снимок всё равно содержит онлайн и пары – он делается раньше.
+ */
+class SnapshotOnShutdownTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void shutdownWithOpenSessionsKeepsUsersAndPairsInSnapshot() throws Exception {
+        Path file = dir.resolve("state.snapshot");
+        ConfigurableApplicationContext node = new SpringApplicationBuilder(ChatApplication.class).run(
+                "--server.port=0",
+                "--spring.autoconfigure.exclude="
+                        + "org.springframework.boot.autoconfigure.jdbc.DataSourceAutoConfiguration,"
+                        + "org.springframework.boot.autoconfigure.orm.jpa.HibernateJpaAutoConfiguration",
+                "--spring.devtools.restart.enabled=false",
+                "--spring.jmx.enabled=false",
+                "--chat.journal.enabled=false",
+                "--chat.snapshot.enabled=true",
+                "--chat.snapshot.file=" + file,
+                "--chat.drain.on-shutdown=false");               // сессии закрывает сама остановка Spring
+
+        WebSocketStompClient stomp = new WebSocketStompClient(new StandardWebSocketClient());
+        stomp.setMessageConverter(new MappingJackson2MessageConverter());
+        try {
+            String url = "ws://localhost:" + node.getEnvironment().getProperty("local.server.port") + "/stomp";
+            StompSession eng = connect(stomp, url, "eng");
+            StompSession reg = connect(stomp, url, "reg");
+            eng.send("/app/user.addUser", new User("eng", Status.ONLINE, UserRole.ENGINEER));
+            reg.send("/app/user.addUser", new User("reg", Status.ONLINE, UserRole.REGULAR));
+            await(() -> node.getBean(OnlineUserStore.class).local().size() == 2);
+            node.getBean(ChatRoomService.class).activateChat("eng", "reg");
+        } finally {
+            node.close();
+            stomp.stop();
+        }
+
+        StateSnapshot s;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            s = StateSnapshot.readFrom(in);
+        }
+        assertThat(s.users()).extracting(User::getNickName).containsExactlyInAnyOrder("eng", "reg");
+        assertThat(s.rooms()).filteredOn(ChatRoom::isActive)
+                .extracting(ChatRoom::getChatId).containsExactly(ChatRoomService.pairId("eng", "reg"));
+    }
+
+    private static StompSession connect(WebSocketStompClient stomp, String url, String nick) throws Exception {
+        StompHeaders connect = new StompHeaders();
+        connect.add("nickName", nick);
+        return stomp.connectAsync(url, new WebSocketHttpHeaders(), connect, new StompSessionHandlerAdapter() {})
+                .get(10, TimeUnit.SECONDS);
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!condition.getAsBoolean()) {
+            if (System.nanoTime() > deadline) throw new AssertionError("condition not met in 10s");
+            Thread.sleep(20);
+        }
+    }
+}
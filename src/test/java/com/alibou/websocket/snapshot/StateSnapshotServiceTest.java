@@ -0,0 +1,146 @@
+package com.alibou.websocket.snapshot;
+
+import com.alibou.websocket.chat.ChatMessageService;
+import com.alibou.websocket.chatroom.ChatInactivityService;
+import com.alibou.websocket.chatroom.ChatRoomService;
+import com.alibou.websocket.chatroom.InMemoryRoomStore;
+import com.alibou.websocket.exception.RegularAlreadyTakenException;
+import com.alibou.websocket.user.AvailableUsers;
+import com.alibou.websocket.user.InMemoryOnlineUserStore;
+import com.alibou.websocket.user.OnlineUserStore;
+import com.alibou.websocket.user.PresenceService;
+import com.alibou.websocket.user.Status;
+import com.alibou.websocket.user.User;
+import com.alibou.websocket.user.UserRole;
+import com.alibou.websocket.user.UserService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+
+import java.io.DataOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Снимок → рестарт → восстановление на 10k пользователей
+ * (5k инженеров, 5k REGULAR-ов, 4k активных пар); время записи и
+ * восстановления – StateSnapshotBenchmark в benchmarks/.
+ */
+class StateSnapshotServiceTest {
+
+    private static final int PAIRS = 5_000;
+    private static final int BUSY  = 4_000;
+
+    @TempDir
+    Path dir;
+
+    private final List<Node> nodes = new ArrayList<>();
+
+    @AfterEach
+    void tearDown() {
+        nodes.forEach(n -> n.inactivity.shutdown());
+    }
+
+    @Test
+    void restoresPairingsAndTimersAtTenThousandUsers() throws Exception {
+        Node before = node();
+        for (int i = 0; i < PAIRS; i++) {
+            before.users.saveUser(new User("eng" + i, Status.ONLINE, UserRole.ENGINEER), "s-e" + i);
+            before.users.saveUser(new User("reg" + i, Status.ONLINE, UserRole.REGULAR), "s-r" + i);
+            if (i < BUSY) before.rooms.activateChat("eng" + i, "reg" + i);
+        }
+        long pairLeft = before.inactivity.remaining("pair:eng0_reg0").orElseThrow();
+
+        before.snapshots.save();
+        assertThat(Files.size(dir.resolve("state.snapshot"))).isPositive();
+
+        Thread.sleep(300);                                           // «простой»
+
+        Node after = node();
+        after.snapshots.load();
+
+        assertThat(after.store.all()).hasSize(2 * PAIRS);
+        assertThat(after.rooms.findActivePartner("reg0")).contains("eng0");
+        assertThat(after.rooms.isUserInActiveChatWithEngineer("reg" + (BUSY - 1))).isTrue();
+        assertThat(after.rooms.isUserInActiveChat("reg" + BUSY)).isFalse();
+        assertThat(after.users.findConnectedUsersForEngineer()).hasSize(PAIRS - BUSY);
+        assertThatThrownBy(() -> after.rooms.activateChat("eng1", "reg0"))    // reg0 по-прежнему за eng0
+                .isInstanceOf(RegularAlreadyTakenException.class);
+        assertThat(after.rooms.findActivePartner("reg0")).contains("eng0");
+
+        long restoredLeft = after.inactivity.remaining("pair:eng0_reg0").orElseThrow();
+        assertThat(restoredLeft).isBetween(pairLeft - 2_000, pairLeft);   // простой не засчитан
+        assertThat(after.inactivity.remaining("reg:reg" + BUSY)).isPresent();
+        assertThat(Files.exists(dir.resolve("state.snapshot"))).isFalse();
+    }
+
+    @Test
+    void reconnectTakesOverRestoredNickAndNoShowsAreDropped() throws Exception {
+        Node before = node();
+        before.users.saveUser(new User("eng", Status.ONLINE, UserRole.ENGINEER), "s1");
+        before.users.saveUser(new User("reg", Status.ONLINE, UserRole.REGULAR), "s2");
+        before.rooms.activateChat("eng", "reg");
+        before.snapshots.save();
+
+        Node after = node();
+        after.snapshots.load();
+        after.users.saveUser(new User("eng", Status.ONLINE, UserRole.ENGINEER), "s3");   // клиент вернулся
+
+        after.snapshots.dropUnclaimed();
+
+        assertThat(after.store.all()).extracting(User::getNickName).containsExactly("eng");
+        assertThat(after.rooms.isUserInActiveChat("eng")).isFalse();
+    }
+
+    @Test
+    void unknownVersionIsIgnored() throws Exception {
+        try (DataOutputStream out = new DataOutputStream(
+                Files.newOutputStream(dir.resolve("state.snapshot")))) {
+            out.writeInt(StateSnapshot.MAGIC);
+            out.writeShort(StateSnapshot.VERSION + 1);
+        }
+        Node after = node();
+        after.snapshots.load();
+
+        assertThat(after.store.all()).isEmpty();
+        assertThat(Files.exists(dir.resolve("state.snapshot"))).isFalse();
+    }
+
+    private Node node() {
+        Node n = new Node(dir.resolve("state.snapshot"));
+        nodes.add(n);
+        return n;
+    }
+
+    /** Один «экземпляр» приложения со своими сервисами */
+    private static final class Node {
+        final OnlineUserStore       store      = new InMemoryOnlineUserStore();
+        final SimpMessagingTemplate messaging  = mock(SimpMessagingTemplate.class);
+        final AvailableUsers        available  = new AvailableUsers(store);
+        final PresenceService       presence   = mock(PresenceService.class);
+        final ChatRoomService       rooms;
+        final ChatInactivityService inactivity;
+        final UserService           users;
+        final StateSnapshotService  snapshots;
+
+        Node(Path file) {
+            /* как @Lazy в Spring: комнаты видят таймеры через делегирующую заглушку */
+            ChatInactivityService[] target = new ChatInactivityService[1];
+            rooms      = new ChatRoomService(store, new InMemoryRoomStore(), messaging,
+                    mock(ChatInactivityService.class, inv -> inv.getMethod().invoke(target[0], inv.getArguments())),
+                    mock(ChatMessageService.class), available, presence);
+            inactivity = new ChatInactivityService(rooms, store, presence);
+            target[0]  = inactivity;
+            users      = new UserService(store, rooms, inactivity, presence, available);
+            snapshots  = new StateSnapshotService(store, rooms, inactivity, users,
+                    file.toString(), 60_000, 600_000);
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package com.alibou.websocket.store;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+
+import java.util.UUID;
+
+/** Пустая in-memory H2 в режиме MySQL для JDBC-хранилищ; база исчезает вместе с пулом */
+public final class H2DataSources {
+
+    private H2DataSources() {}
+
+    public static HikariDataSource fresh() {
+        HikariConfig cfg = new HikariConfig();
+        cfg.setJdbcUrl("jdbc:h2:mem:store-" + UUID.randomUUID() + ";MODE=MySQL");
+        cfg.setMaximumPoolSize(16);
+        return new HikariDataSource(cfg);
+    }
+}
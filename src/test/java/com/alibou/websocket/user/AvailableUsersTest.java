@@ -0,0 +1,151 @@
+package com.alibou.websocket.user;
+
+import com.alibou.websocket.chat.ChatMessageService;
+import com.alibou.websocket.chatroom.ChatInactivityService;
+import com.alibou.websocket.chatroom.ChatRoomService;
+import com.alibou.websocket.chatroom.InMemoryRoomStore;
+import com.alibou.websocket.exception.NickAlreadyOnlineException;
+import com.alibou.websocket.exception.RegularAlreadyTakenException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Материализованный список свободных пользователей сверяется
+ * с прежним «лобовым» вычислением по всему онлайну и всем комнатам.
+ */
+class AvailableUsersTest {
+
+    private static final int ENGINEERS = 6;
+    private static final int REGULARS  = 30;
+
+    private OnlineUserStore store;
+    private ChatRoomService rooms;
+    private UserService     users;
+
+    @BeforeEach
+    void setUp() {
+        store = new InMemoryOnlineUserStore();
+        AvailableUsers available = new AvailableUsers(store);
+        SimpMessagingTemplate messaging = mock(SimpMessagingTemplate.class);
+        ChatInactivityService inactivity = mock(ChatInactivityService.class);
+
+        rooms = new ChatRoomService(store, new InMemoryRoomStore(), messaging, inactivity,
+                mock(ChatMessageService.class), available, mock(PresenceService.class));
+        users = new UserService(store, rooms, inactivity, mock(PresenceService.class), available);
+    }
+
+    @Test
+    void viewMatchesBruteForceAfterEachOperation() {
+        Random rnd = new Random(7);
+        for (int i = 0; i < 5_000; i++) {
+            randomOperation(rnd);
+            assertMatchesBruteForce();
+        }
+    }
+
+    @Test
+    void viewMatchesBruteForceAfterConcurrentOperations() throws Exception {
+        int threads = 8;
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+
+        for (int t = 0; t < threads; t++) {
+            futures.add(pool.submit(() -> {
+                start.await();
+                ThreadLocalRandom rnd = ThreadLocalRandom.current();
+                for (int i = 0; i < 10_000; i++) randomOperation(rnd);
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> f : futures) f.get(30, TimeUnit.SECONDS);
+        pool.shutdown();
+
+        assertMatchesBruteForce();
+    }
+
+    @Test
+    void activatedRegularDisappearsAndReturnsAfterRelease() {
+        login("eng", UserRole.ENGINEER);
+        login("reg", UserRole.REGULAR);
+        assertThat(names(users.findConnectedUsersForEngineer())).containsExactly("reg");
+
+        rooms.activateChat("eng", "reg");
+        assertThat(users.findConnectedUsersForEngineer()).isEmpty();
+        assertThat(names(users.findConnectedUsers())).containsExactly("eng");
+
+        users.disconnect("eng", "s-eng");        // инженер ушёл – REGULAR снова свободен
+        assertThat(names(users.findConnectedUsersForEngineer())).containsExactly("reg");
+    }
+
+    /* ================================================================== */
+
+    private void randomOperation(Random rnd) {
+        boolean engineer = rnd.nextInt(4) == 0;
+        String nick = engineer ? "eng" + rnd.nextInt(ENGINEERS) : "reg" + rnd.nextInt(REGULARS);
+        String e = "eng" + rnd.nextInt(ENGINEERS);
+        String r = "reg" + rnd.nextInt(REGULARS);
+
+        switch (rnd.nextInt(8)) {
+            case 0, 1 -> login(nick, engineer ? UserRole.ENGINEER : UserRole.REGULAR);
+            case 2    -> users.disconnect(nick, "s-" + nick);
+            case 3    -> users.forceDisconnect(nick);
+            case 4    -> {
+                try {
+                    rooms.activateChat(e, r);
+                } catch (RegularAlreadyTakenException taken) {
+                    // REGULAR у другого инженера
+                }
+            }
+            case 5    -> rooms.deactivatePair(e, r);
+            case 6    -> rooms.handleInactivity(e, r);
+            default   -> {                          // как ChatInactivityService.onRegularTimeout
+                store.forceRemove(r);
+                rooms.deactivateChatsForUser(r);
+            }
+        }
+    }
+
+    private void login(String nick, UserRole role) {
+        try {
+            users.saveUser(new User(nick, Status.ONLINE, role), "s-" + nick);
+        } catch (NickAlreadyOnlineException ignored) {
+            // ник уже в онлайне – ничего не меняется
+        }
+    }
+
+    /** Прежняя реализация: O(users × rooms) */
+    private void assertMatchesBruteForce() {
+        List<User> visible = store.all().stream()
+                .filter(u -> u.getStatus() == Status.ONLINE)
+                .filter(u -> !rooms.isUserInActiveChatWithEngineer(u.getNickName()))
+                .toList();
+        List<User> regulars = visible.stream()
+                .filter(u -> u.getRole() == UserRole.REGULAR)
+                .toList();
+
+        assertThat(names(users.findConnectedUsers()))
+                .containsExactlyInAnyOrderElementsOf(names(visible));
+        assertThat(names(users.findConnectedUsersForEngineer()))
+                .containsExactlyInAnyOrderElementsOf(names(regulars));
+    }
+
+    private static List<String> names(List<User> list) {
+        return list.stream().map(User::getNickName).toList();
+    }
+}
@@ -0,0 +1,9 @@
+package com.alibou.websocket.user;
+
+class InMemoryOnlineUserStoreTest extends OnlineUserStoreConformanceTest {
+
+    @Override
+    protected OnlineUserStore create() {
+        return new InMemoryOnlineUserStore();
+    }
+}
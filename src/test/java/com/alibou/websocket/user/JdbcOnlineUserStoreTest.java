@@ -0,0 +1,25 @@
+package com.alibou.websocket.user;
+
+import com.alibou.websocket.store.H2DataSources;
+import com.zaxxer.hikari.HikariDataSource;
+
+class JdbcOnlineUserStoreTest extends OnlineUserStoreConformanceTest {
+
+    private HikariDataSource dataSource;
+
+    @Override
+    protected OnlineUserStore create() {
+        dataSource = H2DataSources.fresh();
+        return new JdbcOnlineUserStore(dataSource);
+    }
+
+    @Override
+    protected int concurrentOps() {
+        return 2_000;
+    }
+
+    @Override
+    protected void dispose() {
+        dataSource.close();
+    }
+}
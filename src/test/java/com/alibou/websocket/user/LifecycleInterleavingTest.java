@@ -0,0 +1,183 @@
+package com.alibou.websocket.user;
+
+import com.alibou.websocket.chat.ChatMessageService;
+import com.alibou.websocket.chatroom.ChatInactivityService;
+import com.alibou.websocket.chatroom.ChatInactivityService.PendingTimer;
+import com.alibou.websocket.chatroom.ChatRoomService;
+import com.alibou.websocket.chatroom.DispatchQueue;
+import com.alibou.websocket.chatroom.InMemoryRoomStore;
+import com.alibou.websocket.exception.NickAlreadyOnlineException;
+import com.alibou.websocket.exception.RegularAlreadyTakenException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Вход, выход, выброс админом, тайм-ауты REGULAR-а и пары (настоящие, на
+ * колесе watchdog-а) и взятие / отпускание пар – наперегонки из нескольких
+ * потоков в случайном порядке. Через ящики события одного ника идут по
+ * очереди, поэтому после затишья последний объявленный статус каждого ника
+ * совпадает с онлайном, а у каждого онлайн-REGULAR-а взведён личный таймер.
+ * С раздачей назначения идут через ящик REGULAR-а: активной пары с ушедшим
+ * REGULAR-ом не остаётся.
+ */
+class LifecycleInterleavingTest {
+
+    private static final int ENGINEERS = 4;
+    private static final int REGULARS  = 16;
+
+    private final Map<String, Status> announced = new ConcurrentHashMap<>();
+
+    private OnlineUserStore       store;
+    private ChatRoomService       rooms;
+    private ChatInactivityService inactivity;
+    private UserService           users;
+    private UserMailboxes         mailboxes;
+    private boolean               dispatching;
+
+    @BeforeEach
+    void setUp() {
+        store = new InMemoryOnlineUserStore();
+        AvailableUsers  available = new AvailableUsers(store);
+        PresenceService presence  = mock(PresenceService.class);
+        doAnswer(inv -> announced.put(inv.<User>getArgument(0).getNickName(), Status.ONLINE))
+                .when(presence).online(any(User.class));
+        doAnswer(inv -> announced.put(inv.getArgument(0), Status.OFFLINE))
+                .when(presence).offline(anyString(), any(UserRole.class));
+
+        /* как @Lazy в Spring: комнаты видят таймеры через делегирующую заглушку */
+        ChatInactivityService[] target = new ChatInactivityService[1];
+        rooms      = new ChatRoomService(store, new InMemoryRoomStore(), mock(SimpMessagingTemplate.class),
+                mock(ChatInactivityService.class, inv -> inv.getMethod().invoke(target[0], inv.getArguments())),
+                mock(ChatMessageService.class), available, presence);
+        inactivity = new ChatInactivityService(rooms, store, presence);
+        target[0]  = inactivity;
+        users      = new UserService(store, rooms, inactivity, presence, available);
+
+        mailboxes = new UserMailboxes(4);
+        users.serializeWith(mailboxes);
+        inactivity.serializeWith(mailboxes);
+        rooms.serializeWith(mailboxes);
+    }
+
+    @AfterEach
+    void tearDown() {
+        inactivity.shutdown();
+        mailboxes.close();
+    }
+
+    @Test
+    void randomInterleavingsKeepEachUserConsistent() throws Exception {
+        interleave();
+    }
+
+    @Test
+    void dispatchAssignmentsNeverOutliveTheirRegular() throws Exception {
+        rooms.dispatchWith(new DispatchQueue(2));
+        dispatching = true;
+
+        interleave();
+
+        for (int i = 0; i < REGULARS; i++) {
+            String engineer = rooms.activeEngineerPartner(reg(i));
+            if (engineer == null) continue;
+            assertThat(store.get(reg(i))).as("%s в активной паре", reg(i)).isPresent();
+        }
+    }
+
+    private void interleave() throws Exception {
+        int threads = 8, perThread = 3_000;
+        ExecutorService pool  = Executors.newFixedThreadPool(threads);
+        CountDownLatch  start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            long seed = 1_000L + t;
+            futures.add(pool.submit(() -> {
+                start.await();
+                Random rnd = new Random(seed);
+                for (int i = 0; i < perThread; i++) randomOperation(rnd);
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> f : futures) f.get(120, TimeUnit.SECONDS);
+        pool.shutdown();
+
+        /* затишье: взведённые на миллисекунды таймеры истекают, их события – в ящиках */
+        Thread.sleep(500);
+        assertThat(mailboxes.quiesce(Duration.ofSeconds(10))).isTrue();
+
+        for (int i = 0; i < ENGINEERS; i++) assertConsistent(eng(i));
+        for (int i = 0; i < REGULARS; i++)  assertConsistent(reg(i));
+        assertThat(announced).isNotEmpty();
+    }
+
+    private void assertConsistent(String nick) {
+        boolean online = store.get(nick).isPresent();
+        assertThat(announced.getOrDefault(nick, Status.OFFLINE))
+                .as("последний статус %s", nick)
+                .isEqualTo(online ? Status.ONLINE : Status.OFFLINE);
+        if (online && nick.startsWith("reg")) {
+            assertThat(inactivity.remaining("reg:" + nick)).as("таймер %s", nick).isPresent();
+        }
+    }
+
+    /* ================================================================== */
+
+    private void randomOperation(Random rnd) {
+        boolean engineer = rnd.nextInt(4) == 0;
+        String nick = engineer ? eng(rnd.nextInt(ENGINEERS)) : reg(rnd.nextInt(REGULARS));
+        String e    = eng(rnd.nextInt(ENGINEERS));
+        String r    = reg(rnd.nextInt(REGULARS));
+
+        switch (rnd.nextInt(8)) {
+            case 0, 1 -> login(nick, engineer ? UserRole.ENGINEER : UserRole.REGULAR);
+            case 2    -> users.disconnect(nick, "s-" + nick);
+            case 3    -> users.forceDisconnect(nick);
+            case 4    -> inactivity.restoreTimers(List.of(new PendingTimer(null, r, rnd.nextInt(5))));
+            case 5    -> inactivity.restoreTimers(List.of(new PendingTimer(e, r, rnd.nextInt(5))));
+            case 6    -> {
+                if (dispatching) {                                   // пары раздаёт очередь
+                    rooms.deactivatePair(e, r);
+                    return;
+                }
+                try {
+                    rooms.activateChat(e, r);
+                } catch (RegularAlreadyTakenException taken) {
+                    // REGULAR у другого инженера
+                }
+            }
+            default   -> rooms.deactivatePair(e, r);
+        }
+    }
+
+    private void login(String nick, UserRole role) {
+        try {
+            users.saveUser(new User(nick, Status.ONLINE, role), "s-" + nick);
+        } catch (NickAlreadyOnlineException ignored) {
+            // ник уже в онлайне – ничего не меняется
+        }
+    }
+
+    private static String eng(int i) { return "eng" + i; }
+    private static String reg(int i) { return "reg" + i; }
+}
@@ -0,0 +1,155 @@
+package com.alibou.websocket.user;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Общий контракт {@link OnlineUserStore}, в том числе под конкуренцией;
+ * каждая реализация подключается подклассом. Пропускная способность –
+ * StoreBenchmark в benchmarks/.
+ */
+abstract class OnlineUserStoreConformanceTest {
+
+    private static final int THREADS = 8;
+
+    protected OnlineUserStore store;
+
+    protected abstract OnlineUserStore create();
+
+    /** Операций на поток в конкурентном тесте (JDBC заметно медленнее памяти) */
+    protected int concurrentOps() {
+        return 50_000;
+    }
+
+    protected void dispose() {}
+
+    @BeforeEach
+    void setUp() {
+        store = create();
+    }
+
+    @AfterEach
+    void tearDown() {
+        dispose();
+    }
+
+    private static User user(String nick, UserRole role) {
+        return new User(nick, Status.ONLINE, role);
+    }
+
+    @Test
+    void nickBelongsToOneLiveSession() {
+        assertThat(store.addIfAbsent("a", "s1", user("a", UserRole.REGULAR))).isTrue();
+        assertThat(store.addIfAbsent("a", "s2", user("a", UserRole.ENGINEER))).isFalse();
+
+        assertThat(store.nickOf("s1")).isEqualTo("a");
+        assertThat(store.nickOf("s2")).isNull();
+        assertThat(store.roleOf("a")).isEqualTo(UserRole.REGULAR);
+        assertThat(store.roleOf("nobody")).isNull();
+        assertThat(store.get("a")).map(User::getNickName).contains("a");
+        assertThat(store.all()).extracting(User::getNickName).containsExactly("a");
+    }
+
+    @Test
+    void removeRespectsSessionAndForceRemoveDoesNot() {
+        store.addIfAbsent("a", "s1", user("a", UserRole.REGULAR));
+
+        store.remove("a", "stale");
+        assertThat(store.get("a")).isPresent();
+
+        store.remove("a", "s1");
+        assertThat(store.get("a")).isEmpty();
+        assertThat(store.nickOf("s1")).isNull();
+
+        store.addIfAbsent("a", "s2", user("a", UserRole.REGULAR));
+        store.forceRemove("a");
+        assertThat(store.get("a")).isEmpty();
+        assertThat(store.nickOf("s2")).isNull();
+    }
+
+    @Test
+    void restoredNickIsHeldUntilItsClientReconnects() {
+        assertThat(store.restore(user("a", UserRole.REGULAR))).isTrue();
+        assertThat(store.restore(user("a", UserRole.REGULAR))).isFalse();
+        assertThat(store.unclaimed()).containsExactly("a");
+        assertThat(store.nickOf(null)).isNull();
+
+        assertThat(store.addIfAbsent("a", "s1", user("a", UserRole.REGULAR))).isTrue();
+        assertThat(store.unclaimed()).isEmpty();
+        assertThat(store.nickOf("s1")).isEqualTo("a");
+    }
+
+    @Test
+    void remoteUsersOccupyNickButAreNotLocal() {
+        store.addIfAbsent("local", "s1", user("local", UserRole.ENGINEER));
+        assertThat(store.addRemote(user("far", UserRole.REGULAR), "node-2")).isTrue();
+
+        assertThat(store.isRemote("far")).isTrue();
+        assertThat(store.isRemote("local")).isFalse();
+        assertThat(store.isRemote("nobody")).isFalse();
+        assertThat(store.addIfAbsent("far", "s2", user("far", UserRole.REGULAR))).isFalse();
+        assertThat(store.local()).extracting(User::getNickName).containsExactly("local");
+        assertThat(store.nickOf(OnlineUserStore.REMOTE + "node-2")).isNull();
+
+        store.forceRemove("far");
+        assertThat(store.isRemote("far")).isFalse();
+    }
+
+    @Test
+    void concurrentLoginsToOneNickHaveSingleWinner() throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        try {
+            for (int n = 0; n < 50; n++) {
+                String nick = "nick" + n;
+                CountDownLatch start = new CountDownLatch(1);
+                AtomicInteger winners = new AtomicInteger();
+                List<Future<?>> futures = new ArrayList<>();
+                for (int t = 0; t < THREADS; t++) {
+                    String sid = nick + "-s" + t;
+                    futures.add(pool.submit(() -> {
+                        start.await();
+                        if (store.addIfAbsent(nick, sid, user(nick, UserRole.REGULAR))) winners.incrementAndGet();
+                        return null;
+                    }));
+                }
+                start.countDown();
+                for (Future<?> f : futures) f.get();
+                assertThat(winners).hasValue(1);
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /** Вход, горячие чтения роли (как в save), выход – у каждого потока свои ники */
+    @Test
+    void concurrentLoginLookupLogoutLeavesStoreEmpty() throws Exception {
+        int ops = concurrentOps();
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            int thread = t;
+            futures.add(pool.submit(() -> {
+                for (int i = 0; i < ops / 10; i++) {
+                    String nick = "u" + thread + "-" + (i % 64);
+                    String sid  = nick + "#" + i;
+                    store.addIfAbsent(nick, sid, user(nick, UserRole.REGULAR));
+                    for (int r = 0; r < 8; r++) store.roleOf(nick);
+                    store.remove(nick, sid);
+                }
+            }));
+        }
+        for (Future<?> f : futures) f.get();
+        pool.shutdown();
+
+        assertThat(store.all()).isEmpty();
+    }
+}
@@ -0,0 +1,82 @@
+package com.alibou.websocket.user;
+
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class PresenceServiceTest {
+
+    private final SimpMessagingTemplate messaging = mock(SimpMessagingTemplate.class);
+    private final OnlineUserStore       store     = new InMemoryOnlineUserStore();
+    private final PresenceService       presence  = new PresenceService(messaging, store, 60_000, 5, "/topic/public");
+
+    @Test
+    void coalescesChangesIntoOneFramePerFlush() {
+        presence.online(user("a"));
+        presence.online(user("b"));
+        presence.offline("a", UserRole.REGULAR);
+        presence.online(user("a"));                                // a: ONLINE → OFFLINE → ONLINE
+        presence.flush();
+        presence.flush();                                          // пустой – кадра нет
+
+        presence.offline("b", UserRole.REGULAR);
+        presence.flush();
+
+        List<PresenceDelta> frames = frames(2);
+        PresenceDelta first = frames.get(0);
+        assertThat(first.fromVersion()).isZero();
+        assertThat(first.toVersion()).isEqualTo(4);
+        assertThat(first.changes()).extracting(PresenceChange::nickName).containsExactly("b", "a");
+        assertThat(first.changes().get(1).version()).isEqualTo(4);
+        assertThat(first.changes().get(1).status()).isEqualTo(Status.ONLINE);
+
+        PresenceDelta second = frames.get(1);
+        assertThat(second.fromVersion()).isEqualTo(first.toVersion());   // кадры идут без разрывов
+        assertThat(second.changes()).extracting(PresenceChange::status).containsExactly(Status.OFFLINE);
+    }
+
+    @Test
+    void syncReturnsDeltaWhileVersionIsRetained() {
+        presence.online(user("a"));                                // 1
+        presence.online(user("b"));                                // 2
+        presence.offline("a", UserRole.REGULAR);                   // 3
+
+        PresenceSync sync = presence.sync(1L);
+        assertThat(sync.full()).isFalse();
+        assertThat(sync.version()).isEqualTo(3);
+        assertThat(sync.changes()).extracting(PresenceChange::nickName).containsExactly("b", "a");
+        assertThat(sync.changes().get(1).status()).isEqualTo(Status.OFFLINE);
+
+        assertThat(presence.sync(3L).changes()).isEmpty();
+    }
+
+    @Test
+    void syncFallsBackToSnapshotForStaleVersion() {
+        store.addIfAbsent("x", "s1", user("x"));
+        for (int i = 0; i < 10; i++) presence.online(user("u" + i));   // журнал держит 5 последних
+
+        PresenceSync sync = presence.sync(1L);
+        assertThat(sync.full()).isTrue();
+        assertThat(sync.version()).isEqualTo(10);
+        assertThat(sync.changes()).extracting(PresenceChange::nickName).containsExactly("x");
+
+        assertThat(presence.sync(6L).full()).isFalse();             // 7..10 ещё в журнале
+        assertThat(presence.sync(99L).full()).isTrue();             // версия «из будущего» – срез
+    }
+
+    private List<PresenceDelta> frames(int n) {
+        ArgumentCaptor<Object> captor = ArgumentCaptor.forClass(Object.class);
+        verify(messaging, times(n)).convertAndSend(eq("/topic/public"), captor.capture());
+        return captor.getAllValues().stream().map(PresenceDelta.class::cast).toList();
+    }
+
+    private static User user(String nick) {
+        return new User(nick, Status.ONLINE, UserRole.REGULAR);
+    }
+}
@@ -0,0 +1,9 @@
+package com.alibou.websocket.user;
+
+class StripedOnlineUserStoreTest extends OnlineUserStoreConformanceTest {
+
+    @Override
+    protected OnlineUserStore create() {
+        return new StripedOnlineUserStore(64);
+    }
+}
@@ -0,0 +1,149 @@
+package com.alibou.websocket.user;
+
+import com.alibou.websocket.exception.NickAlreadyOnlineException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class UserMailboxesTest {
+
+    private final UserMailboxes mailboxes = new UserMailboxes(4);
+
+    @AfterEach
+    void tearDown() {
+        mailboxes.close();
+    }
+
+    /** Задачи одного ника не перекрываются и идут в порядке постановки */
+    @Test
+    void tasksOfOneNickRunOneAtATimeInOrder() throws Exception {
+        int threads = 8, nicks = 20, perThread = 5_000;
+        Map<String, AtomicBoolean> busy = new ConcurrentHashMap<>();
+        Map<String, Integer>       last = new ConcurrentHashMap<>();   // "поток/ник" → последний номер
+        AtomicInteger overlaps = new AtomicInteger();
+        AtomicInteger reorders = new AtomicInteger();
+
+        ExecutorService pool  = Executors.newFixedThreadPool(threads);
+        CountDownLatch  start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int thread = t;
+            futures.add(pool.submit(() -> {
+                start.await();
+                ThreadLocalRandom rnd = ThreadLocalRandom.current();
+                for (int i = 0; i < perThread; i++) {
+                    String nick = "u" + rnd.nextInt(nicks);
+                    String lane = thread + "/" + nick;
+                    int    seq  = i;
+                    Runnable task = () -> {
+                        AtomicBoolean b = busy.computeIfAbsent(nick, k -> new AtomicBoolean());
+                        if (!b.compareAndSet(false, true)) overlaps.incrementAndGet();
+                        Integer prev = last.put(lane, seq);
+                        if (prev != null && prev > seq) reorders.incrementAndGet();
+                        b.set(false);
+                    };
+                    if (rnd.nextBoolean()) mailboxes.execute(nick, task);
+                    else                   mailboxes.run(nick, task);
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> f : futures) f.get(60, TimeUnit.SECONDS);
+        pool.shutdown();
+        assertThat(mailboxes.quiesce(Duration.ofSeconds(10))).isTrue();
+
+        assertThat(overlaps).hasValue(0);
+        assertThat(reorders).hasValue(0);
+        assertThat(mailboxes.executed()).isEqualTo((long) threads * perThread);
+        assertThat(mailboxes.pending()).isZero();
+    }
+
+    /** Ники из разных ящиков выполняются одновременно: барьер на двоих проходится */
+    @Test
+    void differentShardsRunInParallel() throws Exception {
+        String a = "a";
+        String b = "b";
+        for (int i = 0; mailboxes.shard(b) == mailboxes.shard(a); i++) b = "b" + i;
+
+        CyclicBarrier both = new CyclicBarrier(2);
+        Runnable meet = () -> {
+            try {
+                both.await(5, TimeUnit.SECONDS);
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        };
+        mailboxes.execute(a, meet);
+        mailboxes.run(b, meet);
+        assertThat(both.isBroken()).isFalse();
+    }
+
+    @Test
+    void callerGetsResultsAndExceptions() {
+        assertThat(mailboxes.call("u", () -> Thread.currentThread().getName())).startsWith("user-mailbox-");
+        assertThatThrownBy(() -> mailboxes.run("u", () -> {
+            throw new NickAlreadyOnlineException("занят");
+        })).isInstanceOf(NickAlreadyOnlineException.class).hasMessage("занят");
+    }
+
+    /** Вызов из ящика – на месте, даже для ника из другого ящика */
+    @Test
+    void nestedCallRunsInline() {
+        String outer = mailboxes.call("a", () ->
+                mailboxes.call("b", () -> Thread.currentThread().getName()));
+        assertThat(outer).isEqualTo(mailboxes.call("a", () -> Thread.currentThread().getName()));
+    }
+
+    /** execute из ящика – в очередь ника, после того, что там уже лежит; quiesce дожидается и его */
+    @Test
+    void nestedExecuteIsQueuedBehindTheNicksOwnTasks() throws Exception {
+        String a = "a";
+        String b = "b";
+        for (int i = 0; mailboxes.shard(b) == mailboxes.shard(a); i++) b = "b" + i;
+        String target = b;
+
+        CountDownLatch gate = new CountDownLatch(1);
+        List<String> order = new ArrayList<>();                         // пишет только поток ящика b
+        mailboxes.execute(target, () -> {
+            try {
+                gate.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            order.add("own");
+        });
+        mailboxes.run(a, () -> mailboxes.execute(target, () -> order.add("nested")));
+        gate.countDown();
+
+        assertThat(mailboxes.quiesce(Duration.ofSeconds(5))).isTrue();
+        assertThat(order).containsExactly("own", "nested");
+    }
+
+    @Test
+    void closedOrDirectMailboxesRunInCaller() {
+        String caller = Thread.currentThread().getName();
+        assertThat(UserMailboxes.direct().call("u", () -> Thread.currentThread().getName())).isEqualTo(caller);
+
+        mailboxes.close();
+        assertThat(mailboxes.call("u", () -> Thread.currentThread().getName())).isEqualTo(caller);
+        assertThat(mailboxes.quiesce(Duration.ofSeconds(1))).isTrue();
+    }
+}